@@ -0,0 +1,546 @@
+package com.medialab.tasksystem;
+
+import com.medialab.tasksystem.service.*;
+import com.medialab.tasksystem.storage.MappedTaskStore;
+import com.medialab.tasksystem.util.UIUtils;
+import com.medialab.tasksystem.view.*;
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.Scene;
+import javafx.scene.control.*;
+import javafx.scene.input.KeyCombination;
+import javafx.scene.layout.*;
+import javafx.stage.DirectoryChooser;
+import javafx.stage.Stage;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * One application window showing one workspace. The primary window shows the default
+ * workspace; further windows can be opened side by side for other workspace directories.
+ */
+class WorkspaceWindow {
+    private static final Logger LOGGER = Logger.getLogger(WorkspaceWindow.class.getName());
+
+    private final TaskManagementApp app;
+    private final Stage stage;
+    private final File workspaceDir;
+    private final boolean primary;
+    private boolean workspaceAcquired;
+
+    private TaskService taskService;
+    private CategoryService categoryService;
+    private PriorityService priorityService;
+    private ReminderService reminderService;
+    private ReminderDispatcher reminderDispatcher;
+    private SharedStoreWatcher sharedStoreWatcher;
+    private Replicator replicator;
+    private BackupService backupService;
+    private UndoManager undoManager;
+    private final Runnable undoListener = this::updateUndoItems;
+
+    // UI Components
+    private Label totalTasksLabel;
+    private Label completedTasksLabel;
+    private Label delayedTasksLabel;
+    private Label upcomingTasksLabel;
+    private StackPane contentArea;
+    private MenuItem undoItem;
+    private MenuItem redoItem;
+    private CategoryManagementPane categoryPane;
+    private PriorityManagementPane priorityPane;
+
+    // Startup timing, measured from the moment the window was requested.
+    private final long startupNanos;
+
+    WorkspaceWindow(TaskManagementApp app, Stage stage, File workspaceDir, boolean primary, long startupNanos) {
+        this.app = app;
+        this.stage = stage;
+        this.workspaceDir = workspaceDir;
+        this.primary = primary;
+        this.startupNanos = startupNanos;
+    }
+
+    void show() {
+        createAndShowGUI(stage);
+        loadServicesInBackground();
+    }
+
+    File getWorkspaceDir() {
+        return workspaceDir;
+    }
+
+    // Load all stores off the FX thread; the window is already visible with a progress indicator.
+    private void loadServicesInBackground() {
+        javafx.concurrent.Task<ServiceManager> loadTask = new javafx.concurrent.Task<>() {
+            @Override
+            protected ServiceManager call() {
+                return app.getWorkspaceManager().acquire(workspaceDir);
+            }
+        };
+
+        loadTask.setOnSucceeded(e -> {
+            workspaceAcquired = true;
+            logStartupPhase("data loaded");
+            initializeServices(loadTask.getValue());
+            showMainContent();
+            updateStatistics();
+            checkForDelayedTasks();
+            startReminderDispatcher();
+            startSharedStoreWatcher(loadTask.getValue());
+            startReplication(loadTask.getValue());
+            startBackups(loadTask.getValue());
+            logStartupPhase("ready");
+        });
+
+        loadTask.setOnFailed(e -> {
+            LOGGER.log(Level.SEVERE, "Failed to load application data", loadTask.getException());
+            UIUtils.showError("Startup Failed", "Could not load application data: "
+                    + loadTask.getException().getMessage());
+            if (primary) {
+                Platform.exit();
+            } else {
+                stage.close();
+            }
+        });
+
+        Thread loader = new Thread(loadTask, "data-loader");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    private void initializeServices(ServiceManager serviceManager) {
+        taskService = serviceManager.getTaskService();
+        categoryService = serviceManager.getCategoryService();
+        priorityService = serviceManager.getPriorityService();
+        reminderService = serviceManager.getReminderService();
+        undoManager = serviceManager.getUndoManager();
+        undoManager.addChangeListener(undoListener);
+        updateUndoItems();
+    }
+
+    // Deliver due (and missed) reminders through the log and a dialog.
+    private void startReminderDispatcher() {
+        reminderDispatcher = new ReminderDispatcher(reminderService, taskService, Platform::runLater);
+        reminderDispatcher.addNotifier(new LogReminderNotifier());
+        reminderDispatcher.addNotifier(new UiReminderNotifier(reminderService));
+        reminderDispatcher.start();
+    }
+
+    // Show changes other processes save to a workspace they share with this one.
+    private void startSharedStoreWatcher(ServiceManager serviceManager) {
+        if (SharedStoreWatcher.isShared(serviceManager)) {
+            sharedStoreWatcher = new SharedStoreWatcher(serviceManager, Platform::runLater);
+            sharedStoreWatcher.start();
+        }
+    }
+
+    // Sync with other instances if the workspace is replicated.
+    private void startReplication(ServiceManager serviceManager) {
+        try {
+            replicator = Replicator.forWorkspace(serviceManager, Platform::runLater);
+            if (replicator != null) {
+                replicator.start();
+            }
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Failed to start replication", e);
+            replicator = null;
+            UIUtils.showError("Replication Failed", "Could not sync with other instances: " + e.getMessage());
+        }
+    }
+
+    // Snapshot the workspace every few minutes; capturing runs on the FX thread, storing in the background.
+    private void startBackups(ServiceManager serviceManager) {
+        backupService = new BackupService(serviceManager.getPersistenceService(), Platform::runLater);
+        backupService.start();
+    }
+
+    private void createAndShowGUI(Stage primaryStage) {
+        // Create main layout
+        VBox root = new VBox(10);
+        root.setPadding(new Insets(10));
+
+        // Create menu and statistics panel
+        MenuBar menuBar = createMenuBar();
+        GridPane statsPanel = createStatsPanel();
+
+        // Placeholder shown until the data has been loaded
+        contentArea = new StackPane(createLoadingIndicator());
+        VBox.setVgrow(contentArea, Priority.ALWAYS);
+
+        // Add components to root
+        root.getChildren().addAll(menuBar, statsPanel, contentArea);
+
+        // Create scene and show stage
+        Scene scene = new Scene(root, 800, 600);
+        primaryStage.setTitle(primary ? "MediaLab Assistant" : "MediaLab Assistant - " + workspaceDir.getName());
+        primaryStage.setScene(scene);
+        primaryStage.show();
+        reportFirstFrame();
+
+        // Add shutdown hook
+        primaryStage.setOnCloseRequest(e -> {
+            if (primary) {
+                e.consume(); // Prevent immediate closing
+                handleApplicationShutdown();
+            } else {
+                close();
+            }
+        });
+    }
+
+    private MenuBar createMenuBar() {
+        MenuItem openItem = new MenuItem("Open Workspace...");
+        openItem.setOnAction(e -> app.chooseAndOpenWorkspace(stage));
+        MenuItem exitItem = new MenuItem("Exit");
+        exitItem.setOnAction(e -> handleApplicationShutdown());
+        Menu workspaceMenu = new Menu("Workspace");
+        MenuItem backupItem = new MenuItem("Back Up Now");
+        backupItem.setOnAction(e -> backUpNow());
+        MenuItem restoreItem = new MenuItem("Restore Backup...");
+        restoreItem.setOnAction(e -> restoreBackup());
+        workspaceMenu.getItems().addAll(openItem, new SeparatorMenuItem(), backupItem, restoreItem,
+                new SeparatorMenuItem(), exitItem);
+
+        undoItem = new MenuItem("Undo");
+        undoItem.setAccelerator(KeyCombination.keyCombination("Shortcut+Z"));
+        undoItem.setOnAction(e -> undoOrRedo(true));
+        redoItem = new MenuItem("Redo");
+        redoItem.setAccelerator(KeyCombination.keyCombination("Shortcut+Y"));
+        redoItem.setOnAction(e -> undoOrRedo(false));
+        updateUndoItems();
+        Menu editMenu = new Menu("Edit");
+        editMenu.getItems().addAll(undoItem, redoItem);
+
+        MenuItem exportItem = new MenuItem("Export Tasks to Archival Store...");
+        exportItem.setOnAction(e -> exportToArchivalStore());
+        MenuItem browseItem = new MenuItem("Browse Archival Store...");
+        browseItem.setOnAction(e -> browseArchivalStore());
+        MenuItem archivedItem = new MenuItem("Archived Tasks...");
+        archivedItem.setOnAction(e -> {
+            if (taskService != null) {
+                new ArchivedTasksWindow(taskService, categoryService, priorityService, this::updateStatistics).show();
+            }
+        });
+        MenuItem archiveNowItem = new MenuItem("Archive Completed Tasks");
+        archiveNowItem.setOnAction(e -> archiveCompletedTasks());
+        Menu archiveMenu = new Menu("Archive");
+        archiveMenu.getItems().addAll(archivedItem, archiveNowItem, new SeparatorMenuItem(), exportItem, browseItem);
+        MenuItem boardItem = new MenuItem("Board at Date...");
+        boardItem.setOnAction(e -> showBoardAtDate());
+        Menu historyMenu = new Menu("History");
+        historyMenu.getItems().add(boardItem);
+        return new MenuBar(workspaceMenu, editMenu, archiveMenu, historyMenu);
+    }
+
+    private void updateUndoItems() {
+        if (undoItem == null) {
+            return; // Menu not built yet
+        }
+        boolean loaded = undoManager != null;
+        undoItem.setDisable(!loaded || !undoManager.canUndo());
+        redoItem.setDisable(!loaded || !undoManager.canRedo());
+        undoItem.setText(loaded && undoManager.canUndo() ? "Undo " + undoManager.getUndoLabel() : "Undo");
+        redoItem.setText(loaded && undoManager.canRedo() ? "Redo " + undoManager.getRedoLabel() : "Redo");
+    }
+
+    private void undoOrRedo(boolean undo) {
+        if (undoManager == null) {
+            return; // Still loading
+        }
+        try {
+            if (undo) {
+                undoManager.undo();
+            } else {
+                undoManager.redo();
+            }
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.SEVERE, (undo ? "Undo" : "Redo") + " failed in " + workspaceDir, e);
+            UIUtils.showError(undo ? "Undo Failed" : "Redo Failed", "Could not apply the change: " + e.getMessage());
+        }
+        // Tasks and reminders are bound to observable lists; categories and priorities are re-read.
+        if (categoryPane != null) {
+            categoryPane.refresh();
+        }
+        if (priorityPane != null) {
+            priorityPane.refresh();
+        }
+        updateStatistics();
+    }
+
+    private void backUpNow() {
+        if (backupService == null) {
+            return; // Still loading
+        }
+        backupService.backupNow().whenComplete((manifest, error) -> Platform.runLater(() -> {
+            if (error != null) {
+                LOGGER.log(Level.SEVERE, "Backup of " + workspaceDir + " failed", error);
+                UIUtils.showError("Backup Failed", "Could not back up the workspace: " + error.getMessage());
+            } else {
+                UIUtils.showInfo("Backup Complete", "Snapshot " + manifest.id + " saved ("
+                        + manifest.newChunkBytes / 1024 + " KB of new data).");
+            }
+        }));
+    }
+
+    // Rebuild a snapshot into a new, empty directory and open it as a workspace.
+    private void restoreBackup() {
+        if (backupService == null) {
+            return; // Still loading
+        }
+        SnapshotStore snapshots = backupService.getSnapshotStore();
+        List<String> ids = snapshots.list().stream().map(manifest -> manifest.id).collect(Collectors.toList());
+        if (ids.isEmpty()) {
+            UIUtils.showInfo("Restore Backup", "This workspace has no backups yet.");
+            return;
+        }
+        ChoiceDialog<String> choice = new ChoiceDialog<>(ids.get(0), ids);
+        choice.setTitle("Restore Backup");
+        choice.setHeaderText("Choose a snapshot, then an empty directory to restore it into.");
+        Optional<String> snapshotId = choice.showAndWait();
+        if (snapshotId.isEmpty()) {
+            return;
+        }
+        DirectoryChooser chooser = new DirectoryChooser();
+        chooser.setTitle("Restore Backup Into");
+        File dir = chooser.showDialog(stage);
+        if (dir == null) {
+            return;
+        }
+        javafx.concurrent.Task<Void> restoreTask = new javafx.concurrent.Task<>() {
+            @Override
+            protected Void call() {
+                snapshots.restore(snapshotId.get(), dir);
+                return null;
+            }
+        };
+        restoreTask.setOnSucceeded(e -> app.openWorkspace(dir));
+        restoreTask.setOnFailed(e -> {
+            LOGGER.log(Level.SEVERE, "Failed to restore snapshot " + snapshotId.get(), restoreTask.getException());
+            UIUtils.showError("Restore Failed", "Could not restore the backup: " + restoreTask.getException().getMessage());
+        });
+        Thread restorer = new Thread(restoreTask, "backup-restore");
+        restorer.setDaemon(true);
+        restorer.start();
+    }
+
+    private void showBoardAtDate() {
+        if (taskService == null) {
+            return; // Still loading
+        }
+        DatePicker datePicker = new DatePicker(LocalDate.now().minusDays(7));
+        Dialog<LocalDate> dialog = new Dialog<>();
+        dialog.setTitle("Board at Date");
+        dialog.setHeaderText("Show the tasks as they were at the end of:");
+        dialog.getDialogPane().setContent(datePicker);
+        dialog.getDialogPane().getButtonTypes().addAll(ButtonType.OK, ButtonType.CANCEL);
+        dialog.setResultConverter(button -> button == ButtonType.OK ? datePicker.getValue() : null);
+        dialog.showAndWait().ifPresent(date -> TaskHistoryWindow.showBoardAt(taskService, date));
+    }
+
+    private void archiveCompletedTasks() {
+        if (taskService == null) {
+            return; // Still loading
+        }
+        int archived = taskService.archiveCompletedTasks(ServiceManager.ARCHIVE_COMPLETED_AFTER_DAYS);
+        updateStatistics();
+        UIUtils.showInfo("Archive", archived + " tasks completed more than "
+                + ServiceManager.ARCHIVE_COMPLETED_AFTER_DAYS + " days ago were archived.");
+    }
+
+    private void exportToArchivalStore() {
+        if (taskService == null) {
+            return; // Still loading
+        }
+        DirectoryChooser chooser = new DirectoryChooser();
+        chooser.setTitle("Export Tasks to Archival Store");
+        File dir = chooser.showDialog(stage);
+        if (dir == null) {
+            return;
+        }
+        try (MappedTaskStore store = MappedTaskStore.open(dir.toPath())) {
+            int count = taskService.exportTo(store);
+            UIUtils.showInfo("Export Complete", count + " tasks exported; the store now holds " + store.size() + ".");
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.SEVERE, "Failed to export tasks to " + dir, e);
+            UIUtils.showError("Export Failed", "Could not export tasks: " + e.getMessage());
+        }
+    }
+
+    private void browseArchivalStore() {
+        DirectoryChooser chooser = new DirectoryChooser();
+        chooser.setTitle("Browse Archival Store");
+        File dir = chooser.showDialog(stage);
+        if (dir == null) {
+            return;
+        }
+        try {
+            new ArchivalStoreWindow(MappedTaskStore.openExisting(dir.toPath()), dir.getName()).show();
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Failed to open archival store " + dir, e);
+            UIUtils.showError("Open Failed", "Could not open archival store: " + e.getMessage());
+        }
+    }
+
+    private VBox createLoadingIndicator() {
+        ProgressIndicator progress = new ProgressIndicator();
+        VBox loadingBox = new VBox(10, progress, new Label("Loading data..."));
+        loadingBox.setAlignment(Pos.CENTER);
+        return loadingBox;
+    }
+
+    private void showMainContent() {
+        TabPane tabPane = createMainTabPane();
+        VBox.setVgrow(tabPane, Priority.ALWAYS);
+        VBox mainContent = new VBox(10, new NextTasksWidget(taskService), tabPane);
+        contentArea.getChildren().setAll(mainContent);
+    }
+
+    // Log the first rendering pulse after the stage is shown (time-to-first-frame).
+    private void reportFirstFrame() {
+        new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                stop();
+                logStartupPhase("first frame");
+            }
+        }.start();
+    }
+
+    private void logStartupPhase(String phase) {
+        long elapsedMillis = (System.nanoTime() - startupNanos) / 1_000_000;
+        LOGGER.info(String.format("Startup (%s): %s after %d ms", workspaceDir.getName(), phase, elapsedMillis));
+    }
+
+    private GridPane createStatsPanel() {
+        GridPane statsPane = new GridPane();
+        statsPane.setHgap(20);
+        statsPane.setVgap(10);
+        statsPane.setPadding(new Insets(10));
+        statsPane.setStyle("-fx-background-color: #f0f0f0; -fx-border-color: #cccccc;");
+
+        // Initialize statistics labels
+        totalTasksLabel = new Label("Total Tasks: 0");
+        completedTasksLabel = new Label("Completed: 0");
+        delayedTasksLabel = new Label("Delayed: 0");
+        upcomingTasksLabel = new Label("Due in 7 days: 0");
+
+        // Style the labels
+        String labelStyle = "-fx-font-weight: bold;";
+        totalTasksLabel.setStyle(labelStyle);
+        completedTasksLabel.setStyle(labelStyle);
+        delayedTasksLabel.setStyle(labelStyle);
+        upcomingTasksLabel.setStyle(labelStyle);
+
+        // Add labels to grid
+        statsPane.addRow(0,
+                totalTasksLabel,
+                completedTasksLabel,
+                delayedTasksLabel,
+                upcomingTasksLabel
+        );
+
+        return statsPane;
+    }
+
+    private TabPane createMainTabPane() {
+        TabPane tabPane = new TabPane();
+        tabPane.setTabClosingPolicy(TabPane.TabClosingPolicy.UNAVAILABLE);
+
+        // Each tab builds its pane the first time it is selected
+        LazyTab tasksTab = new LazyTab("Tasks",
+                () -> new TaskManagementPane(taskService, categoryService, priorityService, this::updateStatistics));
+        LazyTab categoriesTab = new LazyTab("Categories",
+                () -> categoryPane = new CategoryManagementPane(categoryService));
+        LazyTab prioritiesTab = new LazyTab("Priorities",
+                () -> priorityPane = new PriorityManagementPane(priorityService));
+        LazyTab remindersTab = new LazyTab("Reminders", () -> new ReminderManagementPane(reminderService, taskService));
+
+        // Add all tabs
+        tabPane.getTabs().addAll(tasksTab, categoriesTab, prioritiesTab, remindersTab);
+
+        // The initially selected tab does not receive a selection change event
+        Tab selected = tabPane.getSelectionModel().getSelectedItem();
+        if (selected instanceof LazyTab) {
+            ((LazyTab) selected).ensureContent();
+        }
+
+        return tabPane;
+    }
+
+    private void updateStatistics() {
+        int totalTasks = taskService.getAllTasks().size() + taskService.getArchivedTasksCount();
+        int completedTasks = taskService.getCompletedTasksCount();
+        int delayedTasks = taskService.getDelayedTasksCount();
+        int upcomingTasks = taskService.getTasksWithinDaysCount(7);
+
+        totalTasksLabel.setText("Total Tasks: " + totalTasks);
+        completedTasksLabel.setText("Completed: " + completedTasks);
+        delayedTasksLabel.setText("Delayed: " + delayedTasks);
+        upcomingTasksLabel.setText("Due in 7 days: " + upcomingTasks);
+    }
+
+    private void checkForDelayedTasks() {
+        int delayedTasks = taskService.getDelayedTasksCount();
+        if (delayedTasks > 0) {
+            Platform.runLater(() -> {
+                Alert alert = new Alert(Alert.AlertType.WARNING);
+                alert.setTitle("Delayed Tasks");
+                alert.setHeaderText("You have delayed tasks!");
+                alert.setContentText("Number of delayed tasks: " + delayedTasks);
+                alert.show();
+            });
+        }
+    }
+
+    private void handleApplicationShutdown() {
+        Alert alert = new Alert(Alert.AlertType.CONFIRMATION);
+        alert.setTitle("Confirm Exit");
+        alert.setHeaderText("Are you sure you want to exit?");
+        alert.setContentText("All changes will be saved.");
+
+        alert.showAndWait().ifPresent(response -> {
+            if (response == ButtonType.OK) {
+                app.exit();
+            }
+        });
+    }
+
+    // Stop background work and hand the workspace back to the cache.
+    void close() {
+        if (reminderDispatcher != null) {
+            reminderDispatcher.stop();
+            reminderDispatcher = null;
+        }
+        if (sharedStoreWatcher != null) {
+            sharedStoreWatcher.stop();
+            sharedStoreWatcher = null;
+        }
+        if (replicator != null) {
+            replicator.stop();
+            replicator = null;
+        }
+        if (backupService != null) {
+            backupService.stop();
+            backupService = null;
+        }
+        if (undoManager != null) {
+            undoManager.removeChangeListener(undoListener);
+        }
+        if (workspaceAcquired) {
+            workspaceAcquired = false;
+            app.getWorkspaceManager().release(workspaceDir);
+        }
+        app.windowClosed(this);
+        stage.close();
+    }
+}
@@ -0,0 +1,83 @@
+package com.medialab.tasksystem.api;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A parsed API request: the method, the path below {@code /api/}, the query
+ * parameters and the JSON body. Parsed on the request thread, read on the owner thread.
+ */
+final class ApiRequest {
+    private final String method;
+    private final List<String> path;
+    private final Map<String, String> params;
+    private final JsonNode body;
+
+    ApiRequest(String method, List<String> path, Map<String, String> params, JsonNode body) {
+        this.method = method;
+        this.path = path;
+        this.params = params;
+        this.body = body;
+    }
+
+    String getMethod() {
+        return method;
+    }
+
+    // The decoded path segments below /api/, e.g. [tasks, 42] for /api/tasks/42.
+    List<String> getPath() {
+        return path;
+    }
+
+    JsonNode getBody() {
+        return body;
+    }
+
+    boolean is(String method) {
+        return this.method.equals(method);
+    }
+
+    String param(String name) {
+        String value = params.get(name);
+        return value == null || value.isEmpty() ? null : value;
+    }
+
+    int intParam(String name, int defaultValue, int min, int max) {
+        String value = param(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            int number = Integer.parseInt(value);
+            if (number < min || number > max) {
+                throw ApiException.badRequest(name + " must be between " + min + " and " + max);
+            }
+            return number;
+        } catch (NumberFormatException e) {
+            throw ApiException.badRequest(name + " must be a number");
+        }
+    }
+
+    LocalDate dateParam(String name) {
+        String value = param(name);
+        try {
+            return value != null ? LocalDate.parse(value) : null;
+        } catch (DateTimeParseException e) {
+            throw ApiException.badRequest(name + " must be a date (YYYY-MM-DD)");
+        }
+    }
+
+    <E extends Enum<E>> E enumParam(String name, Class<E> type) {
+        String value = param(name);
+        try {
+            return value != null ? Enum.valueOf(type, value.toUpperCase(Locale.ROOT)) : null;
+        } catch (IllegalArgumentException e) {
+            throw ApiException.badRequest("Unknown " + name + ": " + value);
+        }
+    }
+}
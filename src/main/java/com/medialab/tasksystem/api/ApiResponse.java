@@ -0,0 +1,41 @@
+package com.medialab.tasksystem.api;
+
+/**
+ * What a route answers: a status, an optional body made of maps, lists and plain
+ * values (serialized off the owner thread), and the location of a created resource.
+ */
+final class ApiResponse {
+    private final int status;
+    private final Object body;
+    private final String location;
+
+    private ApiResponse(int status, Object body, String location) {
+        this.status = status;
+        this.body = body;
+        this.location = location;
+    }
+
+    static ApiResponse ok(Object body) {
+        return new ApiResponse(200, body, null);
+    }
+
+    static ApiResponse created(Object body, String location) {
+        return new ApiResponse(201, body, location);
+    }
+
+    static ApiResponse noContent() {
+        return new ApiResponse(204, null, null);
+    }
+
+    int getStatus() {
+        return status;
+    }
+
+    Object getBody() {
+        return body;
+    }
+
+    String getLocation() {
+        return location;
+    }
+}
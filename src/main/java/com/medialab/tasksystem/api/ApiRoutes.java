@@ -0,0 +1,771 @@
+package com.medialab.tasksystem.api;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.medialab.tasksystem.audit.AuditAction;
+import com.medialab.tasksystem.model.Category;
+import com.medialab.tasksystem.model.PriorityLevel;
+import com.medialab.tasksystem.model.Reminder;
+import com.medialab.tasksystem.model.ReminderType;
+import com.medialab.tasksystem.model.Task;
+import com.medialab.tasksystem.model.TaskStatus;
+import com.medialab.tasksystem.service.CategoryService;
+import com.medialab.tasksystem.service.DataPersistenceService;
+import com.medialab.tasksystem.service.PriorityService;
+import com.medialab.tasksystem.service.ReminderService;
+import com.medialab.tasksystem.service.ServiceManager;
+import com.medialab.tasksystem.service.TaskPageSource;
+import com.medialab.tasksystem.service.TaskService;
+import com.medialab.tasksystem.service.TaskSortKey;
+import com.medialab.tasksystem.service.UndoManager;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Maps API requests onto the services. Runs on the owner thread only, like the UI does,
+ * and answers with plain maps and lists so the response can be serialized elsewhere.
+ * <p>
+ * Every request is one undo step; batch requests also run in one storage transaction.
+ * The fields of a request are checked before anything is changed; reminder dates are
+ * checked by the service, so a reminder batch that fails part way is undone.
+ * </p>
+ */
+class ApiRoutes {
+    static final int DEFAULT_PAGE_SIZE = 50;
+    static final int MAX_PAGE_SIZE = 1000;
+    static final int MAX_BATCH_SIZE = 1000;
+
+    private final TaskService taskService;
+    private final CategoryService categoryService;
+    private final PriorityService priorityService;
+    private final ReminderService reminderService;
+    private final DataPersistenceService persistenceService;
+    private final UndoManager undoManager;
+
+    ApiRoutes(ServiceManager services) {
+        this.taskService = services.getTaskService();
+        this.categoryService = services.getCategoryService();
+        this.priorityService = services.getPriorityService();
+        this.reminderService = services.getReminderService();
+        this.persistenceService = services.getPersistenceService();
+        this.undoManager = services.getUndoManager();
+    }
+
+    ApiResponse handle(ApiRequest request) {
+        List<String> path = request.getPath();
+        switch (path.isEmpty() ? "" : path.get(0)) {
+            case "tasks": return tasks(request, path);
+            case "categories": return categories(request, path);
+            case "priorities": return priorities(request, path);
+            case "reminders": return reminders(request, path);
+            default: throw ApiException.notFound("No such resource: /api/" + String.join("/", path));
+        }
+    }
+
+    // ---- Tasks ----
+
+    private ApiResponse tasks(ApiRequest request, List<String> path) {
+        if (path.size() == 1) {
+            if (request.is("GET")) {
+                return ApiResponse.ok(listTasks(request));
+            }
+            if (request.is("POST")) {
+                Task task = createTask(taskFields(request.getBody(), true));
+                return ApiResponse.created(taskJson(task, true), "/api/tasks/" + task.getId());
+            }
+        } else if (path.size() == 2 && path.get(1).equals("batch")) {
+            if (request.is("POST")) {
+                return ApiResponse.ok(batchTasks(request.getBody()));
+            }
+        } else if (path.size() == 2 && path.get(1).equals("next")) {
+            if (request.is("GET")) {
+                int limit = request.intParam("limit", TaskService.NEXT_TASKS_CAPACITY, 1, TaskService.NEXT_TASKS_CAPACITY);
+                return ApiResponse.ok(taskService.getNextTasks(limit).stream()
+                        .map(task -> taskJson(task, false))
+                        .collect(Collectors.toList()));
+            }
+        } else if (path.size() == 2) {
+            Task task = existingTask(path.get(1));
+            if (request.is("GET")) {
+                return ApiResponse.ok(taskJson(task, true));
+            }
+            if (request.is("PUT") || request.is("PATCH")) {
+                Map<String, Object> fields = taskFields(request.getBody(), false);
+                Long version = expectedVersion(request.getBody());
+                undoManager.run("Edit Task", () -> updateTask(task, fields, version));
+                return ApiResponse.ok(taskJson(task, true));
+            }
+            if (request.is("DELETE")) {
+                taskService.deleteTask(task.getId());
+                return ApiResponse.noContent();
+            }
+        } else if (path.size() == 3 && path.get(2).equals("reminders")) {
+            Task task = existingTask(path.get(1));
+            if (request.is("GET")) {
+                return ApiResponse.ok(reminderService.getRemindersForTask(task.getId()).stream()
+                        .map(ApiRoutes::reminderJson)
+                        .collect(Collectors.toList()));
+            }
+        } else {
+            throw ApiException.notFound("No such resource: /api/" + String.join("/", path));
+        }
+        throw methodNotAllowed(request);
+    }
+
+    // Unfiltered pages come straight from the task store's sorted index; filtered ones are searched and sorted.
+    private Map<String, Object> listTasks(ApiRequest request) {
+        int offset = request.intParam("offset", 0, 0, Integer.MAX_VALUE);
+        int limit = request.intParam("limit", DEFAULT_PAGE_SIZE, 1, MAX_PAGE_SIZE);
+        TaskSortKey sortKey = request.enumParam("sort", TaskSortKey.class);
+        boolean ascending = !"desc".equalsIgnoreCase(request.param("order"));
+        String query = request.param("q");
+        TaskStatus status = request.enumParam("status", TaskStatus.class);
+        String categoryId = request.param("categoryId");
+        String priorityId = request.param("priorityId");
+
+        int total;
+        List<Task> page;
+        if (query == null && status == null && categoryId == null && priorityId == null) {
+            TaskPageSource source = taskService.getPageSource(sortKey, ascending);
+            total = source.size();
+            page = offset < total ? source.fetch(offset, limit) : List.of();
+        } else {
+            String categoryName = categoryId != null ? category(categoryId).getName() : null;
+            String priorityName = priorityId != null ? priority(priorityId).getName() : null;
+            Set<Task> matches = taskService.getSearchIndex().search(query, categoryName, priorityName, () -> false);
+            List<Task> sorted = matches.stream()
+                    .filter(task -> status == null || task.getStatus() == status)
+                    .sorted((sortKey != null ? sortKey : TaskSortKey.TITLE).comparator(ascending)
+                            .thenComparing(Task::getId))
+                    .collect(Collectors.toList());
+            total = sorted.size();
+            page = sorted.subList(Math.min(offset, total), (int) Math.min((long) offset + limit, total));
+        }
+        return pageJson(total, offset, limit, page.stream().map(task -> taskJson(task, false)));
+    }
+
+    private Map<String, Object> batchTasks(JsonNode body) {
+        requireObject(body);
+        List<Map<String, Object>> creates = new ArrayList<>();
+        for (JsonNode node : array(body, "create")) {
+            creates.add(taskFields(node, true));
+        }
+        Map<Task, Map<String, Object>> updates = new LinkedHashMap<>();
+        Map<Task, Long> versions = new HashMap<>();
+        for (JsonNode node : array(body, "update")) {
+            Task task = existingTask(text(requireObject(node).get("id"), "id"));
+            updates.put(task, taskFields(node, false));
+            versions.put(task, expectedVersion(node));
+        }
+        List<String> deletes = new ArrayList<>();
+        for (JsonNode node : array(body, "delete")) {
+            deletes.add(text(node, "delete"));
+        }
+        if (creates.size() + updates.size() + deletes.size() > MAX_BATCH_SIZE) {
+            throw ApiException.badRequest("A batch can hold at most " + MAX_BATCH_SIZE + " operations");
+        }
+
+        List<Task> created = new ArrayList<>();
+        int[] updated = new int[1];
+        int[] deleted = new int[1];
+        try {
+            undoManager.run("Edit Tasks", () -> persistenceService.inTransaction(() -> {
+                creates.forEach(fields -> created.add(createTask(fields)));
+                updates.forEach((task, fields) -> {
+                    updateTask(task, fields, versions.get(task));
+                    updated[0]++;
+                });
+                if (!deletes.isEmpty()) {
+                    deleted[0] = taskService.deleteTasks(deletes);
+                }
+            }));
+        } catch (RuntimeException e) {
+            // A version conflict part way through leaves none of the batch applied.
+            if (!created.isEmpty() || updated[0] > 0) {
+                undoManager.undo();
+            }
+            throw e;
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("created", created.stream().map(task -> taskJson(task, false)).collect(Collectors.toList()));
+        result.put("updated", updates.size());
+        result.put("deleted", deleted[0]);
+        return result;
+    }
+
+    private Task createTask(Map<String, Object> fields) {
+        return undoManager.call("Create Task", () -> {
+            PriorityLevel priority = fields.containsKey("priority")
+                    ? (PriorityLevel) fields.get("priority")
+                    : priorityService.getDefaultPriorityLevel();
+            Task task = taskService.createTask((String) fields.get("title"), (String) fields.get("description"),
+                    (Category) fields.get("category"), priority, (LocalDate) fields.get("deadline"));
+            TaskStatus status = (TaskStatus) fields.get("status");
+            if (status != null && status != task.getStatus()) {
+                task.setStatus(status);
+                taskService.updateTask(task);
+            }
+            return task;
+        });
+    }
+
+    // With an expected version, only applies the fields if no one else changed them since.
+    private void updateTask(Task task, Map<String, Object> fields, Long expectedVersion) {
+        if (expectedVersion != null) {
+            taskService.updateTask(task.getId(), expectedVersion, fields);
+            return;
+        }
+        fields.forEach((name, value) -> {
+            switch (name) {
+                case "title": task.setTitle((String) value); break;
+                case "description": task.setDescription((String) value); break;
+                case "category": task.setCategory((Category) value); break;
+                case "priority": task.setPriority((PriorityLevel) value); break;
+                case "deadline": task.setDeadline((LocalDate) value); break;
+                case "status": task.setStatus((TaskStatus) value); break;
+                default: throw new IllegalStateException(name);
+            }
+        });
+        taskService.updateTask(task);
+    }
+
+    // Resolves the task fields present in a JSON object, keyed by Task property; "id" and "version" are ignored.
+    private Map<String, Object> taskFields(JsonNode body, boolean creating) {
+        requireObject(body);
+        Map<String, Object> fields = new LinkedHashMap<>();
+        Iterator<Map.Entry<String, JsonNode>> entries = body.fields();
+        while (entries.hasNext()) {
+            Map.Entry<String, JsonNode> entry = entries.next();
+            String name = entry.getKey();
+            JsonNode value = entry.getValue();
+            switch (name) {
+                case "id":
+                case "version":
+                    break;
+                case "title":
+                    String title = text(value, name);
+                    if (title == null || title.trim().isEmpty()) {
+                        throw ApiException.badRequest("Task title is required");
+                    }
+                    fields.put("title", title);
+                    break;
+                case "description":
+                    fields.put("description", text(value, name));
+                    break;
+                case "categoryId":
+                    fields.put("category", category(required(text(value, name), name)));
+                    break;
+                case "priorityId":
+                    fields.put("priority", priority(required(text(value, name), name)));
+                    break;
+                case "deadline":
+                    fields.put("deadline", required(date(value, name), name));
+                    break;
+                case "status":
+                    TaskStatus status = enumValue(TaskStatus.class, value, name);
+                    if (status == null) {
+                        throw ApiException.badRequest("Task status cannot be null");
+                    }
+                    fields.put("status", status);
+                    break;
+                default:
+                    throw ApiException.badRequest("Unknown task field: " + name);
+            }
+        }
+        // The task list and its deadline checks expect every task to have these.
+        if (creating) {
+            for (String required : List.of("title", "category", "deadline")) {
+                if (!fields.containsKey(required)) {
+                    throw ApiException.badRequest("Task " + required + " is required");
+                }
+            }
+        }
+        return fields;
+    }
+
+    private Task existingTask(String id) {
+        Task task = taskService.getTaskById(id);
+        if (task == null) {
+            throw ApiException.notFound("No task with id " + id);
+        }
+        return task;
+    }
+
+    // ---- Categories ----
+
+    private ApiResponse categories(ApiRequest request, List<String> path) {
+        if (path.size() == 1) {
+            if (request.is("GET")) {
+                return ApiResponse.ok(categoryService.getAllCategories().stream()
+                        .map(ApiRoutes::categoryJson)
+                        .collect(Collectors.toList()));
+            }
+            if (request.is("POST")) {
+                Category category = categoryService.createCategory(requiredName(request.getBody()));
+                return ApiResponse.created(categoryJson(category), "/api/categories/" + category.getId());
+            }
+        } else if (path.size() == 2) {
+            Category category = category(path.get(1), ApiException::notFound);
+            if (request.is("GET")) {
+                return ApiResponse.ok(categoryJson(category));
+            }
+            if (request.is("PUT") || request.is("PATCH")) {
+                String name = requiredName(request.getBody());
+                Long version = expectedVersion(request.getBody());
+                if (version != null) {
+                    categoryService.updateCategory(category.getId(), version, name);
+                } else {
+                    category.setName(name);
+                    categoryService.updateCategory(category);
+                }
+                return ApiResponse.ok(categoryJson(category));
+            }
+            if (request.is("DELETE")) {
+                // Deleting a category deletes its tasks, as in the UI.
+                categoryService.deleteCategory(category.getId());
+                return ApiResponse.noContent();
+            }
+        } else {
+            throw ApiException.notFound("No such resource: /api/" + String.join("/", path));
+        }
+        throw methodNotAllowed(request);
+    }
+
+    private Category category(String id) {
+        return category(id, ApiException::badRequest);
+    }
+
+    private Category category(String id, Function<String, ApiException> missing) {
+        Category category = categoryService.getCategoryById(id);
+        if (category == null) {
+            throw missing.apply("No category with id " + id);
+        }
+        return category;
+    }
+
+    // ---- Priority levels ----
+
+    private ApiResponse priorities(ApiRequest request, List<String> path) {
+        if (path.size() == 1) {
+            if (request.is("GET")) {
+                return ApiResponse.ok(priorityService.getAllPriorityLevels().stream()
+                        .map(ApiRoutes::priorityJson)
+                        .collect(Collectors.toList()));
+            }
+            if (request.is("POST")) {
+                JsonNode body = request.getBody();
+                String name = requiredName(body);
+                Integer weight = weight(body);
+                PriorityLevel priority = priorityService.createPriorityLevel(name, false,
+                        weight != null ? weight : PriorityService.defaultWeightFor(name));
+                return ApiResponse.created(priorityJson(priority), "/api/priorities/" + priority.getId());
+            }
+        } else if (path.size() == 2) {
+            PriorityLevel priority = priority(path.get(1), ApiException::notFound);
+            if (request.is("GET")) {
+                return ApiResponse.ok(priorityJson(priority));
+            }
+            if (request.is("PUT") || request.is("PATCH")) {
+                JsonNode body = requireObject(request.getBody());
+                if (priority.isDefault()) {
+                    throw new ApiException(409, "The default priority level cannot be modified");
+                }
+                Map<String, Object> changes = new LinkedHashMap<>();
+                if (body.has("name")) {
+                    changes.put("name", requiredName(body));
+                }
+                Integer weight = weight(body);
+                if (weight != null) {
+                    changes.put("weight", weight);
+                }
+                Long version = expectedVersion(body);
+                if (version != null) {
+                    priorityService.updatePriorityLevel(priority.getId(), version, changes);
+                } else {
+                    if (changes.containsKey("name")) {
+                        priority.setName((String) changes.get("name"));
+                    }
+                    if (weight != null) {
+                        priority.setWeight(weight);
+                    }
+                    priorityService.updatePriorityLevel(priority);
+                }
+                return ApiResponse.ok(priorityJson(priority));
+            }
+            if (request.is("DELETE")) {
+                if (priority.isDefault()) {
+                    throw new ApiException(409, "The default priority level cannot be deleted");
+                }
+                // Its tasks move to the default priority level, as in the UI.
+                priorityService.deletePriorityLevel(priority.getId());
+                return ApiResponse.noContent();
+            }
+        } else {
+            throw ApiException.notFound("No such resource: /api/" + String.join("/", path));
+        }
+        throw methodNotAllowed(request);
+    }
+
+    private PriorityLevel priority(String id) {
+        return priority(id, ApiException::badRequest);
+    }
+
+    private PriorityLevel priority(String id, Function<String, ApiException> missing) {
+        PriorityLevel priority = priorityService.getPriorityLevelById(id);
+        if (priority == null) {
+            throw missing.apply("No priority level with id " + id);
+        }
+        return priority;
+    }
+
+    private static Integer weight(JsonNode body) {
+        JsonNode value = requireObject(body).get("weight");
+        if (value == null || value.isNull()) {
+            return null;
+        }
+        if (!value.canConvertToInt() || !value.isIntegralNumber()) {
+            throw ApiException.badRequest("weight must be an integer");
+        }
+        return value.intValue();
+    }
+
+    // ---- Reminders ----
+
+    private ApiResponse reminders(ApiRequest request, List<String> path) {
+        if (path.size() == 1) {
+            if (request.is("GET")) {
+                return ApiResponse.ok(listReminders(request));
+            }
+            if (request.is("POST")) {
+                Reminder reminder = createReminder(request.getBody());
+                return ApiResponse.created(reminderJson(reminder), "/api/reminders/" + reminder.getId());
+            }
+        } else if (path.size() == 2 && path.get(1).equals("batch")) {
+            if (request.is("POST")) {
+                return ApiResponse.ok(batchReminders(request.getBody()));
+            }
+        } else if (path.size() == 2) {
+            Reminder reminder = existingReminder(path.get(1));
+            if (request.is("GET")) {
+                return ApiResponse.ok(reminderJson(reminder));
+            }
+            if (request.is("PUT") || request.is("PATCH")) {
+                updateReminder(reminder, request.getBody());
+                return ApiResponse.ok(reminderJson(reminder));
+            }
+            if (request.is("DELETE")) {
+                reminderService.deleteReminder(reminder.getId());
+                return ApiResponse.noContent();
+            }
+        } else if (path.size() == 3 && path.get(2).equals("acknowledge")) {
+            Reminder reminder = existingReminder(path.get(1));
+            if (request.is("POST")) {
+                reminderService.acknowledgeReminder(reminder.getId());
+                return ApiResponse.ok(reminderJson(reminder));
+            }
+        } else {
+            throw ApiException.notFound("No such resource: /api/" + String.join("/", path));
+        }
+        throw methodNotAllowed(request);
+    }
+
+    private Map<String, Object> listReminders(ApiRequest request) {
+        int offset = request.intParam("offset", 0, 0, Integer.MAX_VALUE);
+        int limit = request.intParam("limit", DEFAULT_PAGE_SIZE, 1, MAX_PAGE_SIZE);
+        String taskId = request.param("taskId");
+        LocalDate from = request.dateParam("from");
+        LocalDate to = request.dateParam("to");
+        List<Reminder> reminders;
+        if (from != null || to != null) {
+            reminders = reminderService.getRemindersBetween(from != null ? from : LocalDate.MIN,
+                    to != null ? to : LocalDate.MAX);
+        } else if (taskId != null) {
+            reminders = reminderService.getRemindersForTask(taskId);
+        } else {
+            reminders = reminderService.getActiveReminders();
+        }
+        List<Reminder> sorted = reminders.stream()
+                .filter(reminder -> taskId == null || taskId.equals(reminder.getTaskId()))
+                .sorted(Comparator.comparing(Reminder::getReminderDate, Comparator.nullsLast(Comparator.naturalOrder()))
+                        .thenComparing(Reminder::getId))
+                .collect(Collectors.toList());
+        int total = sorted.size();
+        List<Reminder> page = sorted.subList(Math.min(offset, total), (int) Math.min((long) offset + limit, total));
+        return pageJson(total, offset, limit, page.stream().map(ApiRoutes::reminderJson));
+    }
+
+    private Map<String, Object> batchReminders(JsonNode body) {
+        requireObject(body);
+        List<JsonNode> creates = new ArrayList<>();
+        array(body, "create").forEach(creates::add);
+        List<String> deletes = new ArrayList<>();
+        for (JsonNode node : array(body, "delete")) {
+            deletes.add(text(node, "delete"));
+        }
+        if (creates.size() + deletes.size() > MAX_BATCH_SIZE) {
+            throw ApiException.badRequest("A batch can hold at most " + MAX_BATCH_SIZE + " operations");
+        }
+        List<Reminder> created = new ArrayList<>();
+        int[] deleted = new int[1];
+        try {
+            undoManager.run("Edit Reminders", () -> persistenceService.inTransaction(() -> {
+                creates.forEach(node -> created.add(createReminder(node)));
+                for (String id : deletes) {
+                    if (reminderService.getReminderById(id) != null) {
+                        reminderService.deleteReminder(id);
+                        deleted[0]++;
+                    }
+                }
+            }));
+        } catch (RuntimeException e) {
+            if (!created.isEmpty() || deleted[0] > 0) {
+                undoManager.undo();
+            }
+            throw e;
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("created", created.stream().map(ApiRoutes::reminderJson).collect(Collectors.toList()));
+        result.put("deleted", deleted[0]);
+        return result;
+    }
+
+    private Reminder createReminder(JsonNode body) {
+        requireObject(body);
+        String taskId = text(body.get("taskId"), "taskId");
+        Task task = taskId != null ? taskService.getTaskById(taskId) : null;
+        if (task == null) {
+            throw ApiException.badRequest(taskId != null ? "No task with id " + taskId : "taskId is required");
+        }
+        ReminderType type = enumValue(ReminderType.class, body.get("type"), "type");
+        if (type == null) {
+            throw ApiException.badRequest("Reminder type is required");
+        }
+        LocalDate date = date(body.get("date"), "date");
+        if (type == ReminderType.CUSTOM_DATE && date == null) {
+            throw ApiException.badRequest("A custom reminder needs a date");
+        }
+        return reminderService.createReminder(task, type, date);
+    }
+
+    // Mirrors the reminder dialog: relative reminders are recomputed from the task's deadline.
+    private void updateReminder(Reminder reminder, JsonNode body) {
+        requireObject(body);
+        ReminderType type = body.has("type") ? enumValue(ReminderType.class, body.get("type"), "type")
+                : reminder.getType();
+        if (type == null) {
+            throw ApiException.badRequest("Reminder type is required");
+        }
+        LocalDate date = body.has("date") ? date(body.get("date"), "date") : reminder.getReminderDate();
+        if (type == ReminderType.CUSTOM_DATE && date == null) {
+            throw ApiException.badRequest("A custom reminder needs a date");
+        }
+        if (type != ReminderType.CUSTOM_DATE) {
+            Task task = existingTask(reminder.getTaskId());
+            date = reminderService.calculateReminderDate(task.getDeadline(), type, null);
+        }
+        Long version = expectedVersion(body);
+        if (version != null) {
+            Map<String, Object> changes = new HashMap<>();
+            if (body.has("type")) {
+                changes.put("type", type);
+            }
+            // A new type moves a relative reminder's date too.
+            if (body.has("type") || body.has("date")) {
+                changes.put("reminderDate", date);
+            }
+            reminderService.updateReminder(reminder.getId(), version, changes);
+            return;
+        }
+        reminder.setType(type);
+        reminder.setReminderDate(date);
+        reminderService.updateReminder(reminder);
+    }
+
+    private Reminder existingReminder(String id) {
+        Reminder reminder = reminderService.getReminderById(id);
+        if (reminder == null) {
+            throw ApiException.notFound("No reminder with id " + id);
+        }
+        return reminder;
+    }
+
+    // ---- JSON ----
+
+    /**
+     * The current state of the entity an audit record is about, or null if it no longer exists.
+     */
+    Map<String, Object> entityJson(AuditAction action, String id) {
+        switch (action) {
+            case TASK_CREATED: case TASK_UPDATED: case TASK_DELETED: case TASK_ARCHIVED: case TASK_RESTORED:
+                Task task = taskService.getTaskById(id);
+                return task != null ? taskJson(task, false) : null;
+            case REMINDER_CREATED: case REMINDER_UPDATED: case REMINDER_DELETED:
+                Reminder reminder = reminderService.getReminderById(id);
+                return reminder != null ? reminderJson(reminder) : null;
+            case CATEGORY_CREATED: case CATEGORY_UPDATED: case CATEGORY_DELETED:
+                Category category = categoryService.getCategoryById(id);
+                return category != null ? categoryJson(category) : null;
+            case PRIORITY_CREATED: case PRIORITY_UPDATED: case PRIORITY_DELETED:
+                PriorityLevel priority = priorityService.getPriorityLevelById(id);
+                return priority != null ? priorityJson(priority) : null;
+            default:
+                return null;
+        }
+    }
+
+    private Map<String, Object> taskJson(Task task, boolean details) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("id", task.getId());
+        json.put("title", task.getTitle());
+        if (details) {
+            // Descriptions may be stored out of line, so lists leave them out.
+            json.put("description", task.getDescription());
+        }
+        json.put("categoryId", task.getCategory() != null ? task.getCategory().getId() : null);
+        json.put("category", task.getCategory() != null ? task.getCategory().getName() : null);
+        json.put("priorityId", task.getPriority() != null ? task.getPriority().getId() : null);
+        json.put("priority", task.getPriority() != null ? task.getPriority().getName() : null);
+        json.put("deadline", task.getDeadline());
+        json.put("status", task.getStatus());
+        json.put("completedAt", task.getCompletedAt());
+        json.put("version", task.getVersion());
+        if (details) {
+            json.put("reminders", reminderService.getRemindersForTask(task.getId()).stream()
+                    .map(ApiRoutes::reminderJson)
+                    .collect(Collectors.toList()));
+        }
+        return json;
+    }
+
+    private static Map<String, Object> categoryJson(Category category) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("id", category.getId());
+        json.put("name", category.getName());
+        json.put("version", category.getVersion());
+        return json;
+    }
+
+    private static Map<String, Object> priorityJson(PriorityLevel priority) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("id", priority.getId());
+        json.put("name", priority.getName());
+        json.put("default", priority.isDefault());
+        json.put("weight", priority.getWeight());
+        json.put("version", priority.getVersion());
+        return json;
+    }
+
+    private static Map<String, Object> reminderJson(Reminder reminder) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("id", reminder.getId());
+        json.put("taskId", reminder.getTaskId());
+        json.put("type", reminder.getType());
+        json.put("date", reminder.getReminderDate());
+        json.put("firedAt", reminder.getFiredAt());
+        json.put("acknowledged", reminder.isAcknowledged());
+        json.put("version", reminder.getVersion());
+        return json;
+    }
+
+    private static Map<String, Object> pageJson(int total, int offset, int limit,
+                                                Stream<Map<String, Object>> items) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("total", total);
+        json.put("offset", offset);
+        json.put("limit", limit);
+        json.put("items", items.collect(Collectors.toList()));
+        return json;
+    }
+
+    // ---- Request bodies ----
+
+    private static JsonNode requireObject(JsonNode body) {
+        if (body == null || !body.isObject()) {
+            throw ApiException.badRequest("Expected a JSON object");
+        }
+        return body;
+    }
+
+    private static Iterable<JsonNode> array(JsonNode body, String name) {
+        JsonNode value = body.get(name);
+        if (value == null || value.isNull()) {
+            return List.of();
+        }
+        if (!value.isArray()) {
+            throw ApiException.badRequest(name + " must be an array");
+        }
+        return value;
+    }
+
+    private static String requiredName(JsonNode body) {
+        String name = text(requireObject(body).get("name"), "name");
+        if (name == null || name.trim().isEmpty()) {
+            throw ApiException.badRequest("name is required");
+        }
+        return name.trim();
+    }
+
+    // The version an update was made against, or null for an unconditional update.
+    private static Long expectedVersion(JsonNode body) {
+        JsonNode value = requireObject(body).get("version");
+        if (value == null || value.isNull()) {
+            return null;
+        }
+        if (!value.isIntegralNumber() || !value.canConvertToLong() || value.longValue() < 0) {
+            throw ApiException.badRequest("version must be a non-negative integer");
+        }
+        return value.longValue();
+    }
+
+    private static <T> T required(T value, String name) {
+        if (value == null) {
+            throw ApiException.badRequest(name + " is required");
+        }
+        return value;
+    }
+
+    private static String text(JsonNode value, String name) {
+        if (value == null || value.isNull()) {
+            return null;
+        }
+        if (!value.isTextual()) {
+            throw ApiException.badRequest(name + " must be a string");
+        }
+        return value.textValue();
+    }
+
+    private static LocalDate date(JsonNode value, String name) {
+        String text = text(value, name);
+        try {
+            return text != null ? LocalDate.parse(text) : null;
+        } catch (DateTimeParseException e) {
+            throw ApiException.badRequest(name + " must be a date (YYYY-MM-DD)");
+        }
+    }
+
+    private static <E extends Enum<E>> E enumValue(Class<E> type, JsonNode value, String name) {
+        String text = text(value, name);
+        try {
+            return text != null ? Enum.valueOf(type, text.toUpperCase(Locale.ROOT)) : null;
+        } catch (IllegalArgumentException e) {
+            throw ApiException.badRequest("Unknown " + name + ": " + text);
+        }
+    }
+
+    private static ApiException methodNotAllowed(ApiRequest request) {
+        return new ApiException(405, request.getMethod() + " is not supported on /api/"
+                + String.join("/", request.getPath()));
+    }
+}
@@ -0,0 +1,404 @@
+package com.medialab.tasksystem.api;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.MissingNode;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.medialab.tasksystem.exceptions.VersionConflictException;
+import com.medialab.tasksystem.service.DataPersistenceService;
+import com.medialab.tasksystem.service.LogReminderNotifier;
+import com.medialab.tasksystem.service.ReminderDispatcher;
+import com.medialab.tasksystem.service.Replicator;
+import com.medialab.tasksystem.service.ServiceManager;
+import com.medialab.tasksystem.service.SharedStoreWatcher;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32C;
+
+/**
+ * Serves a workspace as a local JSON API under {@code /api/}, without the JavaFX UI.
+ * <p>
+ * Requests are handled on a pluggable executor (virtual threads where the runtime has
+ * them, see {@link #defaultRequestExecutor()}). The services are not thread-safe, so
+ * each request hands its service calls to the single owner executor, the way the UI
+ * runs them on the FX thread; parsing, serialization and I/O stay on the request
+ * threads. GET responses carry an ETag and are answered with 304 Not Modified when
+ * the client already has them. {@code GET /api/events} streams changes as they happen
+ * (see {@link ChangeFeed}).
+ * </p>
+ * Run headless with:
+ * <pre>
+ * java -cp target/TaskManager-1.0-SNAPSHOT.jar com.medialab.tasksystem.api.ApiServer
+ *     [--workspace medialab] [--port 8080] [--bind 127.0.0.1]
+ * </pre>
+ */
+public class ApiServer {
+    private static final Logger LOGGER = Logger.getLogger(ApiServer.class.getName());
+    public static final int DEFAULT_PORT = 8080;
+    public static final String DEFAULT_BIND_ADDRESS = "127.0.0.1";
+    static final String CONTEXT = "/api/";
+    private static final int BACKLOG = 1024;
+    private static final int MAX_BODY_BYTES = 16 * 1024 * 1024;
+    // Request threads mostly wait for the owner thread, so the fallback pool need not match the CPU count.
+    private static final int PLATFORM_REQUEST_THREADS = 32;
+    private static final String JSON_TYPE = "application/json; charset=utf-8";
+    private static final List<String> ENTITY_TYPES = List.of("task", "reminder", "category", "priority");
+    // Service field names that the request bodies call differently.
+    private static final Map<String, String> CONFLICT_FIELD_NAMES = Map.of(
+            "category", "categoryId", "priority", "priorityId", "reminderDate", "date");
+
+    private final HttpServer server;
+    private final Executor ownerExecutor;
+    private final ApiRoutes routes;
+    private final ObjectMapper objectMapper;
+    private final ChangeFeed feed;
+
+    /**
+     * @param services        The workspace to serve; only used on {@code ownerExecutor}
+     * @param ownerExecutor   The executor that owns the services (a single thread)
+     * @param address         The address to listen on
+     * @param requestExecutor Runs the request handlers
+     */
+    public ApiServer(ServiceManager services, Executor ownerExecutor, InetSocketAddress address,
+                     Executor requestExecutor) throws IOException {
+        // Small responses on kept-alive connections would otherwise wait on delayed ACKs.
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        this.ownerExecutor = ownerExecutor;
+        this.routes = new ApiRoutes(services);
+        this.objectMapper = new ObjectMapper();
+        objectMapper.registerModule(new JavaTimeModule());
+        objectMapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        this.feed = new ChangeFeed(services.getPersistenceService().getAuditLog(), ownerExecutor, routes,
+                objectMapper, newStreamExecutor());
+        this.server = HttpServer.create(address, BACKLOG);
+        server.createContext(CONTEXT, this::handle);
+        server.setExecutor(requestExecutor);
+    }
+
+    /**
+     * One virtual thread per request on runtimes that have them (Java 21+), otherwise
+     * a fixed pool of daemon threads.
+     */
+    public static Executor defaultRequestExecutor() {
+        Executor virtualThreads = virtualThreadExecutor();
+        if (virtualThreads != null) {
+            return virtualThreads;
+        }
+        return Executors.newFixedThreadPool(PLATFORM_REQUEST_THREADS, daemonThreads("api-request-"));
+    }
+
+    // Event streams each keep a thread for as long as they are open, so they get their own.
+    private static Executor newStreamExecutor() {
+        Executor virtualThreads = virtualThreadExecutor();
+        return virtualThreads != null ? virtualThreads : Executors.newCachedThreadPool(daemonThreads("api-events-"));
+    }
+
+    // Executors.newVirtualThreadPerTaskExecutor(), looked up at runtime since it needs Java 21; null before that.
+    private static Executor virtualThreadExecutor() {
+        try {
+            return (Executor) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            return null;
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    public void start() {
+        feed.start();
+        server.start();
+    }
+
+    /**
+     * Stops accepting requests and waits up to the given time for running ones to finish.
+     */
+    public void stop(int delaySeconds) {
+        feed.stop();
+        server.stop(delaySeconds);
+    }
+
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        boolean streaming = false;
+        try {
+            ApiRequest request = parse(exchange);
+            if (request.getPath().equals(List.of(ChangeFeed.PATH))) {
+                openEventStream(exchange, request);
+                streaming = true;
+                return;
+            }
+            ApiResponse response = onOwner(() -> routes.handle(request));
+            byte[] body = response.getBody() != null ? objectMapper.writeValueAsBytes(response.getBody()) : null;
+            Headers headers = exchange.getResponseHeaders();
+            if (request.is("GET") && response.getStatus() == 200) {
+                String etag = etag(body);
+                headers.set("ETag", etag);
+                headers.set("Cache-Control", "no-cache");
+                if (matches(exchange.getRequestHeaders().getFirst("If-None-Match"), etag)) {
+                    exchange.sendResponseHeaders(304, -1);
+                    return;
+                }
+            }
+            if (response.getLocation() != null) {
+                headers.set("Location", response.getLocation());
+            }
+            send(exchange, response.getStatus(), body);
+        } catch (ApiException e) {
+            sendError(exchange, e.getStatus(), e.getMessage());
+        } catch (VersionConflictException e) {
+            sendConflict(exchange, e);
+        } catch (JsonProcessingException e) {
+            sendError(exchange, 400, "Malformed JSON: " + e.getOriginalMessage());
+        } catch (IllegalArgumentException e) {
+            // The services reject invalid values this way (e.g. a reminder date after the deadline).
+            sendError(exchange, 400, e.getMessage());
+        } catch (IllegalStateException e) {
+            sendError(exchange, 409, e.getMessage());
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.SEVERE, "Failed to handle " + exchange.getRequestMethod() + " "
+                    + exchange.getRequestURI(), e);
+            sendError(exchange, 500, "Internal error");
+        } finally {
+            if (!streaming) {
+                exchange.close();
+            }
+        }
+    }
+
+    private void openEventStream(HttpExchange exchange, ApiRequest request) {
+        if (!request.is("GET")) {
+            throw new ApiException(405, request.getMethod() + " is not supported on " + CONTEXT + ChangeFeed.PATH);
+        }
+        Set<String> types = new HashSet<>(ENTITY_TYPES);
+        if (request.param("types") != null) {
+            types.retainAll(Arrays.asList(request.param("types").toLowerCase(Locale.ROOT).split(",")));
+        }
+        // Browsers resend the last id as a header when they reconnect; other clients may pass it as a parameter.
+        String lastEventId = exchange.getRequestHeaders().getFirst("Last-Event-ID");
+        if (lastEventId == null) {
+            lastEventId = request.param("lastEventId");
+        }
+        try {
+            feed.open(exchange, types, lastEventId != null ? Long.valueOf(lastEventId.trim()) : null);
+        } catch (NumberFormatException e) {
+            throw ApiException.badRequest("Last-Event-ID must be a number");
+        }
+    }
+
+    private ApiRequest parse(HttpExchange exchange) throws IOException {
+        String rawPath = exchange.getRequestURI().getRawPath();
+        List<String> path = new ArrayList<>();
+        for (String segment : rawPath.substring(CONTEXT.length()).split("/")) {
+            if (!segment.isEmpty()) {
+                path.add(URLDecoder.decode(segment, StandardCharsets.UTF_8));
+            }
+        }
+        Map<String, String> params = new HashMap<>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query != null) {
+            for (String pair : query.split("&")) {
+                int equals = pair.indexOf('=');
+                String name = equals >= 0 ? pair.substring(0, equals) : pair;
+                String value = equals >= 0 ? pair.substring(equals + 1) : "";
+                params.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+            }
+        }
+        byte[] bytes = exchange.getRequestBody().readNBytes(MAX_BODY_BYTES + 1);
+        if (bytes.length > MAX_BODY_BYTES) {
+            throw new ApiException(413, "Request body is larger than " + MAX_BODY_BYTES + " bytes");
+        }
+        JsonNode body = bytes.length > 0 ? objectMapper.readTree(bytes) : MissingNode.getInstance();
+        return new ApiRequest(exchange.getRequestMethod(), Collections.unmodifiableList(path), params, body);
+    }
+
+    // Runs the work on the owner executor and waits for it, rethrowing what it throws.
+    private <T> T onOwner(Supplier<T> work) {
+        try {
+            return CompletableFuture.supplyAsync(work, ownerExecutor).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    // A strong validator for the response bytes; cheap next to serializing them.
+    private static String etag(byte[] body) {
+        CRC32C crc = new CRC32C();
+        crc.update(body);
+        return String.format("\"%08x-%x\"", crc.getValue(), body.length);
+    }
+
+    private static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+        if (body == null) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        exchange.getResponseHeaders().set("Content-Type", JSON_TYPE);
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        send(exchange, status, objectMapper.writeValueAsBytes(Map.of("error", message != null ? message : "")));
+    }
+
+    // Tells the client what changed under it, with fields named as in the request bodies.
+    private void sendConflict(HttpExchange exchange, VersionConflictException e) throws IOException {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("error", e.getMessage());
+        json.put("id", e.getEntityId());
+        json.put("expectedVersion", e.getExpectedVersion());
+        json.put("currentVersion", e.getCurrentVersion());
+        json.put("conflictingFields", e.getConflictingFields().stream()
+                .map(field -> CONFLICT_FIELD_NAMES.getOrDefault(field, field))
+                .collect(Collectors.toList()));
+        send(exchange, 409, objectMapper.writeValueAsBytes(json));
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length % 2 != 0) {
+            usage();
+        }
+        File workspace = new File(DataPersistenceService.DEFAULT_BASE_DIR);
+        int port = DEFAULT_PORT;
+        String bindAddress = DEFAULT_BIND_ADDRESS;
+        for (int i = 0; i < args.length; i += 2) {
+            switch (args[i]) {
+                case "--workspace": workspace = new File(args[i + 1]); break;
+                case "--port":
+                    try {
+                        port = Integer.parseInt(args[i + 1]);
+                    } catch (NumberFormatException e) {
+                        usage();
+                    }
+                    break;
+                case "--bind": bindAddress = args[i + 1]; break;
+                default: usage();
+            }
+        }
+
+        // The services live on one thread, as they do on the FX thread in the UI.
+        ExecutorService owner = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "api-owner");
+            thread.setDaemon(true);
+            return thread;
+        });
+        File workspaceDir = workspace;
+        ServiceManager services = owner.submit(() -> new ServiceManager(workspaceDir)).get();
+        ReminderDispatcher dispatcher = owner.submit(() -> {
+            ReminderDispatcher reminders = new ReminderDispatcher(services.getReminderService(),
+                    services.getTaskService(), owner);
+            reminders.addNotifier(new LogReminderNotifier());
+            reminders.start();
+            return reminders;
+        }).get();
+        SharedStoreWatcher watcher = SharedStoreWatcher.isShared(services)
+                ? new SharedStoreWatcher(services, owner) : null;
+        if (watcher != null) {
+            watcher.start();
+        }
+        Replicator replicator = owner.submit(() -> {
+            Replicator replication = Replicator.forWorkspace(services, owner);
+            if (replication != null) {
+                replication.start();
+            }
+            return replication;
+        }).get();
+
+        ApiServer server = new ApiServer(services, owner, new InetSocketAddress(bindAddress, port),
+                defaultRequestExecutor());
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop(1);
+            dispatcher.stop();
+            if (watcher != null) {
+                watcher.stop();
+            }
+            try {
+                owner.submit(() -> {
+                    if (replicator != null) {
+                        replicator.stop();
+                    }
+                    services.flush();
+                    services.close();
+                }).get();
+            } catch (InterruptedException | ExecutionException e) {
+                LOGGER.log(Level.SEVERE, "Failed to save " + workspaceDir + " on shutdown", e);
+            }
+        }, "api-shutdown"));
+        server.start();
+        LOGGER.info("Serving " + workspaceDir.getAbsolutePath() + " on http://"
+                + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + CONTEXT);
+    }
+
+    private static void usage() {
+        System.err.println("Usage: ApiServer [--workspace DIR] [--port N] [--bind ADDRESS]");
+        System.exit(2);
+    }
+}
@@ -0,0 +1,272 @@
+package com.medialab.tasksystem.api;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.medialab.tasksystem.audit.AuditAction;
+import com.medialab.tasksystem.audit.AuditLog;
+import com.medialab.tasksystem.audit.AuditLogReader;
+import com.medialab.tasksystem.audit.AuditRecord;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Streams the changes recorded in the audit log to clients of {@code GET /api/events}
+ * as server-sent events.
+ * <p>
+ * Each event's id is its audit sequence number. A client that reconnects with a
+ * {@code Last-Event-ID} first gets the events it missed, read back from the audit
+ * files, and then the live ones. Events carry the entity's current state, rendered
+ * once on the owner thread and serialized once for all clients. Each client has a
+ * bounded queue of frames; a client that lets it fill up is dropped, so a slow
+ * consumer never holds up the audit writer, the owner thread or the other clients.
+ * </p>
+ */
+class ChangeFeed {
+    private static final Logger LOGGER = Logger.getLogger(ChangeFeed.class.getName());
+    static final String PATH = "events";
+    static final int CLIENT_BUFFER_FRAMES = 1024;
+    static final int MAX_CLIENTS = 256;
+    // A client that missed more than this is told to reload instead of replaying.
+    static final int MAX_REPLAY_EVENTS = 10_000;
+    private static final int RENDER_CHUNK = 1000;
+    private static final long HEARTBEAT_MILLIS = TimeUnit.SECONDS.toMillis(15);
+    private static final long RETRY_MILLIS = 2000;
+    private static final byte[] HEARTBEAT = ":\n\n".getBytes(StandardCharsets.US_ASCII);
+    private static final Frame CLOSE = new Frame(-1, null, null);
+
+    private final AuditLog auditLog;
+    private final File auditDir;
+    private final Executor ownerExecutor;
+    private final ApiRoutes routes;
+    private final ObjectMapper objectMapper;
+    private final Executor streamExecutor;
+    private final ExecutorService fanOut;
+    private final Set<Client> clients = ConcurrentHashMap.newKeySet();
+    private final AuditLog.Listener listener = this::recordsWritten;
+
+    ChangeFeed(AuditLog auditLog, Executor ownerExecutor, ApiRoutes routes, ObjectMapper objectMapper,
+               Executor streamExecutor) {
+        this.auditLog = auditLog;
+        this.auditDir = auditLog.getDirectory();
+        this.ownerExecutor = ownerExecutor;
+        this.routes = routes;
+        this.objectMapper = objectMapper;
+        this.streamExecutor = streamExecutor;
+        this.fanOut = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "api-events-fan-out");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    void start() {
+        auditLog.addListener(listener);
+    }
+
+    void stop() {
+        auditLog.removeListener(listener);
+        clients.forEach(Client::drop);
+        fanOut.shutdown();
+    }
+
+    /**
+     * Takes over the exchange and streams events to it on a thread of its own, so that
+     * a long-lived stream does not hold a request thread.
+     *
+     * @param types       The entity types to send (task, reminder, category, priority)
+     * @param lastEventId The last event the client has, or null to start with new events
+     */
+    void open(HttpExchange exchange, Set<String> types, Long lastEventId) {
+        if (clients.size() >= MAX_CLIENTS) {
+            throw new ApiException(503, "Too many event streams");
+        }
+        Client client = new Client(exchange, types);
+        // Registered before the missed events are read, so nothing falls between the two.
+        clients.add(client);
+        streamExecutor.execute(() -> stream(client, lastEventId));
+    }
+
+    // On the audit writer: hand the records on without waiting for anything.
+    private void recordsWritten(List<AuditRecord> records) {
+        if (clients.isEmpty()) {
+            return; // A client registering now reads these records from the files.
+        }
+        ownerExecutor.execute(() -> {
+            List<Map<String, Object>> events = render(records);
+            fanOut.execute(() -> publish(events));
+        });
+    }
+
+    // On the owner thread: the event bodies, with each entity's current state.
+    private List<Map<String, Object>> render(List<AuditRecord> records) {
+        List<Map<String, Object>> events = new ArrayList<>(records.size());
+        for (AuditRecord record : records) {
+            if (entityType(record.getAction()) == null) {
+                continue;
+            }
+            Map<String, Object> event = new LinkedHashMap<>();
+            event.put("sequence", record.getSequence());
+            event.put("action", record.getAction());
+            event.put("id", record.getEntityId());
+            event.put("timestamp", record.getTimestamp());
+            event.put("changedFields", record.getChangedFields());
+            event.put("entity", routes.entityJson(record.getAction(), record.getEntityId()));
+            events.add(event);
+        }
+        return events;
+    }
+
+    private void publish(List<Map<String, Object>> events) {
+        for (Map<String, Object> event : events) {
+            Frame frame = frame(event);
+            for (Client client : clients) {
+                client.offer(frame);
+            }
+        }
+    }
+
+    private Frame frame(Map<String, Object> event) {
+        AuditAction action = (AuditAction) event.get("action");
+        long sequence = (Long) event.get("sequence");
+        try {
+            String text = "id: " + sequence + "\nevent: " + action + "\ndata: "
+                    + objectMapper.writeValueAsString(event) + "\n\n";
+            return new Frame(sequence, entityType(action), text.getBytes(StandardCharsets.UTF_8));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot serialize event " + sequence, e);
+        }
+    }
+
+    private void stream(Client client, Long lastEventId) {
+        HttpExchange exchange = client.exchange;
+        try {
+            exchange.getResponseHeaders().set("Content-Type", "text/event-stream; charset=utf-8");
+            exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+            exchange.sendResponseHeaders(200, 0);
+            OutputStream out = exchange.getResponseBody();
+            out.write(("retry: " + RETRY_MILLIS + "\n\n").getBytes(StandardCharsets.US_ASCII));
+            long last = lastEventId != null ? replay(client, out, lastEventId) : -1;
+            out.flush();
+            while (true) {
+                Frame frame = client.queue.poll(HEARTBEAT_MILLIS, TimeUnit.MILLISECONDS);
+                if (frame == CLOSE) {
+                    break;
+                }
+                if (frame == null) {
+                    out.write(HEARTBEAT);
+                    out.flush();
+                } else if (frame.sequence > last) {
+                    out.write(frame.bytes);
+                    last = frame.sequence;
+                    // Flush once the queue is drained, so a burst goes out in few packets.
+                    if (client.queue.isEmpty()) {
+                        out.flush();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.fine("Event stream closed: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Event stream failed", e);
+        } finally {
+            clients.remove(client);
+            exchange.close();
+        }
+    }
+
+    // Writes the events after lastEventId from the audit files; returns the last sequence covered.
+    private long replay(Client client, OutputStream out, long lastEventId) throws IOException {
+        List<AuditRecord> missed = AuditLogReader.readAfter(auditDir, lastEventId, MAX_REPLAY_EVENTS + 1);
+        if (missed.size() > MAX_REPLAY_EVENTS) {
+            // Too far behind: the client reloads everything and continues from the newest event on disk.
+            long resumeAt = AuditLogReader.latestSequence(auditDir);
+            out.write(("id: " + resumeAt + "\nevent: reset\ndata: {}\n\n").getBytes(StandardCharsets.US_ASCII));
+            return resumeAt;
+        }
+        long last = lastEventId;
+        for (int from = 0; from < missed.size(); from += RENDER_CHUNK) {
+            List<AuditRecord> chunk = missed.subList(from, Math.min(from + RENDER_CHUNK, missed.size()));
+            List<Map<String, Object>> events = CompletableFuture.supplyAsync(() -> render(chunk), ownerExecutor).join();
+            for (Map<String, Object> event : events) {
+                Frame frame = frame(event);
+                if (client.types.contains(frame.type)) {
+                    out.write(frame.bytes);
+                }
+            }
+            last = chunk.get(chunk.size() - 1).getSequence();
+        }
+        return last;
+    }
+
+    /**
+     * The kind of entity an action changes (task, reminder, category or priority), or null
+     * for actions that are not entity changes.
+     */
+    static String entityType(AuditAction action) {
+        if (action == null || action == AuditAction.UNDO || action == AuditAction.REDO) {
+            return null;
+        }
+        String name = action.name();
+        return name.substring(0, name.indexOf('_')).toLowerCase(Locale.ROOT);
+    }
+
+    private static final class Frame {
+        final long sequence;
+        final String type;
+        final byte[] bytes;
+
+        Frame(long sequence, String type, byte[] bytes) {
+            this.sequence = sequence;
+            this.type = type;
+            this.bytes = bytes;
+        }
+    }
+
+    private static final class Client {
+        final HttpExchange exchange;
+        final Set<String> types;
+        final BlockingQueue<Frame> queue = new ArrayBlockingQueue<>(CLIENT_BUFFER_FRAMES);
+        volatile boolean dropped;
+
+        Client(HttpExchange exchange, Set<String> types) {
+            this.exchange = exchange;
+            this.types = types;
+        }
+
+        // On the fan-out thread.
+        void offer(Frame frame) {
+            if (!dropped && types.contains(frame.type) && !queue.offer(frame)) {
+                LOGGER.info("Dropping an event stream that fell " + CLIENT_BUFFER_FRAMES + " events behind");
+                drop();
+            }
+        }
+
+        void drop() {
+            dropped = true;
+            queue.clear();
+            queue.offer(CLOSE);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.medialab.tasksystem.audit;
+
+/**
+ * The kinds of change recorded in the audit log. The ordinal is stored in each record,
+ * so new actions are only ever appended.
+ */
+public enum AuditAction {
+    TASK_CREATED,
+    TASK_UPDATED,
+    TASK_DELETED,
+    TASK_ARCHIVED,
+    TASK_RESTORED,
+    REMINDER_CREATED,
+    REMINDER_UPDATED,
+    REMINDER_DELETED,
+    CATEGORY_CREATED,
+    CATEGORY_UPDATED,
+    CATEGORY_DELETED,
+    PRIORITY_CREATED,
+    PRIORITY_UPDATED,
+    PRIORITY_DELETED,
+    // Marks the start of an undo or redo; the entity changes it makes follow as their own records.
+    UNDO,
+    REDO;
+
+    private static final AuditAction[] VALUES = values();
+
+    static AuditAction fromOrdinal(int ordinal) {
+        return ordinal >= 0 && ordinal < VALUES.length ? VALUES[ordinal] : null;
+    }
+}
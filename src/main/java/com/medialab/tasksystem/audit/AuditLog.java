@@ -0,0 +1,342 @@
+package com.medialab.tasksystem.audit;
+
+import com.medialab.tasksystem.exceptions.DataStorageException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Append-only audit trail of the changes made through the services.
+ * <p>
+ * {@link #record} runs on the thread making the change and only copies the event into
+ * a preallocated ring of slots: a slot is claimed with one atomic increment and
+ * published by storing its sequence number, so recording neither locks nor allocates.
+ * A daemon thread drains published slots in order, in batches, into fixed-size binary
+ * records in {@code audit-<first sequence>.log} files, starting a new file once the
+ * current one reaches {@link #MAX_FILE_BYTES}. If the writer falls a full ring behind,
+ * recording waits for it rather than dropping events.
+ * </p>
+ * Records are read back with {@link AuditLogReader}, or received as they are written
+ * through a {@link Listener}.
+ */
+public class AuditLog {
+    /**
+     * Told about records once they are in the log file, on the writer thread, in
+     * sequence order. Must return quickly: the writer waits for it.
+     */
+    public interface Listener {
+        void recordsWritten(List<AuditRecord> records);
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(AuditLog.class.getName());
+    public static final String AUDIT_DIR = "audit";
+    static final String FILE_PREFIX = "audit-";
+    static final String FILE_SUFFIX = ".log";
+    static final long MAX_FILE_BYTES = 16L * 1024 * 1024;
+
+    // File header: magic, format version, record size, sequence of the first record.
+    static final int MAGIC = 0x41554454; // "AUDT"
+    static final short FORMAT_VERSION = 1;
+    static final int HEADER_SIZE = 16;
+
+    // Record layout; ids longer than MAX_ID_LENGTH characters are truncated.
+    static final int RECORD_SIZE = 64;
+    static final int R_SEQUENCE = 0;
+    static final int R_TIMESTAMP = 8;
+    static final int R_ACTION = 16;
+    static final int R_ID_LENGTH = 17;
+    static final int R_FIELDS = 20;
+    static final int R_ID = 24;
+    static final int MAX_ID_LENGTH = RECORD_SIZE - R_ID;
+
+    /**
+     * Field names that can be flagged as changed in an update record, by bit position.
+     * New names are only ever appended.
+     */
+    static final List<String> FIELDS = List.of("title", "description", "category", "priority", "deadline",
+            "status", "completedAt", "name", "default", "weight", "type", "reminderDate", "firedAt", "acknowledged");
+
+    private static final int CAPACITY = 1 << 14;
+    private static final int MASK = CAPACITY - 1;
+    // The writer polls this often when idle; producers never wake it unless the ring is filling up.
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    // How long a producer waits between checks while the ring is full.
+    private static final long FULL_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private final File dir;
+    // Slot storage, indexed by sequence & MASK.
+    private final long[] timestamps = new long[CAPACITY];
+    private final byte[] actions = new byte[CAPACITY];
+    private final int[] fieldMasks = new int[CAPACITY];
+    private final byte[] idLengths = new byte[CAPACITY];
+    private final byte[] ids = new byte[CAPACITY * MAX_ID_LENGTH];
+    // The sequence last written into each slot; a slot is readable once it holds the expected sequence.
+    private final AtomicLongArray published = new AtomicLongArray(CAPACITY);
+    private final AtomicLong claimed = new AtomicLong();
+    // Written by the writer thread only: the next sequence to drain, and the next one not yet on disk.
+    private final AtomicLong drained = new AtomicLong();
+    private volatile long written;
+    private volatile boolean closed;
+    private final Thread writer;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    // Writer thread state.
+    private final ByteBuffer batch = ByteBuffer.allocate(1024 * RECORD_SIZE);
+    private FileChannel channel;
+    private long fileSize;
+
+    public AuditLog(File dir) {
+        this.dir = dir;
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new DataStorageException("Failed to create " + dir);
+        }
+        long next = AuditLogReader.nextSequence(dir);
+        claimed.set(next);
+        drained.set(next);
+        written = next;
+        for (int i = 0; i < CAPACITY; i++) {
+            published.set(i, -1);
+        }
+        writer = new Thread(this::drainLoop, "audit-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Records that an entity was changed. Safe to call from any thread; does not block
+     * unless the writer is a whole ring of events behind.
+     *
+     * @param action   What happened
+     * @param entityId The id of the changed entity, or null for events without one
+     * @param fields   The changed fields (see {@link #fieldMask}), or 0
+     */
+    public void record(AuditAction action, String entityId, int fields) {
+        if (closed) {
+            return;
+        }
+        long sequence = claimed.getAndIncrement();
+        while (sequence - drained.get() >= CAPACITY) {
+            if (closed || !writer.isAlive()) {
+                return; // The writer stopped and will never free the slot; the event is dropped.
+            }
+            // Full: the writer is behind. Wake it and wait for it to free this slot.
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(FULL_PARK_NANOS);
+        }
+        int slot = (int) (sequence & MASK);
+        timestamps[slot] = System.currentTimeMillis();
+        actions[slot] = (byte) action.ordinal();
+        fieldMasks[slot] = fields;
+        int length = entityId == null ? 0 : Math.min(entityId.length(), MAX_ID_LENGTH);
+        int base = slot * MAX_ID_LENGTH;
+        for (int i = 0; i < length; i++) {
+            char c = entityId.charAt(i);
+            ids[base + i] = c < 0x80 ? (byte) c : (byte) '?';
+        }
+        idLengths[slot] = (byte) length;
+        // Release store: the slot's fields are visible to the writer before its sequence is.
+        published.lazySet(slot, sequence);
+        if (sequence - drained.get() > CAPACITY / 2) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    public void record(AuditAction action, String entityId) {
+        record(action, entityId, 0);
+    }
+
+    /**
+     * The bit set marking the given fields, for {@link #record(AuditAction, String, int)}.
+     */
+    public static int fieldMask(Collection<String> changedFields) {
+        int mask = 0;
+        for (int i = 0; i < FIELDS.size(); i++) {
+            if (changedFields.contains(FIELDS.get(i))) {
+                mask |= 1 << i;
+            }
+        }
+        return mask;
+    }
+
+    public File getDirectory() {
+        return dir;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Waits until everything recorded so far is written to the log file.
+     */
+    public void flush() {
+        long target = claimed.get();
+        while (written < target && writer.isAlive()) {
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+    }
+
+    /**
+     * Writes what is left and stops the writer. Later events are ignored.
+     */
+    public void close() {
+        if (closed) {
+            return;
+        }
+        flush();
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void drainLoop() {
+        try {
+            while (true) {
+                boolean stop = closed;
+                if (drainBatch() == 0) {
+                    if (stop) {
+                        break;
+                    }
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.SEVERE, "Audit log writer in " + dir + " stopped; further events are not recorded", e);
+            closed = true;
+        } finally {
+            closeChannel();
+        }
+    }
+
+    // Copies consecutive published slots into the batch buffer and writes them; returns the number written.
+    private int drainBatch() throws IOException {
+        long next = drained.get();
+        int count = 0;
+        batch.clear();
+        while (batch.remaining() >= RECORD_SIZE) {
+            int slot = (int) (next & MASK);
+            if (published.get(slot) != next) {
+                break; // Not published yet (or claimed but still being filled in).
+            }
+            batch.putLong(next)
+                    .putLong(timestamps[slot])
+                    .put(actions[slot])
+                    .put(idLengths[slot])
+                    .putShort((short) 0)
+                    .putInt(fieldMasks[slot])
+                    .put(ids, slot * MAX_ID_LENGTH, idLengths[slot]);
+            // Zero the unused part of the id so records are fully defined.
+            for (int i = idLengths[slot]; i < MAX_ID_LENGTH; i++) {
+                batch.put((byte) 0);
+            }
+            next++;
+            count++;
+        }
+        if (count == 0) {
+            return 0;
+        }
+        // The slots are copied; producers may reuse them while the batch is written.
+        long first = drained.get();
+        drained.set(next);
+        batch.flip();
+        write(first, count);
+        written = next;
+        if (!listeners.isEmpty()) {
+            notifyListeners(count);
+        }
+        return count;
+    }
+
+    private void notifyListeners(int count) {
+        List<AuditRecord> records = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            records.add(AuditLogReader.recordAt(batch, i * RECORD_SIZE));
+        }
+        for (Listener listener : listeners) {
+            try {
+                listener.recordsWritten(records);
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Audit log listener failed", e);
+            }
+        }
+    }
+
+    private void write(long firstSequence, int count) throws IOException {
+        int offset = 0;
+        while (offset < count) {
+            if (channel == null || fileSize >= MAX_FILE_BYTES) {
+                rotate(firstSequence + offset);
+            }
+            int fit = (int) Math.min(count - offset, (MAX_FILE_BYTES - fileSize + RECORD_SIZE - 1) / RECORD_SIZE);
+            batch.limit((offset + fit) * RECORD_SIZE).position(offset * RECORD_SIZE);
+            while (batch.hasRemaining()) {
+                channel.write(batch);
+            }
+            fileSize += (long) fit * RECORD_SIZE;
+            offset += fit;
+        }
+    }
+
+    // Continues the newest file if it has room, otherwise starts a file whose name is its first sequence.
+    private void rotate(long firstSequence) throws IOException {
+        if (channel != null) {
+            channel.force(false);
+            closeChannel();
+        }
+        File latest = AuditLogReader.latestFile(dir);
+        long latestLength = latest != null ? AuditLogReader.validLength(latest) : 0;
+        if (latest != null && latestLength >= HEADER_SIZE && latestLength < MAX_FILE_BYTES) {
+            channel = FileChannel.open(latest.toPath(), StandardOpenOption.WRITE);
+            // Drop a torn record left by a crash.
+            fileSize = latestLength;
+            channel.truncate(fileSize);
+            channel.position(fileSize);
+            return;
+        }
+        if (latest != null && latestLength < HEADER_SIZE && !latest.delete()) {
+            throw new IOException("Cannot replace torn audit log " + latest);
+        }
+        File file = new File(dir, AuditLogReader.fileName(firstSequence));
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putShort(FORMAT_VERSION).putShort((short) RECORD_SIZE).putLong(firstSequence).flip();
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+        fileSize = HEADER_SIZE;
+    }
+
+    private void closeChannel() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to close audit log in " + dir, e);
+        }
+        channel = null;
+    }
+}
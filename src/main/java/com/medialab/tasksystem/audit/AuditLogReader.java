@@ -0,0 +1,250 @@
+package com.medialab.tasksystem.audit;
+
+import com.medialab.tasksystem.exceptions.DataStorageException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Queries the files written by {@link AuditLog}. Files are memory-mapped and scanned
+ * from the newest record backwards, so asking for recent events only touches the end
+ * of the log. Can be run on its own to print matching records:
+ * <pre>
+ * java -cp target/TaskManager-1.0-SNAPSHOT.jar com.medialab.tasksystem.audit.AuditLogReader medialab/audit
+ *     [--from 2026-10-01[T08:00]] [--to ...] [--entity ID] [--action TASK_DELETED] [--limit 100]
+ * </pre>
+ */
+public final class AuditLogReader {
+    private static final int DEFAULT_LIMIT = 100;
+
+    private AuditLogReader() {
+    }
+
+    /**
+     * Returns the newest records matching all given criteria, oldest first. Null criteria match anything.
+     *
+     * @param dir        The audit directory
+     * @param fromMillis Earliest timestamp (epoch millis, inclusive), or Long.MIN_VALUE
+     * @param toMillis   Latest timestamp (epoch millis, inclusive), or Long.MAX_VALUE
+     * @param entityId   The entity to look for, or null
+     * @param action     The action to look for, or null
+     * @param limit      The maximum number of records to return
+     */
+    public static List<AuditRecord> query(File dir, long fromMillis, long toMillis, String entityId,
+                                          AuditAction action, int limit) {
+        byte[] wantedId = entityId != null ? entityId.getBytes(StandardCharsets.US_ASCII) : null;
+        List<AuditRecord> matches = new ArrayList<>();
+        List<File> files = files(dir);
+        for (int f = files.size() - 1; f >= 0 && matches.size() < limit; f--) {
+            if (validLength(files.get(f)) < AuditLog.HEADER_SIZE) {
+                continue; // Torn header of a file that was being created
+            }
+            MappedByteBuffer buffer = map(files.get(f));
+            int count = (buffer.limit() - AuditLog.HEADER_SIZE) / AuditLog.RECORD_SIZE;
+            if (count <= 0) {
+                continue;
+            }
+            if (timestampAt(buffer, count - 1) < fromMillis) {
+                break; // This file and all older ones end before the range.
+            }
+            for (int i = count - 1; i >= 0 && matches.size() < limit; i--) {
+                int at = AuditLog.HEADER_SIZE + i * AuditLog.RECORD_SIZE;
+                long timestamp = buffer.getLong(at + AuditLog.R_TIMESTAMP);
+                if (timestamp > toMillis || timestamp < fromMillis) {
+                    continue;
+                }
+                AuditAction recordAction = AuditAction.fromOrdinal(buffer.get(at + AuditLog.R_ACTION));
+                if (action != null && recordAction != action) {
+                    continue;
+                }
+                int idLength = buffer.get(at + AuditLog.R_ID_LENGTH);
+                if (wantedId != null && !idEquals(buffer, at + AuditLog.R_ID, idLength, wantedId)) {
+                    continue;
+                }
+                matches.add(recordAt(buffer, at));
+            }
+        }
+        Collections.reverse(matches);
+        return matches;
+    }
+
+    /**
+     * Returns up to {@code limit} records following the given sequence number, oldest first.
+     * Sequence numbers are consecutive, so this reads them by position.
+     *
+     * @param dir      The audit directory
+     * @param sequence The last sequence the caller has; -1 to read from the start
+     * @param limit    The maximum number of records to return
+     */
+    public static List<AuditRecord> readAfter(File dir, long sequence, int limit) {
+        List<File> files = files(dir);
+        // Start at the newest file that begins at or before the wanted record.
+        int start = 0;
+        for (int f = files.size() - 1; f > 0; f--) {
+            if (firstSequence(files.get(f)) <= sequence + 1) {
+                start = f;
+                break;
+            }
+        }
+        List<AuditRecord> records = new ArrayList<>();
+        for (int f = start; f < files.size() && records.size() < limit; f++) {
+            if (validLength(files.get(f)) < AuditLog.HEADER_SIZE) {
+                continue;
+            }
+            MappedByteBuffer buffer = map(files.get(f));
+            long first = buffer.getLong(8);
+            int count = (buffer.limit() - AuditLog.HEADER_SIZE) / AuditLog.RECORD_SIZE;
+            for (long i = Math.max(0, sequence + 1 - first); i < count && records.size() < limit; i++) {
+                records.add(recordAt(buffer, AuditLog.HEADER_SIZE + (int) i * AuditLog.RECORD_SIZE));
+            }
+        }
+        return records;
+    }
+
+    /**
+     * The sequence number of the newest record in the log, or -1 if it is empty.
+     */
+    public static long latestSequence(File dir) {
+        return nextSequence(dir) - 1;
+    }
+
+    // Decodes the record starting at the given offset.
+    static AuditRecord recordAt(ByteBuffer buffer, int at) {
+        byte[] id = new byte[buffer.get(at + AuditLog.R_ID_LENGTH)];
+        buffer.get(at + AuditLog.R_ID, id);
+        return new AuditRecord(buffer.getLong(at + AuditLog.R_SEQUENCE), buffer.getLong(at + AuditLog.R_TIMESTAMP),
+                AuditAction.fromOrdinal(buffer.get(at + AuditLog.R_ACTION)),
+                new String(id, StandardCharsets.US_ASCII), buffer.getInt(at + AuditLog.R_FIELDS));
+    }
+
+    public static void main(String[] args) {
+        if (args.length == 0 || args.length % 2 == 0) {
+            System.err.println("Usage: AuditLogReader <audit dir> [--from DATE[THH:MM]] [--to DATE[THH:MM]]"
+                    + " [--entity ID] [--action " + Arrays.toString(AuditAction.values()) + "] [--limit N]");
+            System.exit(2);
+        }
+        File dir = new File(args[0]);
+        long from = Long.MIN_VALUE;
+        long to = Long.MAX_VALUE;
+        String entityId = null;
+        AuditAction action = null;
+        int limit = DEFAULT_LIMIT;
+        for (int i = 1; i < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--from": from = parseTime(value, false); break;
+                case "--to": to = parseTime(value, true); break;
+                case "--entity": entityId = value; break;
+                case "--action": action = AuditAction.valueOf(value.toUpperCase()); break;
+                case "--limit": limit = Integer.parseInt(value); break;
+                default:
+                    System.err.println("Unknown option " + args[i]);
+                    System.exit(2);
+            }
+        }
+        query(dir, from, to, entityId, action, limit).forEach(System.out::println);
+    }
+
+    // A date alone means the start of that day for --from and its end for --to.
+    private static long parseTime(String value, boolean endOfDay) {
+        LocalDateTime time = value.contains("T") ? LocalDateTime.parse(value)
+                : endOfDay ? LocalDate.parse(value).plusDays(1).atStartOfDay().minusNanos(1)
+                : LocalDate.parse(value).atStartOfDay();
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    // The log files, oldest first; names hold the zero-padded first sequence, so they sort by age.
+    static List<File> files(File dir) {
+        File[] files = dir.listFiles((d, name) -> name.startsWith(AuditLog.FILE_PREFIX)
+                && name.endsWith(AuditLog.FILE_SUFFIX));
+        if (files == null) {
+            return List.of();
+        }
+        Arrays.sort(files);
+        return Arrays.asList(files);
+    }
+
+    static String fileName(long firstSequence) {
+        return String.format("%s%019d%s", AuditLog.FILE_PREFIX, firstSequence, AuditLog.FILE_SUFFIX);
+    }
+
+    // The sequence a file starts at, from its name.
+    private static long firstSequence(File file) {
+        String name = file.getName();
+        return Long.parseLong(name.substring(AuditLog.FILE_PREFIX.length(), name.length() - AuditLog.FILE_SUFFIX.length()));
+    }
+
+    static File latestFile(File dir) {
+        List<File> files = files(dir);
+        return files.isEmpty() ? null : files.get(files.size() - 1);
+    }
+
+    // The length of the header and the complete records; a torn last record is excluded.
+    static long validLength(File file) {
+        long length = file.length();
+        if (length < AuditLog.HEADER_SIZE) {
+            return 0;
+        }
+        return AuditLog.HEADER_SIZE + (length - AuditLog.HEADER_SIZE) / AuditLog.RECORD_SIZE * AuditLog.RECORD_SIZE;
+    }
+
+    // The sequence the next record should get: one past the last complete record of the newest file.
+    static long nextSequence(File dir) {
+        List<File> files = files(dir);
+        for (int f = files.size() - 1; f >= 0; f--) {
+            if (validLength(files.get(f)) < AuditLog.HEADER_SIZE) {
+                continue;
+            }
+            MappedByteBuffer buffer = map(files.get(f));
+            int count = (buffer.limit() - AuditLog.HEADER_SIZE) / AuditLog.RECORD_SIZE;
+            if (count == 0) {
+                return buffer.getLong(8);
+            }
+            return buffer.getLong(AuditLog.HEADER_SIZE + (count - 1) * AuditLog.RECORD_SIZE + AuditLog.R_SEQUENCE) + 1;
+        }
+        return 0;
+    }
+
+    private static MappedByteBuffer map(File file) {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, validLength(file));
+            if (buffer.limit() < AuditLog.HEADER_SIZE || buffer.getInt(0) != AuditLog.MAGIC) {
+                throw new DataStorageException(file + " is not an audit log");
+            }
+            if (buffer.getShort(4) != AuditLog.FORMAT_VERSION || buffer.getShort(6) != AuditLog.RECORD_SIZE) {
+                throw new DataStorageException(file + " has an unsupported audit log format");
+            }
+            return buffer;
+        } catch (IOException e) {
+            throw new DataStorageException("Failed to read " + file, e);
+        }
+    }
+
+    private static long timestampAt(MappedByteBuffer buffer, int index) {
+        return buffer.getLong(AuditLog.HEADER_SIZE + index * AuditLog.RECORD_SIZE + AuditLog.R_TIMESTAMP);
+    }
+
+    private static boolean idEquals(MappedByteBuffer buffer, int at, int length, byte[] wanted) {
+        if (length != Math.min(wanted.length, AuditLog.MAX_ID_LENGTH)) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (buffer.get(at + i) != wanted[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
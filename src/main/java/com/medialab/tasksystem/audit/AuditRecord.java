@@ -0,0 +1,71 @@
+package com.medialab.tasksystem.audit;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One event read back from the audit log.
+ */
+public class AuditRecord {
+    private final long sequence;
+    private final long timestamp;
+    private final AuditAction action;
+    private final String entityId;
+    private final int fieldMask;
+
+    AuditRecord(long sequence, long timestamp, AuditAction action, String entityId, int fieldMask) {
+        this.sequence = sequence;
+        this.timestamp = timestamp;
+        this.action = action;
+        this.entityId = entityId;
+        this.fieldMask = fieldMask;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public LocalDateTime getTimestamp() {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(timestamp), ZoneId.systemDefault());
+    }
+
+    public long getTimestampMillis() {
+        return timestamp;
+    }
+
+    // Null if the record was written by a newer version with actions this one does not know.
+    public AuditAction getAction() {
+        return action;
+    }
+
+    public String getEntityId() {
+        return entityId;
+    }
+
+    // The names of the fields an update changed; empty for other actions.
+    public List<String> getChangedFields() {
+        List<String> fields = new ArrayList<>();
+        for (int i = 0; i < AuditLog.FIELDS.size(); i++) {
+            if ((fieldMask & (1 << i)) != 0) {
+                fields.add(AuditLog.FIELDS.get(i));
+            }
+        }
+        return fields;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder line = new StringBuilder()
+                .append(sequence).append('\t')
+                .append(getTimestamp()).append('\t')
+                .append(action != null ? action : "UNKNOWN").append('\t')
+                .append(entityId.isEmpty() ? "-" : entityId);
+        if (fieldMask != 0) {
+            line.append('\t').append(String.join(",", getChangedFields()));
+        }
+        return line.toString();
+    }
+}
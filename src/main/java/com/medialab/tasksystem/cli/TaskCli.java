@@ -0,0 +1,408 @@
+package com.medialab.tasksystem.cli;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.medialab.tasksystem.importer.FieldMapping;
+import com.medialab.tasksystem.importer.ImportFormat;
+import com.medialab.tasksystem.importer.TaskImporter;
+import com.medialab.tasksystem.model.Task;
+import com.medialab.tasksystem.model.TaskStatus;
+import com.medialab.tasksystem.service.DataPersistenceService;
+import com.medialab.tasksystem.service.ServiceManager;
+import com.medialab.tasksystem.service.TaskService;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Command line entry point for scripting and bulk work on a workspace, without the UI.
+ * <p>
+ * Only the services are used, so JavaFX is never initialized, and read-only commands
+ * query the storage backend directly without loading the workspace into memory. Each
+ * write command runs as one transaction of the backend, so a bulk import or delete is
+ * committed (and, with JSON storage, written) once. Data goes to standard output, one
+ * line per task as it is read; progress and errors go to standard error.
+ * </p>
+ */
+public class TaskCli {
+    private static final int EXIT_OK = 0;
+    private static final int EXIT_FAILED = 1;
+    private static final int EXIT_USAGE = 2;
+    // How often a long import reports its progress.
+    private static final long PROGRESS_INTERVAL_NANOS = 1_000_000_000L;
+
+    private final File workspaceDir;
+    private final Writer out;
+    private final PrintStream err;
+
+    TaskCli(File workspaceDir, Writer out, PrintStream err) {
+        this.workspaceDir = workspaceDir;
+        this.out = out;
+        this.err = err;
+    }
+
+    public static void main(String[] args) throws IOException {
+        // Standard output carries only data; the services' progress messages go with the logs,
+        // and are dropped unless --verbose.
+        PrintStream stdout = new PrintStream(new FileOutputStream(FileDescriptor.out), false, StandardCharsets.UTF_8);
+        System.setOut(System.err);
+
+        File workspace = new File(DataPersistenceService.DEFAULT_BASE_DIR);
+        boolean verbose = false;
+        int i = 0;
+        for (; i < args.length && args[i].startsWith("--"); i++) {
+            switch (args[i]) {
+                case "--workspace":
+                    if (++i == args.length) {
+                        usage();
+                    }
+                    workspace = new File(args[i]);
+                    break;
+                case "--verbose": verbose = true; break;
+                default: usage();
+            }
+        }
+        if (i == args.length) {
+            usage();
+        }
+        if (!verbose) {
+            Logger.getLogger("").setLevel(Level.WARNING);
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        }
+
+        Writer out = new BufferedWriter(new OutputStreamWriter(stdout, StandardCharsets.UTF_8));
+        TaskCli cli = new TaskCli(workspace, out, System.err);
+        int status;
+        try {
+            status = cli.run(args[i], new Arguments(args, i + 1));
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            status = EXIT_USAGE;
+        } finally {
+            out.flush();
+        }
+        System.exit(status);
+    }
+
+    int run(String command, Arguments arguments) throws IOException {
+        switch (command) {
+            case "list": return list(arguments);
+            case "overdue": return overdue(arguments);
+            case "import": return importTasks(arguments);
+            case "complete": return complete(arguments);
+            case "delete": return delete(arguments);
+            default: throw new IllegalArgumentException("Unknown command: " + command);
+        }
+    }
+
+    private int list(Arguments arguments) throws IOException {
+        TaskStatus status = arguments.enumOption("--status", TaskStatus.class);
+        LocalDate from = arguments.dateOption("--from");
+        LocalDate to = arguments.dateOption("--to");
+        int limit = arguments.intOption("--limit", Integer.MAX_VALUE);
+        TaskOutput.Format format = arguments.enumOption("--format", TaskOutput.Format.class);
+        arguments.requireNoOperands();
+        return query(status, from, to, limit, format);
+    }
+
+    // Uncompleted tasks whose deadline has passed, most overdue first.
+    private int overdue(Arguments arguments) throws IOException {
+        int limit = arguments.intOption("--limit", Integer.MAX_VALUE);
+        TaskOutput.Format format = arguments.enumOption("--format", TaskOutput.Format.class);
+        arguments.requireNoOperands();
+        LocalDate yesterday = LocalDate.now().minusDays(1);
+        DataPersistenceService persistence = new DataPersistenceService(workspaceDir, "tasks.json");
+        try {
+            // One query per uncompleted status, so the backend applies the limit, merged by deadline.
+            List<Task> overdue = new ArrayList<>();
+            for (TaskStatus status : TaskStatus.values()) {
+                if (status != TaskStatus.COMPLETED) {
+                    overdue.addAll(persistence.getBackend().findTasks(status, null, yesterday, limit));
+                }
+            }
+            overdue.sort(Comparator.comparing(Task::getDeadline));
+            write(overdue.subList(0, Math.min(limit, overdue.size())), format);
+        } finally {
+            persistence.close();
+        }
+        return EXIT_OK;
+    }
+
+    // Reads straight from the backend; loading the services would cost a full load of the workspace.
+    private int query(TaskStatus status, LocalDate from, LocalDate to, int limit, TaskOutput.Format format)
+            throws IOException {
+        DataPersistenceService persistence = new DataPersistenceService(workspaceDir, "tasks.json");
+        try {
+            write(persistence.getBackend().findTasks(status, from, to, limit), format);
+        } finally {
+            persistence.close();
+        }
+        return EXIT_OK;
+    }
+
+    private void write(List<Task> tasks, TaskOutput.Format format) throws IOException {
+        TaskOutput output = new TaskOutput(out, format != null ? format : TaskOutput.Format.TEXT, new ObjectMapper());
+        for (Task task : tasks) {
+            output.write(task);
+        }
+        output.finish();
+    }
+
+    /**
+     * Imports tasks from CSV, iCalendar or newline-delimited JSON (by default guessed from the
+     * file name), committing them in batches. Progress and rejected records are reported on
+     * standard error as the import goes.
+     */
+    private int importTasks(Arguments arguments) throws IOException {
+        ImportFormat format = arguments.enumOption("--format", ImportFormat.class);
+        int batchSize = arguments.intOption("--batch-size", TaskImporter.DEFAULT_BATCH_SIZE);
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Invalid --batch-size " + batchSize);
+        }
+        FieldMapping mapping = FieldMapping.defaults();
+        for (String map : arguments.options("--map")) {
+            int equals = map.indexOf('=');
+            if (equals <= 0) {
+                throw new IllegalArgumentException("Invalid --map " + map + "; expected FIELD=COLUMN");
+            }
+            mapping = mapping.withColumn(map.substring(0, equals), map.substring(equals + 1));
+        }
+        String defaultCategory = arguments.option("--category");
+        String datePattern = arguments.option("--date-format");
+        String delimiter = arguments.option("--delimiter");
+        String source = arguments.optionalOperand();
+        if (format == null) {
+            boolean stdin = source == null || source.equals("-");
+            format = !stdin ? ImportFormat.forFileName(source) : delimiter != null ? ImportFormat.CSV : ImportFormat.NDJSON;
+            if (format == null) {
+                throw new IllegalArgumentException("Unknown file type of " + source + "; use --format");
+            }
+        }
+        DateTimeFormatter dateFormat = datePattern != null ? DateTimeFormatter.ofPattern(datePattern) : null;
+        if (delimiter != null && delimiter.length() != 1 && !delimiter.equals("\\t")) {
+            throw new IllegalArgumentException("Invalid --delimiter " + delimiter);
+        }
+
+        ServiceManager services = new ServiceManager(workspaceDir);
+        try (BufferedReader reader = open(source)) {
+            TaskImporter importer = new TaskImporter(services);
+            importer.setBatchSize(batchSize);
+            importer.setMapping(mapping);
+            importer.setDefaultCategory(defaultCategory);
+            importer.setDateFormat(dateFormat);
+            if (delimiter != null) {
+                importer.setDelimiter(delimiter.equals("\\t") ? '\t' : delimiter.charAt(0));
+            } else if (source != null && source.toLowerCase(Locale.ROOT).endsWith(".tsv")) {
+                importer.setDelimiter('\t');
+            }
+            importer.setListener(new TaskImporter.Listener() {
+                private long lastReport = System.nanoTime();
+
+                @Override
+                public void batchCommitted(TaskImporter.Report report) {
+                    // Nothing here needs undoing, and a large import would otherwise hold its history.
+                    services.getUndoManager().clear();
+                    if (System.nanoTime() - lastReport >= PROGRESS_INTERVAL_NANOS) {
+                        lastReport = System.nanoTime();
+                        err.printf("Imported %d tasks (%.0f tasks/s)%n", report.getImported(), report.getTasksPerSecond());
+                    }
+                }
+
+                @Override
+                public void recordFailed(int position, String message) {
+                    err.println("line " + position + ": " + message);
+                }
+            });
+            TaskImporter.Report report = importer.importFrom(reader, format);
+            err.printf("Imported %d tasks in %d batches, %d ms (%.0f tasks/s)%s%n", report.getImported(),
+                    report.getBatches(), report.getElapsedMillis(), report.getTasksPerSecond(),
+                    report.getFailed() > 0 ? ", " + report.getFailed() + " rejected" : "");
+            return report.getFailed() > 0 ? EXIT_FAILED : EXIT_OK;
+        } catch (RuntimeException e) {
+            // The batches before were committed.
+            err.println("Import stopped: " + e);
+            return EXIT_FAILED;
+        } finally {
+            services.close();
+        }
+    }
+
+    private int complete(Arguments arguments) throws IOException {
+        List<String> ids = arguments.ids(this);
+        ServiceManager services = new ServiceManager(workspaceDir);
+        int[] failed = new int[1];
+        try {
+            TaskService taskService = services.getTaskService();
+            services.getPersistenceService().inTransaction(() -> {
+                for (String id : ids) {
+                    Task task = taskService.getTaskById(id);
+                    if (task == null) {
+                        err.println("No such task: " + id);
+                        failed[0]++;
+                    } else if (task.getStatus() != TaskStatus.COMPLETED) {
+                        task.setStatus(TaskStatus.COMPLETED);
+                        taskService.updateTask(task);
+                    }
+                }
+            });
+            err.println("Completed " + (ids.size() - failed[0]) + " tasks");
+        } finally {
+            services.close();
+        }
+        return failed[0] > 0 ? EXIT_FAILED : EXIT_OK;
+    }
+
+    private int delete(Arguments arguments) throws IOException {
+        List<String> ids = arguments.ids(this);
+        ServiceManager services = new ServiceManager(workspaceDir);
+        int[] deleted = new int[1];
+        try {
+            services.getPersistenceService().inTransaction(() ->
+                    deleted[0] = services.getTaskService().deleteTasks(ids));
+            err.println("Deleted " + deleted[0] + " tasks");
+        } finally {
+            services.close();
+        }
+        return deleted[0] < ids.size() ? EXIT_FAILED : EXIT_OK;
+    }
+
+    // A file, or standard input for "-" or none.
+    BufferedReader open(String source) throws IOException {
+        InputStream in = source == null || source.equals("-") ? System.in : new FileInputStream(source);
+        return new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+    }
+
+    private static void usage() {
+        System.err.println("Usage: TaskCli [--workspace DIR] [--verbose] COMMAND\n"
+                + "  list [--status S] [--from DATE] [--to DATE] [--limit N] [--format text|json|csv]\n"
+                + "  overdue [--limit N] [--format text|json|csv]\n"
+                + "  import [--format ndjson|csv|icalendar] [--batch-size N] [--map FIELD=COLUMN]...\n"
+                + "         [--category NAME] [--date-format PATTERN] [--delimiter C] [FILE|-]\n"
+                + "  complete ID...|-          ids as arguments or one per line on standard input\n"
+                + "  delete ID...|-");
+        System.exit(EXIT_USAGE);
+    }
+
+    // A command's options ("--name value") followed by its operands.
+    static class Arguments {
+        private final Map<String, List<String>> options = new HashMap<>();
+        private final List<String> operands = new ArrayList<>();
+
+        Arguments(String[] args, int from) {
+            for (int i = from; i < args.length; i++) {
+                if (args[i].startsWith("--") && operands.isEmpty()) {
+                    if (i + 1 == args.length) {
+                        throw new IllegalArgumentException("Missing value for " + args[i]);
+                    }
+                    options.computeIfAbsent(args[i], name -> new ArrayList<>()).add(args[++i]);
+                } else {
+                    operands.add(args[i]);
+                }
+            }
+        }
+
+        // The option's last value, or null if it was not given.
+        String option(String name) {
+            List<String> values = options.remove(name);
+            return values != null ? values.get(values.size() - 1) : null;
+        }
+
+        // Every value given for a repeatable option.
+        List<String> options(String name) {
+            List<String> values = options.remove(name);
+            return values != null ? values : List.of();
+        }
+
+        int intOption(String name, int defaultValue) {
+            String value = option(name);
+            try {
+                return value != null ? Integer.parseInt(value) : defaultValue;
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid " + name + ": " + value);
+            }
+        }
+
+        LocalDate dateOption(String name) {
+            String value = option(name);
+            try {
+                return value != null ? LocalDate.parse(value) : null;
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Invalid " + name + ": " + value);
+            }
+        }
+
+        <E extends Enum<E>> E enumOption(String name, Class<E> type) {
+            String value = option(name);
+            try {
+                return value != null ? Enum.valueOf(type, value.toUpperCase(Locale.ROOT)) : null;
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Invalid " + name + ": " + value);
+            }
+        }
+
+        String optionalOperand() {
+            requireNoOptions();
+            if (operands.size() > 1) {
+                throw new IllegalArgumentException("Unexpected argument: " + operands.get(1));
+            }
+            return operands.isEmpty() ? null : operands.get(0);
+        }
+
+        void requireNoOperands() {
+            requireNoOptions();
+            if (!operands.isEmpty()) {
+                throw new IllegalArgumentException("Unexpected argument: " + operands.get(0));
+            }
+        }
+
+        // Task ids from the operands, or one per line from standard input for "-".
+        List<String> ids(TaskCli cli) throws IOException {
+            requireNoOptions();
+            if (operands.isEmpty()) {
+                throw new IllegalArgumentException("No task ids given");
+            }
+            if (!operands.equals(List.of("-"))) {
+                return operands;
+            }
+            List<String> ids = new ArrayList<>();
+            try (BufferedReader reader = cli.open("-")) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    // Accept the text output of list, whose first column is the id.
+                    String id = line.split("\t", 2)[0].trim();
+                    if (!id.isEmpty()) {
+                        ids.add(id);
+                    }
+                }
+            }
+            return ids;
+        }
+
+        private void requireNoOptions() {
+            if (!options.isEmpty()) {
+                throw new IllegalArgumentException("Unknown option: " + options.keySet().iterator().next());
+            }
+        }
+    }
+}
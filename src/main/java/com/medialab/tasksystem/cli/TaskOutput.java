@@ -0,0 +1,106 @@
+package com.medialab.tasksystem.cli;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.medialab.tasksystem.model.Task;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Writes tasks one at a time as they are produced, as tab-separated text, newline-delimited
+ * JSON or CSV, so output of any size goes out without being collected first.
+ */
+class TaskOutput {
+    enum Format { TEXT, JSON, CSV }
+
+    private static final String[] CSV_COLUMNS =
+            {"id", "title", "description", "category", "priority", "deadline", "status", "completedAt"};
+
+    private final Writer out;
+    private final Format format;
+    private final ObjectMapper objectMapper;
+    private boolean started;
+
+    TaskOutput(Writer out, Format format, ObjectMapper objectMapper) {
+        this.out = out;
+        this.format = format;
+        this.objectMapper = objectMapper;
+    }
+
+    void write(Task task) throws IOException {
+        switch (format) {
+            case JSON:
+                out.write(objectMapper.writeValueAsString(fields(task)));
+                out.write('\n');
+                break;
+            case CSV:
+                if (!started) {
+                    writeCsvRow(CSV_COLUMNS);
+                }
+                writeCsvRow(fields(task).values().stream().map(value -> value != null ? value.toString() : "")
+                        .toArray(String[]::new));
+                break;
+            default:
+                out.write(String.join("\t", task.getId(), string(task.getDeadline()), string(task.getStatus()),
+                        task.getPriority() != null ? task.getPriority().getName() : "",
+                        task.getCategory() != null ? task.getCategory().getName() : "",
+                        oneLine(task.getTitle())));
+                out.write('\n');
+        }
+        started = true;
+    }
+
+    // A CSV export always has its header, even with no rows.
+    void finish() throws IOException {
+        if (format == Format.CSV && !started) {
+            writeCsvRow(CSV_COLUMNS);
+        }
+        out.flush();
+    }
+
+    private static Map<String, Object> fields(Task task) {
+        Map<String, Object> fields = new LinkedHashMap<>();
+        fields.put("id", task.getId());
+        fields.put("title", task.getTitle());
+        fields.put("description", task.getDescription());
+        fields.put("category", task.getCategory() != null ? task.getCategory().getName() : null);
+        fields.put("priority", task.getPriority() != null ? task.getPriority().getName() : null);
+        fields.put("deadline", dateString(task.getDeadline()));
+        fields.put("status", task.getStatus());
+        fields.put("completedAt", dateString(task.getCompletedAt()));
+        return fields;
+    }
+
+    private void writeCsvRow(String[] values) throws IOException {
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            String value = values[i];
+            if (value.indexOf(',') >= 0 || value.indexOf('"') >= 0 || value.indexOf('\n') >= 0
+                    || value.indexOf('\r') >= 0) {
+                out.write('"');
+                out.write(value.replace("\"", "\"\""));
+                out.write('"');
+            } else {
+                out.write(value);
+            }
+        }
+        out.write("\r\n");
+    }
+
+    private static String dateString(LocalDate date) {
+        return date != null ? date.toString() : null;
+    }
+
+    private static String string(Object value) {
+        return value != null ? value.toString() : "";
+    }
+
+    private static String oneLine(String text) {
+        return text == null ? "" : text.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+    }
+}
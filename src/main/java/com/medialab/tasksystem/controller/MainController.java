@@ -3,6 +3,7 @@ package com.medialab.tasksystem.controller;
 import com.medialab.tasksystem.model.*;
 import com.medialab.tasksystem.service.*;
 import com.medialab.tasksystem.view.CategoryManagementPane;
+import com.medialab.tasksystem.view.LazyTab;
 import com.medialab.tasksystem.view.PriorityManagementPane;
 import com.medialab.tasksystem.view.ReminderManagementPane;
 import com.medialab.tasksystem.view.TaskManagementPane;
@@ -25,6 +26,7 @@ public class MainController implements Initializable {
     private ReminderService reminderService;
     private DataPersistenceService persistenceService;
     private PriorityService priorityService;
+    private UndoManager undoManager;
 
     @Override
     public void initialize(URL location, ResourceBundle resources) {
@@ -36,29 +38,26 @@ public class MainController implements Initializable {
 
     private void initializeServices() {
         persistenceService = new DataPersistenceService();
-        reminderService = new ReminderService(persistenceService);
-        taskService = new TaskService(persistenceService, reminderService);
-        categoryService = new CategoryService(persistenceService, taskService);
-        priorityService = new PriorityService(persistenceService, taskService);
-
-        // Set the services in DataPersistenceService
-        persistenceService.setServices(taskService, categoryService, priorityService, reminderService);
+        undoManager = new UndoManager(persistenceService);
+        reminderService = new ReminderService(persistenceService, undoManager);
+        taskService = new TaskService(persistenceService, reminderService, undoManager);
+        categoryService = new CategoryService(persistenceService, taskService, undoManager);
+        priorityService = new PriorityService(persistenceService, taskService, undoManager);
     }
 
     private void setupTabs() {
-        Tab tasksTab = new Tab("Tasks");
-        tasksTab.setContent(new TaskManagementPane(taskService, categoryService, priorityService, this::updateStatistics));
-
-        Tab categoriesTab = new Tab("Categories");
-        categoriesTab.setContent(new CategoryManagementPane(categoryService));
-
-        Tab prioritiesTab = new Tab("Priorities");
-        prioritiesTab.setContent(new PriorityManagementPane(priorityService));
-
-        Tab remindersTab = new Tab("Reminders");
-        remindersTab.setContent(new ReminderManagementPane(reminderService, taskService));
+        LazyTab tasksTab = new LazyTab("Tasks",
+                () -> new TaskManagementPane(taskService, categoryService, priorityService, this::updateStatistics));
+        LazyTab categoriesTab = new LazyTab("Categories", () -> new CategoryManagementPane(categoryService));
+        LazyTab prioritiesTab = new LazyTab("Priorities", () -> new PriorityManagementPane(priorityService));
+        LazyTab remindersTab = new LazyTab("Reminders", () -> new ReminderManagementPane(reminderService, taskService));
 
         mainTabPane.getTabs().addAll(tasksTab, categoriesTab, prioritiesTab, remindersTab);
+
+        Tab selected = mainTabPane.getSelectionModel().getSelectedItem();
+        if (selected instanceof LazyTab) {
+            ((LazyTab) selected).ensureContent();
+        }
     }
 
     private void updateStatistics() {
@@ -0,0 +1,50 @@
+package com.medialab.tasksystem.exceptions;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Thrown when an update based on an older version of an entity changes fields that
+ * someone else has changed since. Nothing of the update is applied.
+ */
+public class VersionConflictException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final String entityType;
+    private final String entityId;
+    private final long expectedVersion;
+    private final long currentVersion;
+    private final Set<String> conflictingFields;
+
+    public VersionConflictException(String entityType, String entityId, long expectedVersion,
+                                    long currentVersion, Set<String> conflictingFields) {
+        super(String.format("%s %s was changed since version %d (now version %d); conflicting fields: %s",
+                entityType, entityId, expectedVersion, currentVersion, String.join(", ", new TreeSet<>(conflictingFields))));
+        this.entityType = entityType;
+        this.entityId = entityId;
+        this.expectedVersion = expectedVersion;
+        this.currentVersion = currentVersion;
+        this.conflictingFields = Collections.unmodifiableSet(new TreeSet<>(conflictingFields));
+    }
+
+    public String getEntityType() {
+        return entityType;
+    }
+
+    public String getEntityId() {
+        return entityId;
+    }
+
+    public long getExpectedVersion() {
+        return expectedVersion;
+    }
+
+    public long getCurrentVersion() {
+        return currentVersion;
+    }
+
+    public Set<String> getConflictingFields() {
+        return conflictingFields;
+    }
+}
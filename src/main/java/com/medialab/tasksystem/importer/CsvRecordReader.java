@@ -0,0 +1,171 @@
+package com.medialab.tasksystem.importer;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads RFC 4180 CSV: a header row naming the columns, then one record per row. Quoted
+ * fields may hold delimiters, doubled quotes and line breaks. Rows are parsed straight
+ * from a small buffer, so only the current row is held in memory.
+ */
+final class CsvRecordReader implements RecordReader {
+    // A longer field is taken for a missing closing quote rather than held in memory.
+    static final int MAX_FIELD_CHARS = 1 << 20;
+
+    private final Reader source;
+    private final char delimiter;
+    private final char[] buffer = new char[8192];
+    private int offset;
+    private int limit;
+    private int line = 1;
+    private int recordLine;
+    private String[] header;
+    private final StringBuilder field = new StringBuilder();
+    private final List<String> fields = new ArrayList<>();
+
+    CsvRecordReader(Reader source, char delimiter) {
+        this.source = source;
+        this.delimiter = delimiter;
+    }
+
+    @Override
+    public Map<String, String> next() throws IOException {
+        if (header == null) {
+            List<String> names = readNonBlankRow();
+            if (names == null) {
+                return null;
+            }
+            header = new String[names.size()];
+            for (int i = 0; i < header.length; i++) {
+                // Spreadsheet exports often start with a byte order mark.
+                header[i] = FieldMapping.normalize(i == 0 ? names.get(i).replace("\uFEFF", "") : names.get(i));
+            }
+        }
+        List<String> row = readNonBlankRow();
+        if (row == null) {
+            return null;
+        }
+        Map<String, String> record = new HashMap<>();
+        for (int i = 0; i < row.size(); i++) {
+            if (i >= header.length) {
+                if (!row.get(i).isBlank()) {
+                    throw new IllegalArgumentException("Row has " + row.size() + " fields, the header has " + header.length);
+                }
+            } else {
+                record.putIfAbsent(header[i], row.get(i));
+            }
+        }
+        return record;
+    }
+
+    @Override
+    public int position() {
+        return recordLine;
+    }
+
+    @Override
+    public void close() throws IOException {
+        source.close();
+    }
+
+    private List<String> readNonBlankRow() throws IOException {
+        List<String> row;
+        do {
+            row = readRow();
+        } while (row != null && row.size() == 1 && row.get(0).isEmpty());
+        return row;
+    }
+
+    // The fields of the next row, or null at the end of the source.
+    private List<String> readRow() throws IOException {
+        recordLine = line;
+        fields.clear();
+        field.setLength(0);
+        int c = read();
+        if (c == -1) {
+            return null;
+        }
+        boolean inQuotes = false;
+        while (true) {
+            if (inQuotes) {
+                if (c == -1) {
+                    throw new IllegalArgumentException("Quoted field is not closed");
+                }
+                if (c == '"') {
+                    if (peek() == '"') {
+                        read();
+                        field.append('"');
+                    } else {
+                        inQuotes = false;
+                    }
+                } else {
+                    if (c == '\n') {
+                        line++;
+                    }
+                    field.append((char) c);
+                }
+            } else if (c == delimiter) {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == '"' && field.length() == 0) {
+                inQuotes = true;
+            } else if (c == '\r' || c == '\n' || c == -1) {
+                if (c == '\r' && peek() == '\n') {
+                    read();
+                }
+                if (c != -1) {
+                    line++;
+                }
+                break;
+            } else {
+                field.append((char) c);
+            }
+            if (field.length() > MAX_FIELD_CHARS) {
+                skipLine();
+                throw new IllegalArgumentException("Field is longer than " + MAX_FIELD_CHARS + " characters");
+            }
+            c = read();
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    // Goes on from the start of the next line after a row that could not be read.
+    private void skipLine() throws IOException {
+        int c;
+        while ((c = read()) != -1 && c != '\n') {
+            // Skipped.
+        }
+        if (c == '\n') {
+            line++;
+        }
+    }
+
+    private int read() throws IOException {
+        if (offset == limit && !fill()) {
+            return -1;
+        }
+        return buffer[offset++];
+    }
+
+    private int peek() throws IOException {
+        if (offset == limit && !fill()) {
+            return -1;
+        }
+        return buffer[offset];
+    }
+
+    private boolean fill() throws IOException {
+        int read = source.read(buffer, 0, buffer.length);
+        if (read <= 0) {
+            return false;
+        }
+        offset = 0;
+        limit = read;
+        return true;
+    }
+}
@@ -0,0 +1,73 @@
+package com.medialab.tasksystem.importer;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Which columns (or iCalendar properties, or JSON fields) of an import set which task
+ * fields. By default each field is read from the first present of a few common names,
+ * so exports of most tools need no mapping; names are compared ignoring case, spaces and
+ * punctuation ("Due Date" matches "due_date").
+ */
+public final class FieldMapping {
+    /** The task fields an import can set. */
+    public static final List<String> FIELDS =
+            List.of("title", "description", "category", "priority", "deadline", "status", "completedAt");
+
+    private static final FieldMapping DEFAULTS = new FieldMapping(Map.of(
+            "title", List.of("title", "summary", "name", "subject", "task"),
+            "description", List.of("description", "notes", "note", "details"),
+            "category", List.of("category", "categories", "list", "project"),
+            "priority", List.of("priority"),
+            "deadline", List.of("deadline", "due", "duedate"),
+            "status", List.of("status", "state"),
+            "completedAt", List.of("completedat", "completed", "completeddate", "donedate")));
+
+    // Normalized column names by field, in order of preference.
+    private final Map<String, List<String>> columns;
+
+    private FieldMapping(Map<String, List<String>> columns) {
+        this.columns = columns;
+    }
+
+    public static FieldMapping defaults() {
+        return DEFAULTS;
+    }
+
+    /**
+     * Returns a mapping that reads the given field from the given column only.
+     *
+     * @throws IllegalArgumentException if the field is not one of {@link #FIELDS}
+     */
+    public FieldMapping withColumn(String field, String column) {
+        String taskField = FIELDS.stream().filter(name -> name.equalsIgnoreCase(field)).findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Unknown task field " + field
+                        + "; expected one of " + String.join(", ", FIELDS)));
+        Map<String, List<String>> mapped = new HashMap<>(columns);
+        mapped.put(taskField, List.of(normalize(column)));
+        return new FieldMapping(mapped);
+    }
+
+    // The field's value in the record, trimmed, or null if it is missing or blank.
+    String value(String field, Map<String, String> record) {
+        for (String column : columns.get(field)) {
+            String value = record.get(column);
+            if (value != null && !value.isBlank()) {
+                return value.trim();
+            }
+        }
+        return null;
+    }
+
+    static String normalize(String name) {
+        StringBuilder normalized = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                normalized.append(Character.toLowerCase(c));
+            }
+        }
+        return normalized.toString();
+    }
+}
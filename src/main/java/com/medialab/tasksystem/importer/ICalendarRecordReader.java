@@ -0,0 +1,178 @@
+package com.medialab.tasksystem.importer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Reads the VTODO components of an iCalendar file (RFC 5545), one record per to-do, keyed
+ * by property name (SUMMARY, DESCRIPTION, DUE, ...). Folded lines are joined and text
+ * values unescaped; the first of several CATEGORIES is kept, and a numeric PRIORITY is
+ * turned into a level name. Everything outside VTODOs, and components nested in one
+ * (such as its alarms), is skipped.
+ */
+final class ICalendarRecordReader implements RecordReader {
+    // A longer content line is taken for a damaged file rather than held in memory.
+    static final int MAX_LINE_CHARS = 1 << 20;
+
+    private final BufferedReader source;
+    private String pending;
+    private int line;
+    private int contentLine;
+    private int recordLine;
+
+    ICalendarRecordReader(Reader source) {
+        this.source = source instanceof BufferedReader ? (BufferedReader) source : new BufferedReader(source);
+    }
+
+    @Override
+    public Map<String, String> next() throws IOException {
+        String content;
+        do {
+            content = readContentLine();
+            if (content == null) {
+                return null;
+            }
+        } while (!content.equalsIgnoreCase("BEGIN:VTODO"));
+        recordLine = contentLine;
+
+        Map<String, String> record = new HashMap<>();
+        int nested = 0;
+        while ((content = readContentLine()) != null) {
+            String upper = content.toUpperCase(Locale.ROOT);
+            if (upper.startsWith("BEGIN:")) {
+                nested++;
+            } else if (upper.startsWith("END:")) {
+                if (nested == 0) {
+                    return record;
+                }
+                nested--;
+            } else if (nested == 0) {
+                int colon = valueStart(content);
+                if (colon > 0) {
+                    int nameEnd = content.indexOf(';');
+                    String name = content.substring(0, nameEnd >= 0 && nameEnd < colon ? nameEnd : colon)
+                            .toUpperCase(Locale.ROOT);
+                    record.putIfAbsent(FieldMapping.normalize(name), value(name, content.substring(colon + 1)));
+                }
+            }
+        }
+        throw new IllegalArgumentException("VTODO is not closed");
+    }
+
+    @Override
+    public int position() {
+        return recordLine;
+    }
+
+    @Override
+    public void close() throws IOException {
+        source.close();
+    }
+
+    // A property's value as text: its first category, or its priority as a level name.
+    private static String value(String name, String raw) {
+        switch (name) {
+            case "CATEGORIES":
+                return unescape(firstListItem(raw));
+            case "PRIORITY":
+                return priorityName(raw.trim());
+            default:
+                return unescape(raw);
+        }
+    }
+
+    // RFC 5545 priorities: 1-4 high, 5 medium, 6-9 low, 0 undefined (the default level).
+    private static String priorityName(String value) {
+        int priority;
+        try {
+            priority = Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return value;
+        }
+        if (priority >= 1 && priority <= 4) {
+            return "High";
+        }
+        if (priority >= 6 && priority <= 9) {
+            return "Low";
+        }
+        return null;
+    }
+
+    private static String firstListItem(String raw) {
+        for (int i = 0; i < raw.length(); i++) {
+            char c = raw.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == ',') {
+                return raw.substring(0, i);
+            }
+        }
+        return raw;
+    }
+
+    private static String unescape(String raw) {
+        if (raw.indexOf('\\') < 0) {
+            return raw;
+        }
+        StringBuilder text = new StringBuilder(raw.length());
+        for (int i = 0; i < raw.length(); i++) {
+            char c = raw.charAt(i);
+            if (c == '\\' && i + 1 < raw.length()) {
+                char escaped = raw.charAt(++i);
+                text.append(escaped == 'n' || escaped == 'N' ? '\n' : escaped);
+            } else {
+                text.append(c);
+            }
+        }
+        return text.toString();
+    }
+
+    // The index of the colon that ends the property name and parameters; colons in quoted parameter values do not count.
+    private static int valueStart(String content) {
+        boolean quoted = false;
+        for (int i = 0; i < content.length(); i++) {
+            char c = content.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (c == ':' && !quoted) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // The next line with its folded continuation lines joined, or null at the end of the file.
+    private String readContentLine() throws IOException {
+        String first = pending != null ? pending : readLine();
+        pending = null;
+        if (first == null) {
+            return null;
+        }
+        contentLine = line;
+        StringBuilder content = null;
+        String next;
+        while ((next = readLine()) != null && !next.isEmpty() && (next.charAt(0) == ' ' || next.charAt(0) == '\t')) {
+            if (content == null) {
+                content = new StringBuilder(first);
+            }
+            if (content.length() + next.length() > MAX_LINE_CHARS) {
+                throw new IllegalArgumentException("Line is longer than " + MAX_LINE_CHARS + " characters");
+            }
+            content.append(next, 1, next.length());
+        }
+        pending = next;
+        return content != null ? content.toString() : first;
+    }
+
+    private String readLine() throws IOException {
+        String text = source.readLine();
+        if (text != null) {
+            line++;
+        }
+        return text;
+    }
+}
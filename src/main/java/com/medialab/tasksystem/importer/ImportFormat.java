@@ -0,0 +1,43 @@
+package com.medialab.tasksystem.importer;
+
+import java.io.Reader;
+import java.util.Locale;
+
+/**
+ * The file formats tasks can be imported from.
+ */
+public enum ImportFormat {
+    /** One JSON object per line. */
+    NDJSON,
+    /** Comma-separated values with a header row (RFC 4180). */
+    CSV,
+    /** The VTODO components of an iCalendar file (RFC 5545). */
+    ICALENDAR;
+
+    /**
+     * Guesses the format from a file name's extension.
+     *
+     * @return The format, or null if the extension is not recognized
+     */
+    public static ImportFormat forFileName(String fileName) {
+        String name = fileName.toLowerCase(Locale.ROOT);
+        if (name.endsWith(".csv") || name.endsWith(".tsv")) {
+            return CSV;
+        }
+        if (name.endsWith(".ics") || name.endsWith(".ical") || name.endsWith(".ifb")) {
+            return ICALENDAR;
+        }
+        if (name.endsWith(".ndjson") || name.endsWith(".jsonl") || name.endsWith(".json")) {
+            return NDJSON;
+        }
+        return null;
+    }
+
+    RecordReader open(Reader source, char delimiter) {
+        switch (this) {
+            case CSV: return new CsvRecordReader(source, delimiter);
+            case ICALENDAR: return new ICalendarRecordReader(source);
+            default: return new NdjsonRecordReader(source);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.medialab.tasksystem.importer;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reads one JSON object per line. Text and number values are taken as they are; of an
+ * array the first element is taken, and of an object its "name" (as in a task exported
+ * with its category).
+ */
+final class NdjsonRecordReader implements RecordReader {
+    private final BufferedReader source;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private int line;
+
+    NdjsonRecordReader(Reader source) {
+        this.source = source instanceof BufferedReader ? (BufferedReader) source : new BufferedReader(source);
+    }
+
+    @Override
+    public Map<String, String> next() throws IOException {
+        String text;
+        do {
+            text = source.readLine();
+            if (text == null) {
+                return null;
+            }
+            line++;
+        } while (text.isBlank());
+
+        JsonNode node;
+        try {
+            node = objectMapper.readTree(text);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException(e.getOriginalMessage());
+        }
+        if (!node.isObject()) {
+            throw new IllegalArgumentException("Line is not a JSON object");
+        }
+        Map<String, String> record = new HashMap<>();
+        node.fields().forEachRemaining(field -> {
+            String value = text(field.getValue());
+            if (value != null) {
+                record.putIfAbsent(FieldMapping.normalize(field.getKey()), value);
+            }
+        });
+        return record;
+    }
+
+    @Override
+    public int position() {
+        return line;
+    }
+
+    @Override
+    public void close() throws IOException {
+        source.close();
+    }
+
+    private static String text(JsonNode value) {
+        if (value.isArray()) {
+            return value.size() > 0 ? text(value.get(0)) : null;
+        }
+        if (value.isObject()) {
+            return value.has("name") ? text(value.get("name")) : null;
+        }
+        return value.isNull() ? null : value.asText();
+    }
+}
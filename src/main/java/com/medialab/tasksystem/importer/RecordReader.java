@@ -0,0 +1,23 @@
+package com.medialab.tasksystem.importer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Reads the records of an import source one at a time, each as its values keyed by
+ * column or property name (normalized with {@link FieldMapping#normalize}).
+ */
+interface RecordReader extends Closeable {
+    /**
+     * Reads the next record.
+     *
+     * @return The record's values, or null at the end of the source
+     * @throws IllegalArgumentException if the record is malformed; reading can go on with the next one
+     * @throws IOException if the source cannot be read
+     */
+    Map<String, String> next() throws IOException;
+
+    // The line the record last returned (or rejected) starts on.
+    int position();
+}
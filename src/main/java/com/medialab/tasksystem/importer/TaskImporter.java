@@ -0,0 +1,343 @@
+package com.medialab.tasksystem.importer;
+
+import com.medialab.tasksystem.model.Category;
+import com.medialab.tasksystem.model.PriorityLevel;
+import com.medialab.tasksystem.model.Task;
+import com.medialab.tasksystem.model.TaskStatus;
+import com.medialab.tasksystem.service.PriorityService;
+import com.medialab.tasksystem.service.ServiceManager;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Imports tasks from a CSV, iCalendar or newline-delimited JSON source of any size.
+ * <p>
+ * The import is a pipeline: a reader thread parses the records, maps them to task fields
+ * and validates them, handing them on through a bounded queue, while the calling thread
+ * (the one that owns the services) resolves their categories and priority levels, creating
+ * missing ones, and adds the tasks in batches, each batch one transaction and one undo
+ * step. Only the queue and one batch are held at a time, so the import itself uses the
+ * same memory whatever the size of the source.
+ * </p>
+ * Invalid records are reported and skipped. If a batch cannot be committed the import
+ * stops; the batches committed before it stay committed.
+ */
+public class TaskImporter {
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    private static final Map<String, TaskStatus> STATUS_NAMES = Map.ofEntries(
+            Map.entry("open", TaskStatus.OPEN),
+            Map.entry("todo", TaskStatus.OPEN),
+            Map.entry("new", TaskStatus.OPEN),
+            Map.entry("needsaction", TaskStatus.OPEN),
+            Map.entry("inprogress", TaskStatus.IN_PROGRESS),
+            Map.entry("inprocess", TaskStatus.IN_PROGRESS),
+            Map.entry("started", TaskStatus.IN_PROGRESS),
+            Map.entry("postponed", TaskStatus.POSTPONED),
+            Map.entry("deferred", TaskStatus.POSTPONED),
+            Map.entry("onhold", TaskStatus.POSTPONED),
+            Map.entry("completed", TaskStatus.COMPLETED),
+            Map.entry("complete", TaskStatus.COMPLETED),
+            Map.entry("done", TaskStatus.COMPLETED),
+            Map.entry("delayed", TaskStatus.DELAYED),
+            Map.entry("overdue", TaskStatus.DELAYED));
+
+    /**
+     * Told about the progress of an import, on the importing thread.
+     */
+    public interface Listener {
+        default void batchCommitted(Report report) {
+        }
+
+        /**
+         * @param position The line the record starts on
+         * @param message  Why the record was not imported
+         */
+        default void recordFailed(int position, String message) {
+        }
+    }
+
+    /**
+     * Counts and timing of an import, so far or in total.
+     */
+    public static final class Report {
+        private final long startNanos = System.nanoTime();
+        private long endNanos;
+        private int imported;
+        private int failed;
+        private int batches;
+
+        public int getImported() {
+            return imported;
+        }
+
+        public int getFailed() {
+            return failed;
+        }
+
+        public int getBatches() {
+            return batches;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedNanos() / 1_000_000;
+        }
+
+        public double getTasksPerSecond() {
+            long nanos = elapsedNanos();
+            return nanos > 0 ? imported * 1e9 / nanos : 0;
+        }
+
+        private long elapsedNanos() {
+            return (endNanos != 0 ? endNanos : System.nanoTime()) - startNanos;
+        }
+    }
+
+    // A record mapped to task fields and validated, with its category and priority level still by name.
+    private static final class Row {
+        String title;
+        String description;
+        String category;
+        String priority;
+        LocalDate deadline;
+        TaskStatus status;
+        LocalDate completedAt;
+    }
+
+    // What the reader thread hands on: a row, a rejected record, a failure of the source, or the end.
+    private static final class Item {
+        static final Item END = new Item(0, null, null, null);
+
+        final int position;
+        final Row row;
+        final String error;
+        final Exception failure;
+
+        Item(int position, Row row, String error, Exception failure) {
+            this.position = position;
+            this.row = row;
+            this.error = error;
+            this.failure = failure;
+        }
+    }
+
+    private final ServiceManager services;
+    private FieldMapping mapping = FieldMapping.defaults();
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private String defaultCategory;
+    private DateTimeFormatter dateFormat;
+    private char delimiter = ',';
+    private Listener listener = new Listener() {
+    };
+
+    public TaskImporter(ServiceManager services) {
+        this.services = services;
+    }
+
+    public void setMapping(FieldMapping mapping) {
+        this.mapping = mapping;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the size is not positive
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        }
+        this.batchSize = batchSize;
+    }
+
+    // The category of records without one; without it such records are rejected.
+    public void setDefaultCategory(String defaultCategory) {
+        this.defaultCategory = defaultCategory;
+    }
+
+    // A date format tried before the ISO ones (2024-05-31, 20240531, and date-times starting with either).
+    public void setDateFormat(DateTimeFormatter dateFormat) {
+        this.dateFormat = dateFormat;
+    }
+
+    // The CSV field delimiter, a comma by default.
+    public void setDelimiter(char delimiter) {
+        this.delimiter = delimiter;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Imports the tasks of the given source, which is read to the end but not closed.
+     * Must be called on the thread that owns the services.
+     *
+     * @return The counts of imported and rejected records
+     * @throws IOException if the source cannot be read; the batches before stay imported
+     */
+    public Report importFrom(Reader source, ImportFormat format) throws IOException {
+        RecordReader records = format.open(source, delimiter);
+        BlockingQueue<Item> queue = new ArrayBlockingQueue<>(batchSize);
+        Thread reader = new Thread(() -> parse(records, queue), "task-import-reader");
+        reader.setDaemon(true);
+        reader.start();
+
+        Report report = new Report();
+        List<Row> batch = new ArrayList<>(Math.min(batchSize, 10_000));
+        try {
+            Item item;
+            while ((item = queue.take()) != Item.END) {
+                if (item.failure instanceof IOException) {
+                    throw (IOException) item.failure;
+                } else if (item.failure != null) {
+                    throw (RuntimeException) item.failure;
+                } else if (item.error != null) {
+                    report.failed++;
+                    listener.recordFailed(item.position, item.error);
+                } else {
+                    batch.add(item.row);
+                    if (batch.size() == batchSize) {
+                        commit(batch, report);
+                        batch.clear();
+                    }
+                }
+            }
+            commit(batch, report);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Import interrupted");
+        } finally {
+            // Stops the reader if the import ended early.
+            reader.interrupt();
+            report.endNanos = System.nanoTime();
+        }
+        return report;
+    }
+
+    private void parse(RecordReader records, BlockingQueue<Item> queue) {
+        try {
+            try {
+                while (true) {
+                    Row row;
+                    try {
+                        Map<String, String> record = records.next();
+                        if (record == null) {
+                            break;
+                        }
+                        row = toRow(record);
+                    } catch (IllegalArgumentException e) {
+                        queue.put(new Item(records.position(), null, e.getMessage(), null));
+                        continue;
+                    }
+                    queue.put(new Item(records.position(), row, null, null));
+                }
+                queue.put(Item.END);
+            } catch (IOException | RuntimeException e) {
+                queue.put(new Item(records.position(), null, null, e));
+            }
+        } catch (InterruptedException e) {
+            // The import ended early; nobody is waiting for more.
+        }
+    }
+
+    private Row toRow(Map<String, String> record) {
+        Row row = new Row();
+        row.title = mapping.value("title", record);
+        if (row.title == null) {
+            throw new IllegalArgumentException("No title");
+        }
+        String deadline = mapping.value("deadline", record);
+        if (deadline == null) {
+            throw new IllegalArgumentException("No deadline");
+        }
+        row.deadline = parseDate(deadline, "deadline");
+        row.category = mapping.value("category", record);
+        if (row.category == null) {
+            row.category = defaultCategory;
+            if (row.category == null) {
+                throw new IllegalArgumentException("No category");
+            }
+        }
+        row.description = mapping.value("description", record);
+        row.priority = mapping.value("priority", record);
+        String status = mapping.value("status", record);
+        if (status != null) {
+            row.status = STATUS_NAMES.get(FieldMapping.normalize(status));
+            if (row.status == null) {
+                throw new IllegalArgumentException("Unknown status " + status);
+            }
+        }
+        String completedAt = mapping.value("completedAt", record);
+        if (completedAt != null) {
+            row.completedAt = parseDate(completedAt, "completion date");
+        }
+        return row;
+    }
+
+    private LocalDate parseDate(String text, String field) {
+        if (dateFormat != null) {
+            try {
+                return LocalDate.parse(text, dateFormat);
+            } catch (DateTimeParseException e) {
+                // Try the standard forms.
+            }
+        }
+        try {
+            if (text.length() >= 10 && text.charAt(4) == '-') {
+                return LocalDate.parse(text.substring(0, 10));
+            }
+            if (text.length() >= 8 && text.substring(0, 8).chars().allMatch(Character::isDigit)) {
+                return LocalDate.parse(text.substring(0, 8), DateTimeFormatter.BASIC_ISO_DATE);
+            }
+        } catch (DateTimeParseException e) {
+            // Reported below.
+        }
+        throw new IllegalArgumentException("Invalid " + field + " " + text);
+    }
+
+    // Adds a batch as one transaction and one undo step, creating the categories and levels it names first.
+    private void commit(List<Row> batch, Report report) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        Set<String> categoryNames = new LinkedHashSet<>();
+        Set<String> priorityNames = new LinkedHashSet<>();
+        for (Row row : batch) {
+            categoryNames.add(row.category);
+            if (row.priority != null) {
+                priorityNames.add(row.priority);
+            }
+        }
+        PriorityService priorityService = services.getPriorityService();
+        services.getPersistenceService().inTransaction(() -> services.getUndoManager().run("Import Tasks", () -> {
+            Map<String, Category> categories = services.getCategoryService().resolveCategories(categoryNames);
+            Map<String, PriorityLevel> priorities = priorityService.resolvePriorityLevels(priorityNames);
+            List<Task> tasks = new ArrayList<>(batch.size());
+            for (Row row : batch) {
+                Task task = new Task(row.title, row.description, categories.get(row.category),
+                        row.priority != null ? priorities.get(row.priority) : priorityService.getDefaultPriorityLevel(),
+                        row.deadline);
+                if (row.status != null) {
+                    task.setStatus(row.status);
+                }
+                task.setCompletedAt(row.completedAt);
+                tasks.add(task);
+            }
+            services.getTaskService().createTasks(tasks);
+        }));
+        report.imported += batch.size();
+        report.batches++;
+        listener.batchCommitted(report);
+    }
+}
@@ -1,8 +1,15 @@
 package com.medialab.tasksystem.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.util.Map;
+import java.util.Set;
+
 public class Category {
     private String id;
     private String name;
+    @JsonIgnore
+    private final FieldChanges changes = new FieldChanges();
 
     // Default constructor for Jackson
     public Category() {
@@ -28,9 +35,38 @@ public class Category {
     }
 
     public void setName(String name) {
+        changes.record("name", this.name, name);
         this.name = name;
     }
 
+    // The previous values of the fields changed since the last call.
+    public Map<String, Object> takeChanges() {
+        return changes.take();
+    }
+
+    // Goes up by one every time the entity is saved.
+    public long getVersion() {
+        return changes.getVersion();
+    }
+
+    public void setVersion(long version) {
+        changes.setVersion(version);
+    }
+
+    public void nextVersion() {
+        changes.nextVersion();
+    }
+
+    // The fields changed after the given version, or null if that is before the entity was loaded.
+    public Set<String> changedSince(long version) {
+        return changes.changedSince(version);
+    }
+
+    // Forgets the entity's changes, e.g. once it has been loaded.
+    public void resetChanges() {
+        changes.reset();
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
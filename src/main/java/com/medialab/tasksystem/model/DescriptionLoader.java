@@ -0,0 +1,9 @@
+package com.medialab.tasksystem.model;
+
+/**
+ * Reads a task description that is stored outside tasks.json.
+ */
+@FunctionalInterface
+public interface DescriptionLoader {
+    String load(int file, long offset, int length);
+}
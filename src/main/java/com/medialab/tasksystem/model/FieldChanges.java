@@ -0,0 +1,91 @@
+package com.medialab.tasksystem.model;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Remembers the value each field had before it was first changed, until the changes are
+ * taken. Entities are edited in place, so this is how services learn what an edit
+ * replaced (e.g. to undo it) without keeping a copy of every entity.
+ * <p>
+ * Also holds the entity's version, which goes up by one every time the entity is saved,
+ * and the version in which each field last changed, so that an update based on an older
+ * version can tell whether it touches a field someone else has changed since.
+ * </p>
+ */
+public class FieldChanges {
+    private Map<String, Object> originals;
+    private long version;
+    // changedSince() can only answer for versions from here on; older changes are not tracked.
+    private long trackedFrom;
+    // The version each field's last change was (or, until saved, will be) saved as.
+    private Map<String, Long> changedIn;
+
+    public void record(String field, Object oldValue, Object newValue) {
+        if (!Objects.equals(oldValue, newValue)) {
+            if (originals == null) {
+                originals = new HashMap<>(4);
+            }
+            originals.putIfAbsent(field, oldValue);
+            if (changedIn == null) {
+                changedIn = new HashMap<>(4);
+            }
+            changedIn.put(field, version + 1);
+        }
+    }
+
+    /**
+     * Returns the original values of the fields changed since the last call and forgets them.
+     * A field changed and then changed back is still included.
+     */
+    public Map<String, Object> take() {
+        Map<String, Object> taken = originals != null ? originals : Map.of();
+        originals = null;
+        return taken;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    // The entity was saved: its pending field changes now belong to the new version.
+    public void nextVersion() {
+        version++;
+    }
+
+    /**
+     * Forgets pending and past changes, e.g. once an entity has been loaded: its
+     * history starts at its current version.
+     */
+    public void reset() {
+        originals = null;
+        changedIn = null;
+        trackedFrom = version;
+    }
+
+    /**
+     * The fields changed in versions after the given one, or null if that is further back
+     * than this entity's changes are known.
+     */
+    public Set<String> changedSince(long since) {
+        if (since < trackedFrom) {
+            return null;
+        }
+        Set<String> fields = new HashSet<>();
+        if (changedIn != null) {
+            changedIn.forEach((field, changedVersion) -> {
+                if (changedVersion > since) {
+                    fields.add(field);
+                }
+            });
+        }
+        return fields;
+    }
+}
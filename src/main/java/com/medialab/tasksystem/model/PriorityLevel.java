@@ -1,28 +1,67 @@
 package com.medialab.tasksystem.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.util.Map;
+import java.util.Set;
+
 public class PriorityLevel {
     private String id;
     private String name;
     private boolean isDefault;
+    private int weight;   // Relative importance; higher weights rank first
+    @JsonIgnore
+    private final FieldChanges changes = new FieldChanges();
 
     public PriorityLevel() {
         this.id = java.util.UUID.randomUUID().toString();
     }
 
     public PriorityLevel(String name, boolean isDefault) {
+        this(name, isDefault, 0);
+    }
+
+    public PriorityLevel(String name, boolean isDefault, int weight) {
         this();
         this.name = name;
         this.isDefault = isDefault;
+        this.weight = weight;
     }
 
     public String getId() { return id; }
     public void setId(String id) { this.id = id; }
 
     public String getName() { return name; }
-    public void setName(String name) { this.name = name; }
+    public void setName(String name) {
+        changes.record("name", this.name, name);
+        this.name = name;
+    }
 
     public boolean isDefault() { return isDefault; }
-    public void setDefault(boolean isDefault) { this.isDefault = isDefault; }
+    public void setDefault(boolean isDefault) {
+        changes.record("default", this.isDefault, isDefault);
+        this.isDefault = isDefault;
+    }
+
+    public int getWeight() { return weight; }
+    public void setWeight(int weight) {
+        changes.record("weight", this.weight, weight);
+        this.weight = weight;
+    }
+
+    // The previous values of the fields changed since the last call.
+    public Map<String, Object> takeChanges() { return changes.take(); }
+
+    // Goes up by one every time the level is saved.
+    public long getVersion() { return changes.getVersion(); }
+    public void setVersion(long version) { changes.setVersion(version); }
+    public void nextVersion() { changes.nextVersion(); }
+
+    // The fields changed after the given version, or null if that is before the level was loaded.
+    public Set<String> changedSince(long version) { return changes.changedSince(version); }
+
+    // Forgets the level's changes, e.g. once it has been loaded.
+    public void resetChanges() { changes.reset(); }
 
     @Override
     public String toString() {
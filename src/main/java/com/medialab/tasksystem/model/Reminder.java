@@ -1,13 +1,21 @@
 package com.medialab.tasksystem.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.Set;
 
 public class Reminder {
     private String id;
     private String taskId;  // Store only the ID to avoid circular reference
     private ReminderType type;
     private LocalDate reminderDate;
-
+    private LocalDateTime firedAt;   // When the reminder was delivered, null while pending
+    private boolean acknowledged;
+    @JsonIgnore
+    private final FieldChanges changes = new FieldChanges();
 
     public Reminder() {
         this.id = java.util.UUID.randomUUID().toString();
@@ -42,6 +50,7 @@ public class Reminder {
     }
 
     public void setType(ReminderType type) {
+        changes.record("type", this.type, type);
         this.type = type;
     }
 
@@ -50,9 +59,61 @@ public class Reminder {
     }
 
     public void setReminderDate(LocalDate reminderDate) {
+        changes.record("reminderDate", this.reminderDate, reminderDate);
         this.reminderDate = reminderDate;
     }
 
+    public LocalDateTime getFiredAt() {
+        return firedAt;
+    }
+
+    public void setFiredAt(LocalDateTime firedAt) {
+        changes.record("firedAt", this.firedAt, firedAt);
+        this.firedAt = firedAt;
+    }
+
+    public boolean isAcknowledged() {
+        return acknowledged;
+    }
+
+    public void setAcknowledged(boolean acknowledged) {
+        changes.record("acknowledged", this.acknowledged, acknowledged);
+        this.acknowledged = acknowledged;
+    }
+
+    // The previous values of the fields changed since the last call.
+    public Map<String, Object> takeChanges() {
+        return changes.take();
+    }
+
+    // Goes up by one every time the entity is saved.
+    public long getVersion() {
+        return changes.getVersion();
+    }
+
+    public void setVersion(long version) {
+        changes.setVersion(version);
+    }
+
+    public void nextVersion() {
+        changes.nextVersion();
+    }
+
+    // The fields changed after the given version, or null if that is before the entity was loaded.
+    public Set<String> changedSince(long version) {
+        return changes.changedSince(version);
+    }
+
+    // Forgets the entity's changes, e.g. once it has been loaded.
+    public void resetChanges() {
+        changes.reset();
+    }
+
+    @JsonIgnore
+    public boolean isFired() {
+        return firedAt != null;
+    }
+
     @Override
     public String toString() {
         String typeStr = type != null ? type.toString() : "Unknown";
@@ -1,10 +1,27 @@
 package com.medialab.tasksystem.model;
 
+import java.time.Period;
+
 public enum ReminderType {
-    ONE_DAY_BEFORE,
-    ONE_WEEK_BEFORE,
-    ONE_MONTH_BEFORE,
-    CUSTOM_DATE;
+    ONE_DAY_BEFORE(Period.ofDays(1)),
+    ONE_WEEK_BEFORE(Period.ofWeeks(1)),
+    ONE_MONTH_BEFORE(Period.ofMonths(1)),
+    CUSTOM_DATE(null);
+
+    // How long before the deadline a relative reminder falls; null for fixed dates.
+    private final Period offset;
+
+    ReminderType(Period offset) {
+        this.offset = offset;
+    }
+
+    public Period getOffset() {
+        return offset;
+    }
+
+    public boolean isRelative() {
+        return offset != null;
+    }
 
     @Override
     public String toString() {
@@ -1,20 +1,33 @@
 package com.medialab.tasksystem.model;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
 
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 
 public class Task {
     private String id;
     private String title;
-    private String description;
+    private String description;      // Only kept in memory until it is written out of line
+    private int descriptionFile = -1; // Out-of-line location of the description, if stored
+    private long descriptionOffset;
+    private int descriptionLength;
     private Category category;
     private PriorityLevel priority;
     private LocalDate deadline;
     private TaskStatus status;
+    private LocalDate completedAt;   // Set when the task is marked completed; used for archiving
     private List<Reminder> reminders;
+    @JsonIgnore
+    private DescriptionLoader descriptionLoader;
+    @JsonIgnore
+    private final FieldChanges changes = new FieldChanges();
 
 
     public Task() {
@@ -47,15 +60,108 @@ public class Task {
     }
 
     public void setTitle(String title) {
+        changes.record("title", this.title, title);
         this.title = title;
     }
 
+    // Loads the description on demand when it is stored out of line.
+    @JsonIgnore
     public String getDescription() {
-        return description;
+        if (description != null || descriptionFile < 0 || descriptionLoader == null) {
+            return description;
+        }
+        return descriptionLoader.load(descriptionFile, descriptionOffset, descriptionLength);
     }
 
+    @JsonProperty("description")
     public void setDescription(String description) {
+        if (hasStoredDescription() && descriptionLoader != null && Objects.equals(description, getDescription())) {
+            return; // Unchanged; keep the stored copy
+        }
+        changes.record("description", getDescription(), description);
         this.description = description;
+        this.descriptionFile = -1;
+    }
+
+    // The description text that has not been written out of line yet; only this is saved in tasks.json.
+    @JsonProperty("description")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public String getInlineDescription() {
+        return description;
+    }
+
+    @JsonIgnore
+    public boolean hasStoredDescription() {
+        return descriptionFile >= 0;
+    }
+
+    public int getDescriptionFile() {
+        return descriptionFile;
+    }
+
+    public long getDescriptionOffset() {
+        return descriptionOffset;
+    }
+
+    public int getDescriptionLength() {
+        return descriptionLength;
+    }
+
+    // Records where the description was written and drops the in-memory copy.
+    public void setStoredDescription(int file, long offset, int length, DescriptionLoader loader) {
+        this.description = null;
+        this.descriptionFile = file;
+        this.descriptionOffset = offset;
+        this.descriptionLength = length;
+        this.descriptionLoader = loader;
+    }
+
+    // Copies a stored description back into memory, e.g. before the task leaves the live list and the store may drop it.
+    public void loadDescriptionInline() {
+        if (hasStoredDescription()) {
+            this.description = getDescription();
+            this.descriptionFile = -1;
+        }
+    }
+
+    /**
+     * Returns the previous values of the fields changed since the last call (by field
+     * name, e.g. "title") and starts tracking afresh.
+     */
+    public Map<String, Object> takeChanges() {
+        return changes.take();
+    }
+
+    // Goes up by one every time the entity is saved.
+    public long getVersion() {
+        return changes.getVersion();
+    }
+
+    public void setVersion(long version) {
+        changes.setVersion(version);
+    }
+
+    public void nextVersion() {
+        changes.nextVersion();
+    }
+
+    // The fields changed after the given version, or null if that is before the entity was loaded.
+    public Set<String> changedSince(long version) {
+        return changes.changedSince(version);
+    }
+
+    // Forgets the entity's changes, e.g. once it has been loaded.
+    public void resetChanges() {
+        changes.reset();
+    }
+
+    @JsonIgnore
+    public DescriptionLoader getDescriptionLoader() {
+        return descriptionLoader;
+    }
+
+    public void attachDescriptionLoader(DescriptionLoader loader) {
+        this.descriptionLoader = loader;
     }
 
     public Category getCategory() {
@@ -63,6 +169,7 @@ public class Task {
     }
 
     public void setCategory(Category category) {
+        changes.record("category", this.category, category);
         this.category = category;
     }
 
@@ -71,6 +178,7 @@ public class Task {
     }
 
     public void setPriority(PriorityLevel priority) {
+        changes.record("priority", this.priority, priority);
         this.priority = priority;
     }
 
@@ -79,6 +187,7 @@ public class Task {
     }
 
     public void setDeadline(LocalDate deadline) {
+        changes.record("deadline", this.deadline, deadline);
         this.deadline = deadline;
     }
 
@@ -87,9 +196,19 @@ public class Task {
     }
 
     public void setStatus(TaskStatus status) {
+        changes.record("status", this.status, status);
         this.status = status;
     }
 
+    public LocalDate getCompletedAt() {
+        return completedAt;
+    }
+
+    public void setCompletedAt(LocalDate completedAt) {
+        changes.record("completedAt", this.completedAt, completedAt);
+        this.completedAt = completedAt;
+    }
+
     public List<Reminder> getReminders() {
         return reminders;
     }
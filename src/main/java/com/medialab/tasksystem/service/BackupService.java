@@ -0,0 +1,181 @@
+package com.medialab.tasksystem.service;
+
+import com.medialab.tasksystem.service.SnapshotStore.CapturedFile;
+import com.medialab.tasksystem.service.SnapshotStore.FileEntry;
+import com.medialab.tasksystem.service.SnapshotStore.Manifest;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Takes periodic snapshots of a workspace into its {@link SnapshotStore} (the backups/
+ * subdirectory).
+ * <p>
+ * Capturing runs on the owner executor, where nothing else writes: pending data is
+ * flushed, files whose size and modification time match the previous snapshot are
+ * skipped, and changed files are copied into a staging directory, a copy the operating
+ * system makes without the data passing through the heap. Reading the copies, chunking,
+ * hashing and writing the chunks then happen on the backup thread. With shared storage
+ * the capture holds the workspace lock, so other processes do not write the journal
+ * while it is copied.
+ * </p>
+ */
+public class BackupService {
+    private static final Logger LOGGER = Logger.getLogger(BackupService.class.getName());
+    public static final String BACKUP_DIR = "backups";
+    public static final Duration DEFAULT_INTERVAL = Duration.ofMinutes(5);
+    // One day of snapshots at the default interval; older ones are pruned an hour's worth at a time.
+    private static final int MAX_SNAPSHOTS = 288;
+    private static final int PRUNE_BATCH = 12;
+
+    private final DataPersistenceService persistenceService;
+    private final File workspaceDir;
+    private final SnapshotStore snapshotStore;
+    private final Executor ownerExecutor;
+    private final Duration interval;
+    private final ScheduledExecutorService scheduler;
+    // The files of the last stored snapshot by name; written on the backup thread, read when capturing.
+    private volatile Map<String, FileEntry> lastEntries;
+
+    public BackupService(DataPersistenceService persistenceService, Executor ownerExecutor) {
+        this(persistenceService, ownerExecutor, DEFAULT_INTERVAL);
+    }
+
+    public BackupService(DataPersistenceService persistenceService, Executor ownerExecutor, Duration interval) {
+        this.persistenceService = persistenceService;
+        this.workspaceDir = persistenceService.getBaseDir();
+        this.snapshotStore = persistenceService.getSnapshotStore();
+        this.ownerExecutor = ownerExecutor;
+        this.interval = interval;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "workspace-backup");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public void start() {
+        snapshotStore.deleteAbandonedStaging();
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                // Already on the backup thread: only the capture is handed to the owner.
+                store(CompletableFuture.supplyAsync(this::capture, ownerExecutor).join());
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Scheduled backup of " + workspaceDir + " failed", e);
+            }
+        }, interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    public void stop() {
+        scheduler.shutdown();
+    }
+
+    public SnapshotStore getSnapshotStore() {
+        return snapshotStore;
+    }
+
+    /**
+     * Takes a snapshot now. May be called from any thread; completes on the backup thread.
+     */
+    public CompletableFuture<Manifest> backupNow() {
+        return CompletableFuture.supplyAsync(this::capture, ownerExecutor)
+                .thenApplyAsync(this::store, scheduler);
+    }
+
+    // Runs on the owner executor, so this process does not modify the files while they are copied.
+    private Capture capture() {
+        // Other processes sharing the workspace are kept out by its lock.
+        return persistenceService.getWorkspaceLock().callExclusive(this::captureLocked);
+    }
+
+    private Capture captureLocked() {
+        persistenceService.saveAll();
+        Map<String, FileEntry> previous = lastEntries;
+        if (previous == null) {
+            previous = new HashMap<>();
+            Manifest latest = snapshotStore.latest();
+            if (latest != null) {
+                for (FileEntry entry : latest.files) {
+                    previous.put(entry.name, entry);
+                }
+            }
+        }
+        File[] files = workspaceDir.listFiles(file -> file.isFile() && isBackedUp(file.getName()));
+        if (files == null) {
+            throw new UncheckedIOException(new IOException("Cannot list " + workspaceDir));
+        }
+        Arrays.sort(files);
+        Capture capture = new Capture(snapshotStore.createStagingDir(), new ArrayList<>(files.length));
+        long copiedBytes = 0;
+        try {
+            for (File file : files) {
+                long size = file.length();
+                long lastModified = file.lastModified();
+                FileEntry entry = previous.get(file.getName());
+                if (entry != null && entry.size == size && entry.lastModified == lastModified) {
+                    capture.files.add(new CapturedFile(file.getName(), size, lastModified, null, entry));
+                    continue;
+                }
+                File staged = new File(capture.stagingDir, file.getName());
+                Files.copy(file.toPath(), staged.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                copiedBytes += staged.length();
+                capture.files.add(new CapturedFile(file.getName(), staged.length(), lastModified, staged, null));
+            }
+        } catch (IOException e) {
+            snapshotStore.deleteStagingDir(capture.stagingDir);
+            throw new UncheckedIOException("Failed to copy " + workspaceDir + " for backup", e);
+        }
+        LOGGER.fine("Staged " + copiedBytes + " changed bytes of " + workspaceDir + " for backup");
+        return capture;
+    }
+
+    private Manifest store(Capture capture) {
+        Manifest manifest;
+        try {
+            manifest = snapshotStore.save(capture.files);
+        } finally {
+            snapshotStore.deleteStagingDir(capture.stagingDir);
+        }
+        Map<String, FileEntry> entries = new HashMap<>();
+        manifest.files.forEach(entry -> entries.put(entry.name, entry));
+        lastEntries = entries;
+        LOGGER.info(String.format("Backed up %s as snapshot %s (%d new bytes)",
+                workspaceDir.getName(), manifest.id, manifest.newChunkBytes));
+        if (snapshotStore.count() > MAX_SNAPSHOTS + PRUNE_BATCH) {
+            snapshotStore.prune(MAX_SNAPSHOTS);
+        }
+        return manifest;
+    }
+
+    // The files of one snapshot, with the copies of the changed ones in the staging directory.
+    private static final class Capture {
+        final File stagingDir;
+        final List<CapturedFile> files;
+
+        Capture(File stagingDir, List<CapturedFile> files) {
+            this.stagingDir = stagingDir;
+            this.files = files;
+        }
+    }
+
+    // Temporary files and the database's lock and trace files are not part of the data.
+    private static boolean isBackedUp(String name) {
+        return !name.endsWith(".tmp") && !name.endsWith(".lock.db") && !name.endsWith(".trace.db");
+    }
+}
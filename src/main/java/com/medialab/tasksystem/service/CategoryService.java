@@ -1,16 +1,26 @@
 package com.medialab.tasksystem.service;
 
+import com.medialab.tasksystem.audit.AuditAction;
+import com.medialab.tasksystem.audit.AuditLog;
+import com.medialab.tasksystem.exceptions.VersionConflictException;
 import com.medialab.tasksystem.model.Category;
+import com.medialab.tasksystem.model.Task;
 import java.util.*;
+import java.util.stream.Collectors;
 
 public class CategoryService {
     private final Map<String, Category> categories = new HashMap<>();
     private final DataPersistenceService persistenceService;
     private final TaskService taskService;
+    private final UndoManager undoManager;
+    private final AuditLog auditLog;
 
-    public CategoryService(DataPersistenceService persistenceService, TaskService taskService) {
+    public CategoryService(DataPersistenceService persistenceService, TaskService taskService,
+                           UndoManager undoManager) {
         this.persistenceService = persistenceService;
         this.taskService = taskService;
+        this.undoManager = undoManager;
+        this.auditLog = persistenceService.getAuditLog();
         loadCategories();
     }
 
@@ -30,35 +40,115 @@ public class CategoryService {
             persistenceService.saveCategories(cats);
         }
 
+        cats.forEach(Category::resetChanges);
         cats.forEach(category -> categories.put(category.getId(), category));
     }
 
-    private void saveCategories() {
-        persistenceService.saveCategories(new ArrayList<>(categories.values()));
-    }
-
     public Category createCategory(String name) {
-        Category category = new Category(name);
-        categories.put(category.getId(), category);
-        saveCategories();
-        return category;
+        return undoManager.call("Create Category", () -> {
+            Category category = new Category(name);
+            add(category);
+            undoManager.record(new CategoryEdit(category, true));
+            return category;
+        });
     }
 
     public void updateCategory(Category category) {
-        categories.put(category.getId(), category);
-        saveCategories();
+        undoManager.run("Rename Category", () -> {
+            Map<String, Object> before = category.takeChanges();
+            if (before.containsKey("name")) {
+                undoManager.record(new CategoryRenamed(category, (String) before.get("name"), category.getName()));
+            }
+            categories.put(category.getId(), category);
+            // A rename changes the sort and search keys of the category's tasks
+            taskService.refreshIndexes(taskService.getTasksByCategory(category));
+            persistenceService.saveCategory(category);
+            auditLog.record(AuditAction.CATEGORY_UPDATED, category.getId(), AuditLog.fieldMask(before.keySet()));
+        });
+    }
+
+    /**
+     * Renames a category if its name was not changed since the version the caller last saw.
+     *
+     * @throws IllegalArgumentException if there is no such category
+     * @throws VersionConflictException if the name was changed since the expected version
+     */
+    public Category updateCategory(String categoryId, long expectedVersion, String name) {
+        Category category = categories.get(categoryId);
+        if (category == null) {
+            throw new IllegalArgumentException("Category not found: " + categoryId);
+        }
+        VersionCheck.check("Category", categoryId, expectedVersion, category.getVersion(),
+                category.changedSince(expectedVersion), Map.of("name", name), Map.of("name", category.getName()));
+        if (!name.equals(category.getName())) {
+            category.setName(name);
+            updateCategory(category);
+        }
+        return category;
     }
 
+    // Deletes the category together with all of its tasks and their reminders, as one undo step.
     public void deleteCategory(String categoryId) {
         Category category = categories.get(categoryId);
         if (category != null) {
-            // Delete all tasks in this category
-            taskService.getTasksByCategory(category)
-                    .forEach(task -> taskService.deleteTask(task.getId()));
+            undoManager.run("Delete Category", () -> {
+                persistenceService.inTransaction(() -> {
+                    taskService.deleteTasks(taskService.getTasksByCategory(category).stream()
+                            .map(Task::getId)
+                            .collect(Collectors.toList()));
+                    remove(category);
+                });
+                undoManager.record(new CategoryEdit(category, false));
+            });
+        }
+    }
 
-            categories.remove(categoryId);
-            saveCategories();
+    /**
+     * Brings the categories up to date with changes made elsewhere, without recording them
+     * for undo. Changes another process saved to a shared store are not saved again, and a
+     * stored category no newer than the one held here is skipped; replicated changes
+     * ({@code save}) always apply and are saved.
+     */
+    void applyStoredChanges(SharedStorageBackend.EntityChanges<Category> changes, boolean save) {
+        for (Category stored : changes.getUpserts()) {
+            Category category = categories.get(stored.getId());
+            if (category == null) {
+                stored.resetChanges();
+                categories.put(stored.getId(), stored);
+                if (save) {
+                    persistenceService.saveCategory(stored);
+                }
+                auditLog.record(AuditAction.CATEGORY_CREATED, stored.getId());
+            } else if (save || stored.getVersion() > category.getVersion()) {
+                boolean renamed = !Objects.equals(stored.getName(), category.getName());
+                if (save) {
+                    category.setName(stored.getName());
+                    category.takeChanges();
+                    if (renamed) {
+                        persistenceService.saveCategory(category);
+                    }
+                } else {
+                    category.setVersion(stored.getVersion() - 1);
+                    category.setName(stored.getName());
+                    category.takeChanges();
+                    category.setVersion(stored.getVersion());
+                }
+                if (renamed) {
+                    taskService.reindexAll(taskService.getTasksByCategory(category));
+                    auditLog.record(AuditAction.CATEGORY_UPDATED, category.getId(), AuditLog.fieldMask(Set.of("name")));
+                }
+            }
         }
+        changes.getDeletions().forEach((id, version) -> {
+            Category category = categories.get(id);
+            if (category != null && category.getVersion() <= version) {
+                categories.remove(id);
+                if (save) {
+                    persistenceService.deleteCategory(id);
+                }
+                auditLog.record(AuditAction.CATEGORY_DELETED, id);
+            }
+        });
     }
 
     public List<Category> getAllCategories() {
@@ -68,4 +158,122 @@ public class CategoryService {
     public Category getCategoryById(String id) {
         return categories.get(id);
     }
-}
\ No newline at end of file
+
+    /**
+     * Looks up categories by name, ignoring case, and creates the missing ones as one
+     * batch: they are saved together and are a single undo step.
+     *
+     * @param names The category names, e.g. those found in an import
+     * @return The category for each given name
+     */
+    public Map<String, Category> resolveCategories(Collection<String> names) {
+        Map<String, Category> byName = new HashMap<>();
+        categories.values().forEach(category -> byName.putIfAbsent(key(category.getName()), category));
+        Map<String, Category> resolved = new HashMap<>();
+        List<Category> created = new ArrayList<>();
+        for (String name : names) {
+            Category category = byName.computeIfAbsent(key(name), k -> {
+                Category newCategory = new Category(name.trim());
+                created.add(newCategory);
+                return newCategory;
+            });
+            resolved.put(name, category);
+        }
+        if (!created.isEmpty()) {
+            undoManager.run(created.size() == 1 ? "Create Category" : "Create Categories", () -> {
+                for (Category category : created) {
+                    categories.put(category.getId(), category);
+                    auditLog.record(AuditAction.CATEGORY_CREATED, category.getId());
+                    undoManager.record(new CategoryEdit(category, true));
+                }
+                persistenceService.saveCategories(created);
+            });
+        }
+        return resolved;
+    }
+
+    private static String key(String name) {
+        return name.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private void add(Category category) {
+        categories.put(category.getId(), category);
+        persistenceService.saveCategory(category);
+        auditLog.record(AuditAction.CATEGORY_CREATED, category.getId());
+    }
+
+    private void remove(Category category) {
+        categories.remove(category.getId());
+        persistenceService.deleteCategory(category.getId());
+        auditLog.record(AuditAction.CATEGORY_DELETED, category.getId());
+    }
+
+    // A category that was created (undo removes it) or deleted (undo puts it back).
+    private final class CategoryEdit implements UndoManager.Edit {
+        private final Category category;
+        private final boolean created;
+
+        private CategoryEdit(Category category, boolean created) {
+            this.category = category;
+            this.created = created;
+        }
+
+        @Override
+        public void undo() {
+            if (created) {
+                remove(category);
+            } else {
+                add(category);
+            }
+        }
+
+        @Override
+        public void redo() {
+            if (created) {
+                add(category);
+            } else {
+                remove(category);
+            }
+        }
+
+        @Override
+        public long estimatedBytes() {
+            return 128;
+        }
+    }
+
+    private final class CategoryRenamed implements UndoManager.Edit {
+        private final Category category;
+        private final String oldName;
+        private final String newName;
+
+        private CategoryRenamed(Category category, String oldName, String newName) {
+            this.category = category;
+            this.oldName = oldName;
+            this.newName = newName;
+        }
+
+        @Override
+        public void undo() {
+            rename(oldName);
+        }
+
+        @Override
+        public void redo() {
+            rename(newName);
+        }
+
+        private void rename(String name) {
+            category.setName(name);
+            category.takeChanges();
+            taskService.refreshIndexes(taskService.getTasksByCategory(category));
+            persistenceService.saveCategory(category);
+            auditLog.record(AuditAction.CATEGORY_UPDATED, category.getId(), AuditLog.fieldMask(Set.of("name")));
+        }
+
+        @Override
+        public long estimatedBytes() {
+            return 64 + TaskService.estimateBytes(oldName) + TaskService.estimateBytes(newName);
+        }
+    }
+}
@@ -1,44 +1,84 @@
 package com.medialab.tasksystem.service;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.type.CollectionType;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.medialab.tasksystem.audit.AuditLog;
 import com.medialab.tasksystem.model.*;
 import java.io.File;
+import java.io.FileReader;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.io.Reader;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 public class DataPersistenceService {
     private static final Logger LOGGER = Logger.getLogger(DataPersistenceService.class.getName());
-    private static final String BASE_DIR = "medialab";
-    // Instead of a fixed TASKS_FILE, we use an instance variable:
-    private final String tasksFile;
-    private static final String CATEGORIES_FILE = "categories.json";
-    private static final String PRIORITIES_FILE = "priorities.json";
-    private static final String REMINDERS_FILE = "reminders.json";
+    /** The workspace directory used when none is given. */
+    public static final String DEFAULT_BASE_DIR = "medialab";
+    /**
+     * Optional per-workspace settings file; {@code backend=sql} selects the SQL storage backend,
+     * {@code backend=shared} the journal several processes can use at once, and
+     * {@code tasks.format=ndjson} stores tasks as newline-delimited JSON in the JSON backend;
+     * {@code replication.dir} names the directory a replicated workspace syncs through.
+     */
+    public static final String STORAGE_SETTINGS_FILE = "storage.properties";
+    /** Where each process keeps its own audit log in a shared workspace, in the first free slot. */
+    public static final String PROCESSES_DIR = "processes";
+    private static final String SLOT_PREFIX = "slot-";
+    private static final String SLOT_LOCK_FILE = "slot.lock";
+    // The slots taken by workspaces open in this process.
+    private static final Set<File> CLAIMED_SLOTS = ConcurrentHashMap.newKeySet();
 
     private final ObjectMapper objectMapper;
     private final File baseDir;
-
-    private TaskService taskService;
-    private CategoryService categoryService;
-    private PriorityService priorityService;
-    private ReminderService reminderService;
+    private final Properties settings;
+    private final StorageBackend backend;
+    private final TaskArchive taskArchive;
+    private final SnapshotStore snapshotStore;
+    private final TaskHistory taskHistory;
+    private final AuditLog auditLog;
+    // This process's slot in a shared workspace and the channel holding its lock; null otherwise.
+    private File slotDir;
+    private FileChannel slotLock;
 
     /**
-     * Constructs a DataPersistenceService with a specified tasks file.
+     * Constructs a DataPersistenceService that stores its data in the given workspace directory,
+     * using the storage backend selected by the workspace's storage.properties (JSON files by default).
      *
-     * @param tasksFile The filename (or relative path) to use for tasks.
+     * @param baseDir   The workspace directory holding the data files.
+     * @param tasksFile The filename (or relative path) to use for tasks in the JSON backend.
      */
-    public DataPersistenceService(String tasksFile) {
-        this.tasksFile = tasksFile;
+    public DataPersistenceService(File baseDir, String tasksFile) {
         this.objectMapper = new ObjectMapper();
         objectMapper.registerModule(new JavaTimeModule());
-        this.baseDir = new File(BASE_DIR);
+        this.baseDir = baseDir;
         initializeStorage();
+        this.settings = readStorageSettings();
+        this.backend = openBackend(tasksFile);
+        this.taskArchive = new TaskArchive(baseDir, objectMapper, getWorkspaceLock());
+        this.snapshotStore = new SnapshotStore(new File(baseDir, BackupService.BACKUP_DIR), objectMapper);
+        // Processes sharing the workspace append to one task history under the workspace lock.
+        this.taskHistory = new TaskHistory(baseDir, objectMapper, getWorkspaceLock());
+        // The audit log is written by one process only.
+        File logDir = isSharedStorage() ? claimProcessSlot() : baseDir;
+        this.auditLog = new AuditLog(new File(logDir, AuditLog.AUDIT_DIR));
+    }
+
+    /**
+     * Constructs a DataPersistenceService with a specified tasks file in the default workspace.
+     *
+     * @param tasksFile The filename (or relative path) to use for tasks.
+     */
+    public DataPersistenceService(String tasksFile) {
+        this(new File(DEFAULT_BASE_DIR), tasksFile);
     }
 
     /**
@@ -48,93 +88,297 @@ public class DataPersistenceService {
         this("tasks.json");
     }
 
-    public void setServices(TaskService taskService, CategoryService categoryService,
-                            PriorityService priorityService, ReminderService reminderService) {
-        this.taskService = taskService;
-        this.categoryService = categoryService;
-        this.priorityService = priorityService;
-        this.reminderService = reminderService;
-    }
-
     private void initializeStorage() {
         if (!baseDir.exists() && !baseDir.mkdirs()) {
-            LOGGER.severe("Failed to create medialab directory");
+            LOGGER.severe("Failed to create " + baseDir + " directory");
             throw new RuntimeException("Failed to create storage directory");
         }
     }
 
-    public void saveAll() {
-        try {
-            saveTasks(new ArrayList<>(taskService.getAllTasks()));
-            saveCategories(new ArrayList<>(categoryService.getAllCategories()));
-            savePriorityLevels(new ArrayList<>(priorityService.getAllPriorityLevels()));
-            saveReminders(new ArrayList<>(reminderService.getActiveReminders()));
-        } catch (Exception e) {
-            LOGGER.log(Level.SEVERE, "Failed to save all data", e);
-            throw new RuntimeException("Failed to save application data", e);
+    // A workspace switched to SQL or shared storage imports its JSON files once, when that store is first created.
+    private StorageBackend openBackend(String tasksFile) {
+        boolean ndjsonTasks = "ndjson".equalsIgnoreCase(settings.getProperty("tasks.format", "json"));
+        String kind = settings.getProperty("backend", "json");
+        StorageBackend backend;
+        boolean importJson;
+        if ("sql".equalsIgnoreCase(kind)) {
+            importJson = !SqlStorageBackend.exists(baseDir);
+            backend = new SqlStorageBackend(baseDir);
+        } else if ("shared".equalsIgnoreCase(kind)) {
+            importJson = !SharedStorageBackend.exists(baseDir);
+            backend = new SharedStorageBackend(baseDir, objectMapper);
+        } else {
+            return new JsonStorageBackend(baseDir, tasksFile, objectMapper, ndjsonTasks);
+        }
+        if (importJson) {
+            JsonStorageBackend json = new JsonStorageBackend(baseDir, tasksFile, objectMapper, ndjsonTasks);
+            backend.inTransaction(() -> {
+                backend.categories().saveChanges(json.categories().loadAll(), List.of());
+                backend.priorityLevels().saveChanges(json.priorityLevels().loadAll(), List.of());
+                backend.tasks().saveChanges(loadDescriptions(json.tasks().loadAll()), List.of());
+                backend.reminders().saveChanges(json.reminders().loadAll(), List.of());
+            });
+            LOGGER.info("Imported JSON data into the " + kind + " backend of " + baseDir);
+        }
+        return backend;
+    }
+
+    // Takes the first slot under processes/ that no running process holds, so a restarted
+    // process usually gets its slot back, and with it its audit log and event sequence.
+    // Directories that earlier versions kept per pid are removed once the process has exited.
+    private File claimProcessSlot() {
+        File processesDir = new File(baseDir, PROCESSES_DIR);
+        File[] dirs = processesDir.listFiles(File::isDirectory);
+        for (File dir : dirs != null ? dirs : new File[0]) {
+            if (dir.getName().chars().allMatch(Character::isDigit) && !isRunning(dir.getName())) {
+                deleteRecursively(dir);
+            }
+        }
+        for (int slot = 0; ; slot++) {
+            File dir = new File(processesDir, SLOT_PREFIX + slot).getAbsoluteFile();
+            // File locks do not keep the threads of one process apart; closing a second
+            // channel on a locked file could even release the lock.
+            if (!CLAIMED_SLOTS.add(dir)) {
+                continue;
+            }
+            if (!dir.exists() && !dir.mkdirs()) {
+                CLAIMED_SLOTS.remove(dir);
+                throw new RuntimeException("Failed to create " + dir);
+            }
+            FileChannel channel = null;
+            try {
+                channel = FileChannel.open(new File(dir, SLOT_LOCK_FILE).toPath(),
+                        StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                if (channel.tryLock() != null) {
+                    slotLock = channel;
+                    slotDir = dir;
+                    return dir;
+                }
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to lock " + dir, e);
+            } finally {
+                if (slotLock != channel) {
+                    CLAIMED_SLOTS.remove(dir);
+                    closeQuietly(channel, dir);
+                }
+            }
         }
     }
 
-    private <T> void saveToFile(List<T> items, String filename) {
+    private static void closeQuietly(FileChannel channel, File slotDir) {
+        if (channel == null) {
+            return;
+        }
         try {
-            File file = new File(baseDir, filename);
-            objectMapper.writeValue(file, items);
+            channel.close();
         } catch (IOException e) {
-            LOGGER.log(Level.SEVERE, "Failed to save to " + filename, e);
-            throw new RuntimeException("Failed to save data", e);
+            LOGGER.log(Level.WARNING, "Failed to close " + SLOT_LOCK_FILE + " in " + slotDir, e);
         }
     }
 
-    private <T> List<T> loadFromFile(String filename, Class<T> type) {
-        File file = new File(baseDir, filename);
-        if (!file.exists()) {
-            return new ArrayList<>();
+    private static boolean isRunning(String pid) {
+        try {
+            return ProcessHandle.of(Long.parseLong(pid)).map(ProcessHandle::isAlive).orElse(false);
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        for (File child : children != null ? children : new File[0]) {
+            deleteRecursively(child);
+        }
+        if (!file.delete()) {
+            LOGGER.warning("Failed to delete " + file);
+        }
+    }
+
+    // The JSON backend's out-of-line descriptions are read in, since other backends store their own.
+    private static List<Task> loadDescriptions(List<Task> tasks) {
+        tasks.forEach(Task::loadDescriptionInline);
+        return tasks;
+    }
+
+    private Properties readStorageSettings() {
+        Properties settings = new Properties();
+        File file = new File(baseDir, STORAGE_SETTINGS_FILE);
+        if (file.exists()) {
+            try (Reader reader = new FileReader(file)) {
+                settings.load(reader);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to read " + file + "; using JSON storage", e);
+            }
         }
+        return settings;
+    }
+
+    // A setting from the workspace's storage.properties, or null if it is not set.
+    public String getStorageSetting(String key) {
+        return settings.getProperty(key);
+    }
+
+    // The mapper used for the workspace's JSON files, with Java time support.
+    ObjectMapper getObjectMapper() {
+        return objectMapper;
+    }
+
+    public File getBaseDir() {
+        return baseDir;
+    }
+
+    public StorageBackend getBackend() {
+        return backend;
+    }
+
+    /**
+     * Whether other processes may use the workspace at the same time.
+     */
+    public boolean isSharedStorage() {
+        return backend instanceof SharedStorageBackend;
+    }
+
+    /**
+     * The lock that keeps other processes out while workspace files outside the backend
+     * are changed; a no-op unless the storage is shared.
+     */
+    public WorkspaceLock getWorkspaceLock() {
+        return isSharedStorage() ? (SharedStorageBackend) backend : WorkspaceLock.NONE;
+    }
+
+    public TaskArchive getTaskArchive() {
+        return taskArchive;
+    }
+
+    public SnapshotStore getSnapshotStore() {
+        return snapshotStore;
+    }
+
+    public TaskHistory getTaskHistory() {
+        return taskHistory;
+    }
+
+    public AuditLog getAuditLog() {
+        return auditLog;
+    }
+
+    /**
+     * Makes all data durable. Changes are written as they happen, so this only
+     * flushes what the backend buffers (e.g. folds the reminder journal into a snapshot).
+     */
+    public void saveAll() {
         try {
-            CollectionType listType = objectMapper.getTypeFactory()
-                    .constructCollectionType(ArrayList.class, type);
-            return objectMapper.readValue(file, listType);
-        } catch (IOException e) {
-            LOGGER.log(Level.SEVERE, "Failed to load from " + filename, e);
-            return new ArrayList<>();
+            backend.flush();
+            auditLog.flush();
+        } catch (Exception e) {
+            LOGGER.log(Level.SEVERE, "Failed to save all data", e);
+            throw new RuntimeException("Failed to save application data", e);
+        }
+    }
+
+    public void close() {
+        auditLog.close();
+        taskHistory.close();
+        backend.close();
+        if (slotLock != null) {
+            closeQuietly(slotLock, slotDir);
+            CLAIMED_SLOTS.remove(slotDir);
         }
     }
 
-    public void saveTasks(List<Task> tasks) {
-        // Use the configurable tasksFile.
-        saveToFile(tasks, tasksFile);
+    /**
+     * Runs the given work as one transaction of the storage backend.
+     */
+    public void inTransaction(Runnable work) {
+        backend.inTransaction(work);
     }
 
+    /**
+     * Loads the tasks; tasks not yet in the task history get their first version.
+     */
     public List<Task> loadTasks() {
-        return loadFromFile(tasksFile, Task.class);
+        List<Task> tasks = backend.tasks().loadAll();
+        taskHistory.seed(tasks);
+        return tasks;
+    }
+
+    /**
+     * Persists a task as its next version.
+     */
+    public void saveTask(Task task) {
+        task.nextVersion();
+        backend.tasks().save(task);
+        taskHistory.record(List.of(task), List.of());
     }
 
-    public void saveCategories(List<Category> categories) {
-        saveToFile(categories, CATEGORIES_FILE);
+    /**
+     * Persists changed and deleted tasks as one batch and records them in the task history.
+     * Each changed task is saved as its next version.
+     */
+    public void saveTaskChanges(Collection<Task> changed, Collection<String> deletedIds) {
+        changed.forEach(Task::nextVersion);
+        backend.tasks().saveChanges(changed, deletedIds);
+        taskHistory.record(changed, deletedIds);
+    }
+
+    /**
+     * Queries the stored tasks; null criteria match anything.
+     */
+    public List<Task> findTasks(TaskStatus status, LocalDate deadlineFrom, LocalDate deadlineTo, int limit) {
+        return backend.findTasks(status, deadlineFrom, deadlineTo, limit);
     }
 
     public List<Category> loadCategories() {
-        return loadFromFile(CATEGORIES_FILE, Category.class);
+        return backend.categories().loadAll();
     }
 
-    public void savePriorityLevels(List<PriorityLevel> priorityLevels) {
-        saveToFile(priorityLevels, PRIORITIES_FILE);
+    public void saveCategory(Category category) {
+        category.nextVersion();
+        backend.categories().save(category);
+    }
+
+    public void saveCategories(Collection<Category> categories) {
+        categories.forEach(Category::nextVersion);
+        backend.categories().saveChanges(categories, List.of());
+    }
+
+    public void deleteCategory(String categoryId) {
+        backend.categories().delete(categoryId);
     }
 
     public List<PriorityLevel> loadPriorityLevels() {
-        List<PriorityLevel> levels = loadFromFile(PRIORITIES_FILE, PriorityLevel.class);
+        List<PriorityLevel> levels = backend.priorityLevels().loadAll();
         if (levels.isEmpty()) {
             // Initialize with default priority level
-            levels.add(new PriorityLevel("Default", true));
+            levels.add(new PriorityLevel("Default", true, PriorityService.defaultWeightFor("Default")));
+            savePriorityLevels(levels);
         }
         return levels;
     }
 
-    public void saveReminders(List<Reminder> reminders) {
-        saveToFile(reminders, REMINDERS_FILE);
+    public void savePriorityLevel(PriorityLevel priorityLevel) {
+        priorityLevel.nextVersion();
+        backend.priorityLevels().save(priorityLevel);
+    }
+
+    public void savePriorityLevels(Collection<PriorityLevel> priorityLevels) {
+        priorityLevels.forEach(PriorityLevel::nextVersion);
+        backend.priorityLevels().saveChanges(priorityLevels, List.of());
+    }
+
+    public void deletePriorityLevel(String priorityLevelId) {
+        backend.priorityLevels().delete(priorityLevelId);
+    }
+
+    /**
+     * Persists changed and deleted reminders as one batch, each changed one as its next version.
+     */
+    public void saveReminderChanges(List<Reminder> changed, List<String> deletedIds) {
+        changed.forEach(Reminder::nextVersion);
+        backend.reminders().saveChanges(changed, deletedIds);
     }
 
     public List<Reminder> loadReminders() {
-        return loadFromFile(REMINDERS_FILE, Reminder.class);
+        return backend.reminders().loadAll();
     }
 }
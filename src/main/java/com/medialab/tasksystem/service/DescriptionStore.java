@@ -0,0 +1,293 @@
+package com.medialab.tasksystem.service;
+
+import com.medialab.tasksystem.model.Task;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Stores task descriptions outside tasks.json, in append-only files addressed by offset.
+ * <p>
+ * Tasks only keep a (file, offset, length) reference; the text is read on demand and
+ * held in an LRU cache bounded by the total number of cached characters. Edited
+ * descriptions are appended on save, leaving the old bytes as garbage. Once garbage
+ * outweighs live data the live descriptions are copied into a new file generation;
+ * the old file is deleted only after tasks.json points at the new one.
+ * </p>
+ * Reads may happen on any thread; all methods are synchronized.
+ */
+public class DescriptionStore {
+    private static final Logger LOGGER = Logger.getLogger(DescriptionStore.class.getName());
+    private static final Pattern FILE_NAME = Pattern.compile("descriptions-(\\d+)\\.dat");
+    /** Default bound on the characters held by the cache (about 2 MB of heap). */
+    public static final int DEFAULT_CACHE_CHARS = 1_000_000;
+    private static final long MIN_GARBAGE_TO_COMPACT = 1_000_000;
+
+    private final File baseDir;
+    private final int maxCachedChars;
+    private final Map<Integer, FileChannel> channels = new HashMap<>();
+    private final LinkedHashMap<Long, String> cache = new LinkedHashMap<>(256, 0.75f, true);
+    private int currentFile;
+    private long cachedChars;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long loggedRequests;
+    private boolean closed;
+
+    public DescriptionStore(File baseDir, int maxCachedChars) {
+        this.baseDir = baseDir;
+        this.maxCachedChars = maxCachedChars;
+        for (int file : existingFiles()) {
+            currentFile = Math.max(currentFile, file);
+        }
+    }
+
+    /**
+     * Attaches this store to freshly loaded tasks and deletes description files that no
+     * task refers to (left behind by an interrupted compaction).
+     */
+    public synchronized void attach(Collection<Task> tasks) {
+        Set<Integer> referenced = new HashSet<>();
+        for (Task task : tasks) {
+            task.attachDescriptionLoader(this::load);
+            if (task.hasStoredDescription()) {
+                referenced.add(task.getDescriptionFile());
+            }
+        }
+        for (int file : existingFiles()) {
+            if (file != currentFile && !referenced.contains(file)) {
+                deleteFile(file);
+            }
+        }
+    }
+
+    /**
+     * Writes descriptions that are still held inline to the current file, so the task file
+     * only carries references.
+     */
+    public synchronized void writeInline(Collection<Task> tasks) {
+        try {
+            for (Task task : tasks) {
+                String text = task.getInlineDescription();
+                if (text != null) {
+                    byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+                    long offset = append(currentFile, bytes);
+                    task.setStoredDescription(currentFile, offset, bytes.length, this::load);
+                    put(key(currentFile, offset), text);
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Failed to write task descriptions", e);
+            throw new RuntimeException("Failed to save data", e);
+        }
+    }
+
+    /**
+     * Returns true once the garbage left by edits outweighs the live descriptions of the given
+     * (complete) task list, i.e. when the caller should {@link #compact} after saving.
+     */
+    public synchronized boolean shouldCompact(Collection<Task> allTasks) {
+        long live = 0;
+        for (Task task : allTasks) {
+            if (task.hasStoredDescription()) {
+                live += task.getDescriptionLength();
+            }
+        }
+        long total = 0;
+        try {
+            for (int file : existingFiles()) {
+                total += channel(file).size();
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to measure description files", e);
+            return false;
+        }
+        return total - live > Math.max(MIN_GARBAGE_TO_COMPACT, live);
+    }
+
+    /**
+     * Copies every live description into a new file generation and repoints the tasks at it.
+     * The caller must save tasks.json and then call {@link #deleteOlderFiles()}.
+     */
+    public synchronized void compact(Collection<Task> tasks) {
+        int target = currentFile + 1;
+        try {
+            for (Task task : tasks) {
+                if (task.hasStoredDescription()) {
+                    byte[] bytes = read(task.getDescriptionFile(), task.getDescriptionOffset(), task.getDescriptionLength());
+                    long offset = append(target, bytes);
+                    task.setStoredDescription(target, offset, bytes.length, this::load);
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Failed to compact task descriptions", e);
+            throw new RuntimeException("Failed to save data", e);
+        }
+        currentFile = target;
+        cache.clear(); // Keys refer to the old file
+        cachedChars = 0;
+        LOGGER.info("Compacted task descriptions into " + fileFor(target).getName());
+    }
+
+    public synchronized void deleteOlderFiles() {
+        for (int file : existingFiles()) {
+            if (file < currentFile) {
+                deleteFile(file);
+            }
+        }
+    }
+
+    // DescriptionLoader for tasks: serve from the cache, else read the bytes and cache them.
+    private synchronized String load(int file, long offset, int length) {
+        Long key = key(file, offset);
+        String text = cache.get(key);
+        if (text != null) {
+            hits++;
+            return text;
+        }
+        misses++;
+        try {
+            text = new String(read(file, offset, length), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Failed to read description from " + fileFor(file), e);
+            return null;
+        }
+        put(key, text);
+        return text;
+    }
+
+    private void put(Long key, String text) {
+        if (text.length() > maxCachedChars) {
+            return;
+        }
+        String previous = cache.put(key, text);
+        cachedChars += text.length() - (previous != null ? previous.length() : 0);
+        Iterator<Map.Entry<Long, String>> iterator = cache.entrySet().iterator();
+        while (cachedChars > maxCachedChars && iterator.hasNext()) {
+            cachedChars -= iterator.next().getValue().length();
+            iterator.remove();
+            evictions++;
+        }
+    }
+
+    public synchronized long getCachedChars() {
+        return cachedChars;
+    }
+
+    /**
+     * Logs how well the cache has served since the store was opened, if it was used since
+     * the last time this was logged.
+     */
+    public synchronized void logCacheStatistics() {
+        long requests = hits + misses;
+        if (requests > loggedRequests) {
+            LOGGER.info(String.format("Description cache of %s: %d hits, %d misses (%.1f%% hit ratio), %d evictions",
+                    baseDir, hits, misses, 100.0 * hits / requests, evictions));
+            loggedRequests = requests;
+        }
+    }
+
+    /**
+     * Closes the description files; descriptions cannot be read or written afterwards.
+     */
+    public synchronized void close() {
+        logCacheStatistics();
+        for (Map.Entry<Integer, FileChannel> entry : channels.entrySet()) {
+            try {
+                entry.getValue().close();
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to close " + fileFor(entry.getKey()), e);
+            }
+        }
+        channels.clear();
+        closed = true;
+    }
+
+    private static Long key(int file, long offset) {
+        return ((long) file << 40) | offset;
+    }
+
+    private byte[] read(int file, long offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        FileChannel channel = channel(file);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of " + fileFor(file));
+            }
+        }
+        return buffer.array();
+    }
+
+    private long append(int file, byte[] bytes) throws IOException {
+        FileChannel channel = channel(file);
+        long offset = channel.size();
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, offset + buffer.position());
+        }
+        return offset;
+    }
+
+    private FileChannel channel(int file) throws IOException {
+        FileChannel channel = channels.get(file);
+        if (channel == null) {
+            if (closed) {
+                throw new IOException("Description store of " + baseDir + " is closed");
+            }
+            channel = FileChannel.open(fileFor(file).toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            channels.put(file, channel);
+        }
+        return channel;
+    }
+
+    private File fileFor(int file) {
+        return new File(baseDir, "descriptions-" + file + ".dat");
+    }
+
+    private List<Integer> existingFiles() {
+        List<Integer> files = new ArrayList<>();
+        String[] names = baseDir.list();
+        if (names != null) {
+            for (String name : names) {
+                Matcher matcher = FILE_NAME.matcher(name);
+                if (matcher.matches()) {
+                    files.add(Integer.parseInt(matcher.group(1)));
+                }
+            }
+        }
+        return files;
+    }
+
+    private void deleteFile(int file) {
+        try {
+            FileChannel channel = channels.remove(file);
+            if (channel != null) {
+                channel.close();
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to close " + fileFor(file), e);
+        }
+        if (!fileFor(file).delete()) {
+            LOGGER.warning("Failed to delete " + fileFor(file));
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.medialab.tasksystem.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * An append-only change log for one entity type, stored next to the entity's JSON file.
+ * <p>
+ * Each line is a JSON record {@code {"op":"PUT","id":...,"value":{...}}} or
+ * {@code {"op":"DELETE","id":...}}. Changes are appended instead of rewriting the
+ * whole file; on load the journal is replayed on top of the last full snapshot, and
+ * the owner compacts it by writing a new snapshot and truncating the journal.
+ * </p>
+ *
+ * @param <T> The entity type
+ */
+class EntityJournal<T> {
+    private static final Logger LOGGER = Logger.getLogger(EntityJournal.class.getName());
+    private static final String PUT = "PUT";
+    private static final String DELETE = "DELETE";
+
+    private final File file;
+    private final ObjectMapper objectMapper;
+    private final Class<T> type;
+    private final Function<T, String> idOf;
+    private int entryCount;
+
+    EntityJournal(File file, ObjectMapper objectMapper, Class<T> type, Function<T, String> idOf) {
+        this.file = file;
+        this.objectMapper = objectMapper;
+        this.type = type;
+        this.idOf = idOf;
+    }
+
+    /**
+     * Appends a batch of changes with a single write.
+     */
+    synchronized void append(Collection<T> upserts, Collection<String> deletedIds) {
+        if (upserts.isEmpty() && deletedIds.isEmpty()) {
+            return;
+        }
+        StringBuilder lines = new StringBuilder();
+        for (T value : upserts) {
+            ObjectNode record = objectMapper.createObjectNode();
+            record.put("op", PUT);
+            record.put("id", idOf.apply(value));
+            record.set("value", objectMapper.valueToTree(value));
+            lines.append(record).append('\n');
+        }
+        for (String id : deletedIds) {
+            ObjectNode record = objectMapper.createObjectNode();
+            record.put("op", DELETE);
+            record.put("id", id);
+            lines.append(record).append('\n');
+        }
+        try {
+            Files.write(file.toPath(), lines.toString().getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            entryCount += upserts.size() + deletedIds.size();
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Failed to append to " + file.getName(), e);
+            throw new RuntimeException("Failed to save data", e);
+        }
+    }
+
+    /**
+     * Applies the journaled changes, in order, to entities loaded from the last snapshot.
+     */
+    synchronized void replay(Map<String, T> entitiesById) {
+        entryCount = 0;
+        if (!file.exists()) {
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                JsonNode record;
+                try {
+                    record = objectMapper.readTree(line);
+                } catch (IOException e) {
+                    // A torn final line from an interrupted write; everything before it is intact.
+                    LOGGER.warning("Ignoring unreadable journal record in " + file.getName());
+                    continue;
+                }
+                String id = record.path("id").asText();
+                if (PUT.equals(record.path("op").asText())) {
+                    entitiesById.put(id, objectMapper.treeToValue(record.get("value"), type));
+                } else {
+                    entitiesById.remove(id);
+                }
+                entryCount++;
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Failed to replay " + file.getName(), e);
+        }
+    }
+
+    /**
+     * Discards the journal after its changes have been written to a full snapshot.
+     */
+    synchronized void truncate() {
+        try {
+            Files.deleteIfExists(file.toPath());
+            entryCount = 0;
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Failed to truncate " + file.getName(), e);
+            throw new RuntimeException("Failed to save data", e);
+        }
+    }
+
+    synchronized int size() {
+        return entryCount;
+    }
+}
@@ -0,0 +1,35 @@
+package com.medialab.tasksystem.service;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Storage for one entity type of a {@link StorageBackend}.
+ *
+ * @param <T> The entity type
+ */
+public interface EntityStore<T> {
+
+    /**
+     * Loads every stored entity.
+     */
+    List<T> loadAll();
+
+    /**
+     * Returns the stored entity with the given id, or null.
+     */
+    T get(String id);
+
+    /**
+     * Inserts or updates the given entities and deletes the given ids as one batch.
+     */
+    void saveChanges(Collection<? extends T> upserts, Collection<String> deletedIds);
+
+    default void save(T entity) {
+        saveChanges(List.of(entity), List.of());
+    }
+
+    default void delete(String id) {
+        saveChanges(List.of(), List.of(id));
+    }
+}
@@ -0,0 +1,393 @@
+package com.medialab.tasksystem.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.type.CollectionType;
+import com.medialab.tasksystem.model.Category;
+import com.medialab.tasksystem.model.PriorityLevel;
+import com.medialab.tasksystem.model.Reminder;
+import com.medialab.tasksystem.model.Task;
+import com.medialab.tasksystem.model.TaskStatus;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * The original storage format: one JSON file per entity type in the workspace directory.
+ * <p>
+ * Each store keeps the entities it has loaded and rewrites its file on every change,
+ * except reminders, whose changes are appended to a journal that is folded into
+ * reminders.json once it outgrows the data. Task descriptions live out of line in the
+ * {@link DescriptionStore}. Tasks can instead be kept in newline-delimited JSON, where
+ * changes are appended and the file is rewritten only when superseded lines outgrow it.
+ * </p>
+ * Inside {@link #inTransaction} changes are only applied in memory and each store writes
+ * them once at the end, so a batch of changes costs one write per file instead of one
+ * per change.
+ */
+public class JsonStorageBackend implements StorageBackend {
+    private static final Logger LOGGER = Logger.getLogger(JsonStorageBackend.class.getName());
+    private static final String CATEGORIES_FILE = "categories.json";
+    private static final String PRIORITIES_FILE = "priorities.json";
+    private static final String REMINDERS_FILE = "reminders.json";
+    private static final String REMINDERS_JOURNAL_FILE = "reminders.journal";
+    // The reminder journal is compacted into a full snapshot once it has more entries than this or than there are reminders;
+    // an NDJSON task file is rewritten once it has more lines than this or than twice the number of tasks.
+    private static final int MIN_JOURNAL_COMPACTION_SIZE = 1000;
+
+    private final File baseDir;
+    private final ObjectMapper objectMapper;
+    private final DescriptionStore descriptionStore;
+    private final FileStore<Task> tasks;
+    private final FileStore<Category> categories;
+    private final FileStore<PriorityLevel> priorityLevels;
+    private final ReminderFileStore reminders;
+    private int transactionDepth;
+
+    public JsonStorageBackend(File baseDir, String tasksFile, ObjectMapper objectMapper) {
+        this(baseDir, tasksFile, objectMapper, false);
+    }
+
+    /**
+     * @param ndjsonTasks Whether tasks are stored one per line in a .ndjson file next to
+     *                    {@code tasksFile}; an existing {@code tasksFile} is converted on first load.
+     */
+    public JsonStorageBackend(File baseDir, String tasksFile, ObjectMapper objectMapper, boolean ndjsonTasks) {
+        this.baseDir = baseDir;
+        this.objectMapper = objectMapper;
+        this.descriptionStore = new DescriptionStore(baseDir, DescriptionStore.DEFAULT_CACHE_CHARS);
+        this.tasks = ndjsonTasks ? new NdjsonTaskFileStore(tasksFile) : new TaskFileStore(tasksFile);
+        this.categories = new FileStore<>(CATEGORIES_FILE, Category.class, Category::getId);
+        this.priorityLevels = new FileStore<>(PRIORITIES_FILE, PriorityLevel.class, PriorityLevel::getId);
+        this.reminders = new ReminderFileStore();
+    }
+
+    @Override
+    public EntityStore<Task> tasks() {
+        return tasks;
+    }
+
+    @Override
+    public EntityStore<Category> categories() {
+        return categories;
+    }
+
+    @Override
+    public EntityStore<PriorityLevel> priorityLevels() {
+        return priorityLevels;
+    }
+
+    @Override
+    public EntityStore<Reminder> reminders() {
+        return reminders;
+    }
+
+    // Files have no indexes: filter the loaded tasks.
+    @Override
+    public List<Task> findTasks(TaskStatus status, LocalDate deadlineFrom, LocalDate deadlineTo, int limit) {
+        return tasks.loadAll().stream()
+                .filter(task -> status == null || task.getStatus() == status)
+                .filter(task -> deadlineFrom == null || (task.getDeadline() != null && !task.getDeadline().isBefore(deadlineFrom)))
+                .filter(task -> deadlineTo == null || (task.getDeadline() != null && !task.getDeadline().isAfter(deadlineTo)))
+                .sorted(Comparator.comparing(Task::getDeadline, Comparator.nullsLast(Comparator.naturalOrder())))
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Defers the writes the work makes until it is done, then writes each changed store
+     * once. Changes made before a failure are still written, since the services hold them.
+     */
+    @Override
+    public void inTransaction(Runnable work) {
+        synchronized (this) {
+            transactionDepth++;
+        }
+        try {
+            work.run();
+        } finally {
+            boolean outermost;
+            synchronized (this) {
+                outermost = --transactionDepth == 0;
+            }
+            if (outermost) {
+                tasks.commit();
+                categories.commit();
+                priorityLevels.commit();
+                reminders.commit();
+            }
+        }
+    }
+
+    private synchronized boolean isInTransaction() {
+        return transactionDepth > 0;
+    }
+
+    @Override
+    public void flush() {
+        tasks.writeIfLoaded();
+        categories.writeIfLoaded();
+        priorityLevels.writeIfLoaded();
+        reminders.writeIfLoaded();
+        descriptionStore.logCacheStatistics();
+    }
+
+    @Override
+    public long getCachedDescriptionChars() {
+        return descriptionStore.getCachedChars();
+    }
+
+    public DescriptionStore getDescriptionStore() {
+        return descriptionStore;
+    }
+
+    @Override
+    public void close() {
+        descriptionStore.close();
+    }
+
+    private <T> void saveToFile(List<T> items, String filename) {
+        try {
+            File file = new File(baseDir, filename);
+            objectMapper.writeValue(file, items);
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Failed to save to " + filename, e);
+            throw new RuntimeException("Failed to save data", e);
+        }
+    }
+
+    private <T> List<T> loadFromFile(String filename, Class<T> type) {
+        File file = new File(baseDir, filename);
+        if (!file.exists()) {
+            return new ArrayList<>();
+        }
+        try {
+            CollectionType listType = objectMapper.getTypeFactory()
+                    .constructCollectionType(ArrayList.class, type);
+            return objectMapper.readValue(file, listType);
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Failed to load from " + filename, e);
+            return new ArrayList<>();
+        }
+    }
+
+    // One entity type stored as a JSON array, loaded on first use and rewritten on change.
+    private class FileStore<T> implements EntityStore<T> {
+        final String filename;
+        final Class<T> type;
+        final Function<T, String> idOf;
+        final Map<String, T> entities = new LinkedHashMap<>();
+        boolean loaded;
+        // Changes made in a transaction, written when it ends.
+        final Map<String, T> pendingUpserts = new LinkedHashMap<>();
+        final Set<String> pendingDeletes = new LinkedHashSet<>();
+
+        FileStore(String filename, Class<T> type, Function<T, String> idOf) {
+            this.filename = filename;
+            this.type = type;
+            this.idOf = idOf;
+        }
+
+        @Override
+        public synchronized List<T> loadAll() {
+            ensureLoaded();
+            return new ArrayList<>(entities.values());
+        }
+
+        @Override
+        public synchronized T get(String id) {
+            ensureLoaded();
+            return entities.get(id);
+        }
+
+        @Override
+        public synchronized void saveChanges(Collection<? extends T> upserts, Collection<String> deletedIds) {
+            if (upserts.isEmpty() && deletedIds.isEmpty()) {
+                return;
+            }
+            if (isInTransaction()) {
+                ensureLoaded();
+                apply(upserts, deletedIds);
+                for (String id : deletedIds) {
+                    pendingUpserts.remove(id);
+                    pendingDeletes.add(id);
+                }
+                for (T entity : upserts) {
+                    pendingUpserts.put(idOf.apply(entity), entity);
+                    pendingDeletes.remove(idOf.apply(entity));
+                }
+                return;
+            }
+            store(upserts, deletedIds);
+        }
+
+        // Writes the changes as a change made outside a transaction would be.
+        void store(Collection<? extends T> upserts, Collection<String> deletedIds) {
+            ensureLoaded();
+            apply(upserts, deletedIds);
+            write();
+        }
+
+        synchronized void commit() {
+            if (pendingUpserts.isEmpty() && pendingDeletes.isEmpty()) {
+                return;
+            }
+            List<T> upserts = new ArrayList<>(pendingUpserts.values());
+            List<String> deletedIds = new ArrayList<>(pendingDeletes);
+            pendingUpserts.clear();
+            pendingDeletes.clear();
+            store(upserts, deletedIds);
+        }
+
+        synchronized void writeIfLoaded() {
+            if (loaded) {
+                write();
+            }
+        }
+
+        void ensureLoaded() {
+            if (!loaded) {
+                load().forEach(entity -> entities.put(idOf.apply(entity), entity));
+                loaded = true;
+            }
+        }
+
+        void apply(Collection<? extends T> upserts, Collection<String> deletedIds) {
+            deletedIds.forEach(entities::remove);
+            upserts.forEach(entity -> entities.put(idOf.apply(entity), entity));
+        }
+
+        List<T> load() {
+            return loadFromFile(filename, type);
+        }
+
+        void write() {
+            saveToFile(new ArrayList<>(entities.values()), filename);
+        }
+    }
+
+    // Descriptions are written out of line before tasks.json, which then only holds references.
+    private class TaskFileStore extends FileStore<Task> {
+        TaskFileStore(String tasksFile) {
+            super(tasksFile, Task.class, Task::getId);
+        }
+
+        @Override
+        List<Task> load() {
+            List<Task> loaded = super.load();
+            descriptionStore.attach(loaded);
+            return loaded;
+        }
+
+        @Override
+        void write() {
+            List<Task> all = new ArrayList<>(entities.values());
+            descriptionStore.writeInline(all);
+            saveToFile(all, filename);
+            if (descriptionStore.shouldCompact(all)) {
+                descriptionStore.compact(all);
+                saveToFile(all, filename);
+                descriptionStore.deleteOlderFiles();
+            }
+        }
+    }
+
+    // Changed tasks and tombstones are appended; the file is rewritten once most of its lines are stale.
+    private class NdjsonTaskFileStore extends FileStore<Task> {
+        private final NdjsonTaskFile file;
+
+        NdjsonTaskFileStore(String tasksFile) {
+            super(tasksFile, Task.class, Task::getId);
+            this.file = new NdjsonTaskFile(
+                    new File(baseDir, tasksFile.replaceFirst("\\.json$", "") + ".ndjson"), objectMapper);
+        }
+
+        @Override
+        List<Task> load() {
+            if (file.exists() || !new File(baseDir, filename).exists()) {
+                List<Task> loaded = file.load();
+                descriptionStore.attach(loaded);
+                return loaded;
+            }
+            List<Task> converted = super.load();
+            descriptionStore.attach(converted);
+            descriptionStore.writeInline(converted);
+            file.rewrite(converted);
+            LOGGER.info("Converted " + filename + " to newline-delimited JSON");
+            return converted;
+        }
+
+        @Override
+        void store(Collection<? extends Task> upserts, Collection<String> deletedIds) {
+            ensureLoaded();
+            apply(upserts, deletedIds);
+            List<Task> changed = new ArrayList<>(upserts);
+            descriptionStore.writeInline(changed);
+            file.append(changed, deletedIds);
+            List<Task> all = new ArrayList<>(entities.values());
+            if (descriptionStore.shouldCompact(all)
+                    || file.lineCount() > Math.max(MIN_JOURNAL_COMPACTION_SIZE, 2 * entities.size())) {
+                write();
+            }
+        }
+
+        @Override
+        void write() {
+            List<Task> all = new ArrayList<>(entities.values());
+            descriptionStore.writeInline(all);
+            if (descriptionStore.shouldCompact(all)) {
+                descriptionStore.compact(all);
+                file.rewrite(all);
+                descriptionStore.deleteOlderFiles();
+            } else {
+                file.rewrite(all);
+            }
+        }
+    }
+
+    // Changes go to the journal; a full snapshot is written when the journal outgrows the data.
+    private class ReminderFileStore extends FileStore<Reminder> {
+        private final EntityJournal<Reminder> journal = new EntityJournal<>(
+                new File(baseDir, REMINDERS_JOURNAL_FILE), objectMapper, Reminder.class, Reminder::getId);
+
+        ReminderFileStore() {
+            super(REMINDERS_FILE, Reminder.class, Reminder::getId);
+        }
+
+        @Override
+        List<Reminder> load() {
+            Map<String, Reminder> remindersById = new LinkedHashMap<>();
+            super.load().forEach(reminder -> remindersById.put(reminder.getId(), reminder));
+            journal.replay(remindersById);
+            return new ArrayList<>(remindersById.values());
+        }
+
+        @Override
+        void store(Collection<? extends Reminder> upserts, Collection<String> deletedIds) {
+            ensureLoaded();
+            apply(upserts, deletedIds);
+            journal.append(new ArrayList<>(upserts), deletedIds);
+            if (journal.size() > Math.max(MIN_JOURNAL_COMPACTION_SIZE, entities.size())) {
+                write();
+            }
+        }
+
+        @Override
+        void write() {
+            super.write();
+            journal.truncate();
+        }
+    }
+}
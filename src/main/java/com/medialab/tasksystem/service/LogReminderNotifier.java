@@ -0,0 +1,19 @@
+package com.medialab.tasksystem.service;
+
+import com.medialab.tasksystem.model.Reminder;
+import com.medialab.tasksystem.model.Task;
+
+import java.util.logging.Logger;
+
+/**
+ * Writes fired reminders to the application log.
+ */
+public class LogReminderNotifier implements ReminderNotifier {
+    private static final Logger LOGGER = Logger.getLogger(LogReminderNotifier.class.getName());
+
+    @Override
+    public void notify(Reminder reminder, Task task) {
+        String title = task != null ? task.getTitle() : reminder.getTaskId();
+        LOGGER.info(String.format("Reminder for '%s': %s", title, reminder));
+    }
+}
@@ -0,0 +1,242 @@
+package com.medialab.tasksystem.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.medialab.tasksystem.model.Task;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * A task file with one JSON document per line.
+ * <p>
+ * A line is either a task or a tombstone {@code {"deleted":"<id>"}}; later lines win,
+ * so changes are appended instead of rewriting the file, and {@link #rewrite} folds the
+ * log back into one line per task. Loading maps the file, splits it into chunks on line
+ * boundaries and parses the chunks in parallel on the common fork-join pool.
+ * </p>
+ */
+class NdjsonTaskFile {
+    private static final Logger LOGGER = Logger.getLogger(NdjsonTaskFile.class.getName());
+    private static final byte[] TOMBSTONE_PREFIX = "{\"deleted\":".getBytes(StandardCharsets.UTF_8);
+    private static final long MIN_CHUNK_SIZE = 1 << 20;
+
+    private final File file;
+    private final ObjectMapper objectMapper;
+    // Readers are immutable and safe to share between the parsing threads.
+    private final ObjectReader taskReader;
+    private int lineCount;
+
+    NdjsonTaskFile(File file, ObjectMapper objectMapper) {
+        this.file = file;
+        this.objectMapper = objectMapper;
+        this.taskReader = objectMapper.readerFor(Task.class);
+    }
+
+    boolean exists() {
+        return file.exists();
+    }
+
+    /**
+     * Returns the number of lines in the file, i.e. live tasks plus superseded versions and tombstones.
+     */
+    int lineCount() {
+        return lineCount;
+    }
+
+    /**
+     * Loads the live tasks, in the order they were first written.
+     */
+    List<Task> load() {
+        if (!file.exists()) {
+            return new ArrayList<>();
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            List<long[]> chunks = split(channel);
+            long start = System.nanoTime();
+            long size = channel.size();
+            // Parallel streams run on the common fork-join pool and keep encounter order.
+            List<List<Line>> parsed = chunks.parallelStream()
+                    .map(chunk -> parseChunk(channel, chunk[0], chunk[1], chunk[1] == size))
+                    .collect(Collectors.toList());
+
+            Map<String, Task> tasksById = new LinkedHashMap<>();
+            lineCount = 0;
+            for (List<Line> lines : parsed) {
+                for (Line line : lines) {
+                    if (line.task != null) {
+                        tasksById.put(line.task.getId(), line.task);
+                    } else {
+                        tasksById.remove(line.deletedId);
+                    }
+                }
+                lineCount += lines.size();
+            }
+            LOGGER.info(String.format("Loaded %d tasks from %d lines in %d chunks in %d ms",
+                    tasksById.size(), lineCount, chunks.size(), (System.nanoTime() - start) / 1_000_000));
+            return new ArrayList<>(tasksById.values());
+        } catch (IOException | UncheckedIOException e) {
+            LOGGER.log(Level.SEVERE, "Failed to load from " + file.getName(), e);
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * Appends changed tasks and tombstones for deleted ids with a single write.
+     */
+    void append(Collection<Task> upserts, Collection<String> deletedIds) {
+        StringBuilder lines = new StringBuilder();
+        try {
+            for (Task task : upserts) {
+                lines.append(objectMapper.writeValueAsString(task)).append('\n');
+            }
+            for (String id : deletedIds) {
+                lines.append(objectMapper.writeValueAsString(Map.of("deleted", id))).append('\n');
+            }
+            try (OutputStream out = new FileOutputStream(file, true)) {
+                out.write(lines.toString().getBytes(StandardCharsets.UTF_8));
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Failed to append to " + file.getName(), e);
+            throw new RuntimeException("Failed to save data", e);
+        }
+        lineCount += upserts.size() + deletedIds.size();
+    }
+
+    /**
+     * Replaces the file with one line per task.
+     */
+    void rewrite(Collection<Task> tasks) {
+        File temp = new File(file.getPath() + ".tmp");
+        try {
+            try (OutputStream out = new BufferedOutputStream(new FileOutputStream(temp))) {
+                for (Task task : tasks) {
+                    out.write(objectMapper.writeValueAsBytes(task));
+                    out.write('\n');
+                }
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Failed to save to " + file.getName(), e);
+            throw new RuntimeException("Failed to save data", e);
+        }
+        lineCount = tasks.size();
+    }
+
+    // Chunk boundaries as [start, end) pairs, each ending just after a newline (or at the end of the file).
+    private static List<long[]> split(FileChannel channel) throws IOException {
+        long size = channel.size();
+        int parallelism = ForkJoinPool.commonPool().getParallelism();
+        long chunkSize = Math.max(MIN_CHUNK_SIZE, size / (parallelism * 4L));
+        List<long[]> chunks = new ArrayList<>();
+        long start = 0;
+        while (start < size) {
+            long end = start + chunkSize >= size ? size : nextLineStart(channel, start + chunkSize);
+            chunks.add(new long[]{start, end});
+            start = end;
+        }
+        return chunks;
+    }
+
+    private static long nextLineStart(FileChannel channel, long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        long size = channel.size();
+        while (position < size) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    private List<Line> parseChunk(FileChannel channel, long start, long end, boolean lastChunk) {
+        List<Line> lines = new ArrayList<>();
+        try {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+            int lineStart = 0;
+            int limit = buffer.limit();
+            for (int i = 0; i <= limit; i++) {
+                if (i < limit && buffer.get(i) != '\n') {
+                    continue;
+                }
+                if (i > lineStart) {
+                    byte[] bytes = new byte[i - lineStart];
+                    buffer.get(lineStart, bytes);
+                    // Only the final line of the file can be torn by an interrupted append.
+                    boolean torn = lastChunk && i == limit;
+                    Line line = parseLine(bytes, torn);
+                    if (line != null) {
+                        lines.add(line);
+                    }
+                }
+                lineStart = i + 1;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return lines;
+    }
+
+    private Line parseLine(byte[] bytes, boolean mayBeTorn) {
+        try {
+            if (startsWith(bytes, TOMBSTONE_PREFIX)) {
+                return new Line(null, objectMapper.readTree(bytes).get("deleted").asText());
+            }
+            return new Line(taskReader.readValue(bytes), null);
+        } catch (IOException e) {
+            if (mayBeTorn) {
+                LOGGER.warning("Ignoring incomplete last line of " + file.getName());
+            } else {
+                LOGGER.log(Level.SEVERE, "Skipping unreadable line in " + file.getName(), e);
+            }
+            return null;
+        }
+    }
+
+    private static boolean startsWith(byte[] bytes, byte[] prefix) {
+        if (bytes.length < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (bytes[i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static final class Line {
+        private final Task task;
+        private final String deletedId;
+
+        private Line(Task task, String deletedId) {
+            this.task = task;
+            this.deletedId = deletedId;
+        }
+    }
+}
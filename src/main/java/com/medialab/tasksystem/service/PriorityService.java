@@ -1,5 +1,8 @@
 package com.medialab.tasksystem.service;
 
+import com.medialab.tasksystem.audit.AuditAction;
+import com.medialab.tasksystem.audit.AuditLog;
+import com.medialab.tasksystem.exceptions.VersionConflictException;
 import com.medialab.tasksystem.model.PriorityLevel;
 import com.medialab.tasksystem.model.Task;
 import java.util.*;
@@ -9,12 +12,18 @@ public class PriorityService {
     private final Map<String, PriorityLevel> priorityLevels = new HashMap<>();
     private final DataPersistenceService persistenceService;
     private final TaskService taskService;
+    private final UndoManager undoManager;
+    private final AuditLog auditLog;
     private PriorityLevel defaultPriority;
 
-    public PriorityService(DataPersistenceService persistenceService, TaskService taskService) {
+    public PriorityService(DataPersistenceService persistenceService, TaskService taskService,
+                           UndoManager undoManager) {
         this.persistenceService = persistenceService;
         this.taskService = taskService;
+        this.undoManager = undoManager;
+        this.auditLog = persistenceService.getAuditLog();
         loadPriorityLevels();
+        priorityLevels.values().forEach(PriorityLevel::resetChanges);
     }
 
     private void loadPriorityLevels() {
@@ -23,11 +32,11 @@ public class PriorityService {
 
         if (levels.isEmpty()) {
             System.out.println("Creating default priority levels...");
-            defaultPriority = new PriorityLevel("Default", true);
+            defaultPriority = new PriorityLevel("Default", true, defaultWeightFor("Default"));
             levels.add(defaultPriority);
-            levels.add(new PriorityLevel("High", false));
-            levels.add(new PriorityLevel("Low", false));
-            levels.add(new PriorityLevel("Urgent", false));
+            levels.add(new PriorityLevel("High", false, defaultWeightFor("High")));
+            levels.add(new PriorityLevel("Low", false, defaultWeightFor("Low")));
+            levels.add(new PriorityLevel("Urgent", false, defaultWeightFor("Urgent")));
             System.out.println("Created " + levels.size() + " default levels");
 
             // Save the default levels
@@ -45,52 +54,187 @@ public class PriorityService {
             if (defaultPriority == null && !levels.isEmpty()) {
                 defaultPriority = levels.get(0);
             }
+            // Levels saved before weights existed get a weight based on their name
+            boolean weightsAssigned = false;
+            for (PriorityLevel level : levels) {
+                if (level.getWeight() <= 0) {
+                    level.setWeight(defaultWeightFor(level.getName()));
+                    weightsAssigned = true;
+                }
+            }
+            if (weightsAssigned) {
+                persistenceService.savePriorityLevels(levels);
+            }
             System.out.println("Found existing priority levels");
         }
 
         System.out.println("Final priority levels count: " + priorityLevels.size());
     }
 
-    private void savePriorityLevels() {
-        persistenceService.savePriorityLevels(new ArrayList<>(priorityLevels.values()));
+    /**
+     * The weight given to a priority level that has none: the built-in names keep their
+     * usual order (Low < Default < High < Urgent) and custom levels rank like Default.
+     */
+    public static int defaultWeightFor(String name) {
+        if (name == null) {
+            return 2;
+        }
+        switch (name) {
+            case "Low": return 1;
+            case "High": return 3;
+            case "Urgent": return 4;
+            default: return 2;
+        }
     }
 
     public PriorityLevel createPriorityLevel(String name, boolean isDefault) {
-        PriorityLevel priority = new PriorityLevel(name, isDefault);
-        priorityLevels.put(priority.getId(), priority);
-        if (isDefault) {
-            defaultPriority = priority;
-        }
-        savePriorityLevels();
-        return priority;
+        return createPriorityLevel(name, isDefault, defaultWeightFor(name));
+    }
+
+    public PriorityLevel createPriorityLevel(String name, boolean isDefault, int weight) {
+        return undoManager.call("Create Priority Level", () -> {
+            PriorityLevel priority = new PriorityLevel(name, isDefault, weight);
+            undoManager.record(new PriorityLevelEdit(priority, defaultPriority, true));
+            add(priority);
+            return priority;
+        });
     }
 
     public void updatePriorityLevel(PriorityLevel priority) {
         if (priority.isDefault()) {
             throw new IllegalArgumentException("Cannot modify default priority level");
         }
-        priorityLevels.put(priority.getId(), priority);
-        savePriorityLevels();
+        undoManager.run("Edit Priority Level", () -> {
+            Map<String, Object> before = priority.takeChanges();
+            if (!before.isEmpty()) {
+                undoManager.record(new PriorityLevelChanged(priority, before, fieldValues(priority, before.keySet())));
+            }
+            priorityLevels.put(priority.getId(), priority);
+            refreshTasksOf(priority);
+            persistenceService.savePriorityLevel(priority);
+            auditLog.record(AuditAction.PRIORITY_UPDATED, priority.getId(), AuditLog.fieldMask(before.keySet()));
+        });
+    }
+
+    /**
+     * Updates the given fields (name, weight) of a priority level if they were not changed
+     * since the version the caller last saw; fields changed since by others are kept.
+     *
+     * @throws IllegalArgumentException if there is no such level, it is the default level
+     *                                  or a field cannot be updated
+     * @throws VersionConflictException if a changed field was also changed since the expected version
+     */
+    public PriorityLevel updatePriorityLevel(String priorityId, long expectedVersion, Map<String, Object> changes) {
+        PriorityLevel priority = priorityLevels.get(priorityId);
+        if (priority == null) {
+            throw new IllegalArgumentException("Priority level not found: " + priorityId);
+        }
+        if (priority.isDefault()) {
+            throw new IllegalArgumentException("Cannot modify default priority level");
+        }
+        for (String field : changes.keySet()) {
+            if (!field.equals("name") && !field.equals("weight")) {
+                throw new IllegalArgumentException("Cannot update priority level field " + field);
+            }
+        }
+        Map<String, Object> current = fieldValues(priority, changes.keySet());
+        VersionCheck.check("Priority level", priorityId, expectedVersion, priority.getVersion(),
+                priority.changedSince(expectedVersion), changes, current);
+        if (!current.equals(changes)) {
+            if (changes.containsKey("name")) {
+                priority.setName((String) changes.get("name"));
+            }
+            if (changes.containsKey("weight")) {
+                priority.setWeight((Integer) changes.get("weight"));
+            }
+            updatePriorityLevel(priority);
+        }
+        return priority;
     }
 
     public void deletePriorityLevel(String priorityId) {
-        // First, get the default priority
-        PriorityLevel defaultPriority = getDefaultPriorityLevel();
+        PriorityLevel priority = priorityLevels.get(priorityId);
+        if (priority == null) {
+            return;
+        }
+        undoManager.run("Delete Priority Level", () -> {
+            // First, get the default priority
+            PriorityLevel defaultPriority = getDefaultPriorityLevel();
 
-        // Get all tasks that have the priority being deleted
-        List<Task> affectedTasks = taskService.getAllTasks().stream()
-                .filter(task -> task.getPriority().getId().equals(priorityId))
-                .collect(Collectors.toList());
+            // Get all tasks that have the priority being deleted
+            List<Task> affectedTasks = taskService.getAllTasks().stream()
+                    .filter(task -> task.getPriority() != null && task.getPriority().getId().equals(priorityId))
+                    .collect(Collectors.toList());
 
-        // Update each task to use the default priority
-        for (Task task : affectedTasks) {
-            task.setPriority(defaultPriority);
-            taskService.updateTask(task);
-        }
+            // Move them to the default priority, re-indexed and saved as one batch
+            persistenceService.inTransaction(() -> {
+                for (Task task : affectedTasks) {
+                    task.setPriority(defaultPriority);
+                }
+                taskService.refreshIndexes(affectedTasks);
+
+                // Now delete the priority level
+                undoManager.record(new PriorityLevelEdit(priority, defaultPriority, false));
+                remove(priority);
+            });
+        });
+    }
 
-        // Now delete the priority level
-        priorityLevels.remove(priorityId);
-        savePriorityLevels();
+    /**
+     * Brings the priority levels up to date with changes made elsewhere, without recording
+     * them for undo. Changes another process saved to a shared store are not saved again,
+     * and a stored level no newer than the one held here is skipped; replicated changes
+     * ({@code save}) always apply and are saved.
+     */
+    void applyStoredChanges(SharedStorageBackend.EntityChanges<PriorityLevel> changes, boolean save) {
+        for (PriorityLevel stored : changes.getUpserts()) {
+            PriorityLevel priority = priorityLevels.get(stored.getId());
+            if (priority == null) {
+                stored.resetChanges();
+                priorityLevels.put(stored.getId(), stored);
+                if (stored.isDefault()) {
+                    defaultPriority = stored;
+                }
+                if (save) {
+                    persistenceService.savePriorityLevel(stored);
+                }
+                auditLog.record(AuditAction.PRIORITY_CREATED, stored.getId());
+            } else if (save || stored.getVersion() > priority.getVersion()) {
+                Map<String, Object> values = fieldValues(stored, Set.of("name", "default", "weight"));
+                values.entrySet().removeIf(field ->
+                        Objects.equals(field.getValue(), fieldValues(priority, Set.of(field.getKey())).get(field.getKey())));
+                long version = save ? priority.getVersion() : stored.getVersion() - 1;
+                priority.setVersion(version);
+                priority.setName(stored.getName());
+                priority.setDefault(stored.isDefault());
+                priority.setWeight(stored.getWeight());
+                priority.takeChanges();
+                if (save) {
+                    if (!values.isEmpty()) {
+                        persistenceService.savePriorityLevel(priority);
+                    }
+                } else {
+                    priority.setVersion(stored.getVersion());
+                }
+                if (priority.isDefault()) {
+                    defaultPriority = priority;
+                }
+                if (!values.isEmpty()) {
+                    taskService.reindexAll(tasksOf(priority));
+                    auditLog.record(AuditAction.PRIORITY_UPDATED, priority.getId(), AuditLog.fieldMask(values.keySet()));
+                }
+            }
+        }
+        changes.getDeletions().forEach((id, version) -> {
+            PriorityLevel priority = priorityLevels.get(id);
+            if (priority != null && priority.getVersion() <= version) {
+                priorityLevels.remove(id);
+                if (save) {
+                    persistenceService.deletePriorityLevel(id);
+                }
+                auditLog.record(AuditAction.PRIORITY_DELETED, id);
+            }
+        });
     }
 
     public List<PriorityLevel> getAllPriorityLevels() {
@@ -104,4 +248,161 @@ public class PriorityService {
     public PriorityLevel getPriorityLevelById(String id) {
         return priorityLevels.get(id);
     }
-}
\ No newline at end of file
+
+    /**
+     * Looks up priority levels by name, ignoring case, and creates the missing ones (not
+     * default, with the usual weight for their name) as one batch: they are saved together
+     * and are a single undo step.
+     *
+     * @param names The level names, e.g. those found in an import
+     * @return The priority level for each given name
+     */
+    public Map<String, PriorityLevel> resolvePriorityLevels(Collection<String> names) {
+        Map<String, PriorityLevel> byName = new HashMap<>();
+        priorityLevels.values().forEach(priority -> byName.putIfAbsent(key(priority.getName()), priority));
+        Map<String, PriorityLevel> resolved = new HashMap<>();
+        List<PriorityLevel> created = new ArrayList<>();
+        for (String name : names) {
+            PriorityLevel priority = byName.computeIfAbsent(key(name), k -> {
+                PriorityLevel newPriority = new PriorityLevel(name.trim(), false, defaultWeightFor(name.trim()));
+                created.add(newPriority);
+                return newPriority;
+            });
+            resolved.put(name, priority);
+        }
+        if (!created.isEmpty()) {
+            undoManager.run(created.size() == 1 ? "Create Priority Level" : "Create Priority Levels", () -> {
+                for (PriorityLevel priority : created) {
+                    priorityLevels.put(priority.getId(), priority);
+                    auditLog.record(AuditAction.PRIORITY_CREATED, priority.getId());
+                    undoManager.record(new PriorityLevelEdit(priority, defaultPriority, true));
+                }
+                persistenceService.savePriorityLevels(created);
+            });
+        }
+        return resolved;
+    }
+
+    private static String key(String name) {
+        return name.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private void add(PriorityLevel priority) {
+        priorityLevels.put(priority.getId(), priority);
+        if (priority.isDefault()) {
+            defaultPriority = priority;
+        }
+        persistenceService.savePriorityLevel(priority);
+        auditLog.record(AuditAction.PRIORITY_CREATED, priority.getId());
+    }
+
+    private void remove(PriorityLevel priority) {
+        priorityLevels.remove(priority.getId());
+        persistenceService.deletePriorityLevel(priority.getId());
+        auditLog.record(AuditAction.PRIORITY_DELETED, priority.getId());
+    }
+
+    // A rename or new weight changes the sort and search keys of tasks with this priority
+    private void refreshTasksOf(PriorityLevel priority) {
+        taskService.refreshIndexes(tasksOf(priority));
+    }
+
+    private List<Task> tasksOf(PriorityLevel priority) {
+        return taskService.getAllTasks().stream()
+                .filter(task -> task.getPriority() != null && task.getPriority().getId().equals(priority.getId()))
+                .collect(Collectors.toList());
+    }
+
+    private static Map<String, Object> fieldValues(PriorityLevel priority, Set<String> fields) {
+        Map<String, Object> values = new HashMap<>();
+        for (String field : fields) {
+            switch (field) {
+                case "name": values.put(field, priority.getName()); break;
+                case "default": values.put(field, priority.isDefault()); break;
+                case "weight": values.put(field, priority.getWeight()); break;
+                default: throw new IllegalArgumentException("Unknown priority level field " + field);
+            }
+        }
+        return values;
+    }
+
+    // A priority level that was created (undo removes it) or deleted (undo puts it back).
+    private final class PriorityLevelEdit implements UndoManager.Edit {
+        private final PriorityLevel priority;
+        // The default level before a created level may have replaced it.
+        private final PriorityLevel previousDefault;
+        private final boolean created;
+
+        private PriorityLevelEdit(PriorityLevel priority, PriorityLevel previousDefault, boolean created) {
+            this.priority = priority;
+            this.previousDefault = previousDefault;
+            this.created = created;
+        }
+
+        @Override
+        public void undo() {
+            if (created) {
+                remove(priority);
+                defaultPriority = previousDefault;
+            } else {
+                add(priority);
+            }
+        }
+
+        @Override
+        public void redo() {
+            if (created) {
+                add(priority);
+            } else {
+                remove(priority);
+            }
+        }
+
+        @Override
+        public long estimatedBytes() {
+            return 128;
+        }
+    }
+
+    private final class PriorityLevelChanged implements UndoManager.Edit {
+        private final PriorityLevel priority;
+        private final Map<String, Object> before;
+        private final Map<String, Object> after;
+
+        private PriorityLevelChanged(PriorityLevel priority, Map<String, Object> before, Map<String, Object> after) {
+            this.priority = priority;
+            this.before = before;
+            this.after = after;
+        }
+
+        @Override
+        public void undo() {
+            apply(before);
+        }
+
+        @Override
+        public void redo() {
+            apply(after);
+        }
+
+        private void apply(Map<String, Object> values) {
+            values.forEach((field, value) -> {
+                switch (field) {
+                    case "name": priority.setName((String) value); break;
+                    case "default": priority.setDefault((Boolean) value); break;
+                    case "weight": priority.setWeight((Integer) value); break;
+                    default: throw new IllegalArgumentException("Unknown priority level field " + field);
+                }
+            });
+            priority.takeChanges();
+            refreshTasksOf(priority);
+            persistenceService.savePriorityLevel(priority);
+            auditLog.record(AuditAction.PRIORITY_UPDATED, priority.getId(), AuditLog.fieldMask(values.keySet()));
+        }
+
+        @Override
+        public long estimatedBytes() {
+            return 128;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.medialab.tasksystem.service;
+
+import com.medialab.tasksystem.model.Reminder;
+import com.medialab.tasksystem.model.Task;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Fires reminders when they become due and hands them to the registered notifiers.
+ * <p>
+ * The queue is ReminderService's index of pending reminders ordered by date, so the
+ * dispatcher only ever looks at its head: a reminder fires at {@code fireTime} on its
+ * reminder date, and reminders whose time passed while the application was closed
+ * fire as soon as the dispatcher starts. Fired state is persisted by ReminderService
+ * before notifiers run, so a reminder is never delivered twice across restarts.
+ * </p>
+ * Services are only touched on the owner executor (the FX thread in the desktop app);
+ * the internal scheduler thread just wakes the dispatcher up at the next fire time.
+ */
+public class ReminderDispatcher {
+    private static final Logger LOGGER = Logger.getLogger(ReminderDispatcher.class.getName());
+    public static final LocalTime DEFAULT_FIRE_TIME = LocalTime.of(9, 0);
+    // Re-check at least this often so clock changes and sleep/resume are picked up.
+    private static final Duration MAX_SLEEP = Duration.ofMinutes(15);
+
+    private final ReminderService reminderService;
+    private final TaskService taskService;
+    private final Executor ownerExecutor;
+    private final Clock clock;
+    private final LocalTime fireTime;
+    private final List<ReminderNotifier> notifiers = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService scheduler;
+    private final Runnable pendingChangeListener = this::scheduleNext;
+    private ScheduledFuture<?> nextWakeUp;
+
+    public ReminderDispatcher(ReminderService reminderService, TaskService taskService, Executor ownerExecutor) {
+        this(reminderService, taskService, ownerExecutor, Clock.systemDefaultZone(), DEFAULT_FIRE_TIME);
+    }
+
+    public ReminderDispatcher(ReminderService reminderService, TaskService taskService, Executor ownerExecutor,
+                              Clock clock, LocalTime fireTime) {
+        this.reminderService = reminderService;
+        this.taskService = taskService;
+        this.ownerExecutor = ownerExecutor;
+        this.clock = clock;
+        this.fireTime = fireTime;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "reminder-dispatcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public void addNotifier(ReminderNotifier notifier) {
+        notifiers.add(notifier);
+    }
+
+    public void removeNotifier(ReminderNotifier notifier) {
+        notifiers.remove(notifier);
+    }
+
+    /**
+     * Delivers any missed reminders and starts waiting for the next one.
+     * Must be called on the owner thread.
+     */
+    public void start() {
+        reminderService.addPendingChangeListener(pendingChangeListener);
+        dispatchDue();
+    }
+
+    public void stop() {
+        reminderService.removePendingChangeListener(pendingChangeListener);
+        scheduler.shutdownNow();
+    }
+
+    // Fire everything that is due by now, then sleep until the next reminder.
+    private void dispatchDue() {
+        LocalDateTime now = LocalDateTime.now(clock);
+        LocalDate lastDueDate = now.toLocalTime().isBefore(fireTime)
+                ? now.toLocalDate().minusDays(1)
+                : now.toLocalDate();
+        List<Reminder> due = reminderService.takeDueReminders(lastDueDate, now);
+        for (Reminder reminder : due) {
+            Task task = taskService.getTaskById(reminder.getTaskId());
+            for (ReminderNotifier notifier : notifiers) {
+                try {
+                    notifier.notify(reminder, task);
+                } catch (RuntimeException e) {
+                    LOGGER.log(Level.WARNING, "Reminder notifier failed", e);
+                }
+            }
+        }
+        scheduleNext();
+    }
+
+    private synchronized void scheduleNext() {
+        if (scheduler.isShutdown()) {
+            return;
+        }
+        if (nextWakeUp != null) {
+            nextWakeUp.cancel(false);
+        }
+        LocalDate nextDate = reminderService.getNextPendingDate();
+        Duration delay = MAX_SLEEP;
+        if (nextDate != null) {
+            Duration untilDue = Duration.between(LocalDateTime.now(clock), nextDate.atTime(fireTime));
+            delay = untilDue.isNegative() ? Duration.ZERO : untilDue.compareTo(MAX_SLEEP) < 0 ? untilDue : MAX_SLEEP;
+        }
+        nextWakeUp = scheduler.schedule(() -> ownerExecutor.execute(this::dispatchDue),
+                delay.toMillis(), TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,17 @@
+package com.medialab.tasksystem.service;
+
+import com.medialab.tasksystem.model.Reminder;
+import com.medialab.tasksystem.model.Task;
+
+/**
+ * Delivers a reminder that has become due. Implementations are called on the
+ * thread that owns the services (the FX thread in the desktop application).
+ */
+public interface ReminderNotifier {
+
+    /**
+     * @param reminder The reminder that fired
+     * @param task     The task the reminder belongs to, or null if it no longer exists
+     */
+    void notify(Reminder reminder, Task task);
+}
@@ -1,34 +1,129 @@
 package com.medialab.tasksystem.service;
 
+import com.medialab.tasksystem.audit.AuditAction;
+import com.medialab.tasksystem.audit.AuditLog;
+import com.medialab.tasksystem.exceptions.VersionConflictException;
 import com.medialab.tasksystem.model.Reminder;
 import com.medialab.tasksystem.model.ReminderType;
 import com.medialab.tasksystem.model.Task;
 import com.medialab.tasksystem.model.TaskStatus;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 
 public class ReminderService {
+    // Rough heap cost of a reminder held by an undo step.
+    private static final long ESTIMATED_REMINDER_BYTES = 256;
+    // The fields a reminder saved by another process may differ in.
+    private static final Set<String> STORED_FIELDS = Set.of("type", "reminderDate", "firedAt", "acknowledged");
+    // Replicas share what a reminder is; when it fired is each replica's own.
+    private static final Set<String> REPLICATED_FIELDS = Set.of("type", "reminderDate");
+
     // Use an ObservableList to store reminders so UI bindings update automatically.
     private final ObservableList<Reminder> reminders = FXCollections.observableArrayList();
     private final DataPersistenceService persistenceService;
+    private final UndoManager undoManager;
+    private final AuditLog auditLog;
+
+    // Indexes over the same reminders: by id, by task id and by reminder date.
+    private final Map<String, Reminder> remindersById = new LinkedHashMap<>();
+    private final Map<String, Set<String>> reminderIdsByTask = new HashMap<>();
+    private final NavigableMap<LocalDate, Set<String>> reminderIdsByDate = new TreeMap<>();
+    // Reminders that have not fired yet, ordered by date; this is the dispatcher's queue.
+    private final NavigableMap<LocalDate, Set<String>> pendingIdsByDate = new TreeMap<>();
+    private final List<Runnable> pendingChangeListeners = new ArrayList<>();
+    // The task id and date each reminder was indexed under; reminders may be edited in place.
+    private final Map<String, String> indexedTaskIds = new HashMap<>();
+    private final Map<String, LocalDate> indexedDates = new HashMap<>();
+    // Where each reminder's row is in the observable list, so changes touch only their own rows.
+    private final Map<String, Integer> rowPositions = new HashMap<>();
 
-    public ReminderService(DataPersistenceService persistenceService) {
+    public ReminderService(DataPersistenceService persistenceService, UndoManager undoManager) {
         this.persistenceService = persistenceService;
+        this.undoManager = undoManager;
+        this.auditLog = persistenceService.getAuditLog();
         loadReminders();
     }
 
     // Load reminders from persistent storage and add them to the ObservableList.
     private void loadReminders() {
         List<Reminder> loadedReminders = persistenceService.loadReminders();
-        reminders.addAll(loadedReminders);
+        loadedReminders.forEach(Reminder::resetChanges);
+        loadedReminders.forEach(this::index);
+        addRows(loadedReminders);
+    }
+
+    // Record only what changed; the storage backend decides how to persist it.
+    private void saveReminderChanges(List<Reminder> changed, List<String> deletedIds) {
+        persistenceService.saveReminderChanges(changed, deletedIds);
+    }
+
+    // Saves reminders changed in place, recording the fields they had before so the change can be undone.
+    private void saveChangedReminders(List<Reminder> changed) {
+        List<ReminderDelta> deltas = new ArrayList<>();
+        for (Reminder reminder : changed) {
+            Map<String, Object> before = reminder.takeChanges();
+            if (!before.isEmpty()) {
+                deltas.add(new ReminderDelta(reminder.getId(), before, fieldValues(reminder, before.keySet())));
+                auditLog.record(AuditAction.REMINDER_UPDATED, reminder.getId(), AuditLog.fieldMask(before.keySet()));
+            }
+        }
+        if (!deltas.isEmpty()) {
+            undoManager.record(new RemindersChanged(deltas));
+        }
+        saveReminderChanges(changed, List.of());
     }
 
-    // Save the current list of reminders to persistent storage.
-    private void saveReminders() {
-        persistenceService.saveReminders(new ArrayList<>(reminders));
+    private void index(Reminder reminder) {
+        remindersById.put(reminder.getId(), reminder);
+        indexedTaskIds.put(reminder.getId(), reminder.getTaskId());
+        indexedDates.put(reminder.getId(), reminder.getReminderDate());
+        reminderIdsByTask.computeIfAbsent(reminder.getTaskId(), k -> new LinkedHashSet<>()).add(reminder.getId());
+        if (reminder.getReminderDate() != null) {
+            reminderIdsByDate.computeIfAbsent(reminder.getReminderDate(), k -> new LinkedHashSet<>()).add(reminder.getId());
+            if (!reminder.isFired()) {
+                pendingIdsByDate.computeIfAbsent(reminder.getReminderDate(), k -> new LinkedHashSet<>()).add(reminder.getId());
+            }
+        }
+    }
+
+    private Reminder unindex(String reminderId) {
+        Reminder reminder = remindersById.remove(reminderId);
+        if (reminder == null) {
+            return null;
+        }
+        removeFromBucket(reminderIdsByTask, indexedTaskIds.remove(reminderId), reminderId);
+        LocalDate date = indexedDates.remove(reminderId);
+        if (date != null) {
+            removeFromBucket(reminderIdsByDate, date, reminderId);
+            removeFromBucket(pendingIdsByDate, date, reminderId);
+        }
+        return reminder;
+    }
+
+    private static <K> void removeFromBucket(Map<K, Set<String>> index, K key, String reminderId) {
+        Set<String> bucket = index.get(key);
+        if (bucket != null) {
+            bucket.remove(reminderId);
+            if (bucket.isEmpty()) {
+                index.remove(key);
+            }
+        }
     }
 
     // Create a new reminder for a task.
@@ -40,24 +135,92 @@ public class ReminderService {
         LocalDate reminderDate = calculateReminderDate(task.getDeadline(), type, customDate);
         validateReminderDate(reminderDate, task.getDeadline());
 
-        Reminder reminder = new Reminder(task.getId(), type, reminderDate);
-        reminders.add(reminder);
-        saveReminders();
-        return reminder;
+        return undoManager.call("Add Reminder", () -> {
+            Reminder reminder = new Reminder(task.getId(), type, reminderDate);
+            addAll(List.of(reminder));
+            undoManager.record(new RemindersAdded(List.of(reminder)));
+            return reminder;
+        });
     }
 
     public LocalDate calculateReminderDate(LocalDate deadline, ReminderType type, LocalDate customDate) {
-        switch (type) {
-            case ONE_DAY_BEFORE:
-                return deadline.minusDays(1);
-            case ONE_WEEK_BEFORE:
-                return deadline.minusWeeks(1);
-            case ONE_MONTH_BEFORE:
-                return deadline.minusMonths(1);
-            case CUSTOM_DATE:
-                return customDate;
-            default:
-                throw new IllegalArgumentException("Invalid reminder type");
+        if (type == null) {
+            throw new IllegalArgumentException("Invalid reminder type");
+        }
+        return type.isRelative() ? deadline.minus(type.getOffset()) : customDate;
+    }
+
+    /**
+     * Moves the relative reminders (one day/week/month before) of the given tasks to match
+     * their new deadlines. Only the reminders of those tasks are visited, through the task
+     * index, and all changes are persisted with a single journal write.
+     *
+     * @param deadlinesByTask The new deadline of each task whose deadline changed
+     * @return The number of reminders that were moved
+     */
+    public int recomputeRelativeReminders(Map<String, LocalDate> deadlinesByTask) {
+        List<Reminder> changed = new ArrayList<>();
+        for (Map.Entry<String, LocalDate> entry : deadlinesByTask.entrySet()) {
+            Set<String> ids = reminderIdsByTask.get(entry.getKey());
+            if (ids == null || entry.getValue() == null) {
+                continue;
+            }
+            for (String id : new ArrayList<>(ids)) {
+                Reminder reminder = remindersById.get(id);
+                if (reminder.getType() == null || !reminder.getType().isRelative()) {
+                    continue;
+                }
+                LocalDate newDate = entry.getValue().minus(reminder.getType().getOffset());
+                if (!newDate.equals(reminder.getReminderDate())) {
+                    unindex(id);
+                    reminder.setReminderDate(newDate);
+                    reminder.setFiredAt(null);
+                    reminder.setAcknowledged(false);
+                    index(reminder);
+                    changed.add(reminder);
+                }
+            }
+        }
+        if (!changed.isEmpty()) {
+            refreshRows(changed);
+            saveChangedReminders(changed);
+            firePendingChanged();
+        }
+        return changed.size();
+    }
+
+    // Tell bound tables that these reminders changed in place.
+    private void refreshRows(List<Reminder> changed) {
+        changed.forEach(this::replaceRow);
+    }
+
+    // Replaces the row of the reminder with the same id, e.g. with an edited copy.
+    private void replaceRow(Reminder reminder) {
+        reminders.set(rowPositions.get(reminder.getId()), reminder);
+    }
+
+    private void addRows(Collection<Reminder> added) {
+        int position = reminders.size();
+        for (Reminder reminder : added) {
+            rowPositions.put(reminder.getId(), position++);
+        }
+        reminders.addAll(added);
+    }
+
+    // Each removed row is filled with the last one, so no other row has to move.
+    private void removeRows(Collection<Reminder> removed) {
+        for (Reminder reminder : removed) {
+            Integer position = rowPositions.remove(reminder.getId());
+            if (position == null) {
+                continue;
+            }
+            int last = reminders.size() - 1;
+            if (position != last) {
+                Reminder moved = reminders.get(last);
+                reminders.set(position, moved);
+                rowPositions.put(moved.getId(), position);
+            }
+            reminders.remove(last);
         }
     }
 
@@ -72,40 +235,430 @@ public class ReminderService {
 
     // Delete a reminder by its ID.
     public void deleteReminder(String reminderId) {
-        reminders.removeIf(r -> r.getId().equals(reminderId));
-        saveReminders();
+        undoManager.run("Delete Reminder", () -> removeAll(List.of(reminderId)));
     }
 
     // Delete all reminders associated with a given task ID.
     public void deleteRemindersForTask(String taskId) {
-        reminders.removeIf(reminder -> reminder.getTaskId().equals(taskId));
-        saveReminders();
+        deleteRemindersForTasks(List.of(taskId));
+    }
+
+    // Delete the reminders of all the given tasks with one list update and one save.
+    public void deleteRemindersForTasks(Collection<String> taskIds) {
+        List<String> deletedIds = new ArrayList<>();
+        for (String taskId : taskIds) {
+            Set<String> ids = reminderIdsByTask.get(taskId);
+            if (ids != null) {
+                deletedIds.addAll(ids);
+            }
+        }
+        if (!deletedIds.isEmpty()) {
+            undoManager.run("Delete Reminders", () -> removeAll(deletedIds));
+        }
+    }
+
+    private void addAll(List<Reminder> added) {
+        added.forEach(this::index);
+        addRows(added);
+        saveReminderChanges(added, List.of());
+        added.forEach(reminder -> auditLog.record(AuditAction.REMINDER_CREATED, reminder.getId()));
+        firePendingChanged();
+    }
+
+    // Removes the reminders with the given ids that still exist and records them for undo.
+    private void removeAll(List<String> reminderIds) {
+        List<Reminder> removed = new ArrayList<>(reminderIds.size());
+        for (String id : reminderIds) {
+            Reminder reminder = unindex(id);
+            if (reminder != null) {
+                removed.add(reminder);
+            }
+        }
+        if (removed.isEmpty()) {
+            return;
+        }
+        removeRows(removed);
+        undoManager.record(new RemindersRemoved(removed));
+        List<String> deletedIds = new ArrayList<>(removed.size());
+        removed.forEach(reminder -> deletedIds.add(reminder.getId()));
+        saveReminderChanges(List.of(), deletedIds);
+        deletedIds.forEach(id -> auditLog.record(AuditAction.REMINDER_DELETED, id));
+        firePendingChanged();
     }
 
     // Return a list of active reminders.
     public List<Reminder> getActiveReminders() {
-        return new ArrayList<>(reminders);
+        return new ArrayList<>(remindersById.values());
+    }
+
+    public Reminder getReminderById(String reminderId) {
+        return remindersById.get(reminderId);
+    }
+
+    // Return the reminders of a single task.
+    public List<Reminder> getRemindersForTask(String taskId) {
+        Set<String> ids = reminderIdsByTask.getOrDefault(taskId, Collections.emptySet());
+        List<Reminder> result = new ArrayList<>(ids.size());
+        ids.forEach(id -> result.add(remindersById.get(id)));
+        return result;
+    }
+
+    // Return the reminders falling on the given date.
+    public List<Reminder> getRemindersOn(LocalDate date) {
+        return getRemindersBetween(date, date);
     }
 
-    // Update an existing reminder by finding its index and replacing it.
+    public List<Reminder> getRemindersDueToday() {
+        return getRemindersOn(LocalDate.now());
+    }
+
+    // Return the reminders with dates in [from, to], ordered by date.
+    public List<Reminder> getRemindersBetween(LocalDate from, LocalDate to) {
+        List<Reminder> result = new ArrayList<>();
+        reminderIdsByDate.subMap(from, true, to, true).values()
+                .forEach(ids -> ids.forEach(id -> result.add(remindersById.get(id))));
+        return result;
+    }
+
+    // Update an existing reminder, re-indexing it under its current task and date.
     public void updateReminder(Reminder reminder) {
-        int index = -1;
-        for (int i = 0; i < reminders.size(); i++) {
-            if (reminders.get(i).getId().equals(reminder.getId())) {
-                index = i;
-                break;
-            }
+        LocalDate previousDate = indexedDates.get(reminder.getId());
+        Reminder existing = unindex(reminder.getId());
+        if (existing == null) {
+            throw new IllegalArgumentException("Reminder not found.");
         }
-        if (index != -1) {
-            reminders.set(index, reminder);
-            saveReminders();
-        } else {
+        undoManager.run("Edit Reminder", () -> {
+            // A reminder moved to another date should fire again on the new date.
+            if (reminder.getReminderDate() != null && !reminder.getReminderDate().equals(previousDate)) {
+                reminder.setFiredAt(null);
+                reminder.setAcknowledged(false);
+            }
+            index(reminder);
+            // Replace even when edited in place, so bound tables refresh the row.
+            replaceRow(reminder);
+            if (existing == reminder) {
+                saveChangedReminders(List.of(reminder));
+            } else {
+                reminder.takeChanges();
+                // Versions never go back, whatever version the new instance was made from.
+                reminder.setVersion(Math.max(existing.getVersion(), reminder.getVersion()));
+                undoManager.record(new RemindersRemoved(List.of(existing)));
+                undoManager.record(new RemindersAdded(List.of(reminder)));
+                saveReminderChanges(List.of(reminder), List.of());
+                auditLog.record(AuditAction.REMINDER_UPDATED, reminder.getId());
+            }
+            firePendingChanged();
+        });
+    }
+
+    /**
+     * Updates the given fields (type, reminderDate) of a reminder if they were not changed
+     * since the version the caller last saw; fields changed since by others are kept.
+     *
+     * @throws IllegalArgumentException if there is no such reminder or a field cannot be updated
+     * @throws VersionConflictException if a changed field was also changed since the expected version
+     */
+    public Reminder updateReminder(String reminderId, long expectedVersion, Map<String, Object> changes) {
+        Reminder reminder = remindersById.get(reminderId);
+        if (reminder == null) {
             throw new IllegalArgumentException("Reminder not found.");
         }
+        for (String field : changes.keySet()) {
+            if (!field.equals("type") && !field.equals("reminderDate")) {
+                throw new IllegalArgumentException("Cannot update reminder field " + field);
+            }
+        }
+        Map<String, Object> current = fieldValues(reminder, changes.keySet());
+        VersionCheck.check("Reminder", reminderId, expectedVersion, reminder.getVersion(),
+                reminder.changedSince(expectedVersion), changes, current);
+        if (!current.equals(changes)) {
+            applyFields(reminder, changes);
+            updateReminder(reminder);
+        }
+        return reminder;
+    }
+
+    /**
+     * Removes every pending reminder dated on or before {@code upTo} from the queue,
+     * marks it fired and persists the fired state in one batch, so that each reminder
+     * is handed out only once, including after a restart.
+     */
+    public List<Reminder> takeDueReminders(LocalDate upTo, LocalDateTime firedAt) {
+        List<Reminder> due = new ArrayList<>();
+        Iterator<Set<String>> buckets = pendingIdsByDate.headMap(upTo, true).values().iterator();
+        while (buckets.hasNext()) {
+            for (String id : buckets.next()) {
+                Reminder reminder = remindersById.get(id);
+                reminder.setFiredAt(firedAt);
+                due.add(reminder);
+            }
+            buckets.remove();
+        }
+        if (!due.isEmpty()) {
+            refreshRows(due);
+            saveChangedReminders(due);
+        }
+        return due;
+    }
+
+    // The date of the earliest reminder that has not fired yet, or null if there is none.
+    public LocalDate getNextPendingDate() {
+        return pendingIdsByDate.isEmpty() ? null : pendingIdsByDate.firstKey();
+    }
+
+    public void acknowledgeReminder(String reminderId) {
+        acknowledgeReminders(List.of(reminderId));
+    }
+
+    /**
+     * Acknowledges several reminders, e.g. all the ones shown together, with one save.
+     *
+     * @param reminderIds The ids of the reminders; unknown ids are ignored
+     */
+    public void acknowledgeReminders(Collection<String> reminderIds) {
+        List<Reminder> changed = new ArrayList<>();
+        for (String reminderId : reminderIds) {
+            Reminder reminder = remindersById.get(reminderId);
+            if (reminder != null && !reminder.isAcknowledged()) {
+                reminder.setAcknowledged(true);
+                changed.add(reminder);
+            }
+        }
+        if (!changed.isEmpty()) {
+            refreshRows(changed);
+            saveChangedReminders(changed);
+        }
+    }
+
+    /**
+     * Brings the reminders up to date with changes made elsewhere, without recording them
+     * for undo. Changes another process saved to a shared store are not saved again, and a
+     * stored reminder no newer than the one held here is skipped; replicated changes
+     * ({@code save}) always apply and are saved, except for when they fired here.
+     */
+    void applyStoredChanges(SharedStorageBackend.EntityChanges<Reminder> changes, boolean save) {
+        List<Reminder> added = new ArrayList<>();
+        List<Reminder> changed = new ArrayList<>();
+        for (Reminder stored : changes.getUpserts()) {
+            Reminder reminder = remindersById.get(stored.getId());
+            if (reminder == null) {
+                stored.resetChanges();
+                added.add(stored);
+                continue;
+            }
+            if (!save && stored.getVersion() <= reminder.getVersion()) {
+                continue;
+            }
+            Map<String, Object> values = fieldValues(stored, save ? REPLICATED_FIELDS : STORED_FIELDS);
+            Map<String, Object> current = fieldValues(reminder, values.keySet());
+            values.entrySet().removeIf(field -> Objects.equals(field.getValue(), current.get(field.getKey())));
+            unindex(reminder.getId());
+            if (save) {
+                // Like any edit, moving a reminder to another date makes it fire again.
+                if (values.containsKey("reminderDate")) {
+                    reminder.setFiredAt(null);
+                    reminder.setAcknowledged(false);
+                }
+                applyFields(reminder, values);
+                reminder.takeChanges();
+            } else {
+                reminder.setVersion(stored.getVersion() - 1);
+                applyFields(reminder, values);
+                reminder.takeChanges();
+                reminder.setVersion(stored.getVersion());
+            }
+            index(reminder);
+            if (!values.isEmpty()) {
+                changed.add(reminder);
+                auditLog.record(AuditAction.REMINDER_UPDATED, reminder.getId(), AuditLog.fieldMask(values.keySet()));
+            }
+        }
+        added.forEach(this::index);
+        addRows(added);
+        added.forEach(reminder -> auditLog.record(AuditAction.REMINDER_CREATED, reminder.getId()));
+        if (!changed.isEmpty()) {
+            refreshRows(changed);
+        }
+        Set<Reminder> removed = new HashSet<>();
+        changes.getDeletions().forEach((id, version) -> {
+            Reminder reminder = remindersById.get(id);
+            if (reminder != null && reminder.getVersion() <= version) {
+                removed.add(unindex(id));
+                auditLog.record(AuditAction.REMINDER_DELETED, id);
+            }
+        });
+        removeRows(removed);
+        if (save) {
+            List<Reminder> saved = new ArrayList<>(added);
+            saved.addAll(changed);
+            List<String> deletedIds = new ArrayList<>(removed.size());
+            removed.forEach(reminder -> deletedIds.add(reminder.getId()));
+            saveReminderChanges(saved, deletedIds);
+        }
+        firePendingChanged();
+    }
+
+    // Listeners are told when the set of pending reminders may have changed.
+    public void addPendingChangeListener(Runnable listener) {
+        pendingChangeListeners.add(listener);
+    }
+
+    public void removePendingChangeListener(Runnable listener) {
+        pendingChangeListeners.remove(listener);
+    }
+
+    private void firePendingChanged() {
+        pendingChangeListeners.forEach(Runnable::run);
     }
 
     // Provide access to the ObservableList for UI binding.
     public ObservableList<Reminder> getObservableReminders() {
         return reminders;
     }
+
+    // Applies one side of recorded deltas to the live reminders, re-indexing and saving them.
+    private void applyDeltas(List<ReminderDelta> deltas, boolean undo) {
+        List<Reminder> changed = new ArrayList<>(deltas.size());
+        for (ReminderDelta delta : deltas) {
+            Reminder reminder = unindex(delta.reminderId);
+            if (reminder != null) {
+                Map<String, Object> values = undo ? delta.before : delta.after;
+                applyFields(reminder, values);
+                reminder.takeChanges();
+                auditLog.record(AuditAction.REMINDER_UPDATED, reminder.getId(), AuditLog.fieldMask(values.keySet()));
+                index(reminder);
+                changed.add(reminder);
+            }
+        }
+        if (!changed.isEmpty()) {
+            refreshRows(changed);
+            saveReminderChanges(changed, List.of());
+            firePendingChanged();
+        }
+    }
+
+    // Re-adds reminders, skipping any that are back already.
+    private void addBack(List<Reminder> toAdd) {
+        List<Reminder> missing = new ArrayList<>(toAdd.size());
+        for (Reminder reminder : toAdd) {
+            if (!remindersById.containsKey(reminder.getId())) {
+                reminder.takeChanges();
+                missing.add(reminder);
+            }
+        }
+        if (!missing.isEmpty()) {
+            addAll(missing);
+        }
+    }
+
+    private static Map<String, Object> fieldValues(Reminder reminder, Set<String> fields) {
+        Map<String, Object> values = new HashMap<>(fields.size() * 2);
+        for (String field : fields) {
+            switch (field) {
+                case "type": values.put(field, reminder.getType()); break;
+                case "reminderDate": values.put(field, reminder.getReminderDate()); break;
+                case "firedAt": values.put(field, reminder.getFiredAt()); break;
+                case "acknowledged": values.put(field, reminder.isAcknowledged()); break;
+                default: throw new IllegalArgumentException("Unknown reminder field " + field);
+            }
+        }
+        return values;
+    }
+
+    private static void applyFields(Reminder reminder, Map<String, Object> values) {
+        values.forEach((field, value) -> {
+            switch (field) {
+                case "type": reminder.setType((ReminderType) value); break;
+                case "reminderDate": reminder.setReminderDate((LocalDate) value); break;
+                case "firedAt": reminder.setFiredAt((LocalDateTime) value); break;
+                case "acknowledged": reminder.setAcknowledged((Boolean) value); break;
+                default: throw new IllegalArgumentException("Unknown reminder field " + field);
+            }
+        });
+    }
+
+    private static final class ReminderDelta {
+        private final String reminderId;
+        private final Map<String, Object> before;
+        private final Map<String, Object> after;
+
+        private ReminderDelta(String reminderId, Map<String, Object> before, Map<String, Object> after) {
+            this.reminderId = reminderId;
+            this.before = before;
+            this.after = after;
+        }
+    }
+
+    private final class RemindersChanged implements UndoManager.Edit {
+        private final List<ReminderDelta> deltas;
+
+        private RemindersChanged(List<ReminderDelta> deltas) {
+            this.deltas = deltas;
+        }
+
+        @Override
+        public void undo() {
+            applyDeltas(deltas, true);
+        }
+
+        @Override
+        public void redo() {
+            applyDeltas(deltas, false);
+        }
+
+        @Override
+        public long estimatedBytes() {
+            return deltas.size() * ESTIMATED_REMINDER_BYTES;
+        }
+    }
+
+    private final class RemindersAdded implements UndoManager.Edit {
+        private final List<Reminder> added;
+
+        private RemindersAdded(List<Reminder> added) {
+            this.added = added;
+        }
+
+        @Override
+        public void undo() {
+            List<String> ids = new ArrayList<>(added.size());
+            added.forEach(reminder -> ids.add(reminder.getId()));
+            removeAll(ids);
+        }
+
+        @Override
+        public void redo() {
+            addBack(added);
+        }
+
+        @Override
+        public long estimatedBytes() {
+            return added.size() * ESTIMATED_REMINDER_BYTES;
+        }
+    }
+
+    private final class RemindersRemoved implements UndoManager.Edit {
+        private final List<Reminder> removed;
+
+        private RemindersRemoved(List<Reminder> removed) {
+            this.removed = removed;
+        }
+
+        @Override
+        public void undo() {
+            addBack(removed);
+        }
+
+        @Override
+        public void redo() {
+            List<String> ids = new ArrayList<>(removed.size());
+            removed.forEach(reminder -> ids.add(reminder.getId()));
+            removeAll(ids);
+        }
+
+        @Override
+        public long estimatedBytes() {
+            return removed.size() * ESTIMATED_REMINDER_BYTES;
+        }
+    }
 }
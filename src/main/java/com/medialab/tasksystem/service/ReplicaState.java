@@ -0,0 +1,397 @@
+package com.medialab.tasksystem.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.medialab.tasksystem.exceptions.DataStorageException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * What this replica knows of the replicated workspace, as a CRDT.
+ * <p>
+ * Every field of every entity is a last-writer-wins register holding the time and replica
+ * of the operation that set it, and the value, or only a hash of it for long text such as
+ * descriptions, which live in the workspace and the logs already; the later operation wins,
+ * ties going to the higher replica id. Whether an entity exists is an observed-remove set: creating it
+ * adds a unique tag, deleting it removes the tags the deleting replica had seen, so a
+ * create (or restore) concurrent with a delete wins. Operations carry hybrid logical
+ * clock times, which never go back and stay ahead of every operation seen, so a replica
+ * with a slow clock still orders its edits after the ones it has merged.
+ * </p>
+ * Merging is idempotent, commutative and associative: replicas that have merged the same
+ * operations, in any order and any number of times, hold the same state.
+ * <p>
+ * The state is saved as a snapshot plus a journal of the entities changed since, so a save
+ * costs as much as the changes since the last one.
+ * </p>
+ */
+final class ReplicaState {
+    // Text values longer than this are kept as a hash.
+    static final int HASHED_LENGTH = 64;
+    private static final String JOURNAL_SUFFIX = ".journal";
+
+    // An operation on one entity, as written to a replica's log.
+    static final class Op {
+        final long time;
+        final String replica;
+        final String type;
+        final String id;
+        // Field values set (null if none), the tag added (null if none) and the tags removed (null if none).
+        final Map<String, JsonNode> set;
+        final String add;
+        final List<String> remove;
+
+        Op(long time, String replica, String type, String id, Map<String, JsonNode> set, String add,
+           List<String> remove) {
+            this.time = time;
+            this.replica = replica;
+            this.type = type;
+            this.id = id;
+            this.set = set;
+            this.add = add;
+            this.remove = remove;
+        }
+
+        String key() {
+            return ReplicaState.key(type, id);
+        }
+
+        ObjectNode toJson(ObjectMapper objectMapper) {
+            ObjectNode node = objectMapper.createObjectNode()
+                    .put("time", time)
+                    .put("replica", replica)
+                    .put("type", type)
+                    .put("id", id);
+            if (add != null) {
+                node.put("add", add);
+            }
+            if (remove != null) {
+                ArrayNode tags = node.putArray("remove");
+                remove.forEach(tags::add);
+            }
+            if (set != null) {
+                node.putObject("set").setAll(set);
+            }
+            return node;
+        }
+
+        static Op fromJson(JsonNode node) {
+            Map<String, JsonNode> set = null;
+            if (node.has("set")) {
+                set = new LinkedHashMap<>();
+                Iterator<Map.Entry<String, JsonNode>> fields = node.get("set").fields();
+                while (fields.hasNext()) {
+                    Map.Entry<String, JsonNode> field = fields.next();
+                    set.put(field.getKey(), field.getValue());
+                }
+            }
+            List<String> remove = null;
+            if (node.has("remove")) {
+                remove = new ArrayList<>();
+                for (JsonNode tag : node.get("remove")) {
+                    remove.add(tag.asText());
+                }
+            }
+            return new Op(node.get("time").asLong(), node.get("replica").asText(), node.get("type").asText(),
+                    node.get("id").asText(), set, node.has("add") ? node.get("add").asText() : null, remove);
+        }
+    }
+
+    static final class Register {
+        // The value, or null for a long text value, of which only the hash is kept.
+        final JsonNode value;
+        final String hash;
+        final long time;
+        final String replica;
+
+        Register(JsonNode value, String hash, long time, String replica) {
+            this.value = value;
+            this.hash = hash;
+            this.time = time;
+            this.replica = replica;
+        }
+
+        static Register of(JsonNode value, long time, String replica) {
+            String hash = hash(value);
+            return new Register(hash != null ? null : value, hash, time, replica);
+        }
+
+        boolean holds(JsonNode other) {
+            return hash != null ? hash.equals(hash(other)) : value.equals(other);
+        }
+
+        boolean isOlderThan(long otherTime, String otherReplica) {
+            return time != otherTime ? time < otherTime : replica.compareTo(otherReplica) < 0;
+        }
+    }
+
+    static final class Entry {
+        final Map<String, Register> fields = new HashMap<>();
+        // Tags of the creates not yet removed, and the removed ones.
+        final Set<String> tags = new HashSet<>();
+        final Set<String> removed = new HashSet<>();
+
+        boolean isPresent() {
+            return !tags.isEmpty();
+        }
+
+        // The field's value, or null if it is not set or only its hash is kept.
+        JsonNode value(String field) {
+            Register register = fields.get(field);
+            return register != null ? register.value : null;
+        }
+
+        boolean holds(String field, JsonNode value) {
+            Register register = fields.get(field);
+            return register != null && register.holds(value);
+        }
+    }
+
+    private final String replicaId;
+    private long clock;
+    // Keyed by type + '/' + id.
+    private final Map<String, Entry> entries = new HashMap<>();
+    // How many bytes of each replica's log have been merged, by log file name.
+    private final Map<String, Long> offsets = new HashMap<>();
+    // The last audit record whose changes were logged, or -1 if none.
+    private long auditSequence = -1;
+    // Counts the snapshots written; journal lines of an older snapshot are ignored.
+    private long generation;
+    // Entities changed since the last save.
+    private final Set<String> dirty = new HashSet<>();
+
+    private ReplicaState(String replicaId) {
+        this.replicaId = replicaId;
+    }
+
+    static String key(String type, String id) {
+        return type + '/' + id;
+    }
+
+    String getReplicaId() {
+        return replicaId;
+    }
+
+    Entry get(String key) {
+        return entries.get(key);
+    }
+
+    Map<String, Entry> entries() {
+        return entries;
+    }
+
+    long getOffset(String logName) {
+        return offsets.getOrDefault(logName, 0L);
+    }
+
+    void setOffset(String logName, long offset) {
+        offsets.put(logName, offset);
+    }
+
+    Map<String, Long> getOffsets() {
+        return offsets;
+    }
+
+    long getAuditSequence() {
+        return auditSequence;
+    }
+
+    void setAuditSequence(long auditSequence) {
+        this.auditSequence = auditSequence;
+    }
+
+    // The time for a new operation of this replica.
+    long tick() {
+        clock = Math.max(clock + 1, System.currentTimeMillis());
+        return clock;
+    }
+
+    /**
+     * Merges an operation of any replica; returns whether the entity's existence or any
+     * of its field values changed.
+     */
+    boolean merge(Op op) {
+        clock = Math.max(clock, op.time);
+        Entry entry = entries.computeIfAbsent(op.key(), k -> new Entry());
+        boolean wasPresent = entry.isPresent();
+        boolean changed = false;
+        boolean modified = false;
+        if (op.remove != null) {
+            for (String tag : op.remove) {
+                modified |= entry.removed.add(tag);
+                entry.tags.remove(tag);
+            }
+        }
+        if (op.add != null && !entry.removed.contains(op.add)) {
+            modified |= entry.tags.add(op.add);
+        }
+        if (op.set != null) {
+            for (Map.Entry<String, JsonNode> field : op.set.entrySet()) {
+                Register register = entry.fields.get(field.getKey());
+                if (register == null || register.isOlderThan(op.time, op.replica)) {
+                    entry.fields.put(field.getKey(), Register.of(field.getValue(), op.time, op.replica));
+                    changed |= register == null || !register.holds(field.getValue());
+                    modified = true;
+                }
+            }
+        }
+        if (modified) {
+            dirty.add(op.key());
+        }
+        return changed || wasPresent != entry.isPresent();
+    }
+
+    static ReplicaState create() {
+        return new ReplicaState(UUID.randomUUID().toString());
+    }
+
+    static ReplicaState load(File file, ObjectMapper objectMapper) {
+        try {
+            JsonNode root = objectMapper.readTree(file);
+            ReplicaState state = new ReplicaState(root.get("replica").asText());
+            state.generation = root.path("generation").asLong();
+            state.read(root);
+            state.replayJournal(journalFile(file), objectMapper);
+            return state;
+        } catch (IOException | RuntimeException e) {
+            throw new DataStorageException("Failed to read replication state " + file, e);
+        }
+    }
+
+    // Applies the journal lines of the current snapshot; a torn last line is cut off, so the next one starts clean.
+    private void replayJournal(File journal, ObjectMapper objectMapper) throws IOException {
+        if (!journal.exists()) {
+            return;
+        }
+        byte[] bytes = Files.readAllBytes(journal.toPath());
+        int start = 0;
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] == '\n') {
+                JsonNode line = objectMapper.readTree(bytes, start, i - start);
+                if (line.path("generation").asLong() == generation) {
+                    read(line);
+                }
+                start = i + 1;
+            }
+        }
+        if (start < bytes.length) {
+            try (FileChannel channel = FileChannel.open(journal.toPath(), StandardOpenOption.WRITE)) {
+                channel.truncate(start);
+            }
+        }
+    }
+
+    private void read(JsonNode node) {
+        clock = node.get("clock").asLong();
+        auditSequence = node.path("auditSequence").asLong(-1);
+        node.get("offsets").fields().forEachRemaining(offset -> offsets.put(offset.getKey(), offset.getValue().asLong()));
+        node.get("entities").fields().forEachRemaining(entity -> {
+            Entry entry = new Entry();
+            JsonNode entryNode = entity.getValue();
+            entryNode.get("fields").fields().forEachRemaining(field -> {
+                JsonNode register = field.getValue();
+                entry.fields.put(field.getKey(), new Register(register.has("hash") ? null : register.get("value"),
+                        register.has("hash") ? register.get("hash").asText() : null,
+                        register.get("time").asLong(), register.get("replica").asText()));
+            });
+            entryNode.get("tags").forEach(tag -> entry.tags.add(tag.asText()));
+            entryNode.get("removed").forEach(tag -> entry.removed.add(tag.asText()));
+            entries.put(entity.getKey(), entry);
+        });
+    }
+
+    /**
+     * Saves the entities changed since the last save as a line appended to a journal next
+     * to the file. Once the journal has grown larger than the file, the whole state is
+     * written instead, to a temporary file first, so a crash leaves the previous state intact.
+     */
+    void save(File file, ObjectMapper objectMapper) {
+        File journal = journalFile(file);
+        try {
+            if (!file.exists() || journal.length() > file.length()) {
+                generation++;
+                ObjectNode root = write(objectMapper, entries.keySet()).put("replica", replicaId);
+                File temp = new File(file.getPath() + ".tmp");
+                objectMapper.writeValue(temp, root);
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                Files.deleteIfExists(journal.toPath());
+            } else {
+                byte[] line = objectMapper.writeValueAsBytes(write(objectMapper, dirty));
+                byte[] bytes = new byte[line.length + 1];
+                System.arraycopy(line, 0, bytes, 0, line.length);
+                bytes[line.length] = '\n';
+                Files.write(journal.toPath(), bytes, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            }
+            dirty.clear();
+        } catch (IOException e) {
+            throw new DataStorageException("Failed to save replication state " + file, e);
+        }
+    }
+
+    private ObjectNode write(ObjectMapper objectMapper, Set<String> keys) {
+        ObjectNode root = objectMapper.createObjectNode()
+                .put("generation", generation)
+                .put("clock", clock)
+                .put("auditSequence", auditSequence);
+        ObjectNode offsetsNode = root.putObject("offsets");
+        offsets.forEach(offsetsNode::put);
+        ObjectNode entitiesNode = root.putObject("entities");
+        for (String key : keys) {
+            Entry entry = entries.get(key);
+            ObjectNode node = entitiesNode.putObject(key);
+            ObjectNode fieldsNode = node.putObject("fields");
+            entry.fields.forEach((field, register) -> {
+                ObjectNode registerNode = fieldsNode.putObject(field)
+                        .put("time", register.time)
+                        .put("replica", register.replica);
+                if (register.hash != null) {
+                    registerNode.put("hash", register.hash);
+                } else {
+                    registerNode.set("value", register.value);
+                }
+            });
+            ArrayNode tags = node.putArray("tags");
+            entry.tags.forEach(tags::add);
+            ArrayNode removed = node.putArray("removed");
+            entry.removed.forEach(removed::add);
+        }
+        return root;
+    }
+
+    private static File journalFile(File file) {
+        return new File(file.getPath() + JOURNAL_SUFFIX);
+    }
+
+    // The hash kept in place of a text value longer than HASHED_LENGTH, or null for any other value.
+    static String hash(JsonNode value) {
+        if (value == null || !value.isTextual() || value.textValue().length() <= HASHED_LENGTH) {
+            return null;
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(value.textValue().getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
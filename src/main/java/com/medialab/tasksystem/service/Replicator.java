@@ -0,0 +1,843 @@
+package com.medialab.tasksystem.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.BooleanNode;
+import com.fasterxml.jackson.databind.node.IntNode;
+import com.fasterxml.jackson.databind.node.NullNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+import com.medialab.tasksystem.audit.AuditAction;
+import com.medialab.tasksystem.audit.AuditLog;
+import com.medialab.tasksystem.audit.AuditLogReader;
+import com.medialab.tasksystem.audit.AuditRecord;
+import com.medialab.tasksystem.exceptions.DataStorageException;
+import com.medialab.tasksystem.model.Category;
+import com.medialab.tasksystem.model.PriorityLevel;
+import com.medialab.tasksystem.model.Reminder;
+import com.medialab.tasksystem.model.ReminderType;
+import com.medialab.tasksystem.model.Task;
+import com.medialab.tasksystem.model.TaskStatus;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps a workspace in sync with other instances (e.g. on other machines) through a
+ * shared directory, such as a synced folder, without a central database.
+ * <p>
+ * Each replica appends the operations it makes to its own log in the shared directory,
+ * {@code <replica id>.oplog}, one JSON line per operation holding only the fields that
+ * changed, and reads the logs of the others from where it stopped last time, so a sync
+ * costs as much as the changes made since, whatever the size of the workspace. The
+ * operations merge as a CRDT ({@link ReplicaState}): per-field last-writer-wins registers
+ * for tasks, reminders, categories and priority levels, and an observed-remove set for
+ * which of them exist, so replicas that have read the same logs hold the same data.
+ * </p>
+ * Local changes are found through the audit log: each recorded change makes the replica
+ * compare the entity with its replicated state and log the fields that differ. Changes
+ * made while replication was off are found when it starts, from the audit records after
+ * the last one it captured. Archiving a task
+ * sets its {@value #ARCHIVED} field rather than removing it, so the other replicas move it
+ * to their own archives instead of deleting it. Operations of
+ * other replicas are applied on the owner executor (the FX thread in the desktop app) and
+ * saved, but not recorded for undo. The replicated state is kept in
+ * {@value #STATE_FILE} in the workspace; what changed is saved every few minutes and when
+ * replication stops.
+ */
+public class Replicator {
+    private static final Logger LOGGER = Logger.getLogger(Replicator.class.getName());
+    /** The storage.properties setting naming the shared directory; replication is off without it. */
+    public static final String DIRECTORY_SETTING = "replication.dir";
+    public static final String STATE_FILE = "replication-state.json";
+    static final String LOG_SUFFIX = ".oplog";
+    // Look at the shared directory at least this often, in case a change notification is missed.
+    private static final long POLL_INTERVAL_MILLIS = 2000;
+    private static final long SAVE_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    private static final int READ_CHUNK = 64 * 1024;
+    private static final int READ_RECORDS = 4096;
+
+    static final String TASK = "task";
+    static final String REMINDER = "reminder";
+    static final String CATEGORY = "category";
+    static final String PRIORITY = "priority";
+    // The task field telling whether a task was moved to the archive rather than deleted.
+    static final String ARCHIVED = "archived";
+
+    private final ServiceManager services;
+    private final File shareDir;
+    private final Executor ownerExecutor;
+    private final ObjectMapper objectMapper;
+    private final AuditLog auditLog;
+    private final File stateFile;
+    private final AuditLog.Listener auditListener = this::recordsWritten;
+    // Owner thread state.
+    private ReplicaState state;
+    private File ownLog;
+    private final ByteArrayOutputStream pendingLines = new ByteArrayOutputStream();
+    private boolean stateChanged;
+    // Watcher thread state: how far each log has been read.
+    private final Map<String, Long> readOffsets = new HashMap<>();
+    private volatile boolean running;
+    private WatchService watchService;
+    private Thread thread;
+
+    public Replicator(ServiceManager services, File shareDir, Executor ownerExecutor) {
+        if (SharedStoreWatcher.isShared(services)) {
+            throw new IllegalArgumentException("A workspace with shared storage cannot be replicated");
+        }
+        this.services = services;
+        this.shareDir = shareDir;
+        this.ownerExecutor = ownerExecutor;
+        this.objectMapper = services.getPersistenceService().getObjectMapper();
+        this.auditLog = services.getPersistenceService().getAuditLog();
+        this.stateFile = new File(services.getWorkspaceDir(), STATE_FILE);
+    }
+
+    /**
+     * The replicator configured in the workspace's storage.properties, or null if the
+     * workspace is not replicated. A relative directory is taken relative to the workspace.
+     */
+    public static Replicator forWorkspace(ServiceManager services, Executor ownerExecutor) {
+        String dir = services.getPersistenceService().getStorageSetting(DIRECTORY_SETTING);
+        if (dir == null || dir.isBlank()) {
+            return null;
+        }
+        File shareDir = new File(dir.trim());
+        if (!shareDir.isAbsolute()) {
+            shareDir = new File(services.getWorkspaceDir(), dir.trim());
+        }
+        return new Replicator(services, shareDir, ownerExecutor);
+    }
+
+    /**
+     * Catches up with the other replicas and starts following them.
+     * Must be called on the owner thread.
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        if (!shareDir.exists() && !shareDir.mkdirs()) {
+            throw new DataStorageException("Failed to create replication directory " + shareDir);
+        }
+        boolean joining = !stateFile.exists();
+        state = joining ? ReplicaState.create() : ReplicaState.load(stateFile, objectMapper);
+        ownLog = new File(shareDir, state.getReplicaId() + LOG_SUFFIX);
+        readOffsets.putAll(state.getOffsets());
+        // Operations logged before a crash may be missing from the saved state.
+        List<ReplicaState.Op> own = new ArrayList<>();
+        readLog(ownLog, own, true);
+        own.forEach(state::merge);
+        state.setOffset(ownLog.getName(), readOffsets.getOrDefault(ownLog.getName(), 0L));
+        List<ReplicaState.Op> remote = new ArrayList<>();
+        Map<String, Long> offsets = readOtherLogs(remote);
+        if (joining) {
+            join(remote);
+        } else {
+            captureRecorded();
+        }
+        applyRemote(remote, offsets);
+        stateChanged = true;
+        saveState();
+        running = true;
+        auditLog.addListener(auditListener);
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            shareDir.toPath().register(watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException e) {
+            LOGGER.log(Level.INFO, "Change notifications unavailable, polling " + shareDir, e);
+            watchService = null;
+        }
+        thread = new Thread(this::watch, "replicator");
+        thread.setDaemon(true);
+        thread.start();
+        LOGGER.info("Replicating " + services.getWorkspaceDir() + " as " + state.getReplicaId() + " through " + shareDir);
+    }
+
+    /**
+     * Stops following the other replicas and saves the replicated state.
+     * Must be called on the owner thread.
+     */
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        auditLog.removeListener(auditListener);
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "Failed to close watch service", e);
+            }
+        }
+        thread.interrupt();
+        saveState();
+    }
+
+    public String getReplicaId() {
+        return state != null ? state.getReplicaId() : null;
+    }
+
+    /**
+     * A replica that has never synced merges the others' state first, so it does not
+     * publish duplicates of the levels and categories every workspace starts with: a local
+     * one with the name of a replicated one is replaced by it, along with its uses. What
+     * is left of the local data is then published.
+     */
+    private void join(List<ReplicaState.Op> remote) {
+        remote.forEach(state::merge);
+        Map<String, String> adopted = new HashMap<>();
+        for (PriorityLevel level : services.getPriorityService().getAllPriorityLevels()) {
+            String match = findByName(PRIORITY, level.getName());
+            if (match != null && !match.equals(level.getId())) {
+                adopted.put(level.getId(), match);
+            }
+        }
+        for (Category category : services.getCategoryService().getAllCategories()) {
+            String match = findByName(CATEGORY, category.getName());
+            if (match != null && !match.equals(category.getId())) {
+                adopted.put(category.getId(), match);
+            }
+        }
+        Set<String> keys = new LinkedHashSet<>(state.entries().keySet());
+        Changes changes = changesFor(keys, values(remote));
+        for (Task task : services.getTaskService().getAllTasks()) {
+            boolean category = task.getCategory() != null && adopted.containsKey(task.getCategory().getId());
+            boolean priority = task.getPriority() != null && adopted.containsKey(task.getPriority().getId());
+            if ((category || priority) && state.get(ReplicaState.key(TASK, task.getId())) == null) {
+                Map<String, JsonNode> fields = taskFields(task);
+                if (category) {
+                    fields.put("category", TextNode.valueOf(adopted.get(task.getCategory().getId())));
+                }
+                if (priority) {
+                    fields.put("priority", TextNode.valueOf(adopted.get(task.getPriority().getId())));
+                }
+                changes.tasks.add(toTask(task.getId(), fields));
+            }
+        }
+        for (String id : adopted.keySet()) {
+            if (services.getPriorityService().getPriorityLevelById(id) != null) {
+                changes.priorityDeletions.put(id, Long.MAX_VALUE);
+            } else {
+                changes.categoryDeletions.put(id, Long.MAX_VALUE);
+            }
+        }
+        apply(changes);
+        captureAll();
+        if (!adopted.isEmpty()) {
+            LOGGER.info("Joined replication, replacing " + adopted.size() + " local levels and categories");
+        }
+    }
+
+    private String findByName(String type, String name) {
+        for (Map.Entry<String, ReplicaState.Entry> entry : state.entries().entrySet()) {
+            JsonNode entryName = entry.getValue().value("name");
+            if (entry.getKey().startsWith(type + '/') && entry.getValue().isPresent()
+                    && entryName != null && entryName.asText().equalsIgnoreCase(name)) {
+                return entry.getKey().substring(type.length() + 1);
+            }
+        }
+        return null;
+    }
+
+    // On the audit writer: look at the changed entities on the owner thread.
+    private void recordsWritten(List<AuditRecord> records) {
+        Map<String, AuditAction> keys = changedKeys(records);
+        long sequence = records.get(records.size() - 1).getSequence();
+        if (!keys.isEmpty()) {
+            ownerExecutor.execute(() -> {
+                if (running) {
+                    keys.forEach(this::capture);
+                    writePendingLines();
+                    state.setAuditSequence(Math.max(state.getAuditSequence(), sequence));
+                    stateChanged = true;
+                }
+            });
+        }
+    }
+
+    // The entities the records change, with the last action on each, which tells an archived task from a deleted one.
+    private static Map<String, AuditAction> changedKeys(List<AuditRecord> records) {
+        Map<String, AuditAction> keys = new LinkedHashMap<>();
+        for (AuditRecord record : records) {
+            String type = entityType(record.getAction());
+            if (type != null) {
+                keys.put(ReplicaState.key(type, record.getEntityId()), record.getAction());
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Logs the changes recorded in the audit log after the last record captured, which
+     * include those made while replication was off. Everything is compared instead if the
+     * state predates the log or the log no longer holds that record.
+     */
+    private void captureRecorded() {
+        auditLog.flush();
+        File dir = auditLog.getDirectory();
+        long sequence = state.getAuditSequence();
+        if (sequence < 0 || sequence > AuditLogReader.latestSequence(dir)) {
+            captureAll();
+            return;
+        }
+        Map<String, AuditAction> keys = new LinkedHashMap<>();
+        List<AuditRecord> records;
+        do {
+            records = AuditLogReader.readAfter(dir, sequence, READ_RECORDS);
+            if (records.isEmpty()) {
+                break;
+            }
+            if (records.get(0).getSequence() != sequence + 1) {
+                captureAll();
+                return;
+            }
+            keys.putAll(changedKeys(records));
+            sequence = records.get(records.size() - 1).getSequence();
+        } while (records.size() == READ_RECORDS);
+        keys.forEach(this::capture);
+        writePendingLines();
+        state.setAuditSequence(sequence);
+    }
+
+    private static String entityType(AuditAction action) {
+        if (action == null) {
+            return null;
+        }
+        switch (action) {
+            case TASK_CREATED: case TASK_UPDATED: case TASK_DELETED: case TASK_ARCHIVED: case TASK_RESTORED:
+                return TASK;
+            case REMINDER_CREATED: case REMINDER_UPDATED: case REMINDER_DELETED:
+                return REMINDER;
+            case CATEGORY_CREATED: case CATEGORY_UPDATED: case CATEGORY_DELETED:
+                return CATEGORY;
+            case PRIORITY_CREATED: case PRIORITY_UPDATED: case PRIORITY_DELETED:
+                return PRIORITY;
+            default:
+                return null;
+        }
+    }
+
+    // Logs whatever differs between every live entity and the replicated state.
+    private void captureAll() {
+        auditLog.flush();
+        state.setAuditSequence(AuditLogReader.latestSequence(auditLog.getDirectory()));
+        Set<String> keys = new LinkedHashSet<>();
+        services.getPriorityService().getAllPriorityLevels().forEach(level -> keys.add(ReplicaState.key(PRIORITY, level.getId())));
+        services.getCategoryService().getAllCategories().forEach(category -> keys.add(ReplicaState.key(CATEGORY, category.getId())));
+        services.getTaskService().getAllTasks().forEach(task -> keys.add(ReplicaState.key(TASK, task.getId())));
+        services.getReminderService().getActiveReminders().forEach(reminder -> keys.add(ReplicaState.key(REMINDER, reminder.getId())));
+        state.entries().forEach((key, entry) -> {
+            if (entry.isPresent()) {
+                keys.add(key);
+            }
+        });
+        keys.forEach(this::capture);
+        writePendingLines();
+    }
+
+    private void capture(String key) {
+        capture(key, null);
+    }
+
+    /**
+     * Logs an operation for what differs between the live entity and its replicated
+     * state: the fields with other values, a create if the state lacks it, or a delete
+     * if it is gone. A task that is gone because it was archived is marked archived.
+     *
+     * @param action The last recorded action on the entity, or null if not known
+     */
+    private void capture(String key, AuditAction action) {
+        int slash = key.indexOf('/');
+        String type = key.substring(0, slash);
+        String id = key.substring(slash + 1);
+        Map<String, JsonNode> live = liveFields(type, id);
+        ReplicaState.Entry entry = state.get(key);
+        boolean present = entry != null && entry.isPresent();
+        if (live == null) {
+            if (present && isArchived(entry)) {
+                return;
+            }
+            if (present && type.equals(TASK) && (action == AuditAction.TASK_ARCHIVED
+                    || action == null && isInArchive(id))) {
+                log(type, id, Map.of(ARCHIVED, BooleanNode.TRUE), false, null);
+            } else if (present) {
+                log(type, id, null, false, new ArrayList<>(entry.tags));
+            }
+            return;
+        }
+        Map<String, JsonNode> set = new LinkedHashMap<>();
+        live.forEach((field, value) -> {
+            if (!present || !entry.holds(field, value)) {
+                set.put(field, value);
+            }
+        });
+        if (!present || !set.isEmpty()) {
+            log(type, id, set.isEmpty() ? null : set, !present, null);
+        }
+    }
+
+    private static boolean isArchived(ReplicaState.Entry entry) {
+        JsonNode archived = entry.value(ARCHIVED);
+        return archived != null && archived.asBoolean();
+    }
+
+    // Whether a task was taken back out of the archive: its archived field was set after it was created.
+    private static boolean wasRestored(ReplicaState.Entry entry) {
+        ReplicaState.Register archived = entry.fields.get(ARCHIVED);
+        return archived != null && !entry.tags.contains(archived.time + "@" + archived.replica);
+    }
+
+    // Reads the archive, so only used when the audit log did not say what became of the task.
+    private boolean isInArchive(String taskId) {
+        return !services.getPersistenceService().getTaskArchive()
+                .query(task -> task.getId().equals(taskId), 1).isEmpty();
+    }
+
+    private void log(String type, String id, Map<String, JsonNode> set, boolean create, List<String> remove) {
+        long time = state.tick();
+        String replica = state.getReplicaId();
+        ReplicaState.Op op = new ReplicaState.Op(time, replica, type, id, set,
+                create ? time + "@" + replica : null, remove);
+        state.merge(op);
+        stateChanged = true;
+        try {
+            pendingLines.write(objectMapper.writeValueAsBytes(op.toJson(objectMapper)));
+            pendingLines.write('\n');
+        } catch (IOException e) {
+            throw new DataStorageException("Failed to serialize replication operation", e);
+        }
+    }
+
+    // Appends the operations logged since the last call with one write.
+    private void writePendingLines() {
+        if (pendingLines.size() == 0) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(ownLog.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            ByteBuffer buffer = ByteBuffer.wrap(pendingLines.toByteArray());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            state.setOffset(ownLog.getName(), channel.size());
+        } catch (IOException e) {
+            throw new DataStorageException("Failed to write " + ownLog, e);
+        } finally {
+            pendingLines.reset();
+        }
+    }
+
+    /**
+     * Merges operations read from other replicas' logs and applies what they changed.
+     * Each entity they touch is captured first, so a local edit not yet logged takes part
+     * in the merge rather than being overwritten unseen.
+     */
+    private void applyRemote(List<ReplicaState.Op> ops, Map<String, Long> offsets) {
+        Set<String> keys = new LinkedHashSet<>();
+        ops.forEach(op -> keys.add(op.key()));
+        keys.forEach(this::capture);
+        writePendingLines();
+        Set<String> changed = new LinkedHashSet<>();
+        for (ReplicaState.Op op : ops) {
+            if (state.merge(op)) {
+                changed.add(op.key());
+            }
+        }
+        offsets.forEach(state::setOffset);
+        stateChanged |= !ops.isEmpty();
+        if (!changed.isEmpty()) {
+            apply(changesFor(changed, values(ops)));
+        }
+    }
+
+    private void apply(Changes changes) {
+        changes.restoredTasks.forEach(services.getPersistenceService().getTaskArchive()::restore);
+        if (!changes.isEmpty()) {
+            services.applyReplicatedChanges(changes.toStoredChanges());
+        }
+        if (!changes.archivedTasks.isEmpty()) {
+            services.archiveReplicatedTasks(changes.archivedTasks);
+        }
+    }
+
+    // The field values of the given operations that are the current ones in the replicated state, by key.
+    private Map<String, Map<String, JsonNode>> values(List<ReplicaState.Op> ops) {
+        Map<String, Map<String, JsonNode>> values = new HashMap<>();
+        for (ReplicaState.Op op : ops) {
+            if (op.set == null) {
+                continue;
+            }
+            ReplicaState.Entry entry = state.get(op.key());
+            op.set.forEach((field, value) -> {
+                ReplicaState.Register register = entry.fields.get(field);
+                if (register.time == op.time && register.replica.equals(op.replica)) {
+                    values.computeIfAbsent(op.key(), key -> new HashMap<>()).put(field, value);
+                }
+            });
+        }
+        return values;
+    }
+
+    /**
+     * The changes that bring the live entities with the given keys in line with the
+     * replicated state. Values the state only keeps a hash of are taken from the given
+     * operation values, or else from the live entity if it holds them.
+     */
+    private Changes changesFor(Set<String> keys, Map<String, Map<String, JsonNode>> values) {
+        Changes changes = new Changes();
+        for (String key : keys) {
+            int slash = key.indexOf('/');
+            String type = key.substring(0, slash);
+            String id = key.substring(slash + 1);
+            ReplicaState.Entry entry = state.get(key);
+            if (entry != null && entry.isPresent()) {
+                Map<String, JsonNode> known = values.getOrDefault(key, Map.of());
+                Map<String, JsonNode> live = entry.fields.values().stream().anyMatch(register -> register.value == null)
+                        ? liveFields(type, id) : null;
+                Map<String, JsonNode> fields = new HashMap<>();
+                entry.fields.forEach((field, register) -> {
+                    if (register.value != null) {
+                        fields.put(field, register.value);
+                    } else if (known.containsKey(field)) {
+                        fields.put(field, known.get(field));
+                    } else if (live != null && register.holds(live.get(field))) {
+                        fields.put(field, live.get(field));
+                    } else {
+                        fields.put(field, loggedValue(key, field, register));
+                    }
+                });
+                if (type.equals(TASK) && isArchived(entry)) {
+                    changes.archivedTasks.add(toTask(id, fields));
+                    continue;
+                }
+                if (type.equals(TASK) && wasRestored(entry) && services.getTaskService().getTaskById(id) == null) {
+                    changes.restoredTasks.add(id);
+                }
+                switch (type) {
+                    case TASK: changes.tasks.add(toTask(id, fields)); break;
+                    case REMINDER: changes.reminders.add(toReminder(id, fields)); break;
+                    case CATEGORY: changes.categories.add(toCategory(id, fields)); break;
+                    case PRIORITY: changes.priorityLevels.add(toPriorityLevel(id, fields)); break;
+                    default: break;
+                }
+            } else if (liveFields(type, id) != null) {
+                switch (type) {
+                    case TASK: changes.taskDeletions.put(id, Long.MAX_VALUE); break;
+                    case REMINDER: changes.reminderDeletions.put(id, Long.MAX_VALUE); break;
+                    case CATEGORY: changes.categoryDeletions.put(id, Long.MAX_VALUE); break;
+                    case PRIORITY: changes.priorityDeletions.put(id, Long.MAX_VALUE); break;
+                    default: break;
+                }
+            }
+        }
+        return changes;
+    }
+
+    // Finds a value set by an operation merged earlier in the log of the replica that made it.
+    private JsonNode loggedValue(String key, String field, ReplicaState.Register register) {
+        File log = new File(shareDir, register.replica + LOG_SUFFIX);
+        try (BufferedReader reader = Files.newBufferedReader(log.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                ReplicaState.Op op;
+                try {
+                    op = ReplicaState.Op.fromJson(objectMapper.readTree(line));
+                } catch (IOException | RuntimeException e) {
+                    continue;
+                }
+                if (op.time == register.time && op.key().equals(key) && op.set != null && op.set.containsKey(field)) {
+                    return op.set.get(field);
+                }
+            }
+        } catch (IOException e) {
+            throw new DataStorageException("Failed to read " + log, e);
+        }
+        throw new DataStorageException("No value for " + key + " " + field + " in " + log);
+    }
+
+    // The replicated fields of a live entity, or null if there is none with that id.
+    private Map<String, JsonNode> liveFields(String type, String id) {
+        switch (type) {
+            case TASK: {
+                Task task = services.getTaskService().getTaskById(id);
+                return task != null ? taskFields(task) : null;
+            }
+            case REMINDER: {
+                Reminder reminder = services.getReminderService().getReminderById(id);
+                if (reminder == null) {
+                    return null;
+                }
+                Map<String, JsonNode> fields = new LinkedHashMap<>();
+                fields.put("taskId", text(reminder.getTaskId()));
+                fields.put("type", text(reminder.getType()));
+                fields.put("reminderDate", text(reminder.getReminderDate()));
+                return fields;
+            }
+            case CATEGORY: {
+                Category category = services.getCategoryService().getCategoryById(id);
+                return category != null ? Map.of("name", text(category.getName())) : null;
+            }
+            case PRIORITY: {
+                PriorityLevel level = services.getPriorityService().getPriorityLevelById(id);
+                if (level == null) {
+                    return null;
+                }
+                Map<String, JsonNode> fields = new LinkedHashMap<>();
+                fields.put("name", text(level.getName()));
+                fields.put("default", BooleanNode.valueOf(level.isDefault()));
+                fields.put("weight", IntNode.valueOf(level.getWeight()));
+                return fields;
+            }
+            default:
+                return null;
+        }
+    }
+
+    private static Map<String, JsonNode> taskFields(Task task) {
+        Map<String, JsonNode> fields = new LinkedHashMap<>();
+        fields.put("title", text(task.getTitle()));
+        fields.put("description", text(task.getDescription()));
+        fields.put("category", text(task.getCategory() != null ? task.getCategory().getId() : null));
+        fields.put("priority", text(task.getPriority() != null ? task.getPriority().getId() : null));
+        fields.put("deadline", text(task.getDeadline()));
+        fields.put("status", text(task.getStatus()));
+        fields.put("completedAt", text(task.getCompletedAt()));
+        fields.put(ARCHIVED, BooleanNode.FALSE);
+        return fields;
+    }
+
+    // Enums by name, since some render a display name.
+    private static JsonNode text(Object value) {
+        if (value == null) {
+            return NullNode.getInstance();
+        }
+        return TextNode.valueOf(value instanceof Enum ? ((Enum<?>) value).name() : value.toString());
+    }
+
+    private static String string(Map<String, JsonNode> fields, String field) {
+        JsonNode value = fields.get(field);
+        return value != null && !value.isNull() ? value.asText() : null;
+    }
+
+    private static LocalDate date(Map<String, JsonNode> fields, String field) {
+        String value = string(fields, field);
+        return value != null ? LocalDate.parse(value) : null;
+    }
+
+    // Categories and levels are only referred to by id; the services resolve them.
+    private static Task toTask(String id, Map<String, JsonNode> fields) {
+        Task task = new Task();
+        task.setId(id);
+        task.setTitle(string(fields, "title"));
+        task.setDescription(string(fields, "description"));
+        String categoryId = string(fields, "category");
+        if (categoryId != null) {
+            Category category = new Category();
+            category.setId(categoryId);
+            task.setCategory(category);
+        }
+        String priorityId = string(fields, "priority");
+        if (priorityId != null) {
+            PriorityLevel priority = new PriorityLevel();
+            priority.setId(priorityId);
+            task.setPriority(priority);
+        }
+        task.setDeadline(date(fields, "deadline"));
+        String status = string(fields, "status");
+        task.setStatus(status != null ? TaskStatus.valueOf(status) : TaskStatus.OPEN);
+        task.setCompletedAt(date(fields, "completedAt"));
+        return task;
+    }
+
+    private static Reminder toReminder(String id, Map<String, JsonNode> fields) {
+        String type = string(fields, "type");
+        Reminder reminder = new Reminder(string(fields, "taskId"), type != null ? ReminderType.valueOf(type) : null,
+                date(fields, "reminderDate"));
+        reminder.setId(id);
+        return reminder;
+    }
+
+    private static Category toCategory(String id, Map<String, JsonNode> fields) {
+        Category category = new Category(string(fields, "name"));
+        category.setId(id);
+        return category;
+    }
+
+    private static PriorityLevel toPriorityLevel(String id, Map<String, JsonNode> fields) {
+        JsonNode weight = fields.get("weight");
+        JsonNode isDefault = fields.get("default");
+        PriorityLevel level = new PriorityLevel(string(fields, "name"), isDefault != null && isDefault.asBoolean(),
+                weight != null && !weight.isNull() ? weight.asInt() : PriorityService.defaultWeightFor(string(fields, "name")));
+        level.setId(id);
+        return level;
+    }
+
+    private void watch() {
+        long lastSave = System.currentTimeMillis();
+        while (running) {
+            sync();
+            if (System.currentTimeMillis() - lastSave >= SAVE_INTERVAL_MILLIS) {
+                lastSave = System.currentTimeMillis();
+                ownerExecutor.execute(this::saveState);
+            }
+            try {
+                if (watchService == null) {
+                    Thread.sleep(POLL_INTERVAL_MILLIS);
+                    continue;
+                }
+                WatchKey key = watchService.poll(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    key.pollEvents();
+                    key.reset();
+                }
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+        }
+    }
+
+    // On the watcher thread: read what the other replicas logged and hand it to the owner.
+    private void sync() {
+        try {
+            List<ReplicaState.Op> ops = new ArrayList<>();
+            Map<String, Long> offsets = readOtherLogs(ops);
+            if (!ops.isEmpty()) {
+                ownerExecutor.execute(() -> {
+                    if (running) {
+                        try {
+                            applyRemote(ops, offsets);
+                        } catch (RuntimeException e) {
+                            LOGGER.log(Level.WARNING, "Failed to apply replicated changes", e);
+                        }
+                    }
+                });
+            }
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Failed to read replication logs in " + shareDir, e);
+        }
+    }
+
+    // Reads the new operations of every other replica; returns the offsets read up to.
+    private Map<String, Long> readOtherLogs(List<ReplicaState.Op> ops) {
+        Map<String, Long> offsets = new HashMap<>();
+        File[] logs = shareDir.listFiles((dir, name) -> name.endsWith(LOG_SUFFIX) && !name.equals(ownLog.getName()));
+        if (logs != null) {
+            for (File log : logs) {
+                if (readLog(log, ops, false)) {
+                    offsets.put(log.getName(), readOffsets.get(log.getName()));
+                }
+            }
+        }
+        return offsets;
+    }
+
+    /**
+     * Reads the complete lines a log gained since it was last read; a line still being
+     * written (or synced) is left for later. Returns whether anything was read.
+     *
+     * @param repair Whether to cut off an incomplete last line, for this replica's own log
+     */
+    private boolean readLog(File log, List<ReplicaState.Op> ops, boolean repair) {
+        long offset = readOffsets.getOrDefault(log.getName(), 0L);
+        if (!log.exists() || log.length() <= offset) {
+            return false;
+        }
+        long start = offset;
+        try (FileChannel channel = FileChannel.open(log.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(READ_CHUNK);
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            long position = offset;
+            while (channel.read(buffer, position) > 0) {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    byte b = buffer.get();
+                    position++;
+                    if (b != '\n') {
+                        line.write(b);
+                        continue;
+                    }
+                    if (line.size() > 0) {
+                        try {
+                            ops.add(ReplicaState.Op.fromJson(objectMapper.readTree(line.toByteArray())));
+                        } catch (IOException | RuntimeException e) {
+                            LOGGER.warning("Ignoring unreadable operation in " + log);
+                        }
+                    }
+                    line.reset();
+                    offset = position;
+                }
+                buffer.clear();
+            }
+            if (repair && offset < channel.size()) {
+                channel.truncate(offset);
+            }
+        } catch (IOException e) {
+            throw new DataStorageException("Failed to read " + log, e);
+        }
+        readOffsets.put(log.getName(), offset);
+        return offset > start;
+    }
+
+    private void saveState() {
+        if (stateChanged) {
+            state.save(stateFile, objectMapper);
+            stateChanged = false;
+        }
+    }
+
+    // The live changes that replicated operations call for, gathered per entity type.
+    private static final class Changes {
+        final List<Task> tasks = new ArrayList<>();
+        final List<Reminder> reminders = new ArrayList<>();
+        final List<Category> categories = new ArrayList<>();
+        final List<PriorityLevel> priorityLevels = new ArrayList<>();
+        // Tasks to move to the archive rather than keep live, and ids of tasks to take out of it.
+        final List<Task> archivedTasks = new ArrayList<>();
+        final List<String> restoredTasks = new ArrayList<>();
+        final Map<String, Long> taskDeletions = new HashMap<>();
+        final Map<String, Long> reminderDeletions = new HashMap<>();
+        final Map<String, Long> categoryDeletions = new HashMap<>();
+        final Map<String, Long> priorityDeletions = new HashMap<>();
+
+        boolean isEmpty() {
+            return tasks.isEmpty() && reminders.isEmpty() && categories.isEmpty() && priorityLevels.isEmpty()
+                    && taskDeletions.isEmpty() && reminderDeletions.isEmpty() && categoryDeletions.isEmpty()
+                    && priorityDeletions.isEmpty();
+        }
+
+        SharedStorageBackend.Changes toStoredChanges() {
+            return new SharedStorageBackend.Changes(
+                    new SharedStorageBackend.EntityChanges<>(tasks, taskDeletions),
+                    new SharedStorageBackend.EntityChanges<>(categories, categoryDeletions),
+                    new SharedStorageBackend.EntityChanges<>(priorityLevels, priorityDeletions),
+                    new SharedStorageBackend.EntityChanges<>(reminders, reminderDeletions));
+        }
+    }
+}
@@ -2,40 +2,70 @@ package com.medialab.tasksystem.service;
 
 import com.medialab.tasksystem.model.Category;
 import com.medialab.tasksystem.model.PriorityLevel;
+import com.medialab.tasksystem.model.Task;
+import java.io.File;
 import java.util.List;
+import java.util.logging.Logger;
 
 public class ServiceManager {
+    private static final Logger LOGGER = Logger.getLogger(ServiceManager.class.getName());
+
     private final DataPersistenceService persistenceService;
     private final TaskService taskService;
     private final CategoryService categoryService;
     private final PriorityService priorityService;
     private final ReminderService reminderService;
+    private final UndoManager undoManager;
+
+    // Rough heap cost of one loaded entity, used to budget resident workspaces.
+    private static final long ESTIMATED_TASK_BYTES = 1024;
+    private static final long ESTIMATED_REMINDER_BYTES = 256;
+    /** Completed tasks are moved to the archive this many days after completion. */
+    public static final int ARCHIVE_COMPLETED_AFTER_DAYS = 30;
 
     public ServiceManager() {
+        this(new File(DataPersistenceService.DEFAULT_BASE_DIR));
+    }
+
+    /**
+     * Loads the workspace stored in the given directory.
+     */
+    public ServiceManager(File workspaceDir) {
         // First create persistence service
-        this.persistenceService = new DataPersistenceService();
+        this.persistenceService = new DataPersistenceService(workspaceDir, "tasks.json");
+
+        // One undo history for all services, so cascades across services undo together
+        this.undoManager = new UndoManager(persistenceService);
 
         // Create reminder service
-        this.reminderService = new ReminderService(persistenceService);
+        this.reminderService = new ReminderService(persistenceService, undoManager);
 
         // Create task service with reminder service
-        this.taskService = new TaskService(persistenceService, reminderService);
+        this.taskService = new TaskService(persistenceService, reminderService, undoManager);
 
         // Create category service
-        this.categoryService = new CategoryService(persistenceService, taskService);
+        this.categoryService = new CategoryService(persistenceService, taskService, undoManager);
 
         // Create priority service
-        this.priorityService = new PriorityService(persistenceService, taskService);
-
-        // Initialize all services first
-        // Set the services in DataPersistenceService
-        this.persistenceService.setServices(taskService, categoryService, priorityService, reminderService);
+        this.priorityService = new PriorityService(persistenceService, taskService, undoManager);
 
         taskService.reconcilePriorities(priorityService);
         taskService.reconcileCategories(categoryService);
 
         // Now force load the data
         ensureDefaultPriorityLevels();
+
+        // With shared storage every process would sweep at startup; archiving is left to the user there.
+        if (!persistenceService.isSharedStorage()) {
+            int archived = taskService.archiveCompletedTasks(ARCHIVE_COMPLETED_AFTER_DAYS);
+            if (archived > 0) {
+                LOGGER.info("Archived " + archived + " tasks completed more than " + ARCHIVE_COMPLETED_AFTER_DAYS
+                        + " days ago; they can be restored from the archive");
+            }
+        }
+
+        // Defaults created while loading are not user edits
+        undoManager.clear();
     }
 
     private void ensureDefaultPriorityLevels() {
@@ -54,9 +84,64 @@ public class ServiceManager {
         }
     }
 
+    public File getWorkspaceDir() { return persistenceService.getBaseDir(); }
+
+    // Write every store of this workspace to disk.
+    public void flush() {
+        persistenceService.saveAll();
+    }
+
+    // Release the workspace's storage (e.g. the database connection) once it is no longer used.
+    public void close() {
+        undoManager.clear();
+        persistenceService.close();
+    }
+
+    /**
+     * Applies changes another process saved to this workspace's shared store. Levels and
+     * categories go first so that the tasks referring to them find them.
+     */
+    void applyStoredChanges(SharedStorageBackend.Changes changes) {
+        applyChanges(changes, false);
+    }
+
+    // Applies changes replicated from another instance, saving them as well.
+    void applyReplicatedChanges(SharedStorageBackend.Changes changes) {
+        persistenceService.inTransaction(() -> applyChanges(changes, true));
+    }
+
+    void archiveReplicatedTasks(List<Task> tasks) {
+        taskService.archiveReplicatedTasks(tasks, categoryService, priorityService);
+    }
+
+    private void applyChanges(SharedStorageBackend.Changes changes, boolean save) {
+        priorityService.applyStoredChanges(changes.getPriorityLevels(), save);
+        categoryService.applyStoredChanges(changes.getCategories(), save);
+        taskService.applyStoredChanges(changes.getTasks(), categoryService, priorityService, save);
+        reminderService.applyStoredChanges(changes.getReminders(), save);
+    }
+
+    // Approximate heap held by this workspace's loaded data.
+    public long estimateMemoryBytes() {
+        List<Task> tasks = taskService.getObservableTasks();
+        long textBytes = 0;
+        for (Task task : tasks) {
+            // Out-of-line descriptions are only counted through the description cache.
+            textBytes += 2L * (length(task.getTitle()) + length(task.getInlineDescription()));
+        }
+        textBytes += 2L * persistenceService.getBackend().getCachedDescriptionChars();
+        return tasks.size() * ESTIMATED_TASK_BYTES + textBytes
+                + reminderService.getObservableReminders().size() * ESTIMATED_REMINDER_BYTES;
+    }
+
+    private static int length(String text) {
+        return text != null ? text.length() : 0;
+    }
+
     public DataPersistenceService getPersistenceService() { return persistenceService; }
     public TaskService getTaskService() { return taskService; }
     public CategoryService getCategoryService() { return categoryService; }
     public PriorityService getPriorityService() { return priorityService; }
     public ReminderService getReminderService() { return reminderService; }
+    public UndoManager getUndoManager() { return undoManager; }
 }
\ No newline at end of file
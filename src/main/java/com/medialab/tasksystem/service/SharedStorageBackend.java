@@ -0,0 +1,696 @@
+package com.medialab.tasksystem.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.medialab.tasksystem.exceptions.DataStorageException;
+import com.medialab.tasksystem.model.Category;
+import com.medialab.tasksystem.model.PriorityLevel;
+import com.medialab.tasksystem.model.Reminder;
+import com.medialab.tasksystem.model.Task;
+import com.medialab.tasksystem.model.TaskStatus;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.function.ObjLongConsumer;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * Storage for a workspace that several processes on the same machine use at once.
+ * <p>
+ * All entities live in one append-only journal, shared.journal: a header line with the
+ * journal's generation, then one JSON line per saved or deleted entity. A writer takes
+ * an exclusive lock on shared.lock, first reads the lines other processes appended since
+ * it last looked, then appends its own changes with a single write; readers take a
+ * shared lock. Each process remembers how far it has read, so picking up the changes of
+ * other processes ({@link #poll()}) reads only the new lines. Once most lines are
+ * superseded, a writer rewrites the journal with one line per live entity under a new
+ * generation; a reader that sees a new generation re-reads it and works out what changed.
+ * </p>
+ * Entity versions order concurrent saves: a save is always stored with a version above
+ * every version of the entity in the journal, and a change read back from the journal is
+ * only applied if it is newer than the entity held in memory, so every process ends up
+ * with the entity saved last.
+ */
+public class SharedStorageBackend implements StorageBackend, WorkspaceLock {
+    private static final Logger LOGGER = Logger.getLogger(SharedStorageBackend.class.getName());
+    static final String JOURNAL_FILE = "shared.journal";
+    private static final String LOCK_FILE = "shared.lock";
+    private static final int FORMAT_VERSION = 1;
+    // The journal is rewritten once it has more lines than this or than twice the live entities.
+    private static final int MIN_COMPACTION_SIZE = 1000;
+    private static final int MAX_HEADER_BYTES = 256;
+    private static final String PUT = "PUT";
+    private static final String DELETE = "DELETE";
+
+    private final File baseDir;
+    private final Path journalPath;
+    private final ObjectMapper objectMapper;
+    private final FileChannel lockChannel;
+    private final SharedStore<Task> tasks =
+            new SharedStore<>("task", Task.class, Task::getId, Task::getVersion, Task::setVersion);
+    private final SharedStore<Category> categories =
+            new SharedStore<>("category", Category.class, Category::getId, Category::getVersion, Category::setVersion);
+    private final SharedStore<PriorityLevel> priorityLevels = new SharedStore<>("priority", PriorityLevel.class,
+            PriorityLevel::getId, PriorityLevel::getVersion, PriorityLevel::setVersion);
+    private final SharedStore<Reminder> reminders =
+            new SharedStore<>("reminder", Reminder.class, Reminder::getId, Reminder::getVersion, Reminder::setVersion);
+    private final Map<String, SharedStore<?>> storesByType = new LinkedHashMap<>();
+    // Saves not yet appended, keyed by type and id so an entity saved twice is written once.
+    private final Map<String, Write> writes = new LinkedHashMap<>();
+    private int transactionDepth;
+    // The file lock while this process holds it, so work done under it can save.
+    private FileLock heldLock;
+    // How far this process has read the journal.
+    private long generation = -1;
+    private long readOffset;
+    private long lineCount;
+
+    public SharedStorageBackend(File baseDir, ObjectMapper objectMapper) {
+        this.baseDir = baseDir;
+        this.journalPath = new File(baseDir, JOURNAL_FILE).toPath();
+        this.objectMapper = objectMapper;
+        for (SharedStore<?> store : List.of(tasks, categories, priorityLevels, reminders)) {
+            storesByType.put(store.type, store);
+        }
+        try {
+            this.lockChannel = FileChannel.open(new File(baseDir, LOCK_FILE).toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            throw new DataStorageException("Failed to open the shared store in " + baseDir, e);
+        }
+    }
+
+    /**
+     * Whether the given workspace already has a shared journal.
+     */
+    public static boolean exists(File baseDir) {
+        return new File(baseDir, JOURNAL_FILE).exists();
+    }
+
+    public File getBaseDir() {
+        return baseDir;
+    }
+
+    @Override
+    public EntityStore<Task> tasks() {
+        return tasks;
+    }
+
+    @Override
+    public EntityStore<Category> categories() {
+        return categories;
+    }
+
+    @Override
+    public EntityStore<PriorityLevel> priorityLevels() {
+        return priorityLevels;
+    }
+
+    @Override
+    public EntityStore<Reminder> reminders() {
+        return reminders;
+    }
+
+    // The journal has no indexes: filter the stored tasks.
+    @Override
+    public List<Task> findTasks(TaskStatus status, LocalDate deadlineFrom, LocalDate deadlineTo, int limit) {
+        return tasks.loadAll().stream()
+                .filter(task -> status == null || task.getStatus() == status)
+                .filter(task -> deadlineFrom == null || (task.getDeadline() != null && !task.getDeadline().isBefore(deadlineFrom)))
+                .filter(task -> deadlineTo == null || (task.getDeadline() != null && !task.getDeadline().isAfter(deadlineTo)))
+                .sorted(Comparator.comparing(Task::getDeadline, Comparator.nullsLast(Comparator.naturalOrder())))
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Collects the saves made by the work and appends them with one write under one lock.
+     * Saves made before a failure are still written, since the services hold them already.
+     */
+    @Override
+    public void inTransaction(Runnable work) {
+        synchronized (this) {
+            transactionDepth++;
+        }
+        try {
+            work.run();
+        } finally {
+            synchronized (this) {
+                if (--transactionDepth == 0) {
+                    commit();
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the changes other processes saved since the last call (or since the entity
+     * type was loaded) and hands them out, newest state per entity.
+     */
+    public synchronized Changes poll() {
+        withLock(true, this::refresh);
+        return new Changes(tasks.takePending(), categories.takePending(), priorityLevels.takePending(),
+                reminders.takePending());
+    }
+
+    /**
+     * Runs the work holding the exclusive lock, with the journal read to its end, so other
+     * processes neither write the journal nor run such work meanwhile. Saves made by the
+     * work are appended under the same lock.
+     */
+    @Override
+    public synchronized <T> T callExclusive(Supplier<T> work) {
+        List<T> result = new ArrayList<>(1);
+        withLock(false, () -> {
+            refresh();
+            result.add(work.get());
+        });
+        return result.get(0);
+    }
+
+    // Every save is appended as it is made; only a batch whose append failed and compaction are left to do.
+    @Override
+    public synchronized void flush() {
+        if (transactionDepth == 0) {
+            commit();
+        }
+        withLock(false, () -> {
+            refresh();
+            if (lineCount > liveCount()) {
+                compact();
+            }
+        });
+    }
+
+    @Override
+    public void close() {
+        try {
+            lockChannel.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to close " + LOCK_FILE, e);
+        }
+    }
+
+    private interface LockedWork {
+        void run() throws IOException;
+    }
+
+    // Holds the file lock other processes see; the monitor keeps this process's threads apart.
+    private void withLock(boolean shared, LockedWork work) {
+        try {
+            if (heldLock != null) {
+                if (heldLock.isShared() && !shared) {
+                    throw new IllegalStateException("The shared lock on " + LOCK_FILE + " cannot be upgraded");
+                }
+                work.run();
+                return;
+            }
+            heldLock = lockChannel.lock(0, Long.MAX_VALUE, shared);
+            try {
+                work.run();
+            } finally {
+                FileLock lock = heldLock;
+                heldLock = null;
+                lock.release();
+            }
+        } catch (IOException e) {
+            throw new DataStorageException("Failed to access " + journalPath, e);
+        }
+    }
+
+    private synchronized void commit() {
+        if (writes.isEmpty()) {
+            return;
+        }
+        // The batch stays pending until it is appended, so a failed commit is retried by the next one.
+        List<Write> batch = new ArrayList<>(writes.values());
+        withLock(false, () -> {
+            refresh();
+            append(batch);
+            writes.clear();
+            if (lineCount > Math.max(MIN_COMPACTION_SIZE, 2 * liveCount())) {
+                compact();
+            }
+        });
+    }
+
+    // Called with the exclusive lock held and the journal read to its end.
+    private void append(List<Write> batch) throws IOException {
+        ByteArrayOutputStream lines = new ByteArrayOutputStream();
+        List<Runnable> applied = new ArrayList<>(batch.size());
+        for (Write write : batch) {
+            ObjectNode record = objectMapper.createObjectNode();
+            record.put("type", write.store.type);
+            record.put("id", write.id);
+            if (write.entity != null) {
+                record.put("op", PUT);
+                Stored stored = write.store.prepare(write.id, write.entity);
+                record.set("value", objectMapper.readTree(stored.json));
+                applied.add(() -> write.store.stored(write.id, stored, false));
+            } else {
+                record.put("op", DELETE);
+                long version = write.store.latestVersion(write.id);
+                record.put("version", version);
+                applied.add(() -> write.store.stored(write.id, new Stored(null, version), false));
+            }
+            lines.write(objectMapper.writeValueAsBytes(record));
+            lines.write('\n');
+        }
+        try (FileChannel channel = FileChannel.open(journalPath, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            if (generation < 0 || channel.size() == 0) {
+                // A new journal.
+                generation = Math.max(generation, 0) + 1;
+                channel.truncate(0);
+                byte[] header = header(generation);
+                writeFully(channel, ByteBuffer.wrap(header), 0);
+                readOffset = header.length;
+                lineCount = 0;
+            } else if (channel.size() > readOffset) {
+                // A line torn by a writer that died mid-write.
+                channel.truncate(readOffset);
+            }
+            writeFully(channel, ByteBuffer.wrap(lines.toByteArray()), readOffset);
+        }
+        readOffset += lines.size();
+        lineCount += batch.size();
+        applied.forEach(Runnable::run);
+    }
+
+    /**
+     * Reads what other processes appended since the last read, or the whole journal if it
+     * was rewritten. Called with a lock held.
+     */
+    private void refresh() throws IOException {
+        if (!Files.exists(journalPath)) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(journalPath, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size == 0) {
+                return;
+            }
+            ByteBuffer head = ByteBuffer.allocate((int) Math.min(size, MAX_HEADER_BYTES));
+            while (head.hasRemaining() && channel.read(head, head.position()) >= 0) {
+                // Read the whole header.
+            }
+            int headerLength = indexOf(head.array(), head.position(), (byte) '\n') + 1;
+            if (headerLength == 0) {
+                return; // A header still being written.
+            }
+            long fileGeneration = objectMapper.readTree(head.array(), 0, headerLength).path("generation").asLong();
+            if (fileGeneration != generation) {
+                resync(channel, headerLength, fileGeneration);
+            } else if (size > readOffset) {
+                readOffset += readLines(channel, readOffset, true);
+            }
+        }
+    }
+
+    // The journal was rewritten: read it all and report whatever differs from what was known.
+    private void resync(FileChannel channel, long headerLength, long fileGeneration) throws IOException {
+        Map<SharedStore<?>, Map<String, Stored>> before = new HashMap<>();
+        for (SharedStore<?> store : storesByType.values()) {
+            before.put(store, new HashMap<>(store.entries));
+            store.entries.clear();
+            store.deletedVersions.clear();
+        }
+        lineCount = 0;
+        readOffset = headerLength + readLines(channel, headerLength, false);
+        generation = fileGeneration;
+        for (SharedStore<?> store : storesByType.values()) {
+            store.reportDifferences(before.get(store));
+        }
+    }
+
+    // Applies the complete lines from the given offset on; returns the number of bytes they take.
+    private long readLines(FileChannel channel, long from, boolean report) throws IOException {
+        byte[] chunk = new byte[1 << 16];
+        ByteBuffer buffer = ByteBuffer.wrap(chunk);
+        ByteArrayOutputStream carry = new ByteArrayOutputStream();
+        long position = from;
+        long consumed = 0;
+        int read;
+        while ((read = channel.read(buffer.clear(), position)) > 0) {
+            position += read;
+            int start = 0;
+            for (int i = 0; i < read; i++) {
+                if (chunk[i] != '\n') {
+                    continue;
+                }
+                if (carry.size() > 0) {
+                    carry.write(chunk, start, i - start);
+                    byte[] line = carry.toByteArray();
+                    carry.reset();
+                    applyLine(line, 0, line.length, report);
+                    consumed += line.length + 1;
+                } else {
+                    applyLine(chunk, start, i - start, report);
+                    consumed += i - start + 1;
+                }
+                start = i + 1;
+            }
+            carry.write(chunk, start, read - start);
+        }
+        // Anything after the last newline is a write still in progress or torn.
+        return consumed;
+    }
+
+    private void applyLine(byte[] bytes, int offset, int length, boolean report) {
+        if (length == 0) {
+            return;
+        }
+        JsonNode record;
+        try {
+            record = objectMapper.readTree(bytes, offset, length);
+        } catch (IOException e) {
+            LOGGER.warning("Ignoring unreadable record in " + JOURNAL_FILE);
+            return;
+        }
+        lineCount++;
+        SharedStore<?> store = storesByType.get(record.path("type").asText());
+        if (store == null) {
+            LOGGER.warning("Ignoring record of unknown type " + record.path("type").asText() + " in " + JOURNAL_FILE);
+            return;
+        }
+        String id = record.path("id").asText();
+        if (PUT.equals(record.path("op").asText())) {
+            JsonNode value = record.path("value");
+            store.stored(id, new Stored(value.toString(), value.path("version").asLong()), report);
+        } else {
+            store.stored(id, new Stored(null, record.path("version").asLong()), report);
+        }
+    }
+
+    // Rewrites the journal as one line per live entity, under the next generation.
+    private void compact() throws IOException {
+        Path temp = journalPath.resolveSibling(JOURNAL_FILE + ".tmp");
+        long nextGeneration = generation + 1;
+        long written;
+        long lines = 0;
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16)) {
+            byte[] header = header(nextGeneration);
+            out.write(header);
+            written = header.length;
+            for (SharedStore<?> store : storesByType.values()) {
+                for (Map.Entry<String, Stored> entry : store.entries.entrySet()) {
+                    ObjectNode record = objectMapper.createObjectNode();
+                    record.put("type", store.type);
+                    record.put("id", entry.getKey());
+                    record.put("op", PUT);
+                    record.set("value", objectMapper.readTree(entry.getValue().json));
+                    byte[] bytes = objectMapper.writeValueAsBytes(record);
+                    out.write(bytes);
+                    out.write('\n');
+                    written += bytes.length + 1;
+                    lines++;
+                }
+            }
+        }
+        Files.move(temp, journalPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        generation = nextGeneration;
+        readOffset = written;
+        lineCount = lines;
+        storesByType.values().forEach(store -> store.deletedVersions.clear());
+        LOGGER.info("Compacted " + JOURNAL_FILE + " to " + lines + " entities");
+    }
+
+    private long liveCount() {
+        long count = 0;
+        for (SharedStore<?> store : storesByType.values()) {
+            count += store.entries.size();
+        }
+        return count;
+    }
+
+    private byte[] header(long generation) {
+        return ("{\"format\":" + FORMAT_VERSION + ",\"generation\":" + generation + "}\n")
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static int indexOf(byte[] bytes, int length, byte value) {
+        for (int i = 0; i < length; i++) {
+            if (bytes[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // An entity as stored in the journal; a null json marks it deleted at that version.
+    private static final class Stored {
+        final String json;
+        final long version;
+
+        Stored(String json, long version) {
+            this.json = json;
+            this.version = version;
+        }
+    }
+
+    private static final class Write {
+        final SharedStore<?> store;
+        final String id;
+        final Object entity; // Null for a deletion
+
+        Write(SharedStore<?> store, String id, Object entity) {
+            this.store = store;
+            this.id = id;
+            this.entity = entity;
+        }
+    }
+
+    /**
+     * Changes of one entity type saved by other processes: the latest stored state of each
+     * changed entity, and the deleted ids with the version each had when deleted.
+     */
+    public static final class EntityChanges<T> {
+        private final List<T> upserts;
+        private final Map<String, Long> deletions;
+
+        EntityChanges(List<T> upserts, Map<String, Long> deletions) {
+            this.upserts = upserts;
+            this.deletions = deletions;
+        }
+
+        public List<T> getUpserts() {
+            return upserts;
+        }
+
+        public Map<String, Long> getDeletions() {
+            return deletions;
+        }
+
+        public boolean isEmpty() {
+            return upserts.isEmpty() && deletions.isEmpty();
+        }
+    }
+
+    /**
+     * What other processes saved since the last {@link #poll()}.
+     */
+    public static final class Changes {
+        private final EntityChanges<Task> tasks;
+        private final EntityChanges<Category> categories;
+        private final EntityChanges<PriorityLevel> priorityLevels;
+        private final EntityChanges<Reminder> reminders;
+
+        Changes(EntityChanges<Task> tasks, EntityChanges<Category> categories,
+                EntityChanges<PriorityLevel> priorityLevels, EntityChanges<Reminder> reminders) {
+            this.tasks = tasks;
+            this.categories = categories;
+            this.priorityLevels = priorityLevels;
+            this.reminders = reminders;
+        }
+
+        public EntityChanges<Task> getTasks() {
+            return tasks;
+        }
+
+        public EntityChanges<Category> getCategories() {
+            return categories;
+        }
+
+        public EntityChanges<PriorityLevel> getPriorityLevels() {
+            return priorityLevels;
+        }
+
+        public EntityChanges<Reminder> getReminders() {
+            return reminders;
+        }
+
+        public boolean isEmpty() {
+            return tasks.isEmpty() && categories.isEmpty() && priorityLevels.isEmpty() && reminders.isEmpty();
+        }
+    }
+
+    // The journaled state of one entity type, as JSON, and the changes not yet handed out.
+    private class SharedStore<T> implements EntityStore<T> {
+        final String type;
+        final Class<T> entityClass;
+        final Function<T, String> idOf;
+        final ToLongFunction<T> versionOf;
+        final ObjLongConsumer<T> setVersion;
+        final Map<String, Stored> entries = new LinkedHashMap<>();
+        // Versions of entities deleted since the journal was last rewritten.
+        final Map<String, Long> deletedVersions = new HashMap<>();
+        final Map<String, Stored> pending = new LinkedHashMap<>();
+        boolean loaded;
+
+        SharedStore(String type, Class<T> entityClass, Function<T, String> idOf, ToLongFunction<T> versionOf,
+                    ObjLongConsumer<T> setVersion) {
+            this.type = type;
+            this.entityClass = entityClass;
+            this.idOf = idOf;
+            this.versionOf = versionOf;
+            this.setVersion = setVersion;
+        }
+
+        // Changes made before the first load are part of what is loaded, not news.
+        @Override
+        public List<T> loadAll() {
+            synchronized (SharedStorageBackend.this) {
+                withLock(true, SharedStorageBackend.this::refresh);
+                loaded = true;
+                pending.clear();
+                List<T> all = new ArrayList<>(entries.size());
+                for (Stored stored : entries.values()) {
+                    all.add(read(stored));
+                }
+                return all;
+            }
+        }
+
+        @Override
+        public T get(String id) {
+            synchronized (SharedStorageBackend.this) {
+                withLock(true, SharedStorageBackend.this::refresh);
+                Stored stored = entries.get(id);
+                return stored != null ? read(stored) : null;
+            }
+        }
+
+        @Override
+        public void saveChanges(Collection<? extends T> upserts, Collection<String> deletedIds) {
+            if (upserts.isEmpty() && deletedIds.isEmpty()) {
+                return;
+            }
+            synchronized (SharedStorageBackend.this) {
+                for (T entity : upserts) {
+                    String id = idOf.apply(entity);
+                    writes.put(type + '\0' + id, new Write(this, id, entity));
+                }
+                for (String id : deletedIds) {
+                    writes.put(type + '\0' + id, new Write(this, id, null));
+                }
+                if (transactionDepth == 0) {
+                    commit();
+                }
+            }
+        }
+
+        // The highest version the entity has had in the journal, or 0.
+        long latestVersion(String id) {
+            Stored stored = entries.get(id);
+            return Math.max(stored != null ? stored.version : 0, deletedVersions.getOrDefault(id, 0L));
+        }
+
+        // Serializes an entity about to be appended, moving its version past any stored one.
+        @SuppressWarnings("unchecked")
+        Stored prepare(String id, Object value) throws IOException {
+            T entity = (T) value;
+            long latest = latestVersion(id);
+            if (versionOf.applyAsLong(entity) <= latest) {
+                setVersion.accept(entity, latest + 1);
+            }
+            return new Stored(objectMapper.writeValueAsString(entity), versionOf.applyAsLong(entity));
+        }
+
+        void stored(String id, Stored stored, boolean report) {
+            if (stored.json != null) {
+                entries.put(id, stored);
+                deletedVersions.remove(id);
+            } else {
+                entries.remove(id);
+                deletedVersions.put(id, stored.version);
+            }
+            if (report && loaded) {
+                pending.put(id, stored);
+            } else {
+                // This process's own save supersedes anything read before it.
+                pending.remove(id);
+            }
+        }
+
+        void reportDifferences(Map<String, Stored> before) {
+            if (!loaded) {
+                return;
+            }
+            entries.forEach((id, stored) -> {
+                Stored previous = before.get(id);
+                if (previous == null || !Objects.equals(previous.json, stored.json)) {
+                    pending.put(id, stored);
+                }
+            });
+            before.forEach((id, previous) -> {
+                if (!entries.containsKey(id)) {
+                    pending.put(id, new Stored(null, previous.version));
+                }
+            });
+        }
+
+        EntityChanges<T> takePending() {
+            List<T> upserts = new ArrayList<>();
+            Map<String, Long> deletions = new LinkedHashMap<>();
+            pending.forEach((id, stored) -> {
+                if (stored.json != null) {
+                    upserts.add(read(stored));
+                } else {
+                    deletions.put(id, stored.version);
+                }
+            });
+            pending.clear();
+            return new EntityChanges<>(upserts, deletions);
+        }
+
+        T read(Stored stored) {
+            try {
+                return objectMapper.readValue(stored.json, entityClass);
+            } catch (IOException e) {
+                throw new DataStorageException("Failed to read a stored " + type, e);
+            }
+        }
+    }
+}
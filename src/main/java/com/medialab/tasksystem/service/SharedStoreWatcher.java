@@ -0,0 +1,118 @@
+package com.medialab.tasksystem.service;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Picks up the changes other processes save to a workspace stored with
+ * {@link SharedStorageBackend} and applies them to this process's services.
+ * <p>
+ * A background thread waits for the journal to change (falling back to a short poll on
+ * file systems that do not report changes), reads just the new lines, and hands the
+ * changes to the owner executor (the FX thread in the desktop app), where they are
+ * applied like any other change, so bound views and indexes refresh.
+ * </p>
+ */
+public class SharedStoreWatcher {
+    private static final Logger LOGGER = Logger.getLogger(SharedStoreWatcher.class.getName());
+    // Look at the journal at least this often, in case a change notification is missed.
+    private static final long POLL_INTERVAL_MILLIS = 2000;
+
+    private final ServiceManager services;
+    private final SharedStorageBackend backend;
+    private final Executor ownerExecutor;
+    private volatile boolean running;
+    private WatchService watchService;
+    private Thread thread;
+
+    /**
+     * @throws IllegalArgumentException if the workspace is not stored in a shared journal
+     */
+    public SharedStoreWatcher(ServiceManager services, Executor ownerExecutor) {
+        if (!isShared(services)) {
+            throw new IllegalArgumentException("Workspace does not use the shared storage backend");
+        }
+        this.services = services;
+        this.backend = (SharedStorageBackend) services.getPersistenceService().getBackend();
+        this.ownerExecutor = ownerExecutor;
+    }
+
+    public static boolean isShared(ServiceManager services) {
+        return services.getPersistenceService().getBackend() instanceof SharedStorageBackend;
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            backend.getBaseDir().toPath().register(watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException e) {
+            LOGGER.log(Level.INFO, "Change notifications unavailable, polling the shared journal", e);
+            watchService = null;
+        }
+        thread = new Thread(this::watch, "shared-store-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public synchronized void stop() {
+        running = false;
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "Failed to close watch service", e);
+            }
+        }
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    private void watch() {
+        while (running) {
+            sync();
+            try {
+                if (watchService == null) {
+                    Thread.sleep(POLL_INTERVAL_MILLIS);
+                    continue;
+                }
+                WatchKey key = watchService.poll(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    // Any change in the directory is worth a look; the journal read is cheap.
+                    key.pollEvents();
+                    key.reset();
+                }
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+        }
+    }
+
+    private void sync() {
+        try {
+            SharedStorageBackend.Changes changes = backend.poll();
+            if (!changes.isEmpty()) {
+                ownerExecutor.execute(() -> {
+                    if (running) {
+                        services.applyStoredChanges(changes);
+                    }
+                });
+            }
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Failed to read changes from the shared journal", e);
+        }
+    }
+}
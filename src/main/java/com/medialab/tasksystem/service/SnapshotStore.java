@@ -0,0 +1,461 @@
+package com.medialab.tasksystem.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.medialab.tasksystem.exceptions.DataStorageException;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Point-in-time snapshots of a workspace's files in a content-addressed chunk store.
+ * <p>
+ * Files are cut into chunks at content-defined boundaries (a gear rolling hash), so an
+ * edit only changes the chunks around it and the rest of the file deduplicates against
+ * earlier snapshots. Each chunk is stored once, deflated, under its SHA-256 in
+ * {@code chunks/}; a snapshot is a small manifest in {@code snapshots/} listing the
+ * chunks of every file. Files are chunked as they are streamed from a staged copy, so
+ * a snapshot never holds a whole file in memory; restoring streams the chunks of each
+ * file back in order.
+ * </p>
+ * Processes sharing the workspace each take their own snapshots into the same store;
+ * saving, pruning and restoring hold a lock on backups.lock, so a prune never deletes
+ * chunks another process is about to reference.
+ */
+public class SnapshotStore {
+    private static final Logger LOGGER = Logger.getLogger(SnapshotStore.class.getName());
+    private static final String CHUNKS_DIR = "chunks";
+    private static final String SNAPSHOTS_DIR = "snapshots";
+    private static final String STAGING_DIR = "staging";
+    private static final String LOCK_FILE = "backups.lock";
+    private static final DateTimeFormatter ID_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS");
+    // Chunks are 16-256 KB, about 64 KB on average.
+    private static final int MIN_CHUNK_SIZE = 16 * 1024;
+    private static final int MAX_CHUNK_SIZE = 256 * 1024;
+    // The top bits of a shift-left gear hash depend on the last 64 bytes, the low bits only on the last few.
+    private static final long BOUNDARY_MASK = -1L << 48;
+    private static final long[] GEAR = new long[256];
+
+    static {
+        // Fixed seed: boundaries, and so chunk hashes, must be the same in every run.
+        SplittableRandom random = new SplittableRandom(0x5EED_C4C0L);
+        for (int i = 0; i < GEAR.length; i++) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    private final File chunksDir;
+    private final File snapshotsDir;
+    private final File stagingRoot;
+    // This process's staging directories, apart from those of other processes sharing the workspace.
+    private final File stagingDir;
+    private final File lockFile;
+    private final ObjectMapper objectMapper;
+
+    public SnapshotStore(File backupDir, ObjectMapper objectMapper) {
+        this.chunksDir = new File(backupDir, CHUNKS_DIR);
+        this.snapshotsDir = new File(backupDir, SNAPSHOTS_DIR);
+        this.stagingRoot = new File(backupDir, STAGING_DIR);
+        this.stagingDir = new File(stagingRoot, String.valueOf(ProcessHandle.current().pid()));
+        this.lockFile = new File(backupDir, LOCK_FILE);
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Creates an empty directory for the copies of the files of one snapshot, taken while
+     * the workspace is not being written and chunked later by {@link #save}.
+     */
+    public File createStagingDir() {
+        try {
+            return Files.createTempDirectory(Files.createDirectories(stagingDir.toPath()), "capture-").toFile();
+        } catch (IOException e) {
+            throw new DataStorageException("Failed to create a staging directory in " + stagingDir, e);
+        }
+    }
+
+    /**
+     * Deletes a staging directory and the copies in it.
+     */
+    public void deleteStagingDir(File dir) {
+        File[] staged = dir.listFiles();
+        for (File file : staged != null ? staged : new File[0]) {
+            if (!file.delete()) {
+                LOGGER.warning("Failed to delete staged backup file " + file);
+            }
+        }
+        if (dir.exists() && !dir.delete()) {
+            LOGGER.warning("Failed to delete backup staging directory " + dir);
+        }
+    }
+
+    /**
+     * Deletes the staging directories of snapshots that were never stored, e.g. because
+     * the application exited while taking them: this process's own, and those of
+     * processes that are no longer running.
+     */
+    public void deleteAbandonedStaging() {
+        File[] processDirs = stagingRoot.listFiles(File::isDirectory);
+        for (File processDir : processDirs != null ? processDirs : new File[0]) {
+            if (processDir.equals(stagingDir) || !isRunning(processDir.getName())) {
+                File[] dirs = processDir.listFiles(File::isDirectory);
+                for (File dir : dirs != null ? dirs : new File[0]) {
+                    deleteStagingDir(dir);
+                }
+                deleteStagingDir(processDir);
+            }
+        }
+    }
+
+    private static boolean isRunning(String pid) {
+        try {
+            return ProcessHandle.of(Long.parseLong(pid)).map(ProcessHandle::isAlive).orElse(false);
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns the snapshots, newest first.
+     */
+    public synchronized List<Manifest> list() {
+        List<Manifest> manifests = new ArrayList<>();
+        for (File file : manifestFiles()) {
+            try {
+                manifests.add(0, objectMapper.readValue(file, Manifest.class));
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Skipping unreadable snapshot " + file.getName(), e);
+            }
+        }
+        return manifests;
+    }
+
+    /**
+     * Returns the newest snapshot, or null if there is none.
+     */
+    public synchronized Manifest latest() {
+        List<Manifest> manifests = list();
+        return manifests.isEmpty() ? null : manifests.get(0);
+    }
+
+    /**
+     * Stores a snapshot of the captured files, reading the staged copies of changed files.
+     * Files captured without a copy reuse the chunk list they had in an earlier snapshot.
+     */
+    public synchronized Manifest save(List<CapturedFile> files) {
+        return withStoreLock(() -> saveLocked(files));
+    }
+
+    private Manifest saveLocked(List<CapturedFile> files) {
+        Manifest manifest = new Manifest();
+        LocalDateTime now = LocalDateTime.now();
+        manifest.id = uniqueId(now);
+        manifest.createdAt = now;
+        for (CapturedFile captured : files) {
+            FileEntry entry = new FileEntry();
+            entry.name = captured.name;
+            entry.size = captured.size;
+            entry.lastModified = captured.lastModified;
+            if (captured.staged != null) {
+                entry.chunks = storeChunks(captured.staged, manifest);
+            } else {
+                entry.chunks = captured.previous.chunks;
+            }
+            manifest.files.add(entry);
+        }
+        File file = new File(snapshotsDir, manifest.id + ".json");
+        File temp = new File(snapshotsDir, manifest.id + ".json.tmp");
+        try {
+            objectMapper.writeValue(temp, manifest);
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new DataStorageException("Failed to save snapshot " + manifest.id, e);
+        }
+        return manifest;
+    }
+
+    /**
+     * Rebuilds the files of a snapshot in the given directory, which must be empty or not exist yet.
+     */
+    public synchronized void restore(String snapshotId, File targetDir) {
+        withStoreLock(() -> {
+            restoreLocked(snapshotId, targetDir);
+            return null;
+        });
+    }
+
+    private void restoreLocked(String snapshotId, File targetDir) {
+        Manifest manifest = read(snapshotId);
+        String[] existing = targetDir.list();
+        if (existing != null && existing.length > 0) {
+            throw new IllegalArgumentException("Restore target " + targetDir + " is not empty");
+        }
+        if (!targetDir.exists() && !targetDir.mkdirs()) {
+            throw new DataStorageException("Failed to create " + targetDir);
+        }
+        byte[] buffer = new byte[64 * 1024];
+        for (FileEntry entry : manifest.files) {
+            File temp = new File(targetDir, entry.name + ".tmp");
+            long written = 0;
+            try (OutputStream out = new BufferedOutputStream(new FileOutputStream(temp))) {
+                for (String hash : entry.chunks) {
+                    MessageDigest digest = sha256();
+                    try (InputStream in = new InflaterInputStream(new FileInputStream(chunkFile(hash)))) {
+                        int read;
+                        while ((read = in.read(buffer)) > 0) {
+                            digest.update(buffer, 0, read);
+                            out.write(buffer, 0, read);
+                            written += read;
+                        }
+                    }
+                    if (!HexFormat.of().formatHex(digest.digest()).equals(hash)) {
+                        throw new DataStorageException("Backup chunk " + hash + " is corrupt");
+                    }
+                }
+            } catch (IOException e) {
+                throw new DataStorageException("Failed to restore " + entry.name, e);
+            }
+            if (written != entry.size) {
+                throw new DataStorageException("Restored " + entry.name + " has the wrong size");
+            }
+            try {
+                Files.move(temp.toPath(), new File(targetDir, entry.name).toPath());
+                new File(targetDir, entry.name).setLastModified(entry.lastModified);
+            } catch (IOException e) {
+                throw new DataStorageException("Failed to restore " + entry.name, e);
+            }
+        }
+    }
+
+    /**
+     * Deletes all but the newest {@code keep} snapshots and the chunks only they referenced.
+     *
+     * @return The number of snapshots deleted
+     */
+    public synchronized int prune(int keep) {
+        return withStoreLock(() -> pruneLocked(keep));
+    }
+
+    private int pruneLocked(int keep) {
+        File[] manifests = manifestFiles();
+        int toDelete = Math.max(0, manifests.length - keep);
+        for (int i = 0; i < toDelete; i++) {
+            if (!manifests[i].delete()) {
+                LOGGER.warning("Failed to delete snapshot " + manifests[i].getName());
+            }
+        }
+        if (toDelete == 0) {
+            return 0;
+        }
+        Set<String> live = new HashSet<>();
+        for (Manifest manifest : list()) {
+            manifest.files.forEach(entry -> live.addAll(entry.chunks));
+        }
+        File[] prefixes = chunksDir.listFiles(File::isDirectory);
+        for (File prefix : prefixes != null ? prefixes : new File[0]) {
+            File[] chunks = prefix.listFiles();
+            for (File chunk : chunks != null ? chunks : new File[0]) {
+                if (!live.contains(chunk.getName()) && !chunk.delete()) {
+                    LOGGER.warning("Failed to delete backup chunk " + chunk.getName());
+                }
+            }
+        }
+        return toDelete;
+    }
+
+    public synchronized int count() {
+        return manifestFiles().length;
+    }
+
+    // Keeps other processes' saves, prunes and restores of this store out while the work runs.
+    private <T> T withStoreLock(Supplier<T> work) {
+        File dir = lockFile.getParentFile();
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new DataStorageException("Failed to create " + dir);
+        }
+        try (FileChannel channel = FileChannel.open(lockFile.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE)) {
+            FileLock lock = channel.lock();
+            try {
+                return work.get();
+            } finally {
+                lock.release();
+            }
+        } catch (IOException e) {
+            throw new DataStorageException("Failed to lock " + lockFile, e);
+        }
+    }
+
+    private Manifest read(String snapshotId) {
+        try {
+            return objectMapper.readValue(new File(snapshotsDir, snapshotId + ".json"), Manifest.class);
+        } catch (IOException e) {
+            throw new DataStorageException("Failed to read snapshot " + snapshotId, e);
+        }
+    }
+
+    // Oldest first; ids sort by time.
+    private File[] manifestFiles() {
+        File[] files = snapshotsDir.listFiles((dir, name) -> name.endsWith(".json"));
+        if (files == null) {
+            return new File[0];
+        }
+        Arrays.sort(files);
+        return files;
+    }
+
+    private String uniqueId(LocalDateTime now) {
+        if (!snapshotsDir.exists() && !snapshotsDir.mkdirs()) {
+            throw new DataStorageException("Failed to create " + snapshotsDir);
+        }
+        String id = ID_FORMAT.format(now);
+        for (int suffix = 1; new File(snapshotsDir, id + ".json").exists(); suffix++) {
+            id = ID_FORMAT.format(now) + "-" + suffix;
+        }
+        return id;
+    }
+
+    // Streams the file through a buffer of one maximum chunk, which is all a boundary can depend on.
+    private List<String> storeChunks(File file, Manifest manifest) {
+        List<String> hashes = new ArrayList<>();
+        byte[] buffer = new byte[MAX_CHUNK_SIZE];
+        int filled = 0;
+        boolean end = false;
+        try (InputStream in = new FileInputStream(file)) {
+            while (true) {
+                while (!end && filled < buffer.length) {
+                    int read = in.read(buffer, filled, buffer.length - filled);
+                    if (read < 0) {
+                        end = true;
+                    } else {
+                        filled += read;
+                    }
+                }
+                if (filled == 0) {
+                    return hashes;
+                }
+                int length = nextBoundary(buffer, filled);
+                MessageDigest digest = sha256();
+                digest.update(buffer, 0, length);
+                String hash = HexFormat.of().formatHex(digest.digest());
+                File chunk = chunkFile(hash);
+                if (!chunk.exists()) {
+                    writeChunk(chunk, buffer, 0, length);
+                    manifest.newChunkBytes += length;
+                }
+                hashes.add(hash);
+                System.arraycopy(buffer, length, buffer, 0, filled - length);
+                filled -= length;
+            }
+        } catch (IOException e) {
+            throw new DataStorageException("Failed to read " + file + " for backup", e);
+        }
+    }
+
+    // The length of the chunk at the start of the buffer: where the rolling hash hits the mask, within the size limits.
+    private static int nextBoundary(byte[] buffer, int filled) {
+        int limit = Math.min(filled, MAX_CHUNK_SIZE);
+        int position = MIN_CHUNK_SIZE;
+        if (position >= limit) {
+            return limit;
+        }
+        long hash = 0;
+        for (; position < limit; position++) {
+            hash = (hash << 1) + GEAR[buffer[position] & 0xFF];
+            if ((hash & BOUNDARY_MASK) == 0) {
+                return position + 1;
+            }
+        }
+        return limit;
+    }
+
+    private void writeChunk(File chunk, byte[] content, int offset, int length) {
+        File dir = chunk.getParentFile();
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new DataStorageException("Failed to create " + dir);
+        }
+        File temp = new File(dir, chunk.getName() + ".tmp");
+        try {
+            try (OutputStream out = new DeflaterOutputStream(new FileOutputStream(temp),
+                    new Deflater(Deflater.BEST_SPEED))) {
+                out.write(content, offset, length);
+            }
+            Files.move(temp.toPath(), chunk.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new DataStorageException("Failed to store backup chunk " + chunk.getName(), e);
+        }
+    }
+
+    private File chunkFile(String hash) {
+        return new File(new File(chunksDir, hash.substring(0, 2)), hash);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * A file of the workspace as captured for a snapshot. The staged copy is null when the
+     * file is unchanged since {@code previous} was stored.
+     */
+    static final class CapturedFile {
+        final String name;
+        final long size;
+        final long lastModified;
+        final File staged;
+        final FileEntry previous;
+
+        CapturedFile(String name, long size, long lastModified, File staged, FileEntry previous) {
+            this.name = name;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.staged = staged;
+            this.previous = previous;
+        }
+    }
+
+    // A snapshot, stored as JSON in snapshots/<id>.json.
+    public static class Manifest {
+        public String id;
+        public LocalDateTime createdAt;
+        // Bytes of chunks that were not already stored by an earlier snapshot.
+        public long newChunkBytes;
+        public List<FileEntry> files = new ArrayList<>();
+    }
+
+    public static class FileEntry {
+        public String name;
+        public long size;
+        public long lastModified;
+        public List<String> chunks = new ArrayList<>();
+    }
+}
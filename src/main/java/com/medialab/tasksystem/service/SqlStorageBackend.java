@@ -0,0 +1,494 @@
+package com.medialab.tasksystem.service;
+
+import com.medialab.tasksystem.exceptions.DataStorageException;
+import com.medialab.tasksystem.model.Category;
+import com.medialab.tasksystem.model.DescriptionLoader;
+import com.medialab.tasksystem.model.PriorityLevel;
+import com.medialab.tasksystem.model.Reminder;
+import com.medialab.tasksystem.model.ReminderType;
+import com.medialab.tasksystem.model.Task;
+import com.medialab.tasksystem.model.TaskStatus;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Stores a workspace in an embedded H2 database file (tasks-db.mv.db in the workspace).
+ * <p>
+ * Every change is a row-level statement inside a transaction, and tasks are indexed by
+ * deadline and by status, so large workspaces never rewrite unchanged data. Task
+ * descriptions stay in the database and are read on demand, like the out-of-line
+ * descriptions of the JSON backend.
+ * </p>
+ * All access goes through one connection; methods are synchronized on the backend.
+ */
+public class SqlStorageBackend implements StorageBackend {
+    /** The database file name, without H2's ".mv.db" extension. */
+    public static final String DATABASE_NAME = "tasks-db";
+    // Descriptions stored in the database are referenced by the task row's row_id.
+    private static final int DATABASE_DESCRIPTION_FILE = 0;
+
+    private static final String[] SCHEMA = {
+            "CREATE TABLE IF NOT EXISTS tasks ("
+                    + "row_id BIGINT AUTO_INCREMENT UNIQUE, "
+                    + "id VARCHAR(64) PRIMARY KEY, "
+                    + "title VARCHAR, "
+                    + "description CLOB, "
+                    + "category_id VARCHAR(64), category_name VARCHAR, "
+                    + "priority_id VARCHAR(64), priority_name VARCHAR, priority_weight INT, priority_default BOOLEAN, "
+                    + "deadline DATE, status VARCHAR(16), completed_at DATE)",
+            "CREATE INDEX IF NOT EXISTS tasks_deadline ON tasks(deadline)",
+            "CREATE INDEX IF NOT EXISTS tasks_status_deadline ON tasks(status, deadline)",
+            "CREATE TABLE IF NOT EXISTS categories (id VARCHAR(64) PRIMARY KEY, name VARCHAR NOT NULL)",
+            "CREATE TABLE IF NOT EXISTS priority_levels ("
+                    + "id VARCHAR(64) PRIMARY KEY, name VARCHAR NOT NULL, is_default BOOLEAN, weight INT)",
+            "CREATE TABLE IF NOT EXISTS reminders ("
+                    + "id VARCHAR(64) PRIMARY KEY, task_id VARCHAR(64), type VARCHAR(32), "
+                    + "reminder_date DATE, fired_at TIMESTAMP, acknowledged BOOLEAN)",
+            "CREATE INDEX IF NOT EXISTS reminders_task ON reminders(task_id)",
+            "CREATE INDEX IF NOT EXISTS reminders_date ON reminders(reminder_date)",
+            // Databases created before entities had versions.
+            "ALTER TABLE tasks ADD COLUMN IF NOT EXISTS version BIGINT DEFAULT 0 NOT NULL",
+            "ALTER TABLE categories ADD COLUMN IF NOT EXISTS version BIGINT DEFAULT 0 NOT NULL",
+            "ALTER TABLE priority_levels ADD COLUMN IF NOT EXISTS version BIGINT DEFAULT 0 NOT NULL",
+            "ALTER TABLE reminders ADD COLUMN IF NOT EXISTS version BIGINT DEFAULT 0 NOT NULL"
+    };
+
+    private static final String TASK_COLUMNS = "row_id, id, title, description IS NOT NULL AS has_description, "
+            + "category_id, category_name, priority_id, priority_name, priority_weight, priority_default, "
+            + "deadline, status, completed_at, version";
+
+    private final Connection connection;
+    private final DescriptionLoader descriptionLoader = this::loadDescription;
+    private final EntityStore<Task> tasks = new TaskTable();
+    private final EntityStore<Category> categories = new CategoryTable();
+    private final EntityStore<PriorityLevel> priorityLevels = new PriorityLevelTable();
+    private final EntityStore<Reminder> reminders = new ReminderTable();
+    private int transactionDepth;
+
+    public SqlStorageBackend(File baseDir) {
+        String url = "jdbc:h2:file:" + new File(baseDir, DATABASE_NAME).getAbsolutePath();
+        try {
+            this.connection = DriverManager.getConnection(url);
+            connection.setAutoCommit(false);
+            try (Statement statement = connection.createStatement()) {
+                for (String ddl : SCHEMA) {
+                    statement.execute(ddl);
+                }
+            }
+            connection.commit();
+        } catch (SQLException e) {
+            throw new DataStorageException("Failed to open database " + url, e);
+        }
+    }
+
+    /**
+     * Returns true if the given workspace already has a database file.
+     */
+    public static boolean exists(File baseDir) {
+        return new File(baseDir, DATABASE_NAME + ".mv.db").exists();
+    }
+
+    @Override
+    public EntityStore<Task> tasks() {
+        return tasks;
+    }
+
+    @Override
+    public EntityStore<Category> categories() {
+        return categories;
+    }
+
+    @Override
+    public EntityStore<PriorityLevel> priorityLevels() {
+        return priorityLevels;
+    }
+
+    @Override
+    public EntityStore<Reminder> reminders() {
+        return reminders;
+    }
+
+    @Override
+    public synchronized List<Task> findTasks(TaskStatus status, LocalDate deadlineFrom, LocalDate deadlineTo, int limit) {
+        StringBuilder sql = new StringBuilder("SELECT " + TASK_COLUMNS + " FROM tasks WHERE 1 = 1");
+        List<Object> parameters = new ArrayList<>();
+        if (status != null) {
+            sql.append(" AND status = ?");
+            parameters.add(status.name());
+        }
+        if (deadlineFrom != null) {
+            sql.append(" AND deadline >= ?");
+            parameters.add(deadlineFrom);
+        }
+        if (deadlineTo != null) {
+            sql.append(" AND deadline <= ?");
+            parameters.add(deadlineTo);
+        }
+        sql.append(" ORDER BY deadline NULLS LAST LIMIT ?");
+        parameters.add(limit);
+        try (PreparedStatement statement = connection.prepareStatement(sql.toString())) {
+            for (int i = 0; i < parameters.size(); i++) {
+                statement.setObject(i + 1, parameters.get(i));
+            }
+            return readTasks(statement);
+        } catch (SQLException e) {
+            throw new DataStorageException("Failed to query tasks", e);
+        }
+    }
+
+    @Override
+    public synchronized void inTransaction(Runnable work) {
+        transactionDepth++;
+        boolean committed = false;
+        try {
+            work.run();
+            if (transactionDepth == 1) {
+                connection.commit();
+            }
+            committed = true;
+        } catch (SQLException e) {
+            throw new DataStorageException("Failed to commit", e);
+        } finally {
+            transactionDepth--;
+            if (!committed && transactionDepth == 0) {
+                try {
+                    connection.rollback();
+                } catch (SQLException e) {
+                    // The original failure is more useful; the connection is unusable either way.
+                }
+            }
+        }
+    }
+
+    // Commits are durable, but H2 writes them to the file in the background; a checkpoint
+    // writes and syncs them now, so the file can be copied, e.g. by a backup.
+    @Override
+    public synchronized void flush() {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CHECKPOINT SYNC");
+        } catch (SQLException e) {
+            throw new DataStorageException("Failed to write the database to disk", e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            throw new DataStorageException("Failed to close database", e);
+        }
+    }
+
+    private synchronized String loadDescription(int file, long rowId, int length) {
+        try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT description FROM tasks WHERE row_id = ?")) {
+            statement.setLong(1, rowId);
+            try (ResultSet rows = statement.executeQuery()) {
+                return rows.next() ? rows.getString(1) : null;
+            }
+        } catch (SQLException e) {
+            throw new DataStorageException("Failed to load task description", e);
+        }
+    }
+
+    private List<Task> readTasks(PreparedStatement statement) throws SQLException {
+        List<Task> result = new ArrayList<>();
+        try (ResultSet rows = statement.executeQuery()) {
+            while (rows.next()) {
+                Task task = new Task();
+                task.setId(rows.getString("id"));
+                task.setTitle(rows.getString("title"));
+                if (rows.getBoolean("has_description")) {
+                    task.setStoredDescription(DATABASE_DESCRIPTION_FILE, rows.getLong("row_id"), 0, descriptionLoader);
+                }
+                String categoryName = rows.getString("category_name");
+                if (categoryName != null) {
+                    Category category = new Category(categoryName);
+                    category.setId(rows.getString("category_id"));
+                    task.setCategory(category);
+                }
+                String priorityName = rows.getString("priority_name");
+                if (priorityName != null) {
+                    PriorityLevel priority = new PriorityLevel(priorityName,
+                            rows.getBoolean("priority_default"), rows.getInt("priority_weight"));
+                    priority.setId(rows.getString("priority_id"));
+                    task.setPriority(priority);
+                }
+                task.setDeadline(rows.getObject("deadline", LocalDate.class));
+                String status = rows.getString("status");
+                task.setStatus(status != null ? TaskStatus.valueOf(status) : TaskStatus.OPEN);
+                task.setCompletedAt(rows.getObject("completed_at", LocalDate.class));
+                task.setVersion(rows.getLong("version"));
+                result.add(task);
+            }
+        }
+        return result;
+    }
+
+    // Shared plumbing for one table: batches upserts and deletes inside a transaction.
+    private abstract class Table<T> implements EntityStore<T> {
+        private final String table;
+        private final String selectColumns;
+
+        Table(String table, String selectColumns) {
+            this.table = table;
+            this.selectColumns = selectColumns;
+        }
+
+        abstract List<T> read(PreparedStatement statement) throws SQLException;
+
+        abstract void upsertAll(Collection<? extends T> upserts) throws SQLException;
+
+        @Override
+        public List<T> loadAll() {
+            synchronized (SqlStorageBackend.this) {
+                try (PreparedStatement statement = connection.prepareStatement(
+                        "SELECT " + selectColumns + " FROM " + table)) {
+                    return read(statement);
+                } catch (SQLException e) {
+                    throw new DataStorageException("Failed to load " + table, e);
+                }
+            }
+        }
+
+        @Override
+        public T get(String id) {
+            synchronized (SqlStorageBackend.this) {
+                try (PreparedStatement statement = connection.prepareStatement(
+                        "SELECT " + selectColumns + " FROM " + table + " WHERE id = ?")) {
+                    statement.setString(1, id);
+                    List<T> found = read(statement);
+                    return found.isEmpty() ? null : found.get(0);
+                } catch (SQLException e) {
+                    throw new DataStorageException("Failed to load from " + table, e);
+                }
+            }
+        }
+
+        @Override
+        public void saveChanges(Collection<? extends T> upserts, Collection<String> deletedIds) {
+            if (upserts.isEmpty() && deletedIds.isEmpty()) {
+                return;
+            }
+            inTransaction(() -> {
+                try {
+                    if (!deletedIds.isEmpty()) {
+                        try (PreparedStatement statement = connection.prepareStatement(
+                                "DELETE FROM " + table + " WHERE id = ?")) {
+                            for (String id : deletedIds) {
+                                statement.setString(1, id);
+                                statement.addBatch();
+                            }
+                            statement.executeBatch();
+                        }
+                    }
+                    if (!upserts.isEmpty()) {
+                        upsertAll(upserts);
+                    }
+                } catch (SQLException e) {
+                    throw new DataStorageException("Failed to save " + table, e);
+                }
+            });
+        }
+    }
+
+    private class TaskTable extends Table<Task> {
+        TaskTable() {
+            super("tasks", TASK_COLUMNS);
+        }
+
+        @Override
+        List<Task> read(PreparedStatement statement) throws SQLException {
+            return readTasks(statement);
+        }
+
+        @Override
+        void upsertAll(Collection<? extends Task> upserts) throws SQLException {
+            List<Task> newDescriptions = new ArrayList<>();
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "MERGE INTO tasks (id, title, category_id, category_name, priority_id, priority_name, "
+                            + "priority_weight, priority_default, deadline, status, completed_at, version) "
+                            + "KEY (id) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)")) {
+                for (Task task : upserts) {
+                    Category category = task.getCategory();
+                    PriorityLevel priority = task.getPriority();
+                    statement.setString(1, task.getId());
+                    statement.setString(2, task.getTitle());
+                    statement.setString(3, category != null ? category.getId() : null);
+                    statement.setString(4, category != null ? category.getName() : null);
+                    statement.setString(5, priority != null ? priority.getId() : null);
+                    statement.setString(6, priority != null ? priority.getName() : null);
+                    statement.setInt(7, priority != null ? priority.getWeight() : 0);
+                    statement.setBoolean(8, priority != null && priority.isDefault());
+                    statement.setObject(9, task.getDeadline());
+                    statement.setString(10, task.getStatus() != null ? task.getStatus().name() : null);
+                    statement.setObject(11, task.getCompletedAt());
+                    statement.setLong(12, task.getVersion());
+                    statement.addBatch();
+                    // Descriptions already stored in this database are left untouched.
+                    if (!task.hasStoredDescription() || task.getDescriptionLoader() != descriptionLoader) {
+                        newDescriptions.add(task);
+                    }
+                }
+                statement.executeBatch();
+            }
+            if (newDescriptions.isEmpty()) {
+                return;
+            }
+            try (PreparedStatement update = connection.prepareStatement(
+                    "UPDATE tasks SET description = ? WHERE id = ?");
+                 PreparedStatement rowId = connection.prepareStatement(
+                         "SELECT row_id FROM tasks WHERE id = ?")) {
+                for (Task task : newDescriptions) {
+                    String description = task.getDescription();
+                    update.setString(1, description);
+                    update.setString(2, task.getId());
+                    update.executeUpdate();
+                    if (description == null) {
+                        continue;
+                    }
+                    rowId.setString(1, task.getId());
+                    try (ResultSet rows = rowId.executeQuery()) {
+                        rows.next();
+                        task.setStoredDescription(DATABASE_DESCRIPTION_FILE, rows.getLong(1),
+                                description.length(), descriptionLoader);
+                    }
+                }
+            }
+        }
+    }
+
+    private class CategoryTable extends Table<Category> {
+        CategoryTable() {
+            super("categories", "id, name, version");
+        }
+
+        @Override
+        List<Category> read(PreparedStatement statement) throws SQLException {
+            List<Category> result = new ArrayList<>();
+            try (ResultSet rows = statement.executeQuery()) {
+                while (rows.next()) {
+                    Category category = new Category(rows.getString("name"));
+                    category.setId(rows.getString("id"));
+                    category.setVersion(rows.getLong("version"));
+                    result.add(category);
+                }
+            }
+            return result;
+        }
+
+        @Override
+        void upsertAll(Collection<? extends Category> upserts) throws SQLException {
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "MERGE INTO categories (id, name, version) KEY (id) VALUES (?, ?, ?)")) {
+                for (Category category : upserts) {
+                    statement.setString(1, category.getId());
+                    statement.setString(2, category.getName());
+                    statement.setLong(3, category.getVersion());
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+            }
+        }
+    }
+
+    private class PriorityLevelTable extends Table<PriorityLevel> {
+        PriorityLevelTable() {
+            super("priority_levels", "id, name, is_default, weight, version");
+        }
+
+        @Override
+        List<PriorityLevel> read(PreparedStatement statement) throws SQLException {
+            List<PriorityLevel> result = new ArrayList<>();
+            try (ResultSet rows = statement.executeQuery()) {
+                while (rows.next()) {
+                    PriorityLevel level = new PriorityLevel(rows.getString("name"),
+                            rows.getBoolean("is_default"), rows.getInt("weight"));
+                    level.setId(rows.getString("id"));
+                    level.setVersion(rows.getLong("version"));
+                    result.add(level);
+                }
+            }
+            return result;
+        }
+
+        @Override
+        void upsertAll(Collection<? extends PriorityLevel> upserts) throws SQLException {
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "MERGE INTO priority_levels (id, name, is_default, weight, version) KEY (id) "
+                            + "VALUES (?, ?, ?, ?, ?)")) {
+                for (PriorityLevel level : upserts) {
+                    statement.setString(1, level.getId());
+                    statement.setString(2, level.getName());
+                    statement.setBoolean(3, level.isDefault());
+                    statement.setInt(4, level.getWeight());
+                    statement.setLong(5, level.getVersion());
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+            }
+        }
+    }
+
+    private class ReminderTable extends Table<Reminder> {
+        ReminderTable() {
+            super("reminders", "id, task_id, type, reminder_date, fired_at, acknowledged, version");
+        }
+
+        @Override
+        List<Reminder> read(PreparedStatement statement) throws SQLException {
+            List<Reminder> result = new ArrayList<>();
+            try (ResultSet rows = statement.executeQuery()) {
+                while (rows.next()) {
+                    Reminder reminder = new Reminder();
+                    reminder.setId(rows.getString("id"));
+                    reminder.setTaskId(rows.getString("task_id"));
+                    String type = rows.getString("type");
+                    reminder.setType(type != null ? ReminderType.valueOf(type) : null);
+                    reminder.setReminderDate(rows.getObject("reminder_date", LocalDate.class));
+                    reminder.setFiredAt(rows.getObject("fired_at", LocalDateTime.class));
+                    reminder.setAcknowledged(rows.getBoolean("acknowledged"));
+                    reminder.setVersion(rows.getLong("version"));
+                    result.add(reminder);
+                }
+            }
+            return result;
+        }
+
+        @Override
+        void upsertAll(Collection<? extends Reminder> upserts) throws SQLException {
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "MERGE INTO reminders (id, task_id, type, reminder_date, fired_at, acknowledged, version) "
+                            + "KEY (id) VALUES (?, ?, ?, ?, ?, ?, ?)")) {
+                for (Reminder reminder : upserts) {
+                    statement.setString(1, reminder.getId());
+                    statement.setString(2, reminder.getTaskId());
+                    statement.setString(3, reminder.getType() != null ? reminder.getType().name() : null);
+                    statement.setObject(4, reminder.getReminderDate());
+                    if (reminder.getFiredAt() != null) {
+                        statement.setObject(5, reminder.getFiredAt());
+                    } else {
+                        statement.setNull(5, Types.TIMESTAMP);
+                    }
+                    statement.setBoolean(6, reminder.isAcknowledged());
+                    statement.setLong(7, reminder.getVersion());
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+            }
+        }
+    }
+}
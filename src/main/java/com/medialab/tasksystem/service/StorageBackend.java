@@ -0,0 +1,58 @@
+package com.medialab.tasksystem.service;
+
+import com.medialab.tasksystem.model.Category;
+import com.medialab.tasksystem.model.PriorityLevel;
+import com.medialab.tasksystem.model.Reminder;
+import com.medialab.tasksystem.model.Task;
+import com.medialab.tasksystem.model.TaskStatus;
+
+import java.io.Closeable;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Where a workspace keeps its tasks, categories, priority levels and reminders.
+ * <p>
+ * Services write row by row through the entity stores, so a backend only has to
+ * persist what changed. {@link JsonStorageBackend} keeps the original JSON files;
+ * {@link SqlStorageBackend} uses an embedded SQL database with indexes and
+ * transactions for large workspaces.
+ * </p>
+ */
+public interface StorageBackend extends Closeable {
+
+    EntityStore<Task> tasks();
+
+    EntityStore<Category> categories();
+
+    EntityStore<PriorityLevel> priorityLevels();
+
+    EntityStore<Reminder> reminders();
+
+    /**
+     * Returns up to {@code limit} stored tasks matching all given criteria, in deadline order.
+     * Null criteria match anything.
+     */
+    List<Task> findTasks(TaskStatus status, LocalDate deadlineFrom, LocalDate deadlineTo, int limit);
+
+    /**
+     * Runs the given work so that all writes it makes are applied together or not at all,
+     * as far as the backend supports it.
+     */
+    void inTransaction(Runnable work);
+
+    /**
+     * Makes every write durable and compacts any change logs.
+     */
+    void flush();
+
+    /**
+     * The number of description characters the backend holds in memory, for memory budgeting.
+     */
+    default long getCachedDescriptionChars() {
+        return 0;
+    }
+
+    @Override
+    void close();
+}
@@ -0,0 +1,361 @@
+package com.medialab.tasksystem.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.medialab.tasksystem.model.Task;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compressed, append-only storage for tasks moved out of the live task list.
+ * <p>
+ * Each archiving run appends one gzip member of newline-delimited JSON records
+ * ({@code {"seq":..,"task":{..}}}) to tasks-archive.ndjson.gz; readers see the members
+ * as one stream. Nothing is held in memory except a small metadata file: the next
+ * sequence number, the number of archived tasks, and the ids restored since the last
+ * compaction. A record is live unless its task was restored at or after its sequence
+ * number. Queries stream through the archive on demand. The metadata also records the
+ * archive's length after the last complete append, so a member cut short by a crash is
+ * neither read nor left in front of the next one.
+ * </p>
+ * When other processes share the workspace, changes are made under the workspace lock
+ * and start from the metadata as last saved, so no process archives over another's.
+ */
+public class TaskArchive {
+    private static final Logger LOGGER = Logger.getLogger(TaskArchive.class.getName());
+    private static final String ARCHIVE_FILE = "tasks-archive.ndjson.gz";
+    private static final String META_FILE = "tasks-archive.meta.json";
+    private static final int MIN_RESTORED_TO_COMPACT = 1000;
+
+    private final File archiveFile;
+    private final File metaFile;
+    private final ObjectMapper objectMapper;
+    private final WorkspaceLock lock;
+    private Meta meta;
+    // When the metadata file was last read or written, to notice saves of other processes.
+    private long metaModified;
+
+    TaskArchive(File baseDir, ObjectMapper objectMapper, WorkspaceLock lock) {
+        this.archiveFile = new File(baseDir, ARCHIVE_FILE);
+        this.metaFile = new File(baseDir, META_FILE);
+        this.objectMapper = objectMapper;
+        this.lock = lock;
+        this.meta = loadMeta();
+    }
+
+    /**
+     * Returns the number of tasks currently in the archive.
+     */
+    public synchronized int size() {
+        reloadMetaIfChanged();
+        return meta.archivedCount;
+    }
+
+    /**
+     * Appends the given tasks to the archive in a single gzip member.
+     * Descriptions are stored inline so archived tasks do not depend on the description store.
+     */
+    public void append(List<Task> tasks) {
+        if (tasks.isEmpty()) {
+            return;
+        }
+        // The workspace lock is always taken before this object's monitor.
+        lock.runExclusive(() -> appendLocked(tasks));
+    }
+
+    private synchronized void appendLocked(List<Task> tasks) {
+        // Read again under the lock: another process may have saved it within the same file time.
+        meta = loadMeta();
+        truncateToValidLength();
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                new GZIPOutputStream(new FileOutputStream(archiveFile, true)), StandardCharsets.UTF_8))) {
+            for (Task task : tasks) {
+                ObjectNode record = objectMapper.createObjectNode();
+                record.put("seq", meta.nextSeq++);
+                record.set("task", toArchivedJson(task));
+                writer.write(objectMapper.writeValueAsString(record));
+                writer.write('\n');
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Failed to append to " + ARCHIVE_FILE, e);
+            throw new RuntimeException("Failed to save data", e);
+        }
+        meta.archivedCount += tasks.size();
+        meta.archiveLength = archiveFile.length();
+        saveMeta();
+    }
+
+    // Drops what an append cut short by a crash left after the last complete member, so
+    // the members appended next are not hidden behind a torn one.
+    private void truncateToValidLength() {
+        if (meta.archiveLength < 0 || archiveFile.length() <= meta.archiveLength) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(archiveFile.toPath(), StandardOpenOption.WRITE)) {
+            channel.truncate(meta.archiveLength);
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Failed to truncate " + ARCHIVE_FILE, e);
+            throw new RuntimeException("Failed to save data", e);
+        }
+        LOGGER.warning("Dropped the unfinished end of " + ARCHIVE_FILE);
+    }
+
+    /**
+     * Streams through the archive and returns up to {@code limit} archived tasks that
+     * match the filter, oldest first.
+     */
+    public synchronized List<Task> query(Predicate<Task> filter, int limit) {
+        reloadMetaIfChanged();
+        List<Task> result = new ArrayList<>();
+        forEachLive((seq, task) -> {
+            if (filter.test(task)) {
+                result.add(task);
+            }
+            return result.size() < limit;
+        });
+        return result;
+    }
+
+    /**
+     * Removes a task from the archive and returns it, or null if it is not archived.
+     */
+    public Task restore(String taskId) {
+        return lock.callExclusive(() -> restoreLocked(taskId));
+    }
+
+    private synchronized Task restoreLocked(String taskId) {
+        meta = loadMeta();
+        long[] foundSeq = {-1};
+        Task[] found = {null};
+        forEachLive((seq, task) -> {
+            if (task.getId().equals(taskId)) {
+                foundSeq[0] = seq;
+                found[0] = task;
+            }
+            return true; // Keep going: a later record for the same id wins
+        });
+        if (found[0] == null) {
+            return null;
+        }
+        meta.restored.put(taskId, foundSeq[0]);
+        meta.archivedCount--;
+        saveMeta();
+        if (meta.restored.size() > Math.max(MIN_RESTORED_TO_COMPACT, meta.archivedCount)) {
+            compactLocked();
+        }
+        return found[0];
+    }
+
+    /**
+     * Rewrites the archive without the records of restored tasks.
+     */
+    public void compact() {
+        lock.runExclusive(this::compactLocked);
+    }
+
+    private synchronized void compactLocked() {
+        meta = loadMeta();
+        File temp = new File(archiveFile.getPath() + ".tmp");
+        int[] written = {0};
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                new GZIPOutputStream(new FileOutputStream(temp)), StandardCharsets.UTF_8))) {
+            IOException[] failure = {null};
+            forEachLive((seq, task) -> {
+                try {
+                    ObjectNode record = objectMapper.createObjectNode();
+                    record.put("seq", seq);
+                    record.set("task", toArchivedJson(task));
+                    writer.write(objectMapper.writeValueAsString(record));
+                    writer.write('\n');
+                    written[0]++;
+                    return true;
+                } catch (IOException e) {
+                    failure[0] = e;
+                    return false;
+                }
+            });
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Failed to compact " + ARCHIVE_FILE, e);
+            throw new RuntimeException("Failed to save data", e);
+        }
+        try {
+            Files.move(temp.toPath(), archiveFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Failed to replace " + ARCHIVE_FILE, e);
+            throw new RuntimeException("Failed to save data", e);
+        }
+        // Sequence numbers are kept, so the restored ids are no longer needed.
+        meta.restored.clear();
+        meta.archivedCount = written[0];
+        meta.archiveLength = archiveFile.length();
+        saveMeta();
+    }
+
+    private ObjectNode toArchivedJson(Task task) {
+        ObjectNode json = objectMapper.valueToTree(task);
+        json.put("description", task.getDescription());
+        json.remove(List.of("descriptionFile", "descriptionOffset", "descriptionLength"));
+        return json;
+    }
+
+    @FunctionalInterface
+    private interface RecordVisitor {
+        // Returns false to stop reading.
+        boolean visit(long seq, Task task) throws IOException;
+    }
+
+    // Reads every live record in order, up to the length of the last complete append.
+    private void forEachLive(RecordVisitor visitor) {
+        if (!archiveFile.exists()) {
+            return;
+        }
+        long length = meta.archiveLength >= 0 ? meta.archiveLength : Long.MAX_VALUE;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(new LimitedInputStream(new FileInputStream(archiveFile), length)),
+                StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                JsonNode record = objectMapper.readTree(line);
+                long seq = record.get("seq").asLong();
+                JsonNode taskJson = record.get("task");
+                Long restoredAt = meta.restored.get(taskJson.get("id").asText());
+                if (restoredAt != null && restoredAt >= seq) {
+                    continue;
+                }
+                if (!visitor.visit(seq, objectMapper.treeToValue(taskJson, Task.class))) {
+                    return;
+                }
+            }
+        } catch (EOFException e) {
+            LOGGER.warning("Ignoring truncated end of " + ARCHIVE_FILE);
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Failed to read " + ARCHIVE_FILE, e);
+        }
+    }
+
+    private Meta loadMeta() {
+        metaModified = metaFile.lastModified();
+        if (!metaFile.exists()) {
+            return new Meta();
+        }
+        try {
+            return objectMapper.readValue(metaFile, Meta.class);
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Failed to load " + META_FILE, e);
+            return new Meta();
+        }
+    }
+
+    // Picks up metadata another process sharing the workspace saved since it was last read.
+    private void reloadMetaIfChanged() {
+        if (metaFile.lastModified() != metaModified) {
+            meta = loadMeta();
+        }
+    }
+
+    // Replaces the file in one step, so other processes never read it half-written.
+    private void saveMeta() {
+        File temp = new File(metaFile.getPath() + ".tmp");
+        try {
+            objectMapper.writeValue(temp, meta);
+            Files.move(temp.toPath(), metaFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Failed to save " + META_FILE, e);
+            throw new RuntimeException("Failed to save data", e);
+        }
+        metaModified = metaFile.lastModified();
+    }
+
+    // The archive's metadata, stored as JSON next to it.
+    static class Meta {
+        public long nextSeq;
+        public int archivedCount;
+        public Map<String, Long> restored = new HashMap<>();
+        // The archive's length after the last complete append or compaction; -1 if not yet recorded.
+        public long archiveLength = -1;
+    }
+
+    // Ends the stream after the given number of bytes.
+    private static final class LimitedInputStream extends FilterInputStream {
+        private long remaining;
+
+        LimitedInputStream(InputStream in, long limit) {
+            super(in);
+            this.remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = in.read();
+            if (b >= 0) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int read = in.read(buffer, offset, (int) Math.min(length, remaining));
+            if (read > 0) {
+                remaining -= read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = in.skip(Math.min(n, remaining));
+            remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(in.available(), remaining);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+}
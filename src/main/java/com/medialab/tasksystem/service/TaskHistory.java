@@ -0,0 +1,571 @@
+package com.medialab.tasksystem.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.medialab.tasksystem.model.Task;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The version history of every task, kept in task-history.log.
+ * <p>
+ * Each saved change appends one line {@code <task id>\t<epoch millis>\t<kind>\t<json>}: a
+ * checkpoint (C) holds the task's full state, a delta (D) only the fields that changed,
+ * and a removal (R) marks the task deleted or archived. Every task gets a checkpoint at
+ * least every {@value #CHECKPOINT_INTERVAL} versions, so a past state is rebuilt from at
+ * most that many lines. An in-memory index of each task's versions (time, offset, kind)
+ * is built by one scan of the file on first use; queries binary-search it and read only
+ * the lines they need.
+ * </p>
+ * In a workspace several processes share, every process appends its own saves to the
+ * same file under the workspace lock, and the lines the others appended are indexed
+ * before each append and query.
+ */
+public class TaskHistory {
+    private static final Logger LOGGER = Logger.getLogger(TaskHistory.class.getName());
+    private static final String HISTORY_FILE = "task-history.log";
+    private static final int CHECKPOINT_INTERVAL = 16;
+    // States of recently changed tasks, so consecutive edits need not re-read the log.
+    private static final int MAX_CACHED_STATES = 10_000;
+    private static final byte CHECKPOINT = 'C';
+    private static final byte DELTA = 'D';
+    private static final byte REMOVED = 'R';
+    private static final TypeReference<LinkedHashMap<String, String>> STATE_TYPE = new TypeReference<>() {};
+
+    private final File file;
+    private final ObjectMapper objectMapper;
+    private final ObjectReader stateReader;
+    private final Clock clock;
+    private final WorkspaceLock lock;
+    private final Map<String, Timeline> timelines = new HashMap<>();
+    private final Map<String, Map<String, String>> latestStates =
+            new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Map<String, String>> eldest) {
+                    return size() > MAX_CACHED_STATES;
+                }
+            };
+    private boolean indexed;
+    private long fileLength;
+    private FileChannel reader;
+    private MappedByteBuffer mapping;
+
+    TaskHistory(File baseDir, ObjectMapper objectMapper, WorkspaceLock lock) {
+        this(baseDir, objectMapper, lock, Clock.systemDefaultZone());
+    }
+
+    TaskHistory(File baseDir, ObjectMapper objectMapper, WorkspaceLock lock, Clock clock) {
+        this.file = new File(baseDir, HISTORY_FILE);
+        this.objectMapper = objectMapper;
+        this.stateReader = objectMapper.readerFor(STATE_TYPE);
+        this.lock = lock;
+        this.clock = clock;
+    }
+
+    /**
+     * Records the current state of the given tasks as new versions (skipping tasks that did
+     * not change since their last version) and the removal of the given ids.
+     */
+    public void record(Collection<Task> changed, Collection<String> removedIds) {
+        if (changed.isEmpty() && removedIds.isEmpty()) {
+            return;
+        }
+        // The workspace lock is always taken before this object's monitor.
+        lock.runExclusive(() -> recordLocked(changed, removedIds));
+    }
+
+    private synchronized void recordLocked(Collection<Task> changed, Collection<String> removedIds) {
+        ensureIndexed(true);
+        long time = clock.millis();
+        StringBuilder lines = new StringBuilder();
+        List<Appended> appended = new ArrayList<>();
+        for (Task task : changed) {
+            Map<String, String> state = stateOf(task);
+            Map<String, String> previous = latestState(task.getId());
+            if (state.equals(previous)) {
+                continue;
+            }
+            Timeline timeline = timelines.get(task.getId());
+            boolean checkpoint = previous == null || timeline.sinceCheckpoint() >= CHECKPOINT_INTERVAL - 1;
+            Map<String, String> fields = checkpoint ? state : diff(previous, state);
+            appended.add(new Appended(task.getId(), checkpoint ? CHECKPOINT : DELTA, state));
+            lines.append(line(task.getId(), time, checkpoint ? CHECKPOINT : DELTA, fields));
+        }
+        for (String id : removedIds) {
+            if (latestState(id) == null) {
+                continue;
+            }
+            appended.add(new Appended(id, REMOVED, null));
+            lines.append(line(id, time, REMOVED, Map.of()));
+        }
+        if (appended.isEmpty()) {
+            return;
+        }
+        byte[] bytes = lines.toString().getBytes(StandardCharsets.UTF_8);
+        try (OutputStream out = new FileOutputStream(file, true)) {
+            out.write(bytes);
+        } catch (IOException e) {
+            // History is secondary to the data itself: drop the index so it is rebuilt from what reached the file.
+            LOGGER.log(Level.SEVERE, "Failed to append to " + HISTORY_FILE, e);
+            resetIndex();
+            return;
+        }
+        // Index the new lines by walking the bytes just written.
+        long offset = fileLength;
+        int start = 0;
+        int lineIndex = 0;
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] == '\n') {
+                Appended entry = appended.get(lineIndex++);
+                timelines.computeIfAbsent(entry.taskId, id -> new Timeline())
+                        .add(time, offset + start, i - start, entry.kind);
+                latestStates.put(entry.taskId, entry.state);
+                start = i + 1;
+            }
+        }
+        fileLength += bytes.length;
+    }
+
+    /**
+     * Records a checkpoint for every given task that has no history yet, e.g. tasks that
+     * existed before history was kept.
+     */
+    public void seed(Collection<Task> tasks) {
+        lock.runExclusive(() -> seedLocked(tasks));
+    }
+
+    private synchronized void seedLocked(Collection<Task> tasks) {
+        ensureIndexed(true);
+        List<Task> unseen = new ArrayList<>();
+        for (Task task : tasks) {
+            if (!timelines.containsKey(task.getId())) {
+                unseen.add(task);
+            }
+        }
+        if (!unseen.isEmpty()) {
+            recordLocked(unseen, List.of());
+        }
+    }
+
+    /**
+     * Returns every version of a task, oldest first.
+     */
+    public synchronized List<Version> getHistory(String taskId) {
+        ensureIndexed(false);
+        Timeline timeline = timelines.get(taskId);
+        if (timeline == null) {
+            return Collections.emptyList();
+        }
+        List<Version> versions = new ArrayList<>(timeline.size);
+        Map<String, String> state = null;
+        for (int i = 0; i < timeline.size; i++) {
+            Map<String, String> fields = readFields(timeline, i);
+            Map<String, String> changes;
+            if (timeline.kinds[i] == REMOVED) {
+                state = null;
+                changes = Map.of();
+            } else if (timeline.kinds[i] == CHECKPOINT) {
+                changes = state == null ? fields : diff(state, fields);
+                state = fields;
+            } else {
+                state = new LinkedHashMap<>(state);
+                state.putAll(fields);
+                changes = fields;
+            }
+            versions.add(new Version(taskId, i + 1, toDateTime(timeline.times[i]), timeline.kinds[i] == REMOVED,
+                    state, changes));
+        }
+        return versions;
+    }
+
+    /**
+     * Returns the version of a task that was current at the given time, or null if the
+     * task did not exist (or had been removed) then.
+     */
+    public synchronized Version getVersionAt(String taskId, LocalDateTime at) {
+        ensureIndexed(false);
+        Timeline timeline = timelines.get(taskId);
+        if (timeline == null) {
+            return null;
+        }
+        int index = timeline.lastAtOrBefore(at.atZone(clock.getZone()).toInstant().toEpochMilli());
+        if (index < 0 || timeline.kinds[index] == REMOVED) {
+            return null;
+        }
+        return new Version(taskId, index + 1, toDateTime(timeline.times[index]), false,
+                stateAt(timeline, index), Map.of());
+    }
+
+    /**
+     * Returns the tasks as they were at the end of the given day, one version per task
+     * that existed then.
+     */
+    public synchronized List<Version> getBoardAt(LocalDate date) {
+        ensureIndexed(false);
+        long until = date.plusDays(1).atStartOfDay(clock.getZone()).toInstant().toEpochMilli() - 1;
+        List<Version> board = new ArrayList<>();
+        for (Map.Entry<String, Timeline> entry : timelines.entrySet()) {
+            Timeline timeline = entry.getValue();
+            int index = timeline.lastAtOrBefore(until);
+            if (index >= 0 && timeline.kinds[index] != REMOVED) {
+                board.add(new Version(entry.getKey(), index + 1, toDateTime(timeline.times[index]), false,
+                        stateAt(timeline, index), Map.of()));
+            }
+        }
+        return board;
+    }
+
+    public synchronized void close() {
+        closeReader();
+    }
+
+    private LocalDateTime toDateTime(long millis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), clock.getZone());
+    }
+
+    // The fields kept in history, as strings; categories and priorities by name as they were then.
+    private static Map<String, String> stateOf(Task task) {
+        Map<String, String> state = new LinkedHashMap<>();
+        state.put("title", task.getTitle());
+        state.put("description", task.getDescription());
+        state.put("category", task.getCategory() != null ? task.getCategory().getName() : null);
+        state.put("priority", task.getPriority() != null ? task.getPriority().getName() : null);
+        state.put("deadline", Objects.toString(task.getDeadline(), null));
+        state.put("status", Objects.toString(task.getStatus(), null));
+        state.put("completedAt", Objects.toString(task.getCompletedAt(), null));
+        return state;
+    }
+
+    private static Map<String, String> diff(Map<String, String> previous, Map<String, String> current) {
+        Map<String, String> changes = new LinkedHashMap<>();
+        current.forEach((field, value) -> {
+            if (!Objects.equals(previous.get(field), value)) {
+                changes.put(field, value);
+            }
+        });
+        return changes;
+    }
+
+    private String line(String taskId, long time, byte kind, Map<String, String> fields) {
+        try {
+            return taskId + '\t' + time + '\t' + (char) kind + '\t' + objectMapper.writeValueAsString(fields) + '\n';
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot serialize task history", e);
+        }
+    }
+
+    // The last recorded state of a task, or null if it has none or was removed.
+    private Map<String, String> latestState(String taskId) {
+        Timeline timeline = timelines.get(taskId);
+        if (timeline == null || timeline.kinds[timeline.size - 1] == REMOVED) {
+            return null;
+        }
+        Map<String, String> state = latestStates.get(taskId);
+        if (state == null) {
+            state = stateAt(timeline, timeline.size - 1);
+            latestStates.put(taskId, state);
+        }
+        return state;
+    }
+
+    // Rebuild a state from the nearest checkpoint at or before the version.
+    private Map<String, String> stateAt(Timeline timeline, int index) {
+        int checkpoint = index;
+        while (timeline.kinds[checkpoint] != CHECKPOINT) {
+            checkpoint--;
+        }
+        Map<String, String> state = readFields(timeline, checkpoint);
+        for (int i = checkpoint + 1; i <= index; i++) {
+            state.putAll(readFields(timeline, i));
+        }
+        return state;
+    }
+
+    private Map<String, String> readFields(Timeline timeline, int index) {
+        try {
+            long offset = timeline.offsets[index];
+            byte[] line = new byte[timeline.lengths[index]];
+            if (offset + line.length <= Integer.MAX_VALUE) {
+                mapped(offset + line.length).get((int) offset, line);
+            } else {
+                readFully(offset, line);
+            }
+            int json = 0;
+            for (int tabs = 0; tabs < 3; json++) {
+                if (line[json] == '\t') {
+                    tabs++;
+                }
+            }
+            return stateReader.readValue(line, json, line.length - json);
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Failed to read " + HISTORY_FILE, e);
+            return new LinkedHashMap<>();
+        }
+    }
+
+    // A read-only mapping of the file's first bytes, remapped as appends grow the file past it.
+    private MappedByteBuffer mapped(long length) throws IOException {
+        if (mapping == null || mapping.capacity() < length) {
+            mapping = channel().map(FileChannel.MapMode.READ_ONLY, 0, Math.min(fileLength, Integer.MAX_VALUE));
+        }
+        return mapping;
+    }
+
+    // Lines beyond the first 2 GB are read with positional reads.
+    private void readFully(long offset, byte[] line) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(line);
+        while (buffer.hasRemaining()) {
+            if (channel().read(buffer, offset + buffer.position()) < 0) {
+                throw new EOFException("Truncated line in " + HISTORY_FILE);
+            }
+        }
+    }
+
+    private FileChannel channel() throws IOException {
+        if (reader == null) {
+            reader = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        }
+        return reader;
+    }
+
+    // Indexes the lines appended since the file was last read, all of them the first time,
+    // reading only each line's id, time and kind. Only a writer, holding the workspace lock,
+    // may cut a torn last line; for a reader it may be another process's append in progress.
+    private void ensureIndexed(boolean writing) {
+        long length = file.length();
+        if (indexed && length < fileLength) {
+            resetIndex(); // Replaced, e.g. by a restored backup
+        }
+        if (!indexed) {
+            timelines.clear();
+            latestStates.clear();
+            fileLength = 0;
+            indexed = true;
+        }
+        if (length == fileLength) {
+            return;
+        }
+        long offset = fileLength;
+        long lineStart = fileLength;
+        if (file.exists()) {
+            try (FileInputStream in = new FileInputStream(file)) {
+                in.getChannel().position(fileLength);
+                byte[] block = new byte[64 * 1024];
+                byte[] header = new byte[256];
+                int headerLength = 0;
+                int read;
+                while ((read = in.read(block)) > 0) {
+                    for (int i = 0; i < read; i++, offset++) {
+                        if (block[i] != '\n') {
+                            if (headerLength < header.length) {
+                                header[headerLength++] = block[i];
+                            }
+                            continue;
+                        }
+                        indexLine(header, headerLength, lineStart, (int) (offset - lineStart));
+                        headerLength = 0;
+                        lineStart = offset + 1;
+                    }
+                }
+            } catch (IOException e) {
+                LOGGER.log(Level.SEVERE, "Failed to read " + HISTORY_FILE, e);
+            }
+            if (lineStart < offset && writing) {
+                // A torn last line from an interrupted append: cut it so the next append starts cleanly.
+                LOGGER.warning("Truncating incomplete last line of " + HISTORY_FILE);
+                try (RandomAccessFile truncate = new RandomAccessFile(file, "rw")) {
+                    truncate.setLength(lineStart);
+                } catch (IOException e) {
+                    LOGGER.log(Level.SEVERE, "Failed to truncate " + HISTORY_FILE, e);
+                }
+            }
+        }
+        fileLength = lineStart;
+    }
+
+    private void indexLine(byte[] header, int headerLength, long offset, int length) {
+        int firstTab = indexOf(header, headerLength, 0);
+        int secondTab = indexOf(header, headerLength, firstTab + 1);
+        if (firstTab < 0 || secondTab < 0 || secondTab + 1 >= headerLength) {
+            LOGGER.warning("Skipping malformed line in " + HISTORY_FILE + " at offset " + offset);
+            return;
+        }
+        String taskId = new String(header, 0, firstTab, StandardCharsets.UTF_8);
+        long time = Long.parseLong(new String(header, firstTab + 1, secondTab - firstTab - 1, StandardCharsets.US_ASCII));
+        timelines.computeIfAbsent(taskId, id -> new Timeline()).add(time, offset, length, header[secondTab + 1]);
+        // A version another process appended supersedes the cached state.
+        latestStates.remove(taskId);
+    }
+
+    private static int indexOf(byte[] bytes, int length, int from) {
+        for (int i = Math.max(0, from); i < length; i++) {
+            if (bytes[i] == '\t') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void resetIndex() {
+        indexed = false;
+        closeReader();
+    }
+
+    private void closeReader() {
+        mapping = null;
+        if (reader != null) {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to close " + HISTORY_FILE, e);
+            }
+            reader = null;
+        }
+    }
+
+    // A line of the current append and the state it leaves the task in.
+    private static final class Appended {
+        private final String taskId;
+        private final byte kind;
+        private final Map<String, String> state;
+
+        private Appended(String taskId, byte kind, Map<String, String> state) {
+            this.taskId = taskId;
+            this.kind = kind;
+            this.state = state;
+        }
+    }
+
+    // The versions of one task in time order, as parallel arrays.
+    private static final class Timeline {
+        private long[] times = new long[2];
+        private long[] offsets = new long[2];
+        private int[] lengths = new int[2];
+        private byte[] kinds = new byte[2];
+        private int size;
+
+        void add(long time, long offset, int length, byte kind) {
+            if (size == times.length) {
+                int capacity = size * 2;
+                times = Arrays.copyOf(times, capacity);
+                offsets = Arrays.copyOf(offsets, capacity);
+                lengths = Arrays.copyOf(lengths, capacity);
+                kinds = Arrays.copyOf(kinds, capacity);
+            }
+            times[size] = time;
+            offsets[size] = offset;
+            lengths[size] = length;
+            kinds[size] = kind;
+            size++;
+        }
+
+        // Versions written since the last checkpoint.
+        int sinceCheckpoint() {
+            int count = 0;
+            for (int i = size - 1; i >= 0 && kinds[i] != CHECKPOINT; i--) {
+                count++;
+            }
+            return count;
+        }
+
+        // The last version at or before the given time, or -1.
+        int lastAtOrBefore(long time) {
+            int low = 0;
+            int high = size - 1;
+            int result = -1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (times[mid] <= time) {
+                    result = mid;
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * One version of a task: its full state after the change and the fields the change set.
+     */
+    public static class Version {
+        private final String taskId;
+        private final int number;
+        private final LocalDateTime timestamp;
+        private final boolean removed;
+        private final Map<String, String> state;
+        private final Map<String, String> changes;
+
+        Version(String taskId, int number, LocalDateTime timestamp, boolean removed,
+                Map<String, String> state, Map<String, String> changes) {
+            this.taskId = taskId;
+            this.number = number;
+            this.timestamp = timestamp;
+            this.removed = removed;
+            this.state = state != null ? Collections.unmodifiableMap(state) : Map.of();
+            this.changes = Collections.unmodifiableMap(changes);
+        }
+
+        public String getTaskId() {
+            return taskId;
+        }
+
+        public int getNumber() {
+            return number;
+        }
+
+        public LocalDateTime getTimestamp() {
+            return timestamp;
+        }
+
+        public boolean isRemoved() {
+            return removed;
+        }
+
+        /**
+         * The task's fields after this version (empty for a removal).
+         */
+        public Map<String, String> getState() {
+            return state;
+        }
+
+        /**
+         * The fields this version changed, with their new values.
+         */
+        public Map<String, String> getChanges() {
+            return changes;
+        }
+
+        public String get(String field) {
+            return state.get(field);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.medialab.tasksystem.service;
+
+import com.medialab.tasksystem.model.Task;
+import com.medialab.tasksystem.util.OrderStatisticTree;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Serves tasks in insertion order or in the order of a TaskSortKey, one window at a time.
+ * <p>
+ * One order-statistic tree per sort key is maintained incrementally: adding, removing
+ * or re-indexing a task costs O(log n) per key, and a page at any offset costs
+ * O(log n + page size), so switching the sort column never re-sorts the whole set.
+ * Tree entries hold a snapshot of each task's sort values, which lets a task that was
+ * edited in place be removed using the values it was indexed with.
+ * </p>
+ * The index is synchronized so pages can be fetched from a background thread while the
+ * FX thread modifies the ObservableList.
+ */
+class TaskOrderIndex {
+    private static final TaskSortKey[] SORT_KEYS = TaskSortKey.values();
+
+    private final Map<Task, Entry> entries = new IdentityHashMap<>();
+    private final OrderStatisticTree<Entry> insertionOrder =
+            new OrderStatisticTree<>(Comparator.comparingLong(entry -> entry.sequence));
+    private final Map<TaskSortKey, OrderStatisticTree<Entry>> sortedOrders = new EnumMap<>(TaskSortKey.class);
+    private long nextSequence;
+
+    TaskOrderIndex() {
+        for (TaskSortKey key : SORT_KEYS) {
+            sortedOrders.put(key, new OrderStatisticTree<>((first, second) -> {
+                int cmp = key.compareValues(first.values[key.ordinal()], second.values[key.ordinal()]);
+                return cmp != 0 ? cmp : Long.compare(first.sequence, second.sequence);
+            }));
+        }
+    }
+
+    synchronized void add(Task task) {
+        if (!entries.containsKey(task)) {
+            insert(new Entry(task, nextSequence++));
+        }
+    }
+
+    synchronized void remove(Task task) {
+        Entry entry = entries.remove(task);
+        if (entry != null) {
+            detach(entry);
+        }
+    }
+
+    // Replaces a task while keeping its position in insertion order.
+    synchronized void replace(Task oldTask, Task newTask) {
+        Entry old = entries.remove(oldTask);
+        if (old != null) {
+            detach(old);
+        }
+        insert(new Entry(newTask, old != null ? old.sequence : nextSequence++));
+    }
+
+    // Re-reads the sort values of a task that was changed in place.
+    synchronized void update(Task task) {
+        replace(task, task);
+    }
+
+    // The value a task was last indexed with for the given key, or null if it is not indexed.
+    synchronized Object getIndexedValue(Task task, TaskSortKey key) {
+        Entry entry = entries.get(task);
+        return entry != null ? entry.values[key.ordinal()] : null;
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    // The position of a task in the given order, or -1 if it is not indexed.
+    synchronized int indexOf(Task task, TaskSortKey key, boolean ascending) {
+        Entry entry = entries.get(task);
+        if (entry == null) {
+            return -1;
+        }
+        OrderStatisticTree<Entry> tree = key != null ? sortedOrders.get(key) : insertionOrder;
+        int rank = tree.rank(entry);
+        return ascending || key == null ? rank : tree.size() - 1 - rank;
+    }
+
+    synchronized List<Task> page(TaskSortKey key, boolean ascending, int offset, int limit) {
+        OrderStatisticTree<Entry> tree = key != null ? sortedOrders.get(key) : insertionOrder;
+        int size = tree.size();
+        int from = Math.max(0, Math.min(offset, size));
+        int to = Math.min(size, from + Math.max(0, limit));
+
+        List<Entry> window = ascending || key == null
+                ? tree.range(from, to)
+                : tree.range(size - to, size - from);
+        List<Task> page = new ArrayList<>(window.size());
+        for (Entry entry : window) {
+            page.add(entry.task);
+        }
+        if (!ascending && key != null) {
+            Collections.reverse(page);
+        }
+        return page;
+    }
+
+    private void insert(Entry entry) {
+        entries.put(entry.task, entry);
+        insertionOrder.add(entry);
+        for (OrderStatisticTree<Entry> tree : sortedOrders.values()) {
+            tree.add(entry);
+        }
+    }
+
+    private void detach(Entry entry) {
+        insertionOrder.remove(entry);
+        for (OrderStatisticTree<Entry> tree : sortedOrders.values()) {
+            tree.remove(entry);
+        }
+    }
+
+    private static final class Entry {
+        private final Task task;
+        private final long sequence;
+        private final Object[] values = new Object[SORT_KEYS.length];
+
+        private Entry(Task task, long sequence) {
+            this.task = task;
+            this.sequence = sequence;
+            for (TaskSortKey key : SORT_KEYS) {
+                values[key.ordinal()] = key.extractValue(task);
+            }
+        }
+    }
+}
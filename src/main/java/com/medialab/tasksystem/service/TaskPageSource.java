@@ -0,0 +1,59 @@
+package com.medialab.tasksystem.service;
+
+import com.medialab.tasksystem.model.Task;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A positional, read-only view of tasks that can be fetched one window at a time.
+ * Implementations must be safe to call from a background thread.
+ */
+public interface TaskPageSource {
+
+    int size();
+
+    /**
+     * Returns up to {@code limit} tasks starting at position {@code offset}.
+     */
+    List<Task> fetch(int offset, int limit);
+
+    /**
+     * Returns the position of the task with the given id, or -1 if the source does not
+     * hold it. Called on the FX thread, e.g. to keep the selection across a refresh.
+     */
+    default int indexOf(String taskId) {
+        return -1;
+    }
+
+    /**
+     * Creates a source over a fixed snapshot of tasks.
+     */
+    static TaskPageSource of(List<Task> snapshot) {
+        List<Task> tasks = Collections.unmodifiableList(new ArrayList<>(snapshot));
+        return new TaskPageSource() {
+            @Override
+            public int size() {
+                return tasks.size();
+            }
+
+            @Override
+            public List<Task> fetch(int offset, int limit) {
+                int from = Math.min(offset, tasks.size());
+                int to = Math.min(from + limit, tasks.size());
+                return tasks.subList(from, to);
+            }
+
+            @Override
+            public int indexOf(String taskId) {
+                for (int i = 0; i < tasks.size(); i++) {
+                    if (tasks.get(i).getId().equals(taskId)) {
+                        return i;
+                    }
+                }
+                return -1;
+            }
+        };
+    }
+}
@@ -0,0 +1,235 @@
+package com.medialab.tasksystem.service;
+
+import com.medialab.tasksystem.model.Task;
+import com.medialab.tasksystem.model.TaskStatus;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Maintains a "what to work on next" ranking of all open (not completed) tasks.
+ * <p>
+ * Every open task sits in an indexed binary max-heap keyed by its urgency score, so
+ * adding, re-scoring or removing a task costs O(log n). The best {@code capacity}
+ * tasks are kept as a ready-made snapshot that is rebuilt, in O(k log k) from the
+ * top of the heap, only when a change can affect it; reading the ranking is O(1).
+ * </p>
+ * The score combines the priority weight, the deadline and the delayed status. Deadline
+ * proximity is measured against a fixed epoch rather than today, so the passage of time
+ * shifts every score equally and never reorders the heap.
+ */
+class TaskRanking {
+    // One point of priority weight is worth this many days of deadline proximity.
+    static final long DAYS_PER_WEIGHT_POINT = 7;
+    // Extra urgency for tasks that are already past their deadline.
+    static final long DELAYED_BONUS_DAYS = 30;
+    // Tasks without a deadline rank as if due in about 100 years.
+    private static final long NO_DEADLINE_EPOCH_DAY = LocalDate.of(2125, 1, 1).toEpochDay();
+
+    private final int capacity;
+    private Task[] heap = new Task[16];
+    private long[] scores = new long[16];
+    private int size;
+    private final Map<Task, Integer> positions = new IdentityHashMap<>();
+
+    private List<Task> top = Collections.emptyList();
+    private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+
+    TaskRanking(int capacity) {
+        this.capacity = capacity;
+    }
+
+    static long score(Task task) {
+        int weight = task.getPriority() != null ? task.getPriority().getWeight() : 0;
+        long deadlineDay = task.getDeadline() != null ? task.getDeadline().toEpochDay() : NO_DEADLINE_EPOCH_DAY;
+        long delayedBonus = task.getStatus() == TaskStatus.DELAYED ? DELAYED_BONUS_DAYS : 0;
+        return weight * DAYS_PER_WEIGHT_POINT - deadlineDay + delayedBonus;
+    }
+
+    /**
+     * Adds, re-scores or removes a task depending on whether it is still open.
+     */
+    synchronized void update(Task task) {
+        Integer position = positions.get(task);
+        boolean open = task.getStatus() != TaskStatus.COMPLETED;
+        if (position == null) {
+            if (open) {
+                insert(task, score(task));
+                afterChange(task, true);
+            }
+        } else if (!open) {
+            removeAt(position);
+            afterChange(task, false);
+        } else {
+            long oldScore = scores[position];
+            long newScore = score(task);
+            if (newScore != oldScore) {
+                scores[position] = newScore;
+                if (newScore > oldScore) {
+                    siftUp(position);
+                } else {
+                    siftDown(position);
+                }
+                afterChange(task, true);
+            }
+        }
+    }
+
+    synchronized void remove(Task task) {
+        Integer position = positions.get(task);
+        if (position != null) {
+            removeAt(position);
+            afterChange(task, false);
+        }
+    }
+
+    /**
+     * Replaces the whole ranking, e.g. after loading, in O(n) plus one snapshot rebuild.
+     */
+    synchronized void rebuild(List<Task> tasks) {
+        positions.clear();
+        size = 0;
+        for (Task task : tasks) {
+            if (task.getStatus() != TaskStatus.COMPLETED) {
+                ensureCapacity(size + 1);
+                heap[size] = task;
+                scores[size] = score(task);
+                positions.put(task, size);
+                size++;
+            }
+        }
+        for (int i = size / 2 - 1; i >= 0; i--) {
+            siftDown(i);
+        }
+        rebuildTop();
+    }
+
+    /**
+     * Returns the most urgent open tasks, best first; at most the configured capacity.
+     */
+    synchronized List<Task> top(int limit) {
+        return limit >= top.size() ? top : top.subList(0, Math.max(0, limit));
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    void addListener(Runnable listener) {
+        listeners.add(listener);
+    }
+
+    void removeListener(Runnable listener) {
+        listeners.remove(listener);
+    }
+
+    // Only rebuild the snapshot if the task is, was, or now could be part of it.
+    private void afterChange(Task task, boolean stillRanked) {
+        boolean wasInTop = top.contains(task);
+        boolean mayEnterTop = stillRanked && (top.size() < capacity
+                || scores[positions.get(task)] >= score(top.get(top.size() - 1)));
+        if (wasInTop || mayEnterTop) {
+            rebuildTop();
+        }
+    }
+
+    // Best-first walk from the root of the heap: O(k log k).
+    private void rebuildTop() {
+        List<Task> result = new ArrayList<>(Math.min(capacity, size));
+        PriorityQueue<Integer> frontier = new PriorityQueue<>((a, b) -> Long.compare(scores[b], scores[a]));
+        if (size > 0) {
+            frontier.add(0);
+        }
+        while (!frontier.isEmpty() && result.size() < capacity) {
+            int index = frontier.poll();
+            result.add(heap[index]);
+            int left = 2 * index + 1;
+            if (left < size) {
+                frontier.add(left);
+            }
+            if (left + 1 < size) {
+                frontier.add(left + 1);
+            }
+        }
+        top = Collections.unmodifiableList(result);
+        listeners.forEach(Runnable::run);
+    }
+
+    private void insert(Task task, long score) {
+        ensureCapacity(size + 1);
+        heap[size] = task;
+        scores[size] = score;
+        positions.put(task, size);
+        siftUp(size++);
+    }
+
+    private void removeAt(int position) {
+        positions.remove(heap[position]);
+        size--;
+        if (position != size) {
+            move(size, position);
+            siftDown(position);
+            siftUp(position);
+        }
+        heap[size] = null;
+    }
+
+    private void siftUp(int index) {
+        while (index > 0) {
+            int parent = (index - 1) / 2;
+            if (scores[parent] >= scores[index]) {
+                return;
+            }
+            swap(index, parent);
+            index = parent;
+        }
+    }
+
+    private void siftDown(int index) {
+        while (true) {
+            int largest = index;
+            int left = 2 * index + 1;
+            if (left < size && scores[left] > scores[largest]) {
+                largest = left;
+            }
+            if (left + 1 < size && scores[left + 1] > scores[largest]) {
+                largest = left + 1;
+            }
+            if (largest == index) {
+                return;
+            }
+            swap(index, largest);
+            index = largest;
+        }
+    }
+
+    private void swap(int a, int b) {
+        Task task = heap[a];
+        long score = scores[a];
+        move(b, a);
+        heap[b] = task;
+        scores[b] = score;
+        positions.put(task, b);
+    }
+
+    private void move(int from, int to) {
+        heap[to] = heap[from];
+        scores[to] = scores[from];
+        positions.put(heap[to], to);
+    }
+
+    private void ensureCapacity(int required) {
+        if (required > heap.length) {
+            int newLength = Math.max(required, heap.length * 2);
+            heap = Arrays.copyOf(heap, newLength);
+            scores = Arrays.copyOf(scores, newLength);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.medialab.tasksystem.service;
+
+import com.medialab.tasksystem.model.Task;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+
+import java.text.Normalizer;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BooleanSupplier;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps a normalized search key for every task so that searches can run on a
+ * background thread without touching the ObservableList.
+ * <p>
+ * Keys are refreshed from list change events; a task edited through
+ * TaskService.updateTask is replaced in the list and therefore re-indexed.
+ * </p>
+ */
+public class TaskSearchIndex {
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    public TaskSearchIndex(ObservableList<Task> tasks) {
+        tasks.forEach(this::index);
+        tasks.addListener((ListChangeListener<Task>) change -> {
+            while (change.next()) {
+                if (change.wasRemoved()) {
+                    change.getRemoved().forEach(task -> entries.remove(task.getId()));
+                }
+                if (change.wasAdded()) {
+                    change.getAddedSubList().forEach(this::index);
+                }
+            }
+        });
+    }
+
+    // Re-reads the keys of a task that was changed in place.
+    void refresh(Task task) {
+        index(task);
+    }
+
+    private void index(Task task) {
+        entries.put(task.getId(), new Entry(task));
+    }
+
+    /**
+     * Finds the tasks whose title contains the query and whose category and priority
+     * names match. Null or empty criteria match everything.
+     *
+     * @param query        The text to look for in task titles (accent and case insensitive)
+     * @param categoryName The category name to match, or null
+     * @param priorityName The priority level name to match, or null
+     * @param cancelled    Checked periodically; when it returns true the search stops and returns null
+     * @return The matching tasks, or null if the search was cancelled
+     */
+    public Set<Task> search(String query, String categoryName, String priorityName, BooleanSupplier cancelled) {
+        String key = normalize(query);
+        Set<Task> result = Collections.newSetFromMap(new IdentityHashMap<>());
+        int visited = 0;
+        for (Entry entry : entries.values()) {
+            if ((++visited & 0x3FF) == 0 && cancelled.getAsBoolean()) {
+                return null;
+            }
+            if (entry.matches(key, categoryName, priorityName)) {
+                result.add(entry.task);
+            }
+        }
+        return result;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    // Lower-case and strip diacritics so "Εργασία" matches "εργασια".
+    public static String normalize(String text) {
+        if (text == null || text.isEmpty()) {
+            return "";
+        }
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        return COMBINING_MARKS.matcher(decomposed).replaceAll("").toLowerCase(Locale.ROOT);
+    }
+
+    private static final class Entry {
+        private final Task task;
+        private final String titleKey;
+        private final String categoryName;
+        private final String priorityName;
+
+        private Entry(Task task) {
+            this.task = task;
+            this.titleKey = normalize(task.getTitle());
+            this.categoryName = task.getCategory() != null ? task.getCategory().getName() : null;
+            this.priorityName = task.getPriority() != null ? task.getPriority().getName() : null;
+        }
+
+        private boolean matches(String key, String category, String priority) {
+            return (key.isEmpty() || titleKey.contains(key))
+                    && (category == null || category.equals(categoryName))
+                    && (priority == null || priority.equals(priorityName));
+        }
+    }
+}
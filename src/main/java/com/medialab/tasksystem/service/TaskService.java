@@ -1,11 +1,36 @@
 package com.medialab.tasksystem.service;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.medialab.tasksystem.audit.AuditAction;
+import com.medialab.tasksystem.audit.AuditLog;
+import com.medialab.tasksystem.exceptions.DataStorageException;
+import com.medialab.tasksystem.exceptions.VersionConflictException;
 import com.medialab.tasksystem.model.*;
+import com.medialab.tasksystem.storage.MappedTaskStore;
 import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
 import javafx.collections.ObservableList;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.time.LocalDate;
+import java.time.Period;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
 /**
@@ -19,9 +44,24 @@ import java.util.stream.Collectors;
  * </p>
  */
 public class TaskService {
+    private static final Logger LOGGER = Logger.getLogger(TaskService.class.getName());
+    /** The number of most urgent open tasks kept ready by {@link #getNextTasks(int)}. */
+    public static final int NEXT_TASKS_CAPACITY = 20;
+    // Rough heap cost of a task held only by an undo step, excluding its text.
+    private static final long ESTIMATED_TASK_BYTES = 512;
+    // The fields a task saved by another process may differ in.
+    private static final Set<String> STORED_FIELDS =
+            Set.of("title", "description", "category", "priority", "deadline", "status", "completedAt");
+
     private final ObservableList<Task> tasks = FXCollections.observableArrayList();
     private final DataPersistenceService persistenceService;
     private final ReminderService reminderService;
+    private final UndoManager undoManager;
+    private final AuditLog auditLog;
+    private final TaskSearchIndex searchIndex;
+    private final TaskOrderIndex orderIndex = new TaskOrderIndex();
+    private final Map<String, Task> tasksById = new HashMap<>();
+    private final TaskRanking ranking = new TaskRanking(NEXT_TASKS_CAPACITY);
 
     /**
      * Constructs a new TaskService with the given persistence and reminder services.
@@ -29,27 +69,63 @@ public class TaskService {
      *
      * @param persistenceService The service responsible for loading and saving tasks
      * @param reminderService The service responsible for managing task reminders
+     * @param undoManager The undo history shared by the services of the workspace
      */
-    public TaskService(DataPersistenceService persistenceService, ReminderService reminderService) {
+    public TaskService(DataPersistenceService persistenceService, ReminderService reminderService,
+                       UndoManager undoManager) {
         this.persistenceService = persistenceService;
         this.reminderService = reminderService;
+        this.undoManager = undoManager;
+        this.auditLog = persistenceService.getAuditLog();
         loadTasks();
+        this.searchIndex = new TaskSearchIndex(tasks);
+        tasks.forEach(orderIndex::add);
+        tasks.forEach(task -> tasksById.put(task.getId(), task));
+        ranking.rebuild(tasks);
+        tasks.addListener(this::updateIndexes);
+        // After the indexes hold every task, so the tasks it delays keep their places.
+        checkDeadlines();
     }
 
     /**
-     * Loads tasks from the persistence service into the observable list.
-     * Checks task deadlines after loading to update status for any overdue tasks.
+     * Mirrors list changes into the id lookup and the order index used for paged access.
      */
-    private void loadTasks() {
-        tasks.addAll(persistenceService.loadTasks());
-        checkDeadlines();
+    private void updateIndexes(ListChangeListener.Change<? extends Task> change) {
+        while (change.next()) {
+            change.getRemoved().forEach(task -> tasksById.remove(task.getId()));
+            change.getAddedSubList().forEach(task -> tasksById.put(task.getId(), task));
+            change.getRemoved().forEach(ranking::remove);
+            change.getAddedSubList().forEach(ranking::update);
+            if (change.wasReplaced()) {
+                List<? extends Task> removed = change.getRemoved();
+                List<? extends Task> added = change.getAddedSubList();
+                for (int i = 0; i < Math.min(removed.size(), added.size()); i++) {
+                    orderIndex.replace(removed.get(i), added.get(i));
+                }
+            } else {
+                change.getRemoved().forEach(orderIndex::remove);
+                change.getAddedSubList().forEach(orderIndex::add);
+            }
+        }
     }
 
     /**
-     * Saves the current list of tasks to the persistence service.
+     * Loads tasks from the persistence service into the observable list.
      */
-    private void saveTasks() {
-        persistenceService.saveTasks(new ArrayList<>(tasks));
+    private void loadTasks() {
+        List<Task> loaded = persistenceService.loadTasks();
+        List<Task> migrated = new ArrayList<>();
+        for (Task task : loaded) {
+            // Tasks completed before completion dates were recorded start aging from today.
+            if (task.getStatus() == TaskStatus.COMPLETED && task.getCompletedAt() == null) {
+                task.setCompletedAt(LocalDate.now());
+                migrated.add(task);
+            }
+        }
+        // Loading sets every field; only edits made after this point are changes.
+        loaded.forEach(Task::resetChanges);
+        tasks.addAll(loaded);
+        persistenceService.saveTaskChanges(migrated, List.of());
     }
 
     /**
@@ -59,9 +135,7 @@ public class TaskService {
      * @return The task with the specified ID, or null if no such task exists
      */
     public Task getTaskById(String id) {
-        return tasks.stream()
-                .filter(task -> task.getId().equals(id))
-                .findFirst().orElse(null);
+        return tasksById.get(id);
     }
 
     /**
@@ -74,6 +148,66 @@ public class TaskService {
         return tasks;
     }
 
+    /**
+     * Returns the search index kept in sync with the task list.
+     * The index can be queried from a background thread.
+     *
+     * @return The TaskSearchIndex for this service's tasks
+     */
+    public TaskSearchIndex getSearchIndex() {
+        return searchIndex;
+    }
+
+    /**
+     * Returns a paged view of all tasks in the given order, served from the store's index
+     * rather than by sorting the observable list. The view always reflects the current
+     * tasks and may be read from a background thread.
+     *
+     * @param sortKey The column to order by, or null for insertion order
+     * @param ascending Whether to order ascending or descending
+     * @return A TaskPageSource over all tasks
+     */
+    public TaskPageSource getPageSource(TaskSortKey sortKey, boolean ascending) {
+        return new TaskPageSource() {
+            @Override
+            public int size() {
+                return orderIndex.size();
+            }
+
+            @Override
+            public List<Task> fetch(int offset, int limit) {
+                return orderIndex.page(sortKey, ascending, offset, limit);
+            }
+
+            @Override
+            public int indexOf(String taskId) {
+                Task task = tasksById.get(taskId);
+                return task != null ? orderIndex.indexOf(task, sortKey, ascending) : -1;
+            }
+        };
+    }
+
+    /**
+     * Returns the most urgent open tasks, best first, ranked by priority weight,
+     * deadline proximity and delayed status. The ranking is maintained incrementally,
+     * so this call does not scan the tasks.
+     *
+     * @param limit The maximum number of tasks to return (at most NEXT_TASKS_CAPACITY)
+     * @return An unmodifiable list of the most urgent open tasks
+     */
+    public List<Task> getNextTasks(int limit) {
+        return ranking.top(limit);
+    }
+
+    /**
+     * Registers a callback run whenever the list returned by getNextTasks may have changed.
+     *
+     * @param listener The callback to run
+     */
+    public void addNextTasksListener(Runnable listener) {
+        ranking.addListener(listener);
+    }
+
     /**
      * Returns a new list containing all tasks.
      * Unlike getObservableTasks(), this returns a disconnected copy of the tasks list.
@@ -84,6 +218,21 @@ public class TaskService {
         return new ArrayList<>(tasks);
     }
 
+    /**
+     * Copies every task into a mapped task store, e.g. to build an archival dataset
+     * that can later be browsed without loading it into the heap.
+     *
+     * @param store The store to write to; existing tasks with the same id are overwritten
+     * @return The number of tasks written
+     */
+    public int exportTo(MappedTaskStore store) {
+        for (Task task : tasks) {
+            store.put(task);
+        }
+        store.flush();
+        return tasks.size();
+    }
+
     /**
      * Returns a list of all tasks that have not been completed.
      *
@@ -103,6 +252,7 @@ public class TaskService {
      * @param categoryService The service containing the canonical list of categories
      */
     public void reconcileCategories(CategoryService categoryService) {
+        List<Task> changed = new ArrayList<>();
         for (Task task : tasks) {
             Category current = task.getCategory();
             if (current != null) {
@@ -112,9 +262,19 @@ public class TaskService {
                         .findFirst()
                         .orElse(current);
                 task.setCategory(reconciled);
+                // The category sorts by name; most tasks already have the canonical one.
+                if (!Objects.equals(current.getName(), reconciled.getName())) {
+                    reindex(task);
+                }
+                // Only persist tasks whose stored category actually differs.
+                if (!Objects.equals(current.getId(), reconciled.getId())
+                        || !Objects.equals(current.getName(), reconciled.getName())) {
+                    changed.add(task);
+                }
             }
         }
-        saveTasks();
+        tasks.forEach(Task::takeChanges);
+        persistenceService.saveTaskChanges(changed, List.of());
     }
 
     /**
@@ -125,6 +285,7 @@ public class TaskService {
      * @param priorityService The service containing the canonical list of priority levels
      */
     public void reconcilePriorities(PriorityService priorityService) {
+        List<Task> changed = new ArrayList<>();
         for (Task task : tasks) {
             PriorityLevel current = task.getPriority();
             if (current != null) {
@@ -134,30 +295,69 @@ public class TaskService {
                         .findFirst()
                         .orElse(current);
                 task.setPriority(reconciled);
+                // Only the weight is indexed.
+                if (current.getWeight() != reconciled.getWeight()) {
+                    reindex(task);
+                }
+                if (!Objects.equals(current.getId(), reconciled.getId())
+                        || !Objects.equals(current.getName(), reconciled.getName())
+                        || current.getWeight() != reconciled.getWeight()
+                        || current.isDefault() != reconciled.isDefault()) {
+                    changed.add(task);
+                }
             }
         }
-        // Optionally, save tasks if persistence is required.
-        saveTasks();
+        tasks.forEach(Task::takeChanges);
+        persistenceService.saveTaskChanges(changed, List.of());
+    }
+
+    /**
+     * Updates the sort orders and the urgency ranking of a task changed in place.
+     */
+    private void reindex(Task task) {
+        orderIndex.update(task);
+        ranking.update(task);
+    }
+
+    /**
+     * Re-indexes and saves tasks whose sort or search values changed without the task
+     * itself being updated, e.g. after their category or priority level was renamed.
+     *
+     * @param changedTasks The tasks to re-index
+     */
+    void refreshIndexes(List<Task> changedTasks) {
+        reindexAll(changedTasks);
+        saveTasks(changedTasks);
+    }
+
+    // Re-indexes tasks without saving them, e.g. for a rename another process saved already.
+    void reindexAll(List<Task> changedTasks) {
+        for (Task task : changedTasks) {
+            reindex(task);
+            searchIndex.refresh(task);
+        }
     }
 
     /**
      * Checks all tasks for overdue deadlines and updates their status to DELAYED if necessary.
      * A task is considered overdue if its deadline is before the current date,
      * it is not already completed, and it is not already marked as delayed.
+     *
+     * @return true if any task was marked as delayed
      */
-    public void checkDeadlines() {
-        boolean changes = false;
+    public boolean checkDeadlines() {
+        List<Task> changed = new ArrayList<>();
         for (Task task : tasks) {
             if (!task.getStatus().equals(TaskStatus.COMPLETED) &&
                     task.getDeadline().isBefore(LocalDate.now()) &&
                     !task.getStatus().equals(TaskStatus.DELAYED)) {
                 task.setStatus(TaskStatus.DELAYED);
-                changes = true;
+                reindex(task);
+                changed.add(task);
             }
         }
-        if (changes) {
-            saveTasks();
-        }
+        saveTasks(changed);
+        return !changed.isEmpty();
     }
 
     /**
@@ -172,34 +372,157 @@ public class TaskService {
      */
     public Task createTask(String title, String description, Category category,
                            PriorityLevel priority, LocalDate deadline) {
-        Task task = new Task(title, description, category, priority, deadline);
-        tasks.add(task); // Add directly to the ObservableList.
-        saveTasks();
-        return task;
+        return undoManager.call("Create Task", () -> {
+            Task task = new Task(title, description, category, priority, deadline);
+            tasks.add(task); // Add directly to the ObservableList.
+            undoManager.record(new TasksAdded(List.of(task)));
+            persistenceService.saveTask(task);
+            auditLog.record(AuditAction.TASK_CREATED, task.getId());
+            return task;
+        });
+    }
+
+    /**
+     * Adds new tasks as one batch: the list and the stored tasks are each updated once,
+     * and the whole batch is a single undo step. Completed tasks without a completion
+     * date are completed today.
+     *
+     * @param newTasks Tasks not yet in the workspace, e.g. read from an import
+     */
+    public void createTasks(List<Task> newTasks) {
+        if (newTasks.isEmpty()) {
+            return;
+        }
+        undoManager.run(newTasks.size() == 1 ? "Create Task" : "Create Tasks", () -> {
+            List<Task> added = new ArrayList<>(newTasks);
+            for (Task task : added) {
+                if (task.getStatus() != TaskStatus.COMPLETED) {
+                    task.setCompletedAt(null);
+                } else if (task.getCompletedAt() == null) {
+                    task.setCompletedAt(LocalDate.now());
+                }
+                task.takeChanges();
+            }
+            tasks.addAll(added);
+            undoManager.record(new TasksAdded(added));
+            persistenceService.saveTaskChanges(added, List.of());
+            added.forEach(task -> auditLog.record(AuditAction.TASK_CREATED, task.getId()));
+        });
     }
 
     /**
-     * Updates an existing task with new values or adds the task if it doesn't exist.
-     * If the task status is set to COMPLETED, any associated reminders are deleted.
+     * Updates an existing task with new values, either edited in place or as a new instance
+     * with the same ID. If the task status is set to COMPLETED, any associated reminders are deleted.
      *
      * @param updatedTask The task with updated values
+     * @throws IllegalArgumentException if there is no task with the task's ID
      */
     public void updateTask(Task updatedTask) {
-        boolean found = false;
-        for (int i = 0; i < tasks.size(); i++) {
-            if (tasks.get(i).getId().equals(updatedTask.getId())) {
-                tasks.set(i, updatedTask);
-                found = true;
-                break;
-            }
+        if (!tasksById.containsKey(updatedTask.getId())) {
+            throw new IllegalArgumentException("Task not found: " + updatedTask.getId());
         }
-        if (!found) {
-            tasks.add(updatedTask);
+        undoManager.run("Edit Task", () -> {
+            Task previous = null;
+            Object previousDeadline = null;
+            for (int i = 0; i < tasks.size(); i++) {
+                if (tasks.get(i).getId().equals(updatedTask.getId())) {
+                    previous = tasks.get(i);
+                    // The deadline the task was indexed with, even if it was edited in place.
+                    previousDeadline = orderIndex.getIndexedValue(previous, TaskSortKey.DEADLINE);
+                    tasks.set(i, updatedTask);
+                    break;
+                }
+            }
+            if (updatedTask.getStatus() != TaskStatus.COMPLETED) {
+                updatedTask.setCompletedAt(null);
+            } else if (updatedTask.getCompletedAt() == null) {
+                updatedTask.setCompletedAt(LocalDate.now());
+            }
+            boolean deadlineChanged = !Objects.equals(previousDeadline, updatedTask.getDeadline());
+            if (previous == updatedTask) {
+                recordChanges(List.of(updatedTask));
+            } else {
+                // A different instance replaced the task: undo swaps the instances back.
+                updatedTask.takeChanges();
+                // Versions never go back, whatever version the new instance was made from.
+                updatedTask.setVersion(Math.max(previous.getVersion(), updatedTask.getVersion()));
+                recordRemoved(List.of(previous));
+                undoManager.record(new TasksAdded(List.of(updatedTask)));
+                auditLog.record(AuditAction.TASK_UPDATED, updatedTask.getId());
+            }
+            // The task row and its reminder rows are written together.
+            persistenceService.inTransaction(() -> {
+                if (updatedTask.getStatus() == TaskStatus.COMPLETED) {
+                    reminderService.deleteRemindersForTask(updatedTask.getId());
+                } else if (deadlineChanged) {
+                    Map<String, LocalDate> newDeadline = new HashMap<>();
+                    newDeadline.put(updatedTask.getId(), updatedTask.getDeadline());
+                    reminderService.recomputeRelativeReminders(newDeadline);
+                }
+                persistenceService.saveTask(updatedTask);
+            });
+        });
+    }
+
+    /**
+     * Updates the given fields of a task if they were not changed since the version the
+     * caller last saw; fields changed since by others are kept, so non-conflicting
+     * edits merge.
+     *
+     * @param taskId          The ID of the task to update
+     * @param expectedVersion The version of the task the changes were made against
+     * @param changes         New values keyed by field (title, description, category,
+     *                        priority, deadline, status)
+     * @return The updated task
+     * @throws IllegalArgumentException if there is no such task
+     * @throws VersionConflictException if a changed field was also changed since the expected version
+     */
+    public Task updateTask(String taskId, long expectedVersion, Map<String, Object> changes) {
+        Task task = tasksById.get(taskId);
+        if (task == null) {
+            throw new IllegalArgumentException("Task not found: " + taskId);
         }
-        if (updatedTask.getStatus() == TaskStatus.COMPLETED) {
-            reminderService.deleteRemindersForTask(updatedTask.getId());
+        Map<String, Object> current = fieldValues(task, changes.keySet());
+        VersionCheck.check("Task", taskId, expectedVersion, task.getVersion(), task.changedSince(expectedVersion),
+                changes, current);
+        if (!current.equals(changes)) {
+            applyFields(task, changes);
+            updateTask(task);
         }
-        saveTasks();
+        return task;
+    }
+
+    /**
+     * Moves the deadlines of the given tasks by the same amount and recomputes their
+     * relative reminders. Tasks and reminders are each persisted once for the whole batch.
+     *
+     * @param taskIds The IDs of the tasks to shift
+     * @param shift The amount to move each deadline by (may be negative)
+     * @return The number of tasks whose deadline was moved
+     */
+    public int shiftDeadlines(Collection<String> taskIds, Period shift) {
+        return undoManager.call("Shift Deadlines", () -> {
+            Set<String> ids = new HashSet<>(taskIds);
+            Map<String, LocalDate> newDeadlines = new HashMap<>();
+            List<Task> shifted = new ArrayList<>();
+            ListIterator<Task> iterator = tasks.listIterator();
+            while (iterator.hasNext() && newDeadlines.size() < ids.size()) {
+                Task task = iterator.next();
+                if (ids.contains(task.getId()) && task.getDeadline() != null) {
+                    task.setDeadline(task.getDeadline().plus(shift));
+                    iterator.set(task); // Re-index and refresh bound views.
+                    newDeadlines.put(task.getId(), task.getDeadline());
+                    shifted.add(task);
+                }
+            }
+            if (!newDeadlines.isEmpty()) {
+                persistenceService.inTransaction(() -> {
+                    reminderService.recomputeRelativeReminders(newDeadlines);
+                    saveTasks(shifted);
+                });
+            }
+            return newDeadlines.size();
+        });
     }
 
     /**
@@ -208,9 +531,239 @@ public class TaskService {
      * @param taskId The ID of the task to delete
      */
     public void deleteTask(String taskId) {
-        tasks.removeIf(task -> task.getId().equals(taskId));
-        reminderService.deleteRemindersForTask(taskId);
-        saveTasks();
+        deleteTasks(List.of(taskId));
+    }
+
+    /**
+     * Deletes the tasks with the given IDs and their reminders as one batch: the list,
+     * the reminders and the stored tasks are each updated once, and the whole batch is
+     * a single undo step.
+     *
+     * @param taskIds The IDs of the tasks to delete; unknown IDs are ignored
+     * @return The number of tasks deleted
+     */
+    public int deleteTasks(Collection<String> taskIds) {
+        return undoManager.call(taskIds.size() == 1 ? "Delete Task" : "Delete Tasks", () -> {
+            Set<Task> removed = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (String id : taskIds) {
+                Task task = tasksById.get(id);
+                if (task != null) {
+                    removed.add(task);
+                }
+            }
+            if (removed.isEmpty()) {
+                return 0;
+            }
+            List<Task> removedTasks = new ArrayList<>(removed);
+            List<String> removedIds = removedTasks.stream().map(Task::getId).collect(Collectors.toList());
+            tasks.removeAll(removed);
+            recordRemoved(removedTasks);
+            removedIds.forEach(id -> auditLog.record(AuditAction.TASK_DELETED, id));
+            persistenceService.inTransaction(() -> {
+                reminderService.deleteRemindersForTasks(removedIds);
+                persistenceService.saveTaskChanges(List.of(), removedIds);
+            });
+            return removedTasks.size();
+        });
+    }
+
+    /**
+     * Saves tasks changed in place, recording the fields each one had before so the
+     * change can be undone.
+     */
+    private void saveTasks(List<Task> changed) {
+        recordChanges(changed);
+        persistenceService.saveTaskChanges(changed, List.of());
+    }
+
+    // Takes the pending field changes of the tasks even when nothing is recorded, so they never leak into a later edit.
+    private void recordChanges(List<Task> changed) {
+        List<TaskDelta> deltas = new ArrayList<>();
+        for (Task task : changed) {
+            Map<String, Object> before = task.takeChanges();
+            if (!before.isEmpty()) {
+                deltas.add(new TaskDelta(task.getId(), before, fieldValues(task, before.keySet())));
+                auditLog.record(AuditAction.TASK_UPDATED, task.getId(), AuditLog.fieldMask(before.keySet()));
+            }
+        }
+        if (!deltas.isEmpty()) {
+            undoManager.record(new TasksChanged(deltas));
+        }
+    }
+
+    private void recordRemoved(List<Task> removed) {
+        if (undoManager.isRecording()) {
+            // The description store may drop the text of deleted tasks.
+            removed.forEach(Task::loadDescriptionInline);
+            undoManager.record(new TasksRemoved(removed));
+        }
+    }
+
+    // Re-adds removed tasks, skipping any that are back already.
+    private void addBack(List<Task> removed) {
+        List<Task> added = new ArrayList<>(removed.size());
+        for (Task task : removed) {
+            if (!tasksById.containsKey(task.getId())) {
+                task.takeChanges();
+                added.add(task);
+            }
+        }
+        tasks.addAll(added);
+        persistenceService.saveTaskChanges(added, List.of());
+        added.forEach(task -> auditLog.record(AuditAction.TASK_CREATED, task.getId()));
+    }
+
+    private void removeById(List<String> taskIds) {
+        Set<Task> removed = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (String id : taskIds) {
+            Task task = tasksById.get(id);
+            if (task != null) {
+                removed.add(task);
+            }
+        }
+        tasks.removeAll(removed);
+        List<String> removedIds = removed.stream().map(Task::getId).collect(Collectors.toList());
+        persistenceService.saveTaskChanges(List.of(), removedIds);
+        removedIds.forEach(id -> auditLog.record(AuditAction.TASK_DELETED, id));
+    }
+
+    // Applies one side of recorded deltas to the live tasks, re-indexes them and saves them.
+    private void applyDeltas(List<TaskDelta> deltas, boolean undo) {
+        Set<Task> changed = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (TaskDelta delta : deltas) {
+            Task task = tasksById.get(delta.taskId);
+            if (task != null) {
+                Map<String, Object> values = undo ? delta.before : delta.after;
+                applyFields(task, values);
+                task.takeChanges();
+                auditLog.record(AuditAction.TASK_UPDATED, task.getId(), AuditLog.fieldMask(values.keySet()));
+                changed.add(task);
+            }
+        }
+        if (changed.isEmpty()) {
+            return;
+        }
+        refreshRows(changed);
+        persistenceService.saveTaskChanges(new ArrayList<>(changed), List.of());
+    }
+
+    // Re-sets tasks changed in place in the list, which re-indexes them and refreshes bound views.
+    private void refreshRows(Set<Task> changed) {
+        ListIterator<Task> iterator = tasks.listIterator();
+        int remaining = changed.size();
+        while (iterator.hasNext() && remaining > 0) {
+            Task task = iterator.next();
+            if (changed.contains(task)) {
+                iterator.set(task);
+                remaining--;
+            }
+        }
+    }
+
+    /**
+     * Brings the tasks up to date with changes made elsewhere, updating changed tasks in
+     * place; nothing is recorded for undo. Changes another process saved to a shared store
+     * are not saved again: their fields are stamped with the stored version so that
+     * version-checked updates see them as changed, and a stored task no newer than the one
+     * held here is skipped. Replicated changes ({@code save}) always apply and are saved.
+     * A task whose category is unknown here loses it; one whose priority level is unknown
+     * gets the default level.
+     */
+    void applyStoredChanges(SharedStorageBackend.EntityChanges<Task> changes, CategoryService categoryService,
+                            PriorityService priorityService, boolean save) {
+        List<Task> added = new ArrayList<>();
+        Set<Task> changed = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Task stored : changes.getUpserts()) {
+            // Tasks share the category and priority level instances of their services.
+            if (stored.getCategory() != null) {
+                stored.setCategory(categoryService.getCategoryById(stored.getCategory().getId()));
+            }
+            PriorityLevel priority = stored.getPriority() != null
+                    ? priorityService.getPriorityLevelById(stored.getPriority().getId()) : null;
+            stored.setPriority(priority != null ? priority : priorityService.getDefaultPriorityLevel());
+            Task task = tasksById.get(stored.getId());
+            if (task == null) {
+                stored.resetChanges();
+                added.add(stored);
+                auditLog.record(AuditAction.TASK_CREATED, stored.getId());
+                continue;
+            }
+            if (!save && stored.getVersion() <= task.getVersion()) {
+                continue;
+            }
+            Map<String, Object> values = fieldValues(stored, STORED_FIELDS);
+            Map<String, Object> current = fieldValues(task, STORED_FIELDS);
+            values.entrySet().removeIf(field -> Objects.equals(field.getValue(), current.get(field.getKey())));
+            if (save) {
+                applyFields(task, values);
+                task.takeChanges();
+            } else {
+                task.setVersion(stored.getVersion() - 1);
+                applyFields(task, values);
+                task.takeChanges();
+                task.setVersion(stored.getVersion());
+            }
+            if (!values.isEmpty()) {
+                auditLog.record(AuditAction.TASK_UPDATED, task.getId(), AuditLog.fieldMask(values.keySet()));
+                changed.add(task);
+            }
+        }
+        tasks.addAll(added);
+        refreshRows(changed);
+        Set<Task> removed = Collections.newSetFromMap(new IdentityHashMap<>());
+        changes.getDeletions().forEach((id, version) -> {
+            Task task = tasksById.get(id);
+            if (task != null && task.getVersion() <= version) {
+                removed.add(task);
+            }
+        });
+        if (!removed.isEmpty()) {
+            tasks.removeAll(removed);
+            removed.forEach(task -> auditLog.record(AuditAction.TASK_DELETED, task.getId()));
+        }
+        if (save) {
+            List<Task> saved = new ArrayList<>(added);
+            saved.addAll(changed);
+            persistenceService.saveTaskChanges(saved,
+                    removed.stream().map(Task::getId).collect(Collectors.toList()));
+        }
+    }
+
+    private static Map<String, Object> fieldValues(Task task, Set<String> fields) {
+        Map<String, Object> values = new HashMap<>(fields.size() * 2);
+        for (String field : fields) {
+            switch (field) {
+                case "title": values.put(field, task.getTitle()); break;
+                case "description": values.put(field, task.getDescription()); break;
+                case "category": values.put(field, task.getCategory()); break;
+                case "priority": values.put(field, task.getPriority()); break;
+                case "deadline": values.put(field, task.getDeadline()); break;
+                case "status": values.put(field, task.getStatus()); break;
+                case "completedAt": values.put(field, task.getCompletedAt()); break;
+                default: throw new IllegalArgumentException("Unknown task field " + field);
+            }
+        }
+        return values;
+    }
+
+    private static void applyFields(Task task, Map<String, Object> values) {
+        values.forEach((field, value) -> {
+            switch (field) {
+                case "title": task.setTitle((String) value); break;
+                case "description": task.setDescription((String) value); break;
+                case "category": task.setCategory((Category) value); break;
+                case "priority": task.setPriority((PriorityLevel) value); break;
+                case "deadline": task.setDeadline((LocalDate) value); break;
+                case "status": task.setStatus((TaskStatus) value); break;
+                case "completedAt": task.setCompletedAt((LocalDate) value); break;
+                default: throw new IllegalArgumentException("Unknown task field " + field);
+            }
+        });
+    }
+
+    // Rough heap cost of a value held by an undo step.
+    static long estimateBytes(Object value) {
+        return value instanceof String ? 40 + 2L * ((String) value).length() : 16;
     }
 
     /**
@@ -261,7 +814,169 @@ public class TaskService {
     public int getCompletedTasksCount() {
         return (int) tasks.stream()
                 .filter(task -> task.getStatus() == TaskStatus.COMPLETED)
-                .count();
+                .count() + getArchivedTasksCount();
+    }
+
+    /**
+     * Counts the tasks that were moved to the archive. Archived tasks are always completed.
+     *
+     * @return The number of archived tasks
+     */
+    public int getArchivedTasksCount() {
+        return persistenceService.getTaskArchive().size();
+    }
+
+    /**
+     * Moves tasks that were completed more than the given number of days ago out of the
+     * live list and into the compressed task archive, so they no longer cost anything
+     * on save, search or sort.
+     *
+     * @param completedDaysAgo Tasks completed before today minus this many days are archived
+     * @return The number of tasks archived
+     */
+    public int archiveCompletedTasks(int completedDaysAgo) {
+        LocalDate cutoff = LocalDate.now().minusDays(completedDaysAgo);
+        return persistenceService.getWorkspaceLock().callExclusive(() -> archiveTasksCompletedBefore(cutoff));
+    }
+
+    // Called holding the workspace lock, so no other process archives or changes tasks meanwhile.
+    private int archiveTasksCompletedBefore(LocalDate cutoff) {
+        boolean shared = persistenceService.isSharedStorage();
+        List<Task> toArchive = tasks.stream()
+                .filter(task -> task.getStatus() == TaskStatus.COMPLETED)
+                .filter(task -> task.getCompletedAt() != null && task.getCompletedAt().isBefore(cutoff))
+                // Skip tasks another process archived, deleted or reopened since this one last looked.
+                .filter(task -> !shared || isStoredCompleted(task.getId()))
+                .collect(Collectors.toList());
+        if (toArchive.isEmpty()) {
+            return 0;
+        }
+        moveToArchive(toArchive);
+        return toArchive.size();
+    }
+
+    /**
+     * Archives the tasks another replica archived. Live ones are moved to the archive as
+     * by {@link #archiveCompletedTasks}; ones this workspace never had are added to the live
+     * list like any replicated task first, unless they are archived here already.
+     */
+    void archiveReplicatedTasks(List<Task> replicated, CategoryService categoryService,
+                                PriorityService priorityService) {
+        List<Task> missing = replicated.stream()
+                .filter(task -> !tasksById.containsKey(task.getId()))
+                .collect(Collectors.toList());
+        if (!missing.isEmpty()) {
+            Set<String> ids = missing.stream().map(Task::getId).collect(Collectors.toSet());
+            Set<String> archived = persistenceService.getTaskArchive()
+                    .query(task -> ids.contains(task.getId()), Integer.MAX_VALUE).stream()
+                    .map(Task::getId)
+                    .collect(Collectors.toSet());
+            missing.removeIf(task -> archived.contains(task.getId()));
+            applyStoredChanges(new SharedStorageBackend.EntityChanges<>(missing, Map.of()),
+                    categoryService, priorityService, true);
+        }
+        List<Task> toArchive = replicated.stream()
+                .map(task -> tasksById.get(task.getId()))
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+        if (!toArchive.isEmpty()) {
+            moveToArchive(toArchive);
+        }
+    }
+
+    private void moveToArchive(List<Task> toArchive) {
+        // Archive first: a crash before the save leaves a task in both places, never in neither.
+        persistenceService.getTaskArchive().append(toArchive);
+        Set<Task> archived = Collections.newSetFromMap(new IdentityHashMap<>());
+        archived.addAll(toArchive);
+        tasks.removeAll(archived);
+        List<String> archivedIds = toArchive.stream().map(Task::getId).collect(Collectors.toList());
+        persistenceService.inTransaction(() -> {
+            archivedIds.forEach(reminderService::deleteRemindersForTask);
+            persistenceService.saveTaskChanges(List.of(), archivedIds);
+        });
+        archivedIds.forEach(id -> auditLog.record(AuditAction.TASK_ARCHIVED, id));
+    }
+
+    private boolean isStoredCompleted(String taskId) {
+        Task stored = persistenceService.getBackend().tasks().get(taskId);
+        return stored != null && stored.getStatus() == TaskStatus.COMPLETED;
+    }
+
+    /**
+     * Returns every recorded version of a task, oldest first, including versions from
+     * before it was deleted or archived.
+     *
+     * @param taskId The ID of the task
+     * @return The task's versions, or an empty list if it has no history
+     */
+    public List<TaskHistory.Version> getTaskHistory(String taskId) {
+        return persistenceService.getTaskHistory().getHistory(taskId);
+    }
+
+    /**
+     * Returns the tasks as they were at the end of the given day.
+     *
+     * @param date The day to look at
+     * @return One version per task that existed at the end of that day
+     */
+    public List<TaskHistory.Version> getBoardAt(LocalDate date) {
+        return persistenceService.getTaskHistory().getBoardAt(date);
+    }
+
+    /**
+     * Searches the archive for tasks whose title contains the given text (case-insensitive).
+     * The archive is read on demand; nothing is cached.
+     *
+     * @param title The text to look for, or null or blank to match every archived task
+     * @param limit The maximum number of tasks to return
+     * @return Matching archived tasks, oldest archived first
+     */
+    public List<Task> searchArchive(String title, int limit) {
+        String query = title == null ? "" : title.trim().toLowerCase();
+        return persistenceService.getTaskArchive().query(task -> query.isEmpty()
+                || (task.getTitle() != null && task.getTitle().toLowerCase().contains(query)), limit);
+    }
+
+    /**
+     * Moves a task from the archive back into the live list. Its category and priority
+     * are matched by name against the current ones, as on load.
+     *
+     * @param taskId The ID of the archived task
+     * @param categoryService The service holding the current categories
+     * @param priorityService The service holding the current priority levels
+     * @return The restored task, or null if no archived task has that ID
+     */
+    public Task restoreArchivedTask(String taskId, CategoryService categoryService, PriorityService priorityService) {
+        return persistenceService.getWorkspaceLock().callExclusive(
+                () -> restoreArchivedTaskLocked(taskId, categoryService, priorityService));
+    }
+
+    private Task restoreArchivedTaskLocked(String taskId, CategoryService categoryService,
+                                           PriorityService priorityService) {
+        Task task = persistenceService.getTaskArchive().restore(taskId);
+        if (task == null) {
+            return null;
+        }
+        if (task.getCategory() != null) {
+            String name = task.getCategory().getName();
+            categoryService.getAllCategories().stream()
+                    .filter(c -> c.getName().equalsIgnoreCase(name))
+                    .findFirst()
+                    .ifPresent(task::setCategory);
+        }
+        if (task.getPriority() != null) {
+            String name = task.getPriority().getName();
+            priorityService.getAllPriorityLevels().stream()
+                    .filter(p -> p.getName().equalsIgnoreCase(name))
+                    .findFirst()
+                    .ifPresent(task::setPriority);
+        }
+        task.takeChanges();
+        tasks.add(task);
+        persistenceService.saveTask(task);
+        auditLog.record(AuditAction.TASK_RESTORED, task.getId());
+        return task;
     }
 
     /**
@@ -277,4 +992,175 @@ public class TaskService {
                 .filter(task -> !task.getDeadline().isAfter(deadline))
                 .count();
     }
-}
\ No newline at end of file
+
+    // The fields one task had before and after an edit; the task is found by id, as undo may re-create it.
+    private static final class TaskDelta {
+        private final String taskId;
+        private final Map<String, Object> before;
+        private final Map<String, Object> after;
+
+        private TaskDelta(String taskId, Map<String, Object> before, Map<String, Object> after) {
+            this.taskId = taskId;
+            this.before = before;
+            this.after = after;
+        }
+    }
+
+    private final class TasksChanged implements UndoManager.Edit {
+        private final List<TaskDelta> deltas;
+
+        private TasksChanged(List<TaskDelta> deltas) {
+            this.deltas = deltas;
+        }
+
+        @Override
+        public void undo() {
+            applyDeltas(deltas, true);
+        }
+
+        @Override
+        public void redo() {
+            applyDeltas(deltas, false);
+        }
+
+        @Override
+        public long estimatedBytes() {
+            long bytes = 0;
+            for (TaskDelta delta : deltas) {
+                bytes += 100;
+                for (Object value : delta.before.values()) {
+                    bytes += estimateBytes(value);
+                }
+                for (Object value : delta.after.values()) {
+                    bytes += estimateBytes(value);
+                }
+            }
+            return bytes;
+        }
+    }
+
+    private final class TasksAdded implements UndoManager.Edit {
+        private final List<Task> added;
+
+        private TasksAdded(List<Task> added) {
+            this.added = added;
+        }
+
+        @Override
+        public void undo() {
+            added.forEach(Task::loadDescriptionInline);
+            removeById(added.stream().map(Task::getId).collect(Collectors.toList()));
+        }
+
+        @Override
+        public void redo() {
+            addBack(added);
+        }
+
+        @Override
+        public long estimatedBytes() {
+            return added.size() * ESTIMATED_TASK_BYTES;
+        }
+    }
+
+    /**
+     * Removed tasks, kept so they can be put back. Large batches are written to a file
+     * as one JSON task per line and read back on undo; their categories and priority
+     * levels stay referenced here, so the tasks are relinked to the same instances.
+     */
+    private final class TasksRemoved implements UndoManager.Edit {
+        private final List<String> taskIds;
+        private final long estimatedBytes;
+        private List<Task> removed;
+        private File spillFile;
+        private Map<String, Category> categories;
+        private Map<String, PriorityLevel> priorities;
+
+        private TasksRemoved(List<Task> removed) {
+            this.removed = removed;
+            this.taskIds = removed.stream().map(Task::getId).collect(Collectors.toList());
+            long bytes = 0;
+            for (Task task : removed) {
+                bytes += ESTIMATED_TASK_BYTES + estimateBytes(task.getTitle()) + estimateBytes(task.getDescription());
+            }
+            this.estimatedBytes = bytes;
+        }
+
+        @Override
+        public void undo() {
+            addBack(removed != null ? removed : readSpilled());
+        }
+
+        @Override
+        public void redo() {
+            // Undo put back these instances, or copies read from the spill file that still matches them.
+            if (removed != null) {
+                removed.forEach(Task::loadDescriptionInline);
+            }
+            removeById(taskIds);
+        }
+
+        @Override
+        public long estimatedBytes() {
+            return removed != null ? estimatedBytes : 64L * taskIds.size();
+        }
+
+        @Override
+        public boolean spill(File dir) {
+            ObjectMapper mapper = persistenceService.getObjectMapper();
+            Map<String, Category> spilledCategories = new HashMap<>();
+            Map<String, PriorityLevel> spilledPriorities = new HashMap<>();
+            try {
+                File file = File.createTempFile("removed-tasks", ".ndjson", dir);
+                try (BufferedWriter writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+                    for (Task task : removed) {
+                        writer.write(mapper.writeValueAsString(task));
+                        writer.newLine();
+                        if (task.getCategory() != null) {
+                            spilledCategories.put(task.getCategory().getId(), task.getCategory());
+                        }
+                        if (task.getPriority() != null) {
+                            spilledPriorities.put(task.getPriority().getId(), task.getPriority());
+                        }
+                    }
+                }
+                spillFile = file;
+            } catch (IOException e) {
+                LOGGER.warning("Keeping " + removed.size() + " removed tasks in memory: " + e.getMessage());
+                return false;
+            }
+            categories = spilledCategories;
+            priorities = spilledPriorities;
+            removed = null;
+            return true;
+        }
+
+        @Override
+        public void discard() {
+            if (spillFile != null && !spillFile.delete()) {
+                LOGGER.warning("Failed to delete " + spillFile);
+            }
+        }
+
+        private List<Task> readSpilled() {
+            ObjectReader reader = persistenceService.getObjectMapper().readerFor(Task.class);
+            List<Task> tasks = new ArrayList<>(taskIds.size());
+            try (BufferedReader lines = Files.newBufferedReader(spillFile.toPath(), StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = lines.readLine()) != null) {
+                    Task task = reader.readValue(line);
+                    if (task.getCategory() != null) {
+                        task.setCategory(categories.getOrDefault(task.getCategory().getId(), task.getCategory()));
+                    }
+                    if (task.getPriority() != null) {
+                        task.setPriority(priorities.getOrDefault(task.getPriority().getId(), task.getPriority()));
+                    }
+                    tasks.add(task);
+                }
+            } catch (IOException e) {
+                throw new DataStorageException("Failed to read removed tasks from " + spillFile, e);
+            }
+            return tasks;
+        }
+    }
+}
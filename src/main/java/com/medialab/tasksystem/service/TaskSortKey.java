@@ -0,0 +1,50 @@
+package com.medialab.tasksystem.service;
+
+import com.medialab.tasksystem.model.Task;
+
+import java.util.Comparator;
+import java.util.function.Function;
+
+/**
+ * The task table columns that the task store can serve in sorted order.
+ * <p>
+ * Each key extracts a sort value from a task; the store keeps these values as
+ * snapshots so that tasks edited in place can still be found in its sorted orders.
+ * </p>
+ */
+public enum TaskSortKey {
+    TITLE(Task::getTitle, Comparator.nullsLast(String.CASE_INSENSITIVE_ORDER)),
+    CATEGORY(task -> task.getCategory() != null ? task.getCategory().getName() : null,
+            Comparator.nullsLast(String.CASE_INSENSITIVE_ORDER)),
+    PRIORITY(task -> task.getPriority() != null ? task.getPriority().getWeight() : 0, Comparator.naturalOrder()),
+    STATUS(Task::getStatus, Comparator.nullsLast(Comparator.naturalOrder())),
+    DEADLINE(Task::getDeadline, Comparator.nullsLast(Comparator.naturalOrder()));
+
+    private final Function<Task, ?> extractor;
+    private final Comparator<Object> valueComparator;
+
+    @SuppressWarnings("unchecked")
+    <T> TaskSortKey(Function<Task, T> extractor, Comparator<? super T> valueComparator) {
+        this.extractor = extractor;
+        this.valueComparator = (Comparator<Object>) valueComparator;
+    }
+
+    /**
+     * Returns the value this key sorts a task by.
+     */
+    public Object extractValue(Task task) {
+        return extractor.apply(task);
+    }
+
+    /**
+     * Compares two values previously returned by {@link #extractValue(Task)}.
+     */
+    public int compareValues(Object first, Object second) {
+        return valueComparator.compare(first, second);
+    }
+
+    public Comparator<Task> comparator(boolean ascending) {
+        Comparator<Task> comparator = (first, second) -> compareValues(extractValue(first), extractValue(second));
+        return ascending ? comparator : comparator.reversed();
+    }
+}
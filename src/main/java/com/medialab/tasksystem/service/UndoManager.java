@@ -0,0 +1,267 @@
+package com.medialab.tasksystem.service;
+
+import com.medialab.tasksystem.audit.AuditAction;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Undo and redo for the operations of the services.
+ * <p>
+ * A service operation runs inside {@link #run}; while it runs, the services record one
+ * {@link Edit} per change holding only the inverse delta (the fields an edit replaced,
+ * or the entities a delete removed). All edits of one operation, including cascades
+ * such as deleting a category's tasks, form one undo step and are undone as one batch.
+ * Steps are kept within a memory budget: a step larger than {@link #SPILL_THRESHOLD_BYTES}
+ * writes its bulky edits to a temporary file, and the oldest steps are dropped once the
+ * budget is exceeded.
+ * </p>
+ * Like the services, an UndoManager is only used from the FX thread.
+ */
+public class UndoManager {
+    private static final Logger LOGGER = Logger.getLogger(UndoManager.class.getName());
+    public static final long DEFAULT_MEMORY_BUDGET_BYTES = 16L * 1024 * 1024;
+    static final long SPILL_THRESHOLD_BYTES = 1024 * 1024;
+    private static final int MAX_STEPS = 100;
+
+    /**
+     * One recorded change and its inverse.
+     */
+    interface Edit {
+        void undo();
+
+        void redo();
+
+        // Approximate heap held by this edit.
+        long estimatedBytes();
+
+        // Moves bulky state to a file in the given directory; false if the edit keeps it in memory.
+        default boolean spill(File dir) {
+            return false;
+        }
+
+        // Deletes any file written by spill.
+        default void discard() {
+        }
+    }
+
+    private final DataPersistenceService persistenceService;
+    private final long memoryBudgetBytes;
+    private final Deque<Step> undoSteps = new ArrayDeque<>();
+    private final Deque<Step> redoSteps = new ArrayDeque<>();
+    private final List<Runnable> changeListeners = new CopyOnWriteArrayList<>();
+    private Step openStep;
+    private int depth;
+    private boolean replaying;
+    private File spillDir;
+
+    public UndoManager(DataPersistenceService persistenceService) {
+        this(persistenceService, DEFAULT_MEMORY_BUDGET_BYTES);
+    }
+
+    public UndoManager(DataPersistenceService persistenceService, long memoryBudgetBytes) {
+        this.persistenceService = persistenceService;
+        this.memoryBudgetBytes = memoryBudgetBytes;
+    }
+
+    /**
+     * Runs a service operation; everything it changes is undone by one call to {@link #undo()}.
+     * Nested calls join the outermost operation.
+     */
+    public void run(String label, Runnable operation) {
+        call(label, () -> {
+            operation.run();
+            return null;
+        });
+    }
+
+    public <T> T call(String label, Supplier<T> operation) {
+        if (replaying) {
+            return operation.get();
+        }
+        if (depth++ == 0) {
+            openStep = new Step(label);
+        }
+        try {
+            return operation.get();
+        } finally {
+            if (--depth == 0) {
+                Step step = openStep;
+                openStep = null;
+                // A failed operation keeps what it recorded, so its partial effects can still be undone.
+                if (!step.edits.isEmpty()) {
+                    push(step);
+                }
+            }
+        }
+    }
+
+    /**
+     * Records a change made by the current operation. Changes made outside an operation
+     * (e.g. automatic status updates) and while undoing or redoing are not recorded.
+     */
+    void record(Edit edit) {
+        if (isRecording()) {
+            openStep.edits.add(edit);
+        }
+    }
+
+    // Whether record() keeps edits right now; lets services skip preparing edits that would be dropped.
+    boolean isRecording() {
+        return openStep != null && !replaying;
+    }
+
+    public boolean canUndo() {
+        return !undoSteps.isEmpty();
+    }
+
+    public boolean canRedo() {
+        return !redoSteps.isEmpty();
+    }
+
+    public String getUndoLabel() {
+        return undoSteps.isEmpty() ? null : undoSteps.peek().label;
+    }
+
+    public String getRedoLabel() {
+        return redoSteps.isEmpty() ? null : redoSteps.peek().label;
+    }
+
+    public void undo() {
+        Step step = undoSteps.poll();
+        if (step == null) {
+            return;
+        }
+        persistenceService.getAuditLog().record(AuditAction.UNDO, null);
+        replay(() -> {
+            for (int i = step.edits.size() - 1; i >= 0; i--) {
+                step.edits.get(i).undo();
+            }
+        });
+        redoSteps.push(step);
+        fireChanged();
+    }
+
+    public void redo() {
+        Step step = redoSteps.poll();
+        if (step == null) {
+            return;
+        }
+        persistenceService.getAuditLog().record(AuditAction.REDO, null);
+        replay(() -> step.edits.forEach(Edit::redo));
+        undoSteps.push(step);
+        fireChanged();
+    }
+
+    /**
+     * Forgets all steps, e.g. when the workspace is closed.
+     */
+    public void clear() {
+        undoSteps.forEach(Step::discard);
+        redoSteps.forEach(Step::discard);
+        undoSteps.clear();
+        redoSteps.clear();
+        fireChanged();
+    }
+
+    public void addChangeListener(Runnable listener) {
+        changeListeners.add(listener);
+    }
+
+    public void removeChangeListener(Runnable listener) {
+        changeListeners.remove(listener);
+    }
+
+    public long getRetainedBytes() {
+        long total = 0;
+        for (Step step : undoSteps) {
+            total += step.estimatedBytes();
+        }
+        for (Step step : redoSteps) {
+            total += step.estimatedBytes();
+        }
+        return total;
+    }
+
+    private void replay(Runnable edits) {
+        replaying = true;
+        try {
+            persistenceService.inTransaction(edits);
+        } finally {
+            replaying = false;
+        }
+    }
+
+    private void push(Step step) {
+        redoSteps.forEach(Step::discard);
+        redoSteps.clear();
+        if (step.estimatedBytes() > SPILL_THRESHOLD_BYTES) {
+            step.spill(spillDir());
+        }
+        undoSteps.push(step);
+        // Drop the oldest steps beyond the limits, but always keep the newest one.
+        while (undoSteps.size() > 1 && (undoSteps.size() > MAX_STEPS || getRetainedBytes() > memoryBudgetBytes)) {
+            undoSteps.removeLast().discard();
+        }
+        fireChanged();
+    }
+
+    private File spillDir() {
+        if (spillDir == null) {
+            try {
+                spillDir = Files.createTempDirectory("task-undo").toFile();
+                spillDir.deleteOnExit();
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Cannot create a directory for large undo steps; keeping them in memory", e);
+                return null;
+            }
+        }
+        return spillDir;
+    }
+
+    private void fireChanged() {
+        changeListeners.forEach(Runnable::run);
+    }
+
+    // The edits of one operation, in the order they were made.
+    private static final class Step {
+        private final String label;
+        private final List<Edit> edits = new ArrayList<>();
+
+        private Step(String label) {
+            this.label = label;
+        }
+
+        long estimatedBytes() {
+            long total = 0;
+            for (Edit edit : edits) {
+                total += edit.estimatedBytes();
+            }
+            return total;
+        }
+
+        void spill(File dir) {
+            if (dir == null) {
+                return;
+            }
+            for (Edit edit : edits) {
+                if (edit.estimatedBytes() > SPILL_THRESHOLD_BYTES / 4 && !edit.spill(dir)) {
+                    LOGGER.fine("Undo step '" + label + "' keeps a large edit in memory");
+                }
+            }
+        }
+
+        void discard() {
+            edits.forEach(Edit::discard);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.medialab.tasksystem.service;
+
+import com.medialab.tasksystem.exceptions.VersionConflictException;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * The compare-and-set check of an update made against a given version of an entity.
+ * <p>
+ * An update against the current version always applies. One against an older version
+ * still applies if none of the fields it sets has changed since that version, so edits
+ * of different fields merge; a field it sets to the value it already has never conflicts.
+ * Field changes are only known from when the entity was loaded, so against a version
+ * older than that any field with a different value conflicts.
+ * </p>
+ */
+final class VersionCheck {
+    private VersionCheck() {
+    }
+
+    /**
+     * @param entityType    The kind of entity, for the error message
+     * @param currentValues The entity's current values of the fields in {@code changes}
+     * @param changedSince  The fields changed after the expected version, or null if unknown
+     * @throws VersionConflictException if the update conflicts with the changes since the expected version
+     */
+    static void check(String entityType, String id, long expectedVersion, long currentVersion,
+                      Set<String> changedSince, Map<String, Object> changes, Map<String, Object> currentValues) {
+        if (expectedVersion == currentVersion) {
+            return;
+        }
+        Set<String> conflicting = new TreeSet<>();
+        for (Map.Entry<String, Object> change : changes.entrySet()) {
+            String field = change.getKey();
+            boolean changedMeanwhile = expectedVersion > currentVersion || changedSince == null
+                    || changedSince.contains(field);
+            if (changedMeanwhile && !Objects.equals(change.getValue(), currentValues.get(field))) {
+                conflicting.add(field);
+            }
+        }
+        if (!conflicting.isEmpty()) {
+            throw new VersionConflictException(entityType, id, expectedVersion, currentVersion, conflicting);
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.medialab.tasksystem.service;
+
+import java.util.function.Supplier;
+
+/**
+ * Keeps other processes out of a workspace while files they also write are changed,
+ * such as the task archive next to a shared store. Only a workspace on shared storage
+ * is used by several processes at once; for the others the lock does nothing.
+ */
+public interface WorkspaceLock {
+    WorkspaceLock NONE = new WorkspaceLock() {
+        @Override
+        public <T> T callExclusive(Supplier<T> work) {
+            return work.get();
+        }
+    };
+
+    /**
+     * Runs the work holding the workspace's exclusive lock and returns its result. May be
+     * nested, and the work may save through the storage backend.
+     */
+    <T> T callExclusive(Supplier<T> work);
+
+    default void runExclusive(Runnable work) {
+        callExclusive(() -> {
+            work.run();
+            return null;
+        });
+    }
+}
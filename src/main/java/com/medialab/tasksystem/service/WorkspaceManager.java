@@ -0,0 +1,182 @@
+package com.medialab.tasksystem.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps loaded workspaces resident in a memory-bounded LRU cache.
+ * <p>
+ * A workspace is a directory with its own task, category, priority and reminder files.
+ * Callers {@link #acquire(File) acquire} a workspace while they use it (e.g. while a
+ * window shows it) and {@link #release(File) release} it afterwards. Released
+ * workspaces stay cached so reopening them is instant, until the estimated heap of
+ * all resident workspaces exceeds the budget or too many are resident; then the
+ * least recently used idle workspaces are flushed to disk and dropped.
+ * </p>
+ */
+public class WorkspaceManager {
+    private static final Logger LOGGER = Logger.getLogger(WorkspaceManager.class.getName());
+
+    private final long memoryBudgetBytes;
+    private final int maxResidentWorkspaces;
+    // Access-ordered: iteration starts at the least recently used workspace.
+    private final Map<File, Workspace> workspaces = new LinkedHashMap<>(16, 0.75f, true);
+
+    public WorkspaceManager(long memoryBudgetBytes, int maxResidentWorkspaces) {
+        this.memoryBudgetBytes = memoryBudgetBytes;
+        this.maxResidentWorkspaces = maxResidentWorkspaces;
+    }
+
+    /**
+     * A manager that lets resident workspaces use up to a quarter of the maximum heap.
+     */
+    public WorkspaceManager() {
+        this(Runtime.getRuntime().maxMemory() / 4, 8);
+    }
+
+    /**
+     * Returns the services of a workspace, loading it if it is not resident, and pins it
+     * so it cannot be evicted until released. May be called from a background thread.
+     * The workspace is loaded outside the manager's monitor, so releasing or acquiring
+     * other workspaces meanwhile does not wait for it; callers acquiring the same
+     * workspace wait for the one load.
+     */
+    public ServiceManager acquire(File workspaceDir) {
+        File key = canonical(workspaceDir);
+        Workspace workspace;
+        boolean load;
+        synchronized (this) {
+            workspace = workspaces.get(key);
+            load = workspace == null;
+            if (load) {
+                workspace = new Workspace();
+                workspaces.put(key, workspace);
+            }
+            // Pinned from the start, so a workspace still loading is never evicted.
+            workspace.users++;
+        }
+        if (load) {
+            load(key, workspace);
+        }
+        ServiceManager services;
+        try {
+            services = workspace.loaded.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+        synchronized (this) {
+            evictIfNeeded();
+        }
+        return services;
+    }
+
+    private void load(File key, Workspace workspace) {
+        long start = System.nanoTime();
+        ServiceManager services;
+        try {
+            services = new ServiceManager(key);
+        } catch (RuntimeException | Error e) {
+            synchronized (this) {
+                workspaces.remove(key, workspace);
+            }
+            workspace.loaded.completeExceptionally(e);
+            return;
+        }
+        long estimatedBytes = services.estimateMemoryBytes();
+        synchronized (this) {
+            workspace.services = services;
+            workspace.estimatedBytes = estimatedBytes;
+        }
+        workspace.loaded.complete(services);
+        LOGGER.info(String.format("Loaded workspace %s in %d ms", key, (System.nanoTime() - start) / 1_000_000));
+    }
+
+    /**
+     * Unpins a workspace; it stays cached until memory pressure evicts it.
+     * Must be called on the thread that owns the workspace's services.
+     */
+    public synchronized void release(File workspaceDir) {
+        Workspace workspace = workspaces.get(canonical(workspaceDir));
+        if (workspace != null && workspace.services != null && workspace.users > 0) {
+            workspace.users--;
+            workspace.estimatedBytes = workspace.services.estimateMemoryBytes();
+            evictIfNeeded();
+        }
+    }
+
+    /**
+     * Writes every resident workspace to disk.
+     */
+    public synchronized void flushAll() {
+        for (Workspace workspace : workspaces.values()) {
+            if (workspace.services != null) {
+                workspace.services.flush();
+            }
+        }
+    }
+
+    public synchronized List<File> getResidentWorkspaces() {
+        return new ArrayList<>(workspaces.keySet());
+    }
+
+    private void evictIfNeeded() {
+        long totalBytes = 0;
+        for (Workspace workspace : workspaces.values()) {
+            totalBytes += workspace.estimatedBytes;
+        }
+        Iterator<Map.Entry<File, Workspace>> eldestFirst = workspaces.entrySet().iterator();
+        while (eldestFirst.hasNext()
+                && (totalBytes > memoryBudgetBytes || workspaces.size() > maxResidentWorkspaces)) {
+            Map.Entry<File, Workspace> entry = eldestFirst.next();
+            Workspace workspace = entry.getValue();
+            if (workspace.users > 0) {
+                continue; // In use; pinned workspaces are never evicted.
+            }
+            try {
+                workspace.services.flush();
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.SEVERE, "Failed to flush workspace " + entry.getKey() + "; keeping it resident", e);
+                continue;
+            }
+            eldestFirst.remove();
+            try {
+                workspace.services.close();
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Failed to close workspace " + entry.getKey(), e);
+            }
+            totalBytes -= workspace.estimatedBytes;
+            LOGGER.info("Evicted idle workspace " + entry.getKey());
+        }
+    }
+
+    private static File canonical(File dir) {
+        try {
+            return dir.getCanonicalFile();
+        } catch (IOException e) {
+            return dir.getAbsoluteFile();
+        }
+    }
+
+    private static final class Workspace {
+        // Completed once the workspace has loaded; services is null until then.
+        private final CompletableFuture<ServiceManager> loaded = new CompletableFuture<>();
+        private ServiceManager services;
+        private int users;
+        private long estimatedBytes;
+    }
+}
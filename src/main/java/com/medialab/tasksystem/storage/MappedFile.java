@@ -0,0 +1,109 @@
+package com.medialab.tasksystem.storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A file mapped into memory in fixed-size segments, addressed with long positions.
+ * <p>
+ * A single MappedByteBuffer is limited to 2 GB, so the file is mapped as a list of
+ * segments and grown a segment at a time. Fixed-size fields must not straddle a
+ * segment boundary (callers use sizes that divide the segment size); byte ranges
+ * may, and are copied piecewise.
+ * </p>
+ */
+final class MappedFile implements Closeable {
+    static final int SEGMENT_SIZE = 16 * 1024 * 1024;
+
+    private final FileChannel channel;
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+
+    MappedFile(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long existing = channel.size();
+        ensureCapacity(Math.max(existing, 1));
+    }
+
+    long capacity() {
+        return (long) segments.size() * SEGMENT_SIZE;
+    }
+
+    void ensureCapacity(long required) throws IOException {
+        while (capacity() < required) {
+            long position = capacity();
+            segments.add(channel.map(FileChannel.MapMode.READ_WRITE, position, SEGMENT_SIZE));
+        }
+    }
+
+    long getLong(long position) {
+        return segment(position).getLong(offset(position));
+    }
+
+    void putLong(long position, long value) {
+        segment(position).putLong(offset(position), value);
+    }
+
+    int getInt(long position) {
+        return segment(position).getInt(offset(position));
+    }
+
+    void putInt(long position, int value) {
+        segment(position).putInt(offset(position), value);
+    }
+
+    byte getByte(long position) {
+        return segment(position).get(offset(position));
+    }
+
+    void putByte(long position, byte value) {
+        segment(position).put(offset(position), value);
+    }
+
+    void read(long position, byte[] target, int targetOffset, int length) {
+        while (length > 0) {
+            int offset = offset(position);
+            int chunk = Math.min(length, SEGMENT_SIZE - offset);
+            segment(position).get(offset, target, targetOffset, chunk);
+            position += chunk;
+            targetOffset += chunk;
+            length -= chunk;
+        }
+    }
+
+    void write(long position, byte[] source, int sourceOffset, int length) {
+        while (length > 0) {
+            int offset = offset(position);
+            int chunk = Math.min(length, SEGMENT_SIZE - offset);
+            segment(position).put(offset, source, sourceOffset, chunk);
+            position += chunk;
+            sourceOffset += chunk;
+            length -= chunk;
+        }
+    }
+
+    void force() {
+        segments.forEach(MappedByteBuffer::force);
+    }
+
+    @Override
+    public void close() throws IOException {
+        force();
+        segments.clear();
+        channel.close();
+    }
+
+    private MappedByteBuffer segment(long position) {
+        return segments.get((int) (position / SEGMENT_SIZE));
+    }
+
+    private static int offset(long position) {
+        return (int) (position % SEGMENT_SIZE);
+    }
+}
@@ -0,0 +1,608 @@
+package com.medialab.tasksystem.storage;
+
+import com.medialab.tasksystem.exceptions.DataStorageException;
+import com.medialab.tasksystem.model.Category;
+import com.medialab.tasksystem.model.PriorityLevel;
+import com.medialab.tasksystem.model.Task;
+import com.medialab.tasksystem.model.TaskStatus;
+import com.medialab.tasksystem.service.TaskPageSource;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A task store for datasets too large to keep in the heap as Task objects.
+ * <p>
+ * Tasks are kept as fixed-size records in a memory-mapped file, with titles,
+ * descriptions and other strings in an off-heap {@link StringArena}. Two on-disk
+ * indexes sit next to the records: an open-addressing hash table from task id to
+ * record, and a deadline index made of a sorted run plus an unsorted tail that is
+ * merged into the run once it grows. Task objects are only created for the rows a
+ * caller asks for, so the heap used by the store does not grow with the data.
+ * </p>
+ * Records are kept dense: deleting a task moves the last record into its slot.
+ * All methods are synchronized, so the store can be read from background threads. A
+ * store is locked while it is open, so it cannot be opened twice at once.
+ */
+public class MappedTaskStore implements Closeable {
+    private static final int MAGIC = 0x544B5331; // "TKS1"
+    private static final int FORMAT_VERSION = 1;
+
+    // Header, stored in the first record slot.
+    private static final int H_MAGIC = 0;
+    private static final int H_VERSION = 4;
+    private static final int H_RECORD_COUNT = 8;
+    private static final int H_ARENA_SIZE = 16;
+    private static final int H_HASH_CAPACITY = 24;
+    private static final int H_SORTED_DEADLINES = 32;
+    private static final int H_TAIL_DEADLINES = 40;
+    private static final int H_GENERATION = 48;
+
+    // Record layout. String fields are (long offset, int length) references into the arena.
+    private static final int RECORD_SIZE = 128;
+    private static final int R_ID_HASH = 0;
+    private static final int R_DEADLINE = 8;
+    private static final int R_STATUS = 16;
+    private static final int R_PRIORITY_WEIGHT = 20;
+    private static final int R_ID = 24;
+    private static final int R_TITLE = 36;
+    private static final int R_DESCRIPTION = 48;
+    private static final int R_CATEGORY_ID = 60;
+    private static final int R_CATEGORY_NAME = 72;
+    private static final int R_PRIORITY_ID = 84;
+    private static final int R_PRIORITY_NAME = 96;
+    private static final int R_PRIORITY_DEFAULT = 108;
+    private static final int R_GENERATION = 112;
+
+    // Hash slots are (long id hash, int record index + 1); 0 marks an empty slot.
+    private static final int SLOT_SIZE = 16;
+    private static final int MIN_HASH_CAPACITY = 1024;
+    private static final double MAX_LOAD = 0.7;
+
+    // Deadline entries are (long epoch day, int record index, int record generation).
+    private static final int ENTRY_SIZE = 16;
+    private static final int MIN_TAIL_TO_MERGE = 4096;
+    private static final long NO_DEADLINE = Long.MAX_VALUE;
+
+    private static final TaskStatus[] STATUSES = TaskStatus.values();
+    private static final String RECORDS_FILE = "records.dat";
+    private static final String LOCK_FILE = "store.lock";
+
+    private final Path directory;
+    private final FileChannel lockChannel;
+    private final MappedFile records;
+    private final StringArena arena;
+    private final MappedFile hashIndex;
+    private MappedFile deadlineIndex;
+
+    private int recordCount;
+    private long hashCapacity;
+    private long sortedDeadlines;
+    private long tailDeadlines;
+    private long generation;
+
+    private MappedTaskStore(Path directory, FileChannel lockChannel) throws IOException {
+        this.directory = directory;
+        this.lockChannel = lockChannel;
+        this.records = new MappedFile(directory.resolve(RECORDS_FILE));
+        if (records.getInt(H_MAGIC) == 0) {
+            records.putInt(H_MAGIC, MAGIC);
+            records.putInt(H_VERSION, FORMAT_VERSION);
+            records.putLong(H_HASH_CAPACITY, MIN_HASH_CAPACITY);
+        } else if (records.getInt(H_MAGIC) != MAGIC || records.getInt(H_VERSION) != FORMAT_VERSION) {
+            records.close();
+            throw new IOException("Not a task store: " + directory);
+        }
+        this.recordCount = (int) records.getLong(H_RECORD_COUNT);
+        this.hashCapacity = records.getLong(H_HASH_CAPACITY);
+        this.sortedDeadlines = records.getLong(H_SORTED_DEADLINES);
+        this.tailDeadlines = records.getLong(H_TAIL_DEADLINES);
+        this.generation = records.getLong(H_GENERATION);
+        this.arena = new StringArena(directory.resolve("strings.dat"), records.getLong(H_ARENA_SIZE));
+        this.hashIndex = new MappedFile(directory.resolve("id-hash.idx"));
+        hashIndex.ensureCapacity(hashCapacity * SLOT_SIZE);
+        this.deadlineIndex = new MappedFile(directory.resolve("deadline.idx"));
+    }
+
+    /**
+     * Opens the store in the given directory, creating it if it does not exist yet.
+     *
+     * @throws IOException if the store cannot be opened, e.g. because it is open already
+     */
+    public static MappedTaskStore open(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        return lockAndOpen(directory);
+    }
+
+    /**
+     * Opens the store in the given directory, which must hold one already.
+     *
+     * @throws IOException if there is no store in the directory or it cannot be opened
+     */
+    public static MappedTaskStore openExisting(Path directory) throws IOException {
+        if (!Files.isRegularFile(directory.resolve(RECORDS_FILE))) {
+            throw new NoSuchFileException(directory.toString(), null, "Not a task store");
+        }
+        return lockAndOpen(directory);
+    }
+
+    // The headers are held in memory while the store is open, so only one opening may use it at a time.
+    private static MappedTaskStore lockAndOpen(Path directory) throws IOException {
+        FileChannel lockChannel = FileChannel.open(directory.resolve(LOCK_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            FileLock lock;
+            try {
+                lock = lockChannel.tryLock();
+            } catch (OverlappingFileLockException e) {
+                lock = null; // Open in this process already
+            }
+            if (lock == null) {
+                throw new IOException("Task store is already open: " + directory);
+            }
+            // Held until close() closes the channel.
+            return new MappedTaskStore(directory, lockChannel);
+        } catch (IOException | RuntimeException e) {
+            lockChannel.close();
+            throw e;
+        }
+    }
+
+    public synchronized int size() {
+        return recordCount;
+    }
+
+    /**
+     * Inserts a task, or overwrites the record of the task with the same id.
+     */
+    public synchronized void put(Task task) {
+        try {
+            int index = find(task.getId());
+            if (index < 0) {
+                if ((recordCount + 1) > hashCapacity * MAX_LOAD) {
+                    rehash(hashCapacity * 2);
+                }
+                index = recordCount;
+                records.ensureCapacity(position(index + 1) + RECORD_SIZE);
+                clearRecord(index);
+                writeRecord(index, task);
+                insertSlot(hashOf(task.getId()), index);
+                recordCount++;
+            } else {
+                writeRecord(index, task);
+            }
+            appendDeadline(index);
+            writeHeader();
+        } catch (IOException e) {
+            throw new DataStorageException("Failed to write task " + task.getId(), e);
+        }
+    }
+
+    /**
+     * Deletes the task with the given id. Returns false if it was not stored.
+     */
+    public synchronized boolean delete(String id) {
+        int slot = findSlot(id);
+        if (slot < 0) {
+            return false;
+        }
+        try {
+            int index = hashIndex.getInt(slotPosition(slot) + 8) - 1;
+            removeSlot(slot);
+            int last = --recordCount;
+            if (index != last) {
+                moveRecord(last, index);
+                int movedSlot = findSlot(readString(position(index) + R_ID));
+                hashIndex.putInt(slotPosition(movedSlot) + 8, index + 1);
+                records.putInt(position(index) + R_GENERATION, (int) ++generation);
+                appendDeadline(index);
+            }
+            writeHeader();
+            return true;
+        } catch (IOException e) {
+            throw new DataStorageException("Failed to delete task " + id, e);
+        }
+    }
+
+    public synchronized Task get(String id) {
+        int index = find(id);
+        return index < 0 ? null : materialize(index);
+    }
+
+    public synchronized boolean contains(String id) {
+        return find(id) >= 0;
+    }
+
+    /**
+     * Returns up to {@code limit} tasks in storage order, starting at position {@code offset}.
+     */
+    public synchronized List<Task> page(int offset, int limit) {
+        int from = Math.max(0, Math.min(offset, recordCount));
+        int to = (int) Math.min((long) from + limit, recordCount);
+        List<Task> result = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            result.add(materialize(i));
+        }
+        return result;
+    }
+
+    /**
+     * Returns up to {@code limit} tasks in deadline order (tasks without a deadline last),
+     * starting at position {@code offset}. Merges the deadline index first if needed.
+     */
+    public synchronized List<Task> pageByDeadline(int offset, int limit) {
+        if (tailDeadlines > 0 || sortedDeadlines != recordCount) {
+            mergeDeadlines();
+        }
+        long from = Math.max(0, Math.min(offset, sortedDeadlines));
+        long to = Math.min(from + limit, sortedDeadlines);
+        List<Task> result = new ArrayList<>((int) (to - from));
+        for (long i = from; i < to; i++) {
+            result.add(materialize(deadlineIndex.getInt(i * ENTRY_SIZE + 8)));
+        }
+        return result;
+    }
+
+    /**
+     * Returns up to {@code limit} tasks with a deadline in {@code [from, to]}, in deadline
+     * order. Binary-searches the sorted run and scans the unsorted tail.
+     */
+    public synchronized List<Task> findByDeadline(LocalDate from, LocalDate to, int limit) {
+        long fromDay = from.toEpochDay();
+        long toDay = to.toEpochDay();
+        List<long[]> matches = new ArrayList<>();
+        for (long i = lowerBound(fromDay); i < sortedDeadlines && matches.size() < limit; i++) {
+            long day = deadlineIndex.getLong(i * ENTRY_SIZE);
+            if (day > toDay) {
+                break;
+            }
+            if (isLive(i)) {
+                matches.add(new long[]{day, deadlineIndex.getInt(i * ENTRY_SIZE + 8)});
+            }
+        }
+        for (long i = sortedDeadlines; i < sortedDeadlines + tailDeadlines; i++) {
+            long day = deadlineIndex.getLong(i * ENTRY_SIZE);
+            if (day >= fromDay && day <= toDay && isLive(i)) {
+                matches.add(new long[]{day, deadlineIndex.getInt(i * ENTRY_SIZE + 8)});
+            }
+        }
+        matches.sort(Comparator.<long[]>comparingLong(m -> m[0]).thenComparingLong(m -> m[1]));
+        List<Task> result = new ArrayList<>();
+        for (int i = 0; i < matches.size() && i < limit; i++) {
+            result.add(materialize((int) matches.get(i)[1]));
+        }
+        return result;
+    }
+
+    /**
+     * Returns a page source over the store, in storage order or in deadline order.
+     */
+    public TaskPageSource pageSource(boolean byDeadline) {
+        return new TaskPageSource() {
+            @Override
+            public int size() {
+                return MappedTaskStore.this.size();
+            }
+
+            @Override
+            public List<Task> fetch(int offset, int limit) {
+                return byDeadline ? pageByDeadline(offset, limit) : page(offset, limit);
+            }
+        };
+    }
+
+    /**
+     * Forces all mapped changes to disk.
+     */
+    public synchronized void flush() {
+        records.force();
+        arena.force();
+        hashIndex.force();
+        deadlineIndex.force();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            writeHeader();
+            records.close();
+            arena.close();
+            hashIndex.close();
+            deadlineIndex.close();
+        } finally {
+            // Closing the channel releases the lock.
+            lockChannel.close();
+        }
+    }
+
+    // --- Records ---
+
+    private static long position(int index) {
+        return (long) (index + 1) * RECORD_SIZE;
+    }
+
+    private void writeRecord(int index, Task task) throws IOException {
+        long position = position(index);
+        records.putLong(position + R_ID_HASH, hashOf(task.getId()));
+        records.putLong(position + R_DEADLINE,
+                task.getDeadline() != null ? task.getDeadline().toEpochDay() : NO_DEADLINE);
+        records.putInt(position + R_STATUS, (task.getStatus() != null ? task.getStatus() : TaskStatus.OPEN).ordinal());
+        records.putInt(position + R_GENERATION, (int) ++generation);
+        writeString(position + R_ID, task.getId());
+        writeString(position + R_TITLE, task.getTitle());
+        writeString(position + R_DESCRIPTION, task.getDescription());
+        Category category = task.getCategory();
+        writeString(position + R_CATEGORY_ID, category != null ? category.getId() : null);
+        writeString(position + R_CATEGORY_NAME, category != null ? category.getName() : null);
+        PriorityLevel priority = task.getPriority();
+        writeString(position + R_PRIORITY_ID, priority != null ? priority.getId() : null);
+        writeString(position + R_PRIORITY_NAME, priority != null ? priority.getName() : null);
+        records.putInt(position + R_PRIORITY_WEIGHT, priority != null ? priority.getWeight() : 0);
+        records.putByte(position + R_PRIORITY_DEFAULT, (byte) (priority != null && priority.isDefault() ? 1 : 0));
+    }
+
+    private Task materialize(int index) {
+        long position = position(index);
+        Task task = new Task();
+        task.setId(readString(position + R_ID));
+        task.setTitle(readString(position + R_TITLE));
+        task.setDescription(readString(position + R_DESCRIPTION));
+        long deadline = records.getLong(position + R_DEADLINE);
+        task.setDeadline(deadline != NO_DEADLINE ? LocalDate.ofEpochDay(deadline) : null);
+        task.setStatus(STATUSES[records.getInt(position + R_STATUS)]);
+        String categoryName = readString(position + R_CATEGORY_NAME);
+        if (categoryName != null) {
+            Category category = new Category(categoryName);
+            category.setId(readString(position + R_CATEGORY_ID));
+            task.setCategory(category);
+        }
+        String priorityName = readString(position + R_PRIORITY_NAME);
+        if (priorityName != null) {
+            PriorityLevel priority = new PriorityLevel(priorityName,
+                    records.getByte(position + R_PRIORITY_DEFAULT) != 0,
+                    records.getInt(position + R_PRIORITY_WEIGHT));
+            priority.setId(readString(position + R_PRIORITY_ID));
+            task.setPriority(priority);
+        }
+        return task;
+    }
+
+    private void clearRecord(int index) {
+        long position = position(index);
+        for (int i = 0; i < RECORD_SIZE; i += 8) {
+            records.putLong(position + i, 0);
+        }
+    }
+
+    private void moveRecord(int from, int to) {
+        byte[] record = new byte[RECORD_SIZE];
+        records.read(position(from), record, 0, RECORD_SIZE);
+        records.write(position(to), record, 0, RECORD_SIZE);
+    }
+
+    // Keeps the existing arena bytes when the value is unchanged, so rewrites do not leak arena space.
+    private void writeString(long fieldPosition, String value) throws IOException {
+        byte[] bytes = StringArena.encode(value);
+        int oldLength = records.getInt(fieldPosition + 8);
+        if (bytes == null) {
+            records.putLong(fieldPosition, 0);
+            records.putInt(fieldPosition + 8, StringArena.NULL_LENGTH);
+            return;
+        }
+        if (oldLength == bytes.length && oldLength > 0
+                && Arrays.equals(arena.readBytes(records.getLong(fieldPosition), oldLength), bytes)) {
+            return;
+        }
+        records.putLong(fieldPosition, arena.append(bytes));
+        records.putInt(fieldPosition + 8, bytes.length);
+    }
+
+    private String readString(long fieldPosition) {
+        return arena.read(records.getLong(fieldPosition), records.getInt(fieldPosition + 8));
+    }
+
+    private void writeHeader() {
+        records.putLong(H_RECORD_COUNT, recordCount);
+        records.putLong(H_ARENA_SIZE, arena.size());
+        records.putLong(H_HASH_CAPACITY, hashCapacity);
+        records.putLong(H_SORTED_DEADLINES, sortedDeadlines);
+        records.putLong(H_TAIL_DEADLINES, tailDeadlines);
+        records.putLong(H_GENERATION, generation);
+    }
+
+    // --- Id hash index ---
+
+    // 64-bit FNV-1a over the id's characters.
+    private static long hashOf(String id) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < id.length(); i++) {
+            hash ^= id.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static long slotPosition(long slot) {
+        return slot * SLOT_SIZE;
+    }
+
+    private int find(String id) {
+        int slot = findSlot(id);
+        return slot < 0 ? -1 : hashIndex.getInt(slotPosition(slot) + 8) - 1;
+    }
+
+    private int findSlot(String id) {
+        if (id == null) {
+            return -1;
+        }
+        long hash = hashOf(id);
+        long mask = hashCapacity - 1;
+        for (long slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int ref = hashIndex.getInt(slotPosition(slot) + 8);
+            if (ref == 0) {
+                return -1;
+            }
+            if (hashIndex.getLong(slotPosition(slot)) == hash
+                    && id.equals(readString(position(ref - 1) + R_ID))) {
+                return (int) slot;
+            }
+        }
+    }
+
+    private void insertSlot(long hash, int index) {
+        long mask = hashCapacity - 1;
+        long slot = hash & mask;
+        while (hashIndex.getInt(slotPosition(slot) + 8) != 0) {
+            slot = (slot + 1) & mask;
+        }
+        hashIndex.putLong(slotPosition(slot), hash);
+        hashIndex.putInt(slotPosition(slot) + 8, index + 1);
+    }
+
+    // Backward-shift deletion keeps linear probe chains intact without tombstones.
+    private void removeSlot(long slot) {
+        long mask = hashCapacity - 1;
+        long hole = slot;
+        long next = slot;
+        while (true) {
+            next = (next + 1) & mask;
+            int ref = hashIndex.getInt(slotPosition(next) + 8);
+            if (ref == 0) {
+                break;
+            }
+            long hash = hashIndex.getLong(slotPosition(next));
+            long home = hash & mask;
+            boolean stays = hole <= next ? (hole < home && home <= next) : (hole < home || home <= next);
+            if (!stays) {
+                hashIndex.putLong(slotPosition(hole), hash);
+                hashIndex.putInt(slotPosition(hole) + 8, ref);
+                hole = next;
+            }
+        }
+        hashIndex.putLong(slotPosition(hole), 0);
+        hashIndex.putInt(slotPosition(hole) + 8, 0);
+    }
+
+    private void rehash(long capacity) throws IOException {
+        hashIndex.ensureCapacity(capacity * SLOT_SIZE);
+        for (long slot = 0; slot < capacity; slot++) {
+            hashIndex.putLong(slotPosition(slot), 0);
+            hashIndex.putLong(slotPosition(slot) + 8, 0);
+        }
+        hashCapacity = capacity;
+        for (int i = 0; i < recordCount; i++) {
+            insertSlot(records.getLong(position(i) + R_ID_HASH), i);
+        }
+    }
+
+    // --- Deadline index ---
+
+    private void appendDeadline(int index) throws IOException {
+        long entry = sortedDeadlines + tailDeadlines;
+        deadlineIndex.ensureCapacity((entry + 1) * ENTRY_SIZE);
+        long position = entry * ENTRY_SIZE;
+        deadlineIndex.putLong(position, records.getLong(position(index) + R_DEADLINE));
+        deadlineIndex.putInt(position + 8, index);
+        deadlineIndex.putInt(position + 12, records.getInt(position(index) + R_GENERATION));
+        tailDeadlines++;
+        if (tailDeadlines >= Math.max(MIN_TAIL_TO_MERGE, sortedDeadlines / 4)) {
+            mergeDeadlines();
+        }
+    }
+
+    // An entry is live if it still points at the current version of a stored record.
+    private boolean isLive(long entry) {
+        long position = entry * ENTRY_SIZE;
+        int index = deadlineIndex.getInt(position + 8);
+        return index < recordCount
+                && records.getInt(position(index) + R_GENERATION) == deadlineIndex.getInt(position + 12);
+    }
+
+    private long lowerBound(long day) {
+        long low = 0;
+        long high = sortedDeadlines;
+        while (low < high) {
+            long mid = (low + high) >>> 1;
+            if (deadlineIndex.getLong(mid * ENTRY_SIZE) < day) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Sorts the tail and merges it with the sorted run into a new index file, dropping
+     * entries for records that were deleted or rewritten. Only the tail is held in the heap.
+     */
+    private void mergeDeadlines() {
+        try {
+            List<long[]> tail = new ArrayList<>();
+            for (long i = sortedDeadlines; i < sortedDeadlines + tailDeadlines; i++) {
+                if (isLive(i)) {
+                    long position = i * ENTRY_SIZE;
+                    tail.add(new long[]{deadlineIndex.getLong(position),
+                            deadlineIndex.getInt(position + 8), deadlineIndex.getInt(position + 12)});
+                }
+            }
+            tail.sort(Comparator.<long[]>comparingLong(e -> e[0]).thenComparingLong(e -> e[1]));
+
+            Path target = directory.resolve("deadline.idx");
+            Path temp = directory.resolve("deadline.idx.tmp");
+            Files.deleteIfExists(temp);
+            long written = 0;
+            try (MappedFile merged = new MappedFile(temp)) {
+                merged.ensureCapacity((long) recordCount * ENTRY_SIZE);
+                long run = 0;
+                int next = 0;
+                while (run < sortedDeadlines || next < tail.size()) {
+                    long[] entry;
+                    if (run < sortedDeadlines) {
+                        if (!isLive(run)) {
+                            run++;
+                            continue;
+                        }
+                        long position = run * ENTRY_SIZE;
+                        long day = deadlineIndex.getLong(position);
+                        int index = deadlineIndex.getInt(position + 8);
+                        if (next < tail.size() && (tail.get(next)[0] < day
+                                || (tail.get(next)[0] == day && tail.get(next)[1] < index))) {
+                            entry = tail.get(next++);
+                        } else {
+                            entry = new long[]{day, index, deadlineIndex.getInt(position + 12)};
+                            run++;
+                        }
+                    } else {
+                        entry = tail.get(next++);
+                    }
+                    long position = written++ * ENTRY_SIZE;
+                    merged.putLong(position, entry[0]);
+                    merged.putInt(position + 8, (int) entry[1]);
+                    merged.putInt(position + 12, (int) entry[2]);
+                }
+            }
+            deadlineIndex.close();
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            deadlineIndex = new MappedFile(target);
+            sortedDeadlines = written;
+            tailDeadlines = 0;
+            writeHeader();
+        } catch (IOException e) {
+            throw new DataStorageException("Failed to rebuild the deadline index", e);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.medialab.tasksystem.storage;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+/**
+ * Off-heap storage for variable-length strings: UTF-8 bytes appended to a mapped file
+ * and referenced by (offset, length). Strings are never rewritten; a changed value is
+ * appended again and the old bytes become garbage until the store is rebuilt.
+ */
+final class StringArena {
+    static final int NULL_LENGTH = -1;
+
+    private final MappedFile file;
+    private long size;
+
+    StringArena(Path path, long size) throws IOException {
+        this.file = new MappedFile(path);
+        this.size = size;
+    }
+
+    long size() {
+        return size;
+    }
+
+    /**
+     * Appends encoded bytes and returns their offset.
+     */
+    long append(byte[] utf8) throws IOException {
+        long offset = size;
+        file.ensureCapacity(offset + utf8.length);
+        file.write(offset, utf8, 0, utf8.length);
+        size += utf8.length;
+        return offset;
+    }
+
+    String read(long offset, int length) {
+        return length == NULL_LENGTH ? null : new String(readBytes(offset, length), StandardCharsets.UTF_8);
+    }
+
+    byte[] readBytes(long offset, int length) {
+        byte[] bytes = new byte[length];
+        file.read(offset, bytes, 0, length);
+        return bytes;
+    }
+
+    static byte[] encode(String value) {
+        return value != null ? value.getBytes(StandardCharsets.UTF_8) : null;
+    }
+
+    void force() {
+        file.force();
+    }
+
+    void close() throws IOException {
+        file.close();
+    }
+}
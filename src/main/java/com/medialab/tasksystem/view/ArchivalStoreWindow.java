@@ -0,0 +1,118 @@
+package com.medialab.tasksystem.view;
+
+import com.medialab.tasksystem.model.Category;
+import com.medialab.tasksystem.model.PriorityLevel;
+import com.medialab.tasksystem.model.Task;
+import com.medialab.tasksystem.model.TaskStatus;
+import com.medialab.tasksystem.storage.MappedTaskStore;
+import javafx.geometry.Insets;
+import javafx.scene.Scene;
+import javafx.scene.control.*;
+import javafx.scene.control.cell.PropertyValueFactory;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.VBox;
+import javafx.stage.Stage;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A read-only window over a {@link MappedTaskStore}. The table pages rows straight out of
+ * the mapped files, so only the visible pages are ever turned into Task objects.
+ */
+public class ArchivalStoreWindow {
+    private static final Logger LOGGER = Logger.getLogger(ArchivalStoreWindow.class.getName());
+    private static final int PAGE_SIZE = 200;
+    private static final int MAX_CACHED_PAGES = 16;
+
+    private final MappedTaskStore store;
+    private final Stage stage = new Stage();
+    private final ExecutorService prefetchExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "archive-page-prefetch");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public ArchivalStoreWindow(MappedTaskStore store, String title) {
+        this.store = store;
+        stage.setTitle("Archival Store - " + title);
+    }
+
+    public void show() {
+        PagedTaskList rows = new PagedTaskList(store.pageSource(false), PAGE_SIZE, MAX_CACHED_PAGES, prefetchExecutor);
+        TableView<Task> table = createTable();
+        table.setItems(rows);
+        VBox.setVgrow(table, Priority.ALWAYS);
+
+        ComboBox<String> orderBox = new ComboBox<>();
+        orderBox.getItems().addAll("Storage order", "By deadline");
+        orderBox.setValue("Storage order");
+        orderBox.setOnAction(e -> rows.setSource(store.pageSource(orderBox.getSelectionModel().getSelectedIndex() == 1)));
+
+        Label countLabel = new Label(store.size() + " tasks");
+        HBox toolbar = new HBox(10, new Label("Order:"), orderBox, countLabel);
+
+        VBox root = new VBox(10, toolbar, table);
+        root.setPadding(new Insets(10));
+        stage.setScene(new Scene(root, 800, 600));
+        stage.setOnHidden(e -> close());
+        stage.show();
+    }
+
+    private void close() {
+        prefetchExecutor.shutdownNow();
+        try {
+            store.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to close archival store", e);
+        }
+    }
+
+    private TableView<Task> createTable() {
+        TableView<Task> table = new TableView<>();
+
+        TableColumn<Task, String> titleCol = new TableColumn<>("Title");
+        titleCol.setCellValueFactory(new PropertyValueFactory<>("title"));
+        titleCol.setPrefWidth(200);
+
+        TableColumn<Task, Category> categoryCol = new TableColumn<>("Category");
+        categoryCol.setCellValueFactory(new PropertyValueFactory<>("category"));
+        categoryCol.setCellFactory(column -> new TableCell<Task, Category>() {
+            @Override
+            protected void updateItem(Category item, boolean empty) {
+                super.updateItem(item, empty);
+                setText(empty || item == null ? "" : item.getName());
+            }
+        });
+        categoryCol.setPrefWidth(100);
+
+        TableColumn<Task, PriorityLevel> priorityCol = new TableColumn<>("Priority");
+        priorityCol.setCellValueFactory(new PropertyValueFactory<>("priority"));
+        priorityCol.setCellFactory(column -> new TableCell<Task, PriorityLevel>() {
+            @Override
+            protected void updateItem(PriorityLevel item, boolean empty) {
+                super.updateItem(item, empty);
+                setText(empty || item == null ? "" : item.getName());
+            }
+        });
+        priorityCol.setPrefWidth(100);
+
+        TableColumn<Task, TaskStatus> statusCol = new TableColumn<>("Status");
+        statusCol.setCellValueFactory(new PropertyValueFactory<>("status"));
+        statusCol.setPrefWidth(100);
+
+        TableColumn<Task, LocalDate> deadlineCol = new TableColumn<>("Deadline");
+        deadlineCol.setCellValueFactory(new PropertyValueFactory<>("deadline"));
+        deadlineCol.setPrefWidth(100);
+
+        table.getColumns().addAll(titleCol, categoryCol, priorityCol, statusCol, deadlineCol);
+        // Sorting happens in the store (see the order box), not in the table.
+        table.getColumns().forEach(column -> column.setSortable(false));
+        return table;
+    }
+}
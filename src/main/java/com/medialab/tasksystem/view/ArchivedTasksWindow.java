@@ -0,0 +1,121 @@
+package com.medialab.tasksystem.view;
+
+import com.medialab.tasksystem.model.Category;
+import com.medialab.tasksystem.model.Task;
+import com.medialab.tasksystem.service.CategoryService;
+import com.medialab.tasksystem.service.PriorityService;
+import com.medialab.tasksystem.service.TaskService;
+import com.medialab.tasksystem.util.UIUtils;
+import javafx.geometry.Insets;
+import javafx.scene.Scene;
+import javafx.scene.control.*;
+import javafx.scene.control.cell.PropertyValueFactory;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.VBox;
+import javafx.stage.Stage;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Searches the task archive and restores archived tasks to the live list. The archive is
+ * only read when a search runs, on a background thread.
+ */
+public class ArchivedTasksWindow {
+    private static final int MAX_RESULTS = 500;
+
+    private final TaskService taskService;
+    private final CategoryService categoryService;
+    private final PriorityService priorityService;
+    private final Runnable onRestored;
+    private final Stage stage = new Stage();
+    private final TableView<Task> table = new TableView<>();
+    private final Label resultLabel = new Label();
+
+    public ArchivedTasksWindow(TaskService taskService, CategoryService categoryService,
+                               PriorityService priorityService, Runnable onRestored) {
+        this.taskService = taskService;
+        this.categoryService = categoryService;
+        this.priorityService = priorityService;
+        this.onRestored = onRestored;
+        stage.setTitle("Archived Tasks");
+    }
+
+    public void show() {
+        TextField searchField = new TextField();
+        searchField.setPromptText("Search archived titles");
+        searchField.setOnAction(e -> search(searchField.getText()));
+        Button searchButton = new Button("Search");
+        searchButton.setOnAction(e -> search(searchField.getText()));
+        Button restoreButton = new Button("Restore");
+        restoreButton.disableProperty().bind(table.getSelectionModel().selectedItemProperty().isNull());
+        restoreButton.setOnAction(e -> restoreSelected());
+        HBox toolbar = new HBox(10, searchField, searchButton, restoreButton, resultLabel);
+
+        createColumns();
+        VBox.setVgrow(table, Priority.ALWAYS);
+        VBox root = new VBox(10, toolbar, table);
+        root.setPadding(new Insets(10));
+        stage.setScene(new Scene(root, 700, 500));
+        stage.show();
+        search("");
+    }
+
+    private void search(String query) {
+        resultLabel.setText("Searching...");
+        javafx.concurrent.Task<List<Task>> searchTask = new javafx.concurrent.Task<>() {
+            @Override
+            protected List<Task> call() {
+                return taskService.searchArchive(query, MAX_RESULTS);
+            }
+        };
+        searchTask.setOnSucceeded(e -> {
+            table.getItems().setAll(searchTask.getValue());
+            int shown = searchTask.getValue().size();
+            resultLabel.setText(shown + " of " + taskService.getArchivedTasksCount() + " archived tasks");
+        });
+        searchTask.setOnFailed(e -> resultLabel.setText("Search failed"));
+        Thread thread = new Thread(searchTask, "archive-search");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void restoreSelected() {
+        Task selected = table.getSelectionModel().getSelectedItem();
+        Task restored = taskService.restoreArchivedTask(selected.getId(), categoryService, priorityService);
+        if (restored == null) {
+            UIUtils.showError("Restore Failed", "The task is no longer in the archive.");
+        }
+        table.getItems().remove(selected);
+        resultLabel.setText(table.getItems().size() + " of " + taskService.getArchivedTasksCount() + " archived tasks");
+        onRestored.run();
+    }
+
+    private void createColumns() {
+        TableColumn<Task, String> titleCol = new TableColumn<>("Title");
+        titleCol.setCellValueFactory(new PropertyValueFactory<>("title"));
+        titleCol.setPrefWidth(250);
+
+        TableColumn<Task, Category> categoryCol = new TableColumn<>("Category");
+        categoryCol.setCellValueFactory(new PropertyValueFactory<>("category"));
+        categoryCol.setCellFactory(column -> new TableCell<Task, Category>() {
+            @Override
+            protected void updateItem(Category item, boolean empty) {
+                super.updateItem(item, empty);
+                setText(empty || item == null ? "" : item.getName());
+            }
+        });
+        categoryCol.setPrefWidth(120);
+
+        TableColumn<Task, LocalDate> deadlineCol = new TableColumn<>("Deadline");
+        deadlineCol.setCellValueFactory(new PropertyValueFactory<>("deadline"));
+        deadlineCol.setPrefWidth(100);
+
+        TableColumn<Task, LocalDate> completedCol = new TableColumn<>("Completed");
+        completedCol.setCellValueFactory(new PropertyValueFactory<>("completedAt"));
+        completedCol.setPrefWidth(100);
+
+        table.getColumns().addAll(titleCol, categoryCol, deadlineCol, completedCol);
+    }
+}
@@ -110,6 +110,12 @@ public class CategoryManagementPane extends VBox {
         });
     }
 
+    // Re-reads the list after changes made elsewhere, e.g. by undo or redo.
+    public void refresh() {
+        refreshCategoryList();
+        categoryTable.refresh();
+    }
+
     private void refreshCategoryList() {
         categoryTable.getItems().setAll(categoryService.getAllCategories());
     }
@@ -0,0 +1,42 @@
+package com.medialab.tasksystem.view;
+
+import javafx.scene.Node;
+import javafx.scene.control.Tab;
+
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * A tab that builds its content the first time it is selected, so panes that
+ * bind tables or start timers are only created when the user actually opens them.
+ */
+public class LazyTab extends Tab {
+    private static final Logger LOGGER = Logger.getLogger(LazyTab.class.getName());
+
+    private Supplier<? extends Node> contentFactory;
+
+    public LazyTab(String title, Supplier<? extends Node> contentFactory) {
+        super(title);
+        this.contentFactory = contentFactory;
+        setOnSelectionChanged(e -> {
+            if (isSelected()) {
+                ensureContent();
+            }
+        });
+    }
+
+    // Build the content now if it has not been built yet.
+    public void ensureContent() {
+        if (contentFactory == null) {
+            return;
+        }
+        long start = System.nanoTime();
+        setContent(contentFactory.get());
+        contentFactory = null; // Release the factory and anything it captured.
+        LOGGER.info(String.format("Built '%s' tab in %d ms", getText(), (System.nanoTime() - start) / 1_000_000));
+    }
+
+    public boolean isContentBuilt() {
+        return contentFactory == null;
+    }
+}
@@ -0,0 +1,66 @@
+package com.medialab.tasksystem.view;
+
+import com.medialab.tasksystem.model.Task;
+import com.medialab.tasksystem.service.TaskService;
+import javafx.application.Platform;
+import javafx.collections.ListChangeListener;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+import javafx.scene.layout.VBox;
+
+/**
+ * Dashboard list of the most urgent open tasks, read from the ranking that
+ * TaskService maintains as tasks change.
+ */
+public class NextTasksWidget extends VBox {
+    private static final int VISIBLE_TASKS = 5;
+
+    private final TaskService taskService;
+    private final ListView<Task> nextTasksList = new ListView<>();
+    private boolean refreshPending;
+
+    public NextTasksWidget(TaskService taskService) {
+        super(5);
+        this.taskService = taskService;
+
+        Label titleLabel = new Label("What to work on next");
+        titleLabel.setStyle("-fx-font-weight: bold;");
+
+        nextTasksList.setPrefHeight(VISIBLE_TASKS * 24 + 2);
+        nextTasksList.setFocusTraversable(false);
+        nextTasksList.setCellFactory(listView -> new ListCell<Task>() {
+            @Override
+            protected void updateItem(Task item, boolean empty) {
+                super.updateItem(item, empty);
+                if (empty || item == null) {
+                    setText("");
+                    return;
+                }
+                String priority = item.getPriority() != null ? item.getPriority().getName() : "-";
+                String deadline = item.getDeadline() != null ? item.getDeadline().toString() : "no deadline";
+                setText(String.format("%s  (%s, due %s, %s)", item.getTitle(), priority, deadline, item.getStatus()));
+            }
+        });
+
+        getChildren().addAll(titleLabel, nextTasksList);
+
+        taskService.addNextTasksListener(this::scheduleRefresh);
+        // Edits that keep a task's rank (e.g. a new title) still need to be shown.
+        taskService.getObservableTasks().addListener((ListChangeListener<Task>) change -> scheduleRefresh());
+        refresh();
+    }
+
+    // Several ranking changes in one pulse (e.g. a bulk edit) cause a single refresh.
+    private void scheduleRefresh() {
+        if (!refreshPending) {
+            refreshPending = true;
+            Platform.runLater(this::refresh);
+        }
+    }
+
+    private void refresh() {
+        refreshPending = false;
+        nextTasksList.getItems().setAll(taskService.getNextTasks(VISIBLE_TASKS));
+    }
+}
@@ -0,0 +1,149 @@
+package com.medialab.tasksystem.view;
+
+import com.medialab.tasksystem.model.Task;
+import com.medialab.tasksystem.service.TaskPageSource;
+import javafx.application.Platform;
+import javafx.collections.ObservableListBase;
+
+import java.util.AbstractList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+/**
+ * An ObservableList for a TableView that only materializes the rows the table asks for.
+ * <p>
+ * Rows are fetched a page at a time from a TaskPageSource and kept in a small LRU
+ * page cache, so the heap used by the table stays bounded no matter how many tasks
+ * the source holds. When a page is read, its neighbours are prefetched on a
+ * background executor so scrolling rarely waits for a fetch.
+ * </p>
+ * All methods must be called on the FX thread.
+ */
+public class PagedTaskList extends ObservableListBase<Task> {
+    private final int pageSize;
+    private final Map<Integer, List<Task>> pages;
+    private final Set<Integer> pendingPrefetches = new HashSet<>();
+    private final Executor prefetchExecutor;
+
+    private TaskPageSource source;
+    private int size;
+    // Incremented on every source change so stale prefetches are discarded.
+    private long generation;
+
+    public PagedTaskList(TaskPageSource source, int pageSize, int maxCachedPages, Executor prefetchExecutor) {
+        this.source = source;
+        this.pageSize = pageSize;
+        this.prefetchExecutor = prefetchExecutor;
+        this.pages = new LinkedHashMap<>(maxCachedPages * 2, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, List<Task>> eldest) {
+                return size() > maxCachedPages;
+            }
+        };
+        this.size = source.size();
+    }
+
+    @Override
+    public Task get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+        }
+        int pageNumber = index / pageSize;
+        List<Task> page = pages.get(pageNumber);
+        if (page == null) {
+            page = source.fetch(pageNumber * pageSize, pageSize);
+            pages.put(pageNumber, page);
+        }
+        prefetch(pageNumber - 1);
+        prefetch(pageNumber + 1);
+        int offset = index - pageNumber * pageSize;
+        return offset < page.size() ? page.get(offset) : null;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Switches to a different source, e.g. a new sort order or a search result.
+     */
+    public void setSource(TaskPageSource source) {
+        this.source = source;
+        refresh();
+    }
+
+    /**
+     * Drops all cached pages and re-reads the size from the source, notifying the table
+     * that every row may have changed.
+     */
+    public void refresh() {
+        Map<Integer, List<Task>> oldPages = new LinkedHashMap<>(pages);
+        int oldSize = size;
+        generation++;
+        pages.clear();
+        pendingPrefetches.clear();
+        size = source.size();
+
+        beginChange();
+        if (oldSize > 0) {
+            nextRemove(0, new CachedRows(oldPages, oldSize));
+        }
+        if (size > 0) {
+            nextAdd(0, size);
+        }
+        endChange();
+    }
+
+    /**
+     * Returns the row of the task with the given id, or -1 if the source does not hold it.
+     */
+    public int indexOfTask(String taskId) {
+        return source.indexOf(taskId);
+    }
+
+    private void prefetch(int pageNumber) {
+        if (pageNumber < 0 || pageNumber * pageSize >= size
+                || pages.containsKey(pageNumber) || !pendingPrefetches.add(pageNumber)) {
+            return;
+        }
+        TaskPageSource requestSource = source;
+        long requestGeneration = generation;
+        prefetchExecutor.execute(() -> {
+            List<Task> page = requestSource.fetch(pageNumber * pageSize, pageSize);
+            Platform.runLater(() -> {
+                if (requestGeneration == generation) {
+                    pendingPrefetches.remove(pageNumber);
+                    pages.putIfAbsent(pageNumber, page);
+                }
+            });
+        });
+    }
+
+    // The rows that were removed by a refresh; rows that were never cached are reported as null.
+    private final class CachedRows extends AbstractList<Task> {
+        private final Map<Integer, List<Task>> cachedPages;
+        private final int rowCount;
+
+        private CachedRows(Map<Integer, List<Task>> cachedPages, int rowCount) {
+            this.cachedPages = cachedPages;
+            this.rowCount = rowCount;
+        }
+
+        @Override
+        public Task get(int index) {
+            List<Task> page = cachedPages.get(index / pageSize);
+            int offset = index % pageSize;
+            return page != null && offset < page.size() ? page.get(offset) : null;
+        }
+
+        @Override
+        public int size() {
+            return rowCount;
+        }
+    }
+}
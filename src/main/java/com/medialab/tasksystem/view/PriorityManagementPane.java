@@ -5,9 +5,13 @@ import com.medialab.tasksystem.service.PriorityService;
 import javafx.geometry.Insets;
 import javafx.scene.control.*;
 import javafx.scene.control.cell.PropertyValueFactory;
+import javafx.scene.layout.GridPane;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.Priority;
 import javafx.scene.layout.VBox;
+import javafx.util.Pair;
+
+import java.util.Optional;
 
 public class PriorityManagementPane extends VBox {
     private final PriorityService priorityService;
@@ -55,24 +59,49 @@ public class PriorityManagementPane extends VBox {
 //        defaultCol.setCellValueFactory(new PropertyValueFactory<>("default"));
 //        defaultCol.setPrefWidth(100);
 
-        table.getColumns().addAll(nameCol);
+        TableColumn<PriorityLevel, Integer> weightCol = new TableColumn<>("Weight");
+        weightCol.setCellValueFactory(new PropertyValueFactory<>("weight"));
+        weightCol.setPrefWidth(100);
+
+        table.getColumns().addAll(nameCol, weightCol);
         return table;
     }
 
     private void showAddPriorityDialog() {
-        TextInputDialog dialog = new TextInputDialog();
-        dialog.setTitle("New Priority Level");
-        dialog.setHeaderText("Create New Priority Level");
-        dialog.setContentText("Priority level name:");
-
-        dialog.showAndWait().ifPresent(name -> {
-            if (!name.trim().isEmpty()) {
-                priorityService.createPriorityLevel(name.trim(), false);
+        showPriorityDialog("New Priority Level", "Create New Priority Level", "",
+                PriorityService.defaultWeightFor(null)).ifPresent(result -> {
+            if (!result.getKey().trim().isEmpty()) {
+                priorityService.createPriorityLevel(result.getKey().trim(), false, result.getValue());
                 refreshPriorityList();
             }
         });
     }
 
+    // Name and weight of a priority level; higher weights rank first in "what to work on next".
+    private Optional<Pair<String, Integer>> showPriorityDialog(String title, String header, String name, int weight) {
+        Dialog<Pair<String, Integer>> dialog = new Dialog<>();
+        dialog.setTitle(title);
+        dialog.setHeaderText(header);
+        dialog.getDialogPane().getButtonTypes().addAll(ButtonType.OK, ButtonType.CANCEL);
+
+        TextField nameField = new TextField(name);
+        Spinner<Integer> weightSpinner = new Spinner<>(1, 100, weight);
+        weightSpinner.setEditable(true);
+
+        GridPane grid = new GridPane();
+        grid.setHgap(10);
+        grid.setVgap(10);
+        grid.setPadding(new Insets(10));
+        grid.addRow(0, new Label("Priority level name:"), nameField);
+        grid.addRow(1, new Label("Weight:"), weightSpinner);
+        dialog.getDialogPane().setContent(grid);
+
+        dialog.setResultConverter(buttonType -> buttonType == ButtonType.OK
+                ? new Pair<>(nameField.getText(), weightSpinner.getValue())
+                : null);
+        return dialog.showAndWait();
+    }
+
     private void showEditPriorityDialog() {
         PriorityLevel selectedPriority = priorityTable.getSelectionModel().getSelectedItem();
         if (selectedPriority == null) {
@@ -85,14 +114,11 @@ public class PriorityManagementPane extends VBox {
             return;
         }
 
-        TextInputDialog dialog = new TextInputDialog(selectedPriority.getName());
-        dialog.setTitle("Edit Priority Level");
-        dialog.setHeaderText("Edit Priority Level Name");
-        dialog.setContentText("New name:");
-
-        dialog.showAndWait().ifPresent(newName -> {
-            if (!newName.trim().isEmpty()) {
-                selectedPriority.setName(newName.trim());
+        showPriorityDialog("Edit Priority Level", "Edit Priority Level",
+                selectedPriority.getName(), selectedPriority.getWeight()).ifPresent(result -> {
+            if (!result.getKey().trim().isEmpty()) {
+                selectedPriority.setName(result.getKey().trim());
+                selectedPriority.setWeight(result.getValue());
                 priorityService.updatePriorityLevel(selectedPriority);
                 refreshPriorityList();
             }
@@ -124,6 +150,12 @@ public class PriorityManagementPane extends VBox {
         });
     }
 
+    // Re-reads the list after changes made elsewhere, e.g. by undo or redo.
+    public void refresh() {
+        refreshPriorityList();
+        priorityTable.refresh();
+    }
+
     private void refreshPriorityList() {
         priorityTable.getItems().setAll(priorityService.getAllPriorityLevels());
     }
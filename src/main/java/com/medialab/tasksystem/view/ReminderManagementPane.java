@@ -72,7 +72,14 @@ public class ReminderManagementPane extends VBox {
         TableColumn<Reminder, LocalDate> dateCol = new TableColumn<>("Reminder Date");
         dateCol.setCellValueFactory(new PropertyValueFactory<>("reminderDate"));
 
-        table.getColumns().addAll(taskCol, typeCol, dateCol);
+        TableColumn<Reminder, String> stateCol = new TableColumn<>("State");
+        stateCol.setCellValueFactory(cellData -> {
+            Reminder reminder = cellData.getValue();
+            String state = reminder.isAcknowledged() ? "Acknowledged" : reminder.isFired() ? "Fired" : "Pending";
+            return new javafx.beans.property.ReadOnlyStringWrapper(state);
+        });
+
+        table.getColumns().addAll(taskCol, typeCol, dateCol, stateCol);
         return table;
     }
 
@@ -0,0 +1,103 @@
+package com.medialab.tasksystem.view;
+
+import com.medialab.tasksystem.service.TaskHistory;
+import com.medialab.tasksystem.service.TaskService;
+import javafx.beans.property.ReadOnlyStringWrapper;
+import javafx.geometry.Insets;
+import javafx.scene.Scene;
+import javafx.scene.control.Label;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.VBox;
+import javafx.stage.Stage;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Shows recorded task versions: the change history of one task, or the whole board as it
+ * was on a past day. The history is queried on a background thread.
+ */
+public class TaskHistoryWindow {
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final Stage stage = new Stage();
+    private final TableView<TaskHistory.Version> table = new TableView<>();
+    private final Label resultLabel = new Label("Loading...");
+
+    private TaskHistoryWindow(String title) {
+        stage.setTitle(title);
+    }
+
+    /**
+     * Opens a window listing every version of a task, oldest first.
+     */
+    public static void showTaskHistory(TaskService taskService, String taskId, String taskTitle) {
+        TaskHistoryWindow window = new TaskHistoryWindow("History - " + taskTitle);
+        window.table.getColumns().add(column("When", 150, version -> TIME_FORMAT.format(version.getTimestamp())));
+        window.table.getColumns().add(column("Change", 500, TaskHistoryWindow::describeChange));
+        window.show(() -> taskService.getTaskHistory(taskId), "versions");
+    }
+
+    /**
+     * Opens a window listing the tasks as they were at the end of the given day.
+     */
+    public static void showBoardAt(TaskService taskService, LocalDate date) {
+        TaskHistoryWindow window = new TaskHistoryWindow("Board on " + date);
+        window.table.getColumns().add(column("Title", 200, version -> version.get("title")));
+        window.table.getColumns().add(column("Category", 110, version -> version.get("category")));
+        window.table.getColumns().add(column("Priority", 90, version -> version.get("priority")));
+        window.table.getColumns().add(column("Deadline", 90, version -> version.get("deadline")));
+        window.table.getColumns().add(column("Status", 100, version -> version.get("status")));
+        window.show(() -> taskService.getBoardAt(date).stream()
+                .sorted(Comparator.comparing((TaskHistory.Version version) -> version.get("deadline"),
+                        Comparator.nullsLast(Comparator.naturalOrder())))
+                .collect(Collectors.toList()), "tasks");
+    }
+
+    private void show(Supplier<List<TaskHistory.Version>> query, String noun) {
+        VBox.setVgrow(table, Priority.ALWAYS);
+        VBox root = new VBox(10, resultLabel, table);
+        root.setPadding(new Insets(10));
+        stage.setScene(new Scene(root, 700, 450));
+        stage.show();
+
+        javafx.concurrent.Task<List<TaskHistory.Version>> queryTask = new javafx.concurrent.Task<>() {
+            @Override
+            protected List<TaskHistory.Version> call() {
+                return query.get();
+            }
+        };
+        queryTask.setOnSucceeded(e -> {
+            table.getItems().setAll(queryTask.getValue());
+            resultLabel.setText(queryTask.getValue().size() + " " + noun);
+        });
+        queryTask.setOnFailed(e -> resultLabel.setText("Could not read the task history"));
+        Thread thread = new Thread(queryTask, "task-history");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private static String describeChange(TaskHistory.Version version) {
+        if (version.isRemoved()) {
+            return "Deleted or archived";
+        }
+        return version.getChanges().entrySet().stream()
+                .map(change -> change.getKey() + ": " + (change.getValue() != null ? change.getValue() : "(none)"))
+                .collect(Collectors.joining(", "));
+    }
+
+    private static TableColumn<TaskHistory.Version, String> column(String title, double width,
+                                                                  Function<TaskHistory.Version, String> value) {
+        TableColumn<TaskHistory.Version, String> column = new TableColumn<>(title);
+        column.setCellValueFactory(cell -> new ReadOnlyStringWrapper(value.apply(cell.getValue())));
+        column.setPrefWidth(width);
+        return column;
+    }
+}
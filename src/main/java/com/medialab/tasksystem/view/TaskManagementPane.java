@@ -4,12 +4,13 @@ import com.medialab.tasksystem.model.*;
 import com.medialab.tasksystem.service.TaskService;
 import com.medialab.tasksystem.service.CategoryService;
 import com.medialab.tasksystem.service.PriorityService;
+import com.medialab.tasksystem.service.TaskPageSource;
+import com.medialab.tasksystem.service.TaskSortKey;
 import javafx.animation.KeyFrame;
+import javafx.animation.PauseTransition;
 import javafx.animation.Timeline;
 import javafx.application.Platform;
 import javafx.collections.ListChangeListener;
-import javafx.collections.transformation.FilteredList;
-import javafx.collections.transformation.SortedList;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.control.*;
@@ -22,7 +23,12 @@ import javafx.scene.layout.VBox;
 import javafx.util.Duration;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class TaskManagementPane extends VBox {
     private final TaskService taskService;
@@ -32,7 +38,31 @@ public class TaskManagementPane extends VBox {
     private TableView<Task> taskTable;
     private ComboBox<Category> categoryFilter;
     private ComboBox<PriorityLevel> priorityFilter;
-    private FilteredList<Task> filteredTasks;
+    private PagedTaskList pagedTasks;
+    private TextField searchField;
+    private Label searchResultLabel;
+
+    // Live search: keystrokes restart the debounce timer, and only the latest query is applied.
+    private static final Duration SEARCH_DEBOUNCE = Duration.millis(250);
+    private final PauseTransition searchDebounce = new PauseTransition(SEARCH_DEBOUNCE);
+    private final ExecutorService searchExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "task-search");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private javafx.concurrent.Task<List<Task>> runningSearch;
+
+    // The table reads tasks a page at a time, sorted by the store rather than by a SortedList.
+    private static final int PAGE_SIZE = 200;
+    private static final int MAX_CACHED_PAGES = 16;
+    private final ExecutorService prefetchExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "task-page-prefetch");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private TaskSortKey sortKey;
+    private boolean sortAscending = true;
+    private boolean refreshPending;
 
     public TaskManagementPane(TaskService taskService, CategoryService categoryService,
                               PriorityService priorityService, Runnable statisticsUpdateCallback) {
@@ -52,22 +82,29 @@ public class TaskManagementPane extends VBox {
         Button addButton = new Button("New Task");
         Button editButton = new Button("Edit");
         Button deleteButton = new Button("Delete");
+        Button shiftButton = new Button("Shift Deadlines");
+        Button historyButton = new Button("History");
 
         addButton.setOnAction(e -> showAddTaskDialog());
         editButton.setOnAction(e -> showEditTaskDialog());
         deleteButton.setOnAction(e -> deleteSelectedTask());
+        shiftButton.setOnAction(e -> shiftSelectedDeadlines());
+        historyButton.setOnAction(e -> showSelectedHistory());
 
-        toolbar.getChildren().addAll(addButton, editButton, deleteButton);
+        toolbar.getChildren().addAll(addButton, editButton, deleteButton, shiftButton, historyButton);
 
         HBox filterBox = createFilterBox();
 
         taskTable = createTaskTable();
+        taskTable.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
         VBox.setVgrow(taskTable, Priority.ALWAYS);
 
-        filteredTasks = new FilteredList<>(taskService.getObservableTasks(), p -> true);
-        SortedList<Task> sortedTasks = new SortedList<>(filteredTasks);
-        sortedTasks.comparatorProperty().bind(taskTable.comparatorProperty());
-        taskTable.setItems(sortedTasks);
+        pagedTasks = new PagedTaskList(taskService.getPageSource(null, true), PAGE_SIZE, MAX_CACHED_PAGES, prefetchExecutor);
+        taskTable.setItems(pagedTasks);
+        taskTable.setSortPolicy(table -> {
+            applySortOrder();
+            return true;
+        });
 
         // Debug listener to log changes in the tasks list.
         taskService.getObservableTasks().addListener(new ListChangeListener<Task>() {
@@ -85,6 +122,15 @@ public class TaskManagementPane extends VBox {
         });
 
 
+        // Keep the table and any active search in sync with added, removed and edited tasks.
+        taskService.getObservableTasks().addListener((ListChangeListener<Task>) change -> {
+            if (isSearchActive()) {
+                searchDebounce.playFromStart();
+            } else {
+                scheduleRefresh();
+            }
+        });
+
         getChildren().addAll(toolbar, filterBox, taskTable);
 
         updateFilters();
@@ -93,8 +139,9 @@ public class TaskManagementPane extends VBox {
     // Use a Timeline to periodically check deadlines so that overdue tasks become "DELAYED".
     private void startDeadlineChecker() {
         Timeline deadlineChecker = new Timeline(new KeyFrame(Duration.minutes(1), event -> {
-            taskService.checkDeadlines();
-            taskTable.refresh(); // Force UI update if needed.
+            if (taskService.checkDeadlines()) {
+                reloadRows(pagedTasks::refresh); // Statuses changed, which affects the status order.
+            }
         }));
         deadlineChecker.setCycleCount(Timeline.INDEFINITE);
         deadlineChecker.play();
@@ -143,7 +190,7 @@ public class TaskManagementPane extends VBox {
         filterBox.setPadding(new Insets(5));
         filterBox.setAlignment(Pos.CENTER_LEFT);
 
-        TextField searchField = new TextField();
+        searchField = new TextField();
         searchField.setPromptText("Search by title...");
 
         categoryFilter = new ComboBox<>();
@@ -152,8 +199,19 @@ public class TaskManagementPane extends VBox {
         priorityFilter = new ComboBox<>();
         priorityFilter.setPromptText("Priority");
 
+        // Search as the user types, once typing pauses.
+        searchDebounce.setOnFinished(e -> performSearch());
+        searchField.textProperty().addListener((obs, oldText, newText) -> searchDebounce.playFromStart());
+        categoryFilter.valueProperty().addListener((obs, oldValue, newValue) -> searchDebounce.playFromStart());
+        priorityFilter.valueProperty().addListener((obs, oldValue, newValue) -> searchDebounce.playFromStart());
+
         Button searchButton = new Button("Search");
-        searchButton.setOnAction(e -> performSearch(searchField.getText()));
+        searchButton.setOnAction(e -> {
+            searchDebounce.stop();
+            performSearch();
+        });
+
+        searchResultLabel = new Label();
 
         Region spacer = new Region();
         HBox.setHgrow(spacer, Priority.ALWAYS);
@@ -163,7 +221,10 @@ public class TaskManagementPane extends VBox {
             searchField.clear();
             categoryFilter.getSelectionModel().clearSelection();
             priorityFilter.getSelectionModel().clearSelection();
-            filteredTasks.setPredicate(task -> true);
+            searchDebounce.stop();
+            cancelRunningSearch();
+            showAllTasks();
+            searchResultLabel.setText("");
         });
 
         filterBox.getChildren().addAll(
@@ -171,6 +232,7 @@ public class TaskManagementPane extends VBox {
                 new Label("Category:"), categoryFilter,
                 new Label("Priority:"), priorityFilter,
                 searchButton,
+                searchResultLabel,
                 spacer,
                 resetButton
         );
@@ -184,7 +246,7 @@ public class TaskManagementPane extends VBox {
         titleCol.setCellValueFactory(new PropertyValueFactory<>("title"));
         titleCol.setPrefWidth(200);
         titleCol.setSortable(true);
-        titleCol.setComparator((s1, s2) -> s1.compareToIgnoreCase(s2));
+        titleCol.setUserData(TaskSortKey.TITLE);
 
         TableColumn<Task, Category> categoryCol = new TableColumn<>("Category");
         categoryCol.setCellValueFactory(new PropertyValueFactory<>("category"));
@@ -197,7 +259,7 @@ public class TaskManagementPane extends VBox {
         });
         categoryCol.setPrefWidth(100);
         categoryCol.setSortable(true);
-        categoryCol.setComparator((c1, c2) -> c1.getName().compareToIgnoreCase(c2.getName()));
+        categoryCol.setUserData(TaskSortKey.CATEGORY);
 
         TableColumn<Task, PriorityLevel> priorityCol = new TableColumn<>("Priority");
         priorityCol.setCellValueFactory(new PropertyValueFactory<>("priority"));
@@ -210,50 +272,77 @@ public class TaskManagementPane extends VBox {
         });
         priorityCol.setPrefWidth(100);
         priorityCol.setSortable(true);
-        priorityCol.setComparator((p1, p2) -> {
-            int p1Value = getPriorityValue(p1.getName());
-            int p2Value = getPriorityValue(p2.getName());
-            return Integer.compare(p1Value, p2Value);
-        });
+        priorityCol.setUserData(TaskSortKey.PRIORITY);
 
         TableColumn<Task, TaskStatus> statusCol = new TableColumn<>("Status");
         statusCol.setCellValueFactory(new PropertyValueFactory<>("status"));
         statusCol.setPrefWidth(100);
         statusCol.setSortable(true);
-        statusCol.setComparator((s1, s2) -> {
-            int s1Value = getStatusValue(s1);
-            int s2Value = getStatusValue(s2);
-            return Integer.compare(s1Value, s2Value);
-        });
+        statusCol.setUserData(TaskSortKey.STATUS);
 
         TableColumn<Task, LocalDate> deadlineCol = new TableColumn<>("Deadline");
         deadlineCol.setCellValueFactory(new PropertyValueFactory<>("deadline"));
         deadlineCol.setPrefWidth(100);
         deadlineCol.setSortable(true);
+        deadlineCol.setUserData(TaskSortKey.DEADLINE);
 
         table.getColumns().addAll(titleCol, categoryCol, priorityCol, statusCol, deadlineCol);
         return table;
     }
 
-    // Helper methods for sorting comparators.
-    private int getPriorityValue(String priorityName) {
-        switch (priorityName) {
-            case "Default": return 1;
-            case "Low": return 2;
-            case "High": return 3;
-            case "Urgent": return 4;
-            default: return 5; // for any other priorities
+    // Sorting is delegated to the task store: only the primary sort column is used.
+    private void applySortOrder() {
+        if (taskTable.getSortOrder().isEmpty()) {
+            sortKey = null;
+            sortAscending = true;
+        } else {
+            TableColumn<Task, ?> column = taskTable.getSortOrder().get(0);
+            sortKey = (TaskSortKey) column.getUserData();
+            sortAscending = column.getSortType() == TableColumn.SortType.ASCENDING;
+        }
+        if (isSearchActive()) {
+            performSearch();
+        } else {
+            showAllTasks();
+        }
+    }
+
+    private void showAllTasks() {
+        reloadRows(() -> pagedTasks.setSource(taskService.getPageSource(sortKey, sortAscending)));
+    }
+
+    // Reloads every row, then selects and focuses the same tasks again wherever they moved to.
+    private void reloadRows(Runnable reload) {
+        List<String> selectedIds = new ArrayList<>();
+        for (Task task : taskTable.getSelectionModel().getSelectedItems()) {
+            if (task != null) {
+                selectedIds.add(task.getId());
+            }
+        }
+        Task focusedTask = taskTable.getFocusModel().getFocusedItem();
+        reload.run();
+
+        taskTable.getSelectionModel().clearSelection();
+        for (String id : selectedIds) {
+            int index = pagedTasks.indexOfTask(id);
+            if (index >= 0) {
+                taskTable.getSelectionModel().select(index);
+            }
+        }
+        int focusedIndex = focusedTask != null ? pagedTasks.indexOfTask(focusedTask.getId()) : -1;
+        if (focusedIndex >= 0) {
+            taskTable.getFocusModel().focus(focusedIndex);
         }
     }
 
-    private int getStatusValue(TaskStatus status) {
-        switch (status) {
-            case OPEN: return 1;
-            case IN_PROGRESS: return 2;
-            case POSTPONED: return 3;
-            case COMPLETED: return 4;
-            case DELAYED: return 5;
-            default: return 6;
+    // Coalesce bursts of list changes (e.g. cascading deletes) into one refresh per pulse.
+    private void scheduleRefresh() {
+        if (!refreshPending) {
+            refreshPending = true;
+            Platform.runLater(() -> {
+                refreshPending = false;
+                reloadRows(pagedTasks::refresh);
+            });
         }
     }
 
@@ -353,6 +442,15 @@ public class TaskManagementPane extends VBox {
         });
     }
 
+    private void showSelectedHistory() {
+        Task selectedTask = taskTable.getSelectionModel().getSelectedItem();
+        if (selectedTask == null) {
+            showAlert("No Task Selected", "Please select a task to show its history.");
+            return;
+        }
+        TaskHistoryWindow.showTaskHistory(taskService, selectedTask.getId(), selectedTask.getTitle());
+    }
+
     private void showEditTaskDialog() {
         Task selectedTask = taskTable.getSelectionModel().getSelectedItem();
         if (selectedTask == null) {
@@ -464,22 +562,93 @@ public class TaskManagementPane extends VBox {
         });
     }
 
-    private void performSearch(String searchText) {
-        Category selectedCategory = categoryFilter.getValue();
-        PriorityLevel selectedPriority = priorityFilter.getValue();
-
-        // Update the predicate of the filtered list based on the search criteria.
-        filteredTasks.setPredicate(task -> {
-            boolean matchesTitle = (searchText == null || searchText.isEmpty()) ||
-                    task.getTitle().toLowerCase().contains(searchText.toLowerCase());
-            // Compare by name instead of ID.
-            boolean matchesCategory = (selectedCategory == null) ||
-                    task.getCategory().getName().equals(selectedCategory.getName());
-            // Compare by name instead of ID.
-            boolean matchesPriority = (selectedPriority == null) ||
-                    task.getPriority().getName().equals(selectedPriority.getName());
-            return matchesTitle && matchesCategory && matchesPriority;
+    // Move the deadlines of all selected tasks by a number of days; relative reminders follow.
+    private void shiftSelectedDeadlines() {
+        List<Task> selectedTasks = new ArrayList<>(taskTable.getSelectionModel().getSelectedItems());
+        if (selectedTasks.isEmpty()) {
+            showAlert("No Task Selected", "Please select the tasks whose deadlines should move.");
+            return;
+        }
+
+        TextInputDialog dialog = new TextInputDialog("7");
+        dialog.setTitle("Shift Deadlines");
+        dialog.setHeaderText("Shift the deadlines of " + selectedTasks.size() + " task(s)");
+        dialog.setContentText("Days (negative to move earlier):");
+
+        dialog.showAndWait().ifPresent(input -> {
+            int days;
+            try {
+                days = Integer.parseInt(input.trim());
+            } catch (NumberFormatException ex) {
+                showAlert("Invalid Input", "Please enter a whole number of days.");
+                return;
+            }
+            List<String> ids = new ArrayList<>(selectedTasks.size());
+            selectedTasks.forEach(task -> ids.add(task.getId()));
+            taskService.shiftDeadlines(ids, java.time.Period.ofDays(days));
+            if (statisticsUpdateCallback != null) {
+                statisticsUpdateCallback.run();
+            }
+        });
+    }
+
+    private boolean isSearchActive() {
+        return !searchField.getText().isEmpty()
+                || categoryFilter.getValue() != null
+                || priorityFilter.getValue() != null;
+    }
+
+    private void cancelRunningSearch() {
+        if (runningSearch != null) {
+            runningSearch.cancel();
+            runningSearch = null;
+        }
+    }
+
+    // Match against the precomputed keys on a background thread and apply only the final result.
+    private void performSearch() {
+        cancelRunningSearch();
+        if (!isSearchActive()) {
+            showAllTasks();
+            searchResultLabel.setText("");
+            return;
+        }
+
+        String searchText = searchField.getText();
+        // Compare by name instead of ID.
+        String categoryName = categoryFilter.getValue() != null ? categoryFilter.getValue().getName() : null;
+        String priorityName = priorityFilter.getValue() != null ? priorityFilter.getValue().getName() : null;
+        TaskSortKey searchSortKey = sortKey;
+        boolean searchAscending = sortAscending;
+        long startNanos = System.nanoTime();
+
+        javafx.concurrent.Task<List<Task>> search = new javafx.concurrent.Task<>() {
+            @Override
+            protected List<Task> call() {
+                Set<Task> matches = taskService.getSearchIndex()
+                        .search(searchText, categoryName, priorityName, this::isCancelled);
+                if (matches == null) {
+                    return null;
+                }
+                List<Task> ordered = new ArrayList<>(matches);
+                if (searchSortKey != null) {
+                    ordered.sort(searchSortKey.comparator(searchAscending));
+                }
+                return ordered;
+            }
+        };
+        search.setOnSucceeded(e -> {
+            if (search != runningSearch || search.getValue() == null) {
+                return; // Superseded by a newer query.
+            }
+            List<Task> matches = search.getValue();
+            reloadRows(() -> pagedTasks.setSource(TaskPageSource.of(matches)));
+            long elapsedMillis = (System.nanoTime() - startNanos) / 1_000_000;
+            searchResultLabel.setText(String.format("%d results (%d ms)", matches.size(), elapsedMillis));
+            runningSearch = null;
         });
+        runningSearch = search;
+        searchExecutor.execute(search);
     }
 
     // Refresh method that updates filters and refreshes the table.
@@ -0,0 +1,82 @@
+package com.medialab.tasksystem.view;
+
+import com.medialab.tasksystem.model.Reminder;
+import com.medialab.tasksystem.model.Task;
+import com.medialab.tasksystem.service.ReminderNotifier;
+import com.medialab.tasksystem.service.ReminderService;
+import javafx.application.Platform;
+import javafx.scene.control.Alert;
+import javafx.scene.control.ButtonBar;
+import javafx.scene.control.ButtonType;
+import javafx.scene.control.ListView;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Shows fired reminders in a non-blocking dialog; dismissing it with "Acknowledge"
+ * records the reminders as acknowledged.
+ * <p>
+ * Reminders that fire together, such as the ones missed while the application was
+ * closed, are collected until the dispatcher's pass is over and shown in one dialog.
+ * </p>
+ */
+public class UiReminderNotifier implements ReminderNotifier {
+    private final ReminderService reminderService;
+    // The reminders of the current dispatcher pass, with their tasks (null if deleted).
+    private final List<Reminder> pendingReminders = new ArrayList<>();
+    private final List<Task> pendingTasks = new ArrayList<>();
+
+    public UiReminderNotifier(ReminderService reminderService) {
+        this.reminderService = reminderService;
+    }
+
+    @Override
+    public void notify(Reminder reminder, Task task) {
+        if (pendingReminders.isEmpty()) {
+            // Runs after the dispatcher has handed over every reminder of this pass.
+            Platform.runLater(this::showPending);
+        }
+        pendingReminders.add(reminder);
+        pendingTasks.add(task);
+    }
+
+    private void showPending() {
+        List<Reminder> reminders = new ArrayList<>(pendingReminders);
+        List<Task> tasks = new ArrayList<>(pendingTasks);
+        pendingReminders.clear();
+        pendingTasks.clear();
+
+        ButtonType acknowledge = new ButtonType(reminders.size() == 1 ? "Acknowledge" : "Acknowledge All",
+                ButtonBar.ButtonData.OK_DONE);
+        Alert alert = new Alert(Alert.AlertType.INFORMATION, "", acknowledge, ButtonType.CLOSE);
+        if (reminders.size() == 1) {
+            Task task = tasks.get(0);
+            alert.setTitle("Reminder");
+            alert.setHeaderText(task != null ? task.getTitle() : "Task reminder");
+            String deadline = task != null && task.getDeadline() != null ? "\nDeadline: " + task.getDeadline() : "";
+            alert.setContentText(reminders.get(0) + deadline);
+        } else {
+            ListView<String> list = new ListView<>();
+            for (int i = 0; i < reminders.size(); i++) {
+                Task task = tasks.get(i);
+                String title = task != null ? task.getTitle() : "Task reminder";
+                String deadline = task != null && task.getDeadline() != null ? ", deadline " + task.getDeadline() : "";
+                list.getItems().add(title + ": " + reminders.get(i) + deadline);
+            }
+            list.setPrefHeight(300);
+            alert.setTitle("Reminders");
+            alert.setHeaderText(reminders.size() + " reminders are due");
+            alert.getDialogPane().setContent(list);
+            alert.setResizable(true);
+        }
+        alert.setOnHidden(e -> {
+            if (alert.getResult() == acknowledge) {
+                List<String> ids = new ArrayList<>();
+                reminders.forEach(reminder -> ids.add(reminder.getId()));
+                reminderService.acknowledgeReminders(ids);
+            }
+        });
+        alert.show();
+    }
+}